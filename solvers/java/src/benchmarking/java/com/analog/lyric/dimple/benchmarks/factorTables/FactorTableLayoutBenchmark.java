@@ -0,0 +1,218 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.benchmarks.factorTables;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.analog.lyric.benchmarking.Benchmark;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+
+/**
+ * Compares sum-product marginalization over the nested {@link IFactorTable#getIndicesSparseUnsafe()}
+ * index layout with the column-major {@link IFactorTable#getIndicesSparseColumnMajorUnsafe()} layout.
+ * <p>
+ * The kernels mirror the inner loops of the sum-product table factor update before and after the switch
+ * to column-major indices, computing the outgoing message for every edge of the factor.
+ * <p>
+ * @since 0.08
+ */
+public class FactorTableLayoutBenchmark
+{
+	private static final Random rng = new Random(0);
+
+	/**
+	 * Degree of the LDPC parity check table. The table has 2^(degree-1) entries.
+	 */
+	private static final int ldpcDegree = 16;
+
+	/**
+	 * Domain size of the HMM state transition table. The table has domainSize^2 entries.
+	 */
+	private static final int hmmDomainSize = 1000;
+
+	private final IFactorTable _ldpcTable = parityCheckTable(ldpcDegree);
+	private final IFactorTable _hmmTable = randomDenseTable(hmmDomainSize, hmmDomainSize);
+
+	/*------------
+	 * Benchmarks
+	 */
+
+	@Benchmark(warmupIterations = 1, iterations = 3)
+	public boolean ldpcNestedIndices()
+	{
+		return runNested(_ldpcTable, 20);
+	}
+
+	@Benchmark(warmupIterations = 1, iterations = 3)
+	public boolean ldpcColumnMajorIndices()
+	{
+		return runColumnMajor(_ldpcTable, 20);
+	}
+
+	@Benchmark(warmupIterations = 1, iterations = 3)
+	public boolean hmmNestedIndices()
+	{
+		return runNested(_hmmTable, 20);
+	}
+
+	@Benchmark(warmupIterations = 1, iterations = 3)
+	public boolean hmmColumnMajorIndices()
+	{
+		return runColumnMajor(_hmmTable, 20);
+	}
+
+	/*---------
+	 * Kernels
+	 */
+
+	private static boolean runNested(IFactorTable table, int repetitions)
+	{
+		final int[][] indices = table.getIndicesSparseUnsafe();
+		final double[] values = table.getWeightsSparseUnsafe();
+		final double[][] inMsgs = randomMessages(table);
+		final double[][] outMsgs = randomMessages(table);
+		final int numPorts = inMsgs.length;
+
+		for (int rep = 0; rep < repetitions; ++rep)
+		{
+			for (int outPortNum = numPorts; --outPortNum>=0;)
+			{
+				final double[] outputMsg = outMsgs[outPortNum];
+				Arrays.fill(outputMsg, 0);
+
+				for (int tableIndex = values.length; --tableIndex>=0;)
+				{
+					double prob = values[tableIndex];
+					final int[] tableRow = indices[tableIndex];
+
+					int inPortNum = numPorts;
+					while (--inPortNum > outPortNum)
+						prob *= inMsgs[inPortNum][tableRow[inPortNum]];
+					while (--inPortNum >= 0)
+						prob *= inMsgs[inPortNum][tableRow[inPortNum]];
+
+					outputMsg[tableRow[outPortNum]] += prob;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean runColumnMajor(IFactorTable table, int repetitions)
+	{
+		final int[] indices = table.getIndicesSparseColumnMajorUnsafe();
+		final double[] values = table.getWeightsSparseUnsafe();
+		final double[][] inMsgs = randomMessages(table);
+		final double[][] outMsgs = randomMessages(table);
+		final int numPorts = inMsgs.length;
+		final int tableLength = values.length;
+		final double[] products = new double[tableLength];
+
+		for (int rep = 0; rep < repetitions; ++rep)
+		{
+			for (int outPortNum = numPorts; --outPortNum>=0;)
+			{
+				System.arraycopy(values, 0, products, 0, tableLength);
+				for (int inPortNum = numPorts; --inPortNum>=0;)
+				{
+					if (inPortNum != outPortNum)
+					{
+						final double[] inputMsg = inMsgs[inPortNum];
+						final int offset = inPortNum * tableLength;
+						for (int tableIndex = tableLength; --tableIndex>=0;)
+							products[tableIndex] *= inputMsg[indices[offset + tableIndex]];
+					}
+				}
+
+				final double[] outputMsg = outMsgs[outPortNum];
+				Arrays.fill(outputMsg, 0);
+				final int offset = outPortNum * tableLength;
+				for (int tableIndex = tableLength; --tableIndex>=0;)
+					outputMsg[indices[offset + tableIndex]] += products[tableIndex];
+			}
+		}
+
+		return false;
+	}
+
+	/*---------------
+	 * Table creation
+	 */
+
+	private static IFactorTable parityCheckTable(int degree)
+	{
+		final DiscreteDomain[] domains = new DiscreteDomain[degree];
+		Arrays.fill(domains, DiscreteDomain.bit());
+
+		final int size = 1 << (degree - 1);
+		final int[][] indices = new int[size][];
+		final double[] weights = new double[size];
+		for (int i = 0, row = 0; row < size; ++i)
+		{
+			if (Integer.bitCount(i) % 2 == 0)
+			{
+				final int[] entry = indices[row] = new int[degree];
+				for (int d = 0; d < degree; ++d)
+				{
+					entry[d] = (i >>> (degree - 1 - d)) & 1;
+				}
+				weights[row++] = 1.0;
+			}
+		}
+
+		final IFactorTable table = FactorTable.create(domains);
+		table.setWeightsSparse(indices, weights);
+		return table;
+	}
+
+	private static IFactorTable randomDenseTable(int ... domainSizes)
+	{
+		final DiscreteDomain[] domains = new DiscreteDomain[domainSizes.length];
+		for (int i = 0; i < domains.length; ++i)
+		{
+			domains[i] = DiscreteDomain.range(0, domainSizes[i] - 1);
+		}
+
+		final IFactorTable table = FactorTable.create(domains);
+		final double[] weights = new double[table.getDomainIndexer().getCardinality()];
+		for (int i = 0; i < weights.length; ++i)
+		{
+			weights[i] = rng.nextDouble() + Double.MIN_NORMAL;
+		}
+		table.setWeightsDense(weights);
+		return table;
+	}
+
+	private static double[][] randomMessages(IFactorTable table)
+	{
+		final int numPorts = table.getDimensions();
+		final double[][] msgs = new double[numPorts][];
+		for (int port = 0; port < numPorts; ++port)
+		{
+			final double[] msg = msgs[port] = new double[table.getDomainIndexer().getDomainSize(port)];
+			for (int i = 0; i < msg.length; ++i)
+			{
+				msg[i] = rng.nextDouble();
+			}
+		}
+		return msgs;
+	}
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.jmh;
+
+import java.util.Random;
+
+import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTableRepresentation;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.variables.Discrete;
+
+/**
+ * Shared model construction for the JMH benchmarks.
+ * <p>
+ * All randomness is seeded so that every benchmark run sees the same models.
+ * <p>
+ * @since 0.08
+ */
+final class BenchmarkModels
+{
+	static final long SEED = 42;
+	
+	private BenchmarkModels()
+	{
+	}
+	
+	/**
+	 * Creates {@code count} discrete variables with domain {@code 0..domainSize-1}.
+	 */
+	static Discrete[] variables(int count, int domainSize)
+	{
+		final DiscreteDomain domain = DiscreteDomain.range(0, domainSize - 1);
+		final Discrete[] variables = new Discrete[count];
+		for (int i = 0; i < count; ++i)
+		{
+			variables[i] = new Discrete(domain);
+		}
+		return variables;
+	}
+
+	/**
+	 * Creates a table over {@code degree} domains of size {@code domainSize} with random weights, in which
+	 * approximately {@code sparsity} of the entries are zero.
+	 * <p>
+	 * The table's representation is {@link FactorTableRepresentation#SPARSE_WEIGHT} when {@code sparsity}
+	 * is positive and {@link FactorTableRepresentation#DENSE_WEIGHT} otherwise.
+	 */
+	static IFactorTable randomTable(Random rand, int degree, int domainSize, double sparsity)
+	{
+		final DiscreteDomain[] domains = new DiscreteDomain[degree];
+		final DiscreteDomain domain = DiscreteDomain.range(0, domainSize - 1);
+		for (int i = 0; i < degree; ++i)
+		{
+			domains[i] = domain;
+		}
+		
+		final IFactorTable table = FactorTable.create(domains);
+		table.setRepresentation(FactorTableRepresentation.DENSE_WEIGHT);
+		table.randomizeWeights(rand);
+
+		if (sparsity > 0)
+		{
+			final int cardinality = table.getDomainIndexer().getCardinality();
+			for (int joint = 0; joint < cardinality; ++joint)
+			{
+				if (rand.nextDouble() < sparsity)
+				{
+					table.setWeightForJointIndex(0.0, joint);
+				}
+			}
+			table.setRepresentation(FactorTableRepresentation.SPARSE_WEIGHT);
+		}
+		
+		return table;
+	}
+	
+	/**
+	 * Builds a {@code rows} x {@code cols} grid of variables with a random pairwise table factor on
+	 * each horizontal and vertical edge.
+	 */
+	static FactorGraph grid(Random rand, int rows, int cols, int domainSize, double sparsity)
+	{
+		final FactorGraph fg = new FactorGraph();
+		final Discrete[] vars = variables(rows * cols, domainSize);
+		final IFactorTable table = randomTable(rand, 2, domainSize, sparsity);
+		
+		for (int row = 0; row < rows; ++row)
+		{
+			for (int col = 0; col < cols; ++col)
+			{
+				final Discrete var = vars[row * cols + col];
+				if (col + 1 < cols)
+				{
+					fg.addFactor(table, var, vars[row * cols + col + 1]);
+				}
+				if (row + 1 < rows)
+				{
+					fg.addFactor(table, var, vars[(row + 1) * cols + col]);
+				}
+			}
+		}
+		
+		return fg;
+	}
+	
+	/**
+	 * Builds a graph in which {@code vars[0]} is connected to each of the other variables by its own
+	 * random pairwise table factor.
+	 */
+	static FactorGraph star(Random rand, Discrete[] vars, double sparsity)
+	{
+		final FactorGraph fg = new FactorGraph();
+		final int domainSize = vars[0].getDomain().size();
+		for (int i = 1; i < vars.length; ++i)
+		{
+			fg.addFactor(randomTable(rand, 2, domainSize, sparsity), vars[0], vars[i]);
+		}
+		return fg;
+	}
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.jmh;
+
+import static java.util.Objects.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+
+/**
+ * Sum-product discrete variable update benchmarks.
+ * <p>
+ * The variable under test is the hub of a star of {@code degree} pairwise factors and has a
+ * random input.
+ * <p>
+ * @since 0.08
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiscreteVariableUpdateBenchmark
+{
+	/*------------
+	 * Parameters
+	 */
+	
+	@Param({"2", "8", "32"})
+	public int degree = 2;
+	
+	@Param({"2", "16", "128"})
+	public int domainSize = 2;
+	
+	/*-------
+	 * State
+	 */
+	
+	private ISolverVariable _svar;
+	
+	@Setup
+	public void setup()
+	{
+		final Random rand = new Random(BenchmarkModels.SEED);
+		final Discrete[] vars = BenchmarkModels.variables(degree + 1, domainSize);
+		final FactorGraph fg = BenchmarkModels.star(rand, vars, 0.0);
+		fg.setSolverFactory(new SumProductSolver());
+		
+		final Discrete hub = vars[0];
+		final double[] input = new double[domainSize];
+		for (int i = 0; i < domainSize; ++i)
+		{
+			input[i] = rand.nextDouble();
+		}
+		hub.setInput(input);
+		
+		fg.initialize();
+		requireNonNull(fg.getSolver()).iterate(1);
+		_svar = requireNonNull(hub.getSolver());
+	}
+	
+	/*------------
+	 * Benchmarks
+	 */
+	
+	@Benchmark
+	public void update()
+	{
+		_svar.update();
+	}
+
+	@Benchmark
+	public void updateEdge()
+	{
+		_svar.updateEdge(0);
+	}
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+
+/**
+ * Factor graph construction benchmarks.
+ * <p>
+ * @since 0.08
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FactorGraphConstructionBenchmark
+{
+	/*------------
+	 * Parameters
+	 */
+	
+	/**
+	 * Number of rows and columns in the constructed grid.
+	 */
+	@Param({"10", "50"})
+	public int gridSize = 10;
+	
+	@Param({"2", "16"})
+	public int domainSize = 2;
+	
+	/*------------
+	 * Benchmarks
+	 */
+	
+	/**
+	 * Builds a grid of pairwise table factors that share one table.
+	 */
+	@Benchmark
+	public FactorGraph constructGrid()
+	{
+		return BenchmarkModels.grid(new Random(BenchmarkModels.SEED), gridSize, gridSize, domainSize, 0.0);
+	}
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.repeated.DiscreteStream;
+import com.analog.lyric.dimple.model.repeated.FactorGraphStream;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+
+/**
+ * {@link FactorGraphStream#advance()} benchmarks for a rolled-up Markov chain.
+ * <p>
+ * @since 0.08
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FactorGraphStreamBenchmark
+{
+	/*------------
+	 * Parameters
+	 */
+	
+	/**
+	 * Number of nested graphs in the rolled-up stream.
+	 */
+	@Param({"10", "100"})
+	public int bufferSize = 10;
+	
+	@Param({"2", "16"})
+	public int domainSize = 2;
+	
+	/*-------
+	 * State
+	 */
+	
+	private FactorGraph _streamGraph;
+	
+	@Setup
+	public void setup()
+	{
+		final DiscreteDomain domain = DiscreteDomain.range(0, domainSize - 1);
+		
+		final FactorGraph sg = new FactorGraph();
+		final Discrete a = new Discrete(domain), b = new Discrete(domain);
+		sg.addBoundaryVariables(a, b);
+		sg.addFactor(BenchmarkModels.randomTable(new Random(BenchmarkModels.SEED), 2, domainSize, 0.0), a, b);
+		
+		final FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new SumProductSolver());
+		final DiscreteStream stream = new DiscreteStream(domain);
+		fg.addRepeatedFactor(sg, stream, stream.getSlice(1)).setBufferSize(bufferSize);
+		fg.initialize();
+		fg.solveOneStep();
+		
+		_streamGraph = fg;
+	}
+	
+	/*------------
+	 * Benchmarks
+	 */
+	
+	/**
+	 * Advances a rolled-up Markov chain by one step.
+	 */
+	@Benchmark
+	public void advance()
+	{
+		_streamGraph.advance();
+	}
+}
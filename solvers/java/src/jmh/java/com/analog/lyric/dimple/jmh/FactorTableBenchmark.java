@@ -0,0 +1,143 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTableRepresentation;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+
+/**
+ * Factor table construction and representation conversion benchmarks.
+ * <p>
+ * @since 0.08
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FactorTableBenchmark
+{
+	/*------------
+	 * Parameters
+	 */
+	
+	@Param({"2", "4"})
+	public int degree = 2;
+	
+	@Param({"4", "16"})
+	public int domainSize = 4;
+	
+	/**
+	 * Approximate fraction of table entries that are zero.
+	 */
+	@Param({"0", "0.5", "0.99"})
+	public double sparsity = 0;
+	
+	/*-------
+	 * State
+	 */
+	
+	private DiscreteDomain[] _domains;
+	private int[] _sparseJointIndices;
+	private double[] _sparseWeights;
+	private IFactorTable _table;
+	
+	@Setup
+	public void setup()
+	{
+		_table = BenchmarkModels.randomTable(new Random(BenchmarkModels.SEED), degree, domainSize, sparsity);
+		_domains = _table.getDomainIndexer().toArray(new DiscreteDomain[degree]);
+		
+		final IFactorTable sparse = _table.clone();
+		sparse.setRepresentation(FactorTableRepresentation.SPARSE_WEIGHT);
+		final int size = sparse.countNonZeroWeights();
+		_sparseJointIndices = new int[size];
+		_sparseWeights = sparse.getWeightsSparseUnsafe().clone();
+		for (int si = 0; si < size; ++si)
+		{
+			_sparseJointIndices[si] = sparse.sparseIndexToJointIndex(si);
+		}
+	}
+	
+	/*------------
+	 * Benchmarks
+	 */
+	
+	/**
+	 * Builds a sparse weight table from joint indices and weights.
+	 */
+	@Benchmark
+	public IFactorTable createSparse()
+	{
+		final IFactorTable table = FactorTable.create(_domains);
+		table.setWeightsSparse(_sparseJointIndices, _sparseWeights);
+		return table;
+	}
+
+	/**
+	 * Builds a dense weight table from a full weight array.
+	 */
+	@Benchmark
+	public IFactorTable createDense()
+	{
+		final IFactorTable table = FactorTable.create(_domains);
+		table.setWeightsDense(_table.getWeightsDenseUnsafe());
+		return table;
+	}
+
+	/**
+	 * Converts from dense weights to sparse weights and back again.
+	 */
+	@Benchmark
+	public IFactorTable denseToSparseAndBack()
+	{
+		final IFactorTable table = _table;
+		table.setRepresentation(FactorTableRepresentation.SPARSE_WEIGHT);
+		table.setRepresentation(FactorTableRepresentation.DENSE_WEIGHT);
+		return table;
+	}
+
+	/**
+	 * Converts from dense weights to dense energies and back again.
+	 */
+	@Benchmark
+	public IFactorTable weightsToEnergiesAndBack()
+	{
+		final IFactorTable table = _table;
+		table.setRepresentation(FactorTableRepresentation.DENSE_ENERGY);
+		table.setRepresentation(FactorTableRepresentation.DENSE_WEIGHT);
+		return table;
+	}
+}
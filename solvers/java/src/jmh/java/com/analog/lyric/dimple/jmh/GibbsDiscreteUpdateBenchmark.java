@@ -0,0 +1,99 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.jmh;
+
+import static java.util.Objects.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
+
+/**
+ * Gibbs discrete variable sampling benchmarks.
+ * <p>
+ * Samples the hub of a star of {@code degree} pairwise table factors, which exercises the
+ * conditional distribution computation in {@code GibbsDiscrete.update}.
+ * <p>
+ * @since 0.08
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GibbsDiscreteUpdateBenchmark
+{
+	/*------------
+	 * Parameters
+	 */
+	
+	@Param({"2", "8", "32"})
+	public int degree = 2;
+	
+	@Param({"2", "16", "128"})
+	public int domainSize = 2;
+	
+	/**
+	 * Approximate fraction of table entries that are zero.
+	 */
+	@Param({"0", "0.5"})
+	public double sparsity = 0;
+	
+	/*-------
+	 * State
+	 */
+	
+	private ISolverVariable _svar;
+	
+	@Setup
+	public void setup()
+	{
+		final Random rand = new Random(BenchmarkModels.SEED);
+		final Discrete[] vars = BenchmarkModels.variables(degree + 1, domainSize);
+		final FactorGraph fg = BenchmarkModels.star(rand, vars, sparsity);
+		fg.setSolverFactory(new GibbsSolver());
+		fg.initialize();
+		_svar = requireNonNull(vars[0].getSolver());
+	}
+	
+	/*------------
+	 * Benchmarks
+	 */
+	
+	@Benchmark
+	public void update()
+	{
+		_svar.update();
+	}
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
+
+/**
+ * Joint index arithmetic benchmarks for {@link JointDomainIndexer}.
+ * <p>
+ * Each benchmark sweeps over every joint index of the indexer, so scores are per sweep rather
+ * than per index.
+ * <p>
+ * @since 0.08
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JointDomainIndexerBenchmark
+{
+	/*------------
+	 * Parameters
+	 */
+	
+	@Param({"2", "4", "8"})
+	public int degree = 2;
+	
+	@Param({"2", "8"})
+	public int domainSize = 2;
+	
+	/**
+	 * When true, the last domain is designated as an output, which selects the directed indexer.
+	 */
+	@Param({"false", "true"})
+	public boolean directed = false;
+	
+	/*-------
+	 * State
+	 */
+	
+	private JointDomainIndexer _indexer;
+	private int[][] _indices;
+	private int[] _scratch;
+	
+	@Setup
+	public void setup()
+	{
+		final DiscreteDomain domain = DiscreteDomain.range(0, domainSize - 1);
+		final DiscreteDomain[] domains = new DiscreteDomain[degree];
+		for (int i = 0; i < degree; ++i)
+		{
+			domains[i] = domain;
+		}
+		
+		_indexer = directed ? JointDomainIndexer.create(new int[] { degree - 1 }, domains) :
+			JointDomainIndexer.create(domains);
+		
+		final int cardinality = _indexer.getCardinality();
+		_indices = new int[cardinality][];
+		for (int joint = 0; joint < cardinality; ++joint)
+		{
+			_indices[joint] = _indexer.jointIndexToIndices(joint, null);
+		}
+		_scratch = new int[degree];
+	}
+	
+	/*------------
+	 * Benchmarks
+	 */
+	
+	@Benchmark
+	public int jointIndexFromIndices()
+	{
+		final JointDomainIndexer indexer = _indexer;
+		int sum = 0;
+		for (int[] indices : _indices)
+		{
+			sum += indexer.jointIndexFromIndices(indices);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int[] jointIndexToIndices()
+	{
+		final JointDomainIndexer indexer = _indexer;
+		final int[] indices = _scratch;
+		for (int joint = indexer.getCardinality(); --joint>=0;)
+		{
+			indexer.jointIndexToIndices(joint, indices);
+		}
+		return indices;
+	}
+
+	@Benchmark
+	public int jointIndexToElementIndex()
+	{
+		final JointDomainIndexer indexer = _indexer;
+		final int lastDomain = degree - 1;
+		int sum = 0;
+		for (int joint = indexer.getCardinality(); --joint>=0;)
+		{
+			sum += indexer.jointIndexToElementIndex(joint, lastDomain);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int inputIndexFromJointIndex()
+	{
+		final JointDomainIndexer indexer = _indexer;
+		int sum = 0;
+		for (int joint = indexer.getCardinality(); --joint>=0;)
+		{
+			sum += indexer.inputIndexFromJointIndex(joint);
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.jmh;
+
+import static java.util.Objects.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
+import com.analog.lyric.dimple.solvers.optimizedupdate.UpdateApproach;
+
+/**
+ * Table factor update benchmarks for the sum-product and min-sum solvers.
+ * <p>
+ * Covers both {@code TableFactorEngine} ({@link UpdateApproach#NORMAL}) and
+ * {@code TableFactorEngineOptimized} ({@link UpdateApproach#OPTIMIZED}) for a single factor
+ * whose variables have random inputs.
+ * <p>
+ * @since 0.08
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableFactorUpdateBenchmark
+{
+	/*------------
+	 * Parameters
+	 */
+	
+	@Param({"SumProduct", "MinSum"})
+	public String solver = "SumProduct";
+	
+	@Param({"NORMAL", "OPTIMIZED"})
+	public String approach = "NORMAL";
+	
+	@Param({"3", "5"})
+	public int degree = 3;
+	
+	@Param({"4", "8"})
+	public int domainSize = 4;
+	
+	/**
+	 * Approximate fraction of table entries that are zero.
+	 */
+	@Param({"0", "0.9"})
+	public double sparsity = 0;
+	
+	/*-------
+	 * State
+	 */
+	
+	private ISolverFactor _sfactor;
+	
+	@Setup
+	public void setup()
+	{
+		final Random rand = new Random(BenchmarkModels.SEED);
+		
+		final FactorGraph fg = new FactorGraph();
+		final Discrete[] vars = BenchmarkModels.variables(degree, domainSize);
+		final Factor factor = fg.addFactor(BenchmarkModels.randomTable(rand, degree, domainSize, sparsity), vars);
+		fg.setSolverFactory(DimpleEnvironment.active().solvers().instantiate(solver));
+		fg.setOption(BPOptions.updateApproach, UpdateApproach.valueOf(approach));
+		
+		for (Discrete var : vars)
+		{
+			final double[] input = new double[domainSize];
+			for (int i = 0; i < domainSize; ++i)
+			{
+				input[i] = rand.nextDouble();
+			}
+			var.setInput(input);
+		}
+		
+		fg.initialize();
+		_sfactor = requireNonNull(factor.getSolver());
+	}
+	
+	/*------------
+	 * Benchmarks
+	 */
+	
+	@Benchmark
+	public void update()
+	{
+		_sfactor.update();
+	}
+
+	@Benchmark
+	public void updateEdge()
+	{
+		_sfactor.updateEdge(0);
+	}
+}
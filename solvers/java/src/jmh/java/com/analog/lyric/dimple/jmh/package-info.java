@@ -0,0 +1,19 @@
+/*******************************************************************************
+ * Copyright 2015 Analog Devices, Inc. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable
+ * law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License
+ * for the specific language governing permissions and limitations under the License.
+ ********************************************************************************/
+
+/**
+ * JMH microbenchmarks for solver inner loops.
+ * <p>
+ * Run with {@code gradle runJmhBenchmarks}; results are written as JSON to
+ * {@code build/reports/jmh/results.json}.
+ */
+@NonNullByDefault
+package com.analog.lyric.dimple.jmh;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
@@ -18,6 +18,7 @@ package com.analog.lyric.collect;
 
 import java.util.Arrays;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
@@ -86,9 +87,15 @@ public final class IntArrayCache
 		@GuardedBy("_lock")
 		private int _size;
 		
-		private CacheSlot(int arrayLength, int maxSize)
+		/**
+		 * Shared count of times a thread had to wait for {@link #_lock}.
+		 */
+		private final AtomicLong _contention;
+		
+		private CacheSlot(int arrayLength, int maxSize, AtomicLong contention)
 		{
 			_lock = new Semaphore(1);
+			_contention = contention;
 			_arrayLength = arrayLength;
 			_maxSize = maxSize;
 			// Set initial size to max size but create array instances lazily using empty array as sentinel.
@@ -107,7 +114,7 @@ public final class IntArrayCache
 			int[] array = null;
 			
 			{
-				lock.acquireUninterruptibly();
+				acquire(lock);
 
 				int size = _size;
 				if (size > 0)
@@ -129,6 +136,15 @@ public final class IntArrayCache
 			return array;
 		}
 		
+		private void acquire(Semaphore lock)
+		{
+			if (!lock.tryAcquire())
+			{
+				_contention.incrementAndGet();
+				lock.acquireUninterruptibly();
+			}
+		}
+		
 		/**
 		 * Return array to cache slot if there is room and it has the right size.
 		 */
@@ -137,7 +153,7 @@ public final class IntArrayCache
 			if (array.length == _arrayLength)
 			{
 				final Semaphore lock = _lock;
-				lock.acquireUninterruptibly();
+				acquire(lock);
 				
 				int size = _size;
 				if (size < _maxSize)
@@ -156,6 +172,8 @@ public final class IntArrayCache
 	 */
 	private final CacheSlot[] _arrays;
 	
+	private final AtomicLong _contention = new AtomicLong();
+	
 	/*--------------
 	 * Construction
 	 */
@@ -171,7 +189,7 @@ public final class IntArrayCache
 		_arrays = new CacheSlot[N_SLOTS];
 		for (int i = 0; i < N_SLOTS; ++i)
 		{
-			_arrays[i] = new CacheSlot(1<<i, maxInstances);
+			_arrays[i] = new CacheSlot(1<<i, maxInstances, _contention);
 		}
 	}
 	
@@ -217,6 +235,19 @@ public final class IntArrayCache
 		return _arrays[0]._maxSize;
 	}
 	
+	/**
+	 * The number of times a thread had to wait for another thread to finish accessing the cache.
+	 * <p>
+	 * This can be used to diagnose contention when the cache is shared by many threads.
+	 * Consider using {@link ScratchArena} in code that is run concurrently.
+	 * <p>
+	 * @since 0.08
+	 */
+	public long contentionCount()
+	{
+		return _contention.get();
+	}
+	
 	/**
 	 * Returns an array to the cache for reuse.
 	 * @since 0.08
@@ -0,0 +1,301 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.collect;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * Per-thread stack of temporary arrays for use in inner loops.
+ * <p>
+ * Unlike {@link DoubleArrayCache} and {@link IntArrayCache}, which are shared by all threads and
+ * require synchronization on every allocation and release, each thread has its own arena obtained
+ * by {@link #forCurrentThread()}, so allocation never blocks. Arrays are bump-allocated from a stack of
+ * reusable regions and are released together by resetting the arena to a previously obtained
+ * {@linkplain #mark() mark}:
+ * <p>
+ * <pre>
+ *     final ScratchArena scratch = ScratchArena.forCurrentThread();
+ *     final int mark = scratch.mark();
+ *     final double[] tmp = scratch.allocateDoubles(n);
+ *     ...
+ *     scratch.reset(mark);
+ * </pre>
+ * Arrays obtained from the arena must not be used after the arena has been reset to a mark taken
+ * before they were allocated, and must not be passed to other threads. Nested use within the same
+ * thread is fine as long as each user resets to its own mark. If a user fails to reset the arena
+ * (e.g. because an exception was thrown), the unreleased regions will be reclaimed when an enclosing
+ * user resets to its mark. Allocations beyond {@link #MAX_DEPTH} outstanding arrays simply allocate a
+ * new array that will not be reused. Regions larger than {@link #MAX_RETAINED_SIZE} are not kept
+ * once they are released.
+ * <p>
+ * The arena keeps {@linkplain #hitCount() hit} and {@linkplain #missCount() miss} counts that are
+ * aggregated across all threads. These are maintained without synchronization and are only
+ * approximate while other threads are running.
+ * <p>
+ * @since 0.08
+ * @see DoubleArrayCache#contentionCount()
+ */
+@NotThreadSafe
+public final class ScratchArena
+{
+	/*-------
+	 * State
+	 */
+	
+	/**
+	 * The maximum number of arrays that can be outstanding at the same time before the arena
+	 * falls back on plain allocation.
+	 */
+	public static final int MAX_DEPTH = 64;
+	
+	/**
+	 * The maximum number of elements in a region that will be kept for reuse after it has been
+	 * released by {@link #reset}. Larger regions are dropped so that a single large request does
+	 * not pin its memory for the lifetime of the thread.
+	 */
+	public static final int MAX_RETAINED_SIZE = 1 << 16;
+
+	private static final ThreadLocal<ScratchArena> _threadArena = new ThreadLocal<ScratchArena>() {
+		@Override
+		protected ScratchArena initialValue()
+		{
+			return new ScratchArena();
+		}
+	};
+	
+	/**
+	 * Counters for every arena ever created. These are kept separately from the arena so that
+	 * the arena's arrays can be reclaimed when its thread exits.
+	 */
+	private static final Queue<Counters> _allCounters = new ConcurrentLinkedQueue<Counters>();
+	
+	private static final class Counters
+	{
+		private long _hits;
+		private long _misses;
+	}
+	
+	/**
+	 * Reusable regions indexed by stack depth. Each entry is null, a double[] or an int[].
+	 */
+	private final Object[] _regions = new Object[MAX_DEPTH];
+	
+	private final Counters _counters = new Counters();
+	
+	private int _top;
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	private ScratchArena()
+	{
+		_allCounters.add(_counters);
+	}
+	
+	/**
+	 * The arena for the calling thread.
+	 * @since 0.08
+	 */
+	public static ScratchArena forCurrentThread()
+	{
+		return _threadArena.get();
+	}
+	
+	/*----------------------
+	 * ScratchArena methods
+	 */
+	
+	/**
+	 * Returns an array of at least {@code minSize} elements.
+	 * <p>
+	 * The caller must not assume that the array has been zeroed out!
+	 * <p>
+	 * @since 0.08
+	 */
+	public double[] allocateDoubles(int minSize)
+	{
+		if (minSize <= 0)
+		{
+			return ArrayUtil.EMPTY_DOUBLE_ARRAY;
+		}
+		
+		final int top = _top;
+		if (top < MAX_DEPTH)
+		{
+			_top = top + 1;
+			final Object region = _regions[top];
+			if (region instanceof double[])
+			{
+				final double[] array = (double[])region;
+				if (array.length >= minSize)
+				{
+					++_counters._hits;
+					return array;
+				}
+			}
+			++_counters._misses;
+			final double[] array = new double[regionSize(minSize)];
+			_regions[top] = array;
+			return array;
+		}
+		
+		++_counters._misses;
+		return new double[minSize];
+	}
+	
+	/**
+	 * Returns an array of at least {@code minSize} elements.
+	 * <p>
+	 * The caller must not assume that the array has been zeroed out!
+	 * <p>
+	 * @since 0.08
+	 */
+	public int[] allocateInts(int minSize)
+	{
+		if (minSize <= 0)
+		{
+			return ArrayUtil.EMPTY_INT_ARRAY;
+		}
+		
+		final int top = _top;
+		if (top < MAX_DEPTH)
+		{
+			_top = top + 1;
+			final Object region = _regions[top];
+			if (region instanceof int[])
+			{
+				final int[] array = (int[])region;
+				if (array.length >= minSize)
+				{
+					++_counters._hits;
+					return array;
+				}
+			}
+			++_counters._misses;
+			final int[] array = new int[regionSize(minSize)];
+			_regions[top] = array;
+			return array;
+		}
+		
+		++_counters._misses;
+		return new int[minSize];
+	}
+	
+	/**
+	 * The current allocation position, for use with {@link #reset}.
+	 * @since 0.08
+	 */
+	public int mark()
+	{
+		return _top;
+	}
+	
+	/**
+	 * Releases all arrays allocated since {@code mark} was obtained from {@link #mark()}.
+	 * <p>
+	 * Released regions with more than {@link #MAX_RETAINED_SIZE} elements are discarded.
+	 * <p>
+	 * @since 0.08
+	 */
+	public void reset(int mark)
+	{
+		final Object[] regions = _regions;
+		for (int i = Math.min(_top, MAX_DEPTH); --i >= mark;)
+		{
+			final Object region = regions[i];
+			if (regionLength(region) > MAX_RETAINED_SIZE)
+			{
+				regions[i] = null;
+			}
+		}
+		_top = mark;
+	}
+	
+	/*-------------------
+	 * Static statistics
+	 */
+	
+	/**
+	 * Total number of allocations across all threads that were satisfied by reusing an existing array.
+	 * @since 0.08
+	 */
+	public static long hitCount()
+	{
+		long count = 0;
+		for (Counters counters : _allCounters)
+		{
+			count += counters._hits;
+		}
+		return count;
+	}
+	
+	/**
+	 * Total number of allocations across all threads that required allocating a new array.
+	 * @since 0.08
+	 */
+	public static long missCount()
+	{
+		long count = 0;
+		for (Counters counters : _allCounters)
+		{
+			count += counters._misses;
+		}
+		return count;
+	}
+	
+	/**
+	 * Sets {@link #hitCount()} and {@link #missCount()} back to zero.
+	 * @since 0.08
+	 */
+	public static void resetCounts()
+	{
+		for (Counters counters : _allCounters)
+		{
+			counters._hits = 0;
+			counters._misses = 0;
+		}
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	private static int regionLength(Object region)
+	{
+		if (region instanceof double[])
+		{
+			return ((double[])region).length;
+		}
+		else if (region instanceof int[])
+		{
+			return ((int[])region).length;
+		}
+		return 0;
+	}
+	
+	/**
+	 * Rounds up to a power of two to reduce the number of times a region needs to be reallocated.
+	 */
+	private static int regionSize(int minSize)
+	{
+		return minSize > (1 << 30) ? minSize : Math.max(1, Integer.highestOneBit(minSize - 1) << 1);
+	}
+}
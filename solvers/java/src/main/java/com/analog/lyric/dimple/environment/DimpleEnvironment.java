@@ -31,6 +31,7 @@ import org.eclipse.jdt.annotation.Nullable;
 import com.analog.lyric.collect.ConstructorRegistry;
 import com.analog.lyric.collect.DoubleArrayCache;
 import com.analog.lyric.collect.IntArrayCache;
+import com.analog.lyric.collect.ScratchArena;
 import com.analog.lyric.collect.WeakLongHashMap;
 import com.analog.lyric.dimple.events.DimpleEventListener;
 import com.analog.lyric.dimple.events.IDimpleEventSource;
@@ -150,11 +151,17 @@ public class DimpleEnvironment extends DimpleOptionHolder
 	
 	/**
 	 * Cache of double[] for temporary use.
+	 * <p>
+	 * This cache is shared by all threads. Code that may be run concurrently, such as solver
+	 * node updates, should instead use the calling thread's {@link ScratchArena}.
 	 */
 	public static DoubleArrayCache doubleArrayCache = new DoubleArrayCache();
 	
 	/**
 	 * Cache of int[] for temporary use.
+	 * <p>
+	 * This cache is shared by all threads. Code that may be run concurrently, such as solver
+	 * node updates, should instead use the calling thread's {@link ScratchArena}.
 	 */
 	public static IntArrayCache intArrayCache = new IntArrayCache();
 	
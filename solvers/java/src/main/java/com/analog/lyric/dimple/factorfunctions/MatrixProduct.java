@@ -58,8 +58,22 @@ public class MatrixProduct extends FactorFunction
 	protected int _Nr;
 	protected int _Nx;
 	protected int _Nc;
+	/**
+	 * @deprecated no longer used by this class, which allocates its scratch matrices per call so that
+	 * it can be evaluated concurrently. Subclasses that still share these must override
+	 * {@link #isThreadSafe()} to return false.
+	 */
+	@Deprecated
 	protected double[][] _in1;
+	/**
+	 * @deprecated see {@link #_in1}
+	 */
+	@Deprecated
 	protected double[][] _in2;
+	/**
+	 * @deprecated see {@link #_in1}
+	 */
+	@Deprecated
 	protected double[][] _out;
 	protected double _beta = 0;
 	protected boolean _smoothingSpecified = false;
@@ -112,6 +126,18 @@ public class MatrixProduct extends FactorFunction
     }
     
     
+    @Override
+    public String getTableCacheKey()
+    {
+    	return String.format("%s:%d:%d:%d:%s", getClass().getName(), _Nr, _Nx, _Nc, _beta);
+    }
+    
+    @Override
+    public boolean isThreadSafe()
+    {
+    	return true;
+    }
+    
     @Override
     public final boolean isDirected() {return true;}
     @Override
@@ -201,8 +227,8 @@ public class MatrixProduct extends FactorFunction
     	final int Nr = _Nr;
     	final int Nx = _Nx;
     	final int Nc = _Nc;
-    	double[][] in1 = _in1;
-    	double[][] in2 = _in2;
+    	final double[][] in1;
+    	final double[][] in2;
 
     	int argIndex = Nr * Nc;	// Skip the outputs
 
@@ -211,6 +237,7 @@ public class MatrixProduct extends FactorFunction
     		in1 = (double[][])requireNonNull(arguments[argIndex++].getObject());
     	else
     	{
+    		in1 = new double[Nr][Nx];
     		for (int x = 0; x < Nx; x++)		// Scan by columns
     			for (int r = 0; r < Nr; r++)
     				in1[r][x] = arguments[argIndex++].getDouble();
@@ -221,6 +248,7 @@ public class MatrixProduct extends FactorFunction
     		in2 = (double[][])requireNonNull(arguments[argIndex++].getObject());
     	else
     	{
+    		in2 = new double[Nx][Nc];
     		for (int c = 0; c < Nc; c++)		// Scan by columns
     			for (int x = 0; x < Nx; x++)
     				in2[x][c] = arguments[argIndex++].getDouble();
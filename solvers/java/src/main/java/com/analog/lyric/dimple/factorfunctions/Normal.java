@@ -167,6 +167,18 @@ public class Normal extends UnaryFactorFunction implements IParametricFactorFunc
 	}
     
     
+    /**
+     * {@inheritDoc}
+     * <p>
+     * True only if the parameters are constant, since otherwise {@link #evalEnergy} stores the
+     * parameters taken from its arguments in this object.
+     */
+    @Override
+    public boolean isThreadSafe()
+    {
+    	return _parametersConstant;
+    }
+    
     @Override
     public final boolean isDirected() {return true;}
     @Override
@@ -73,6 +73,18 @@ public class Product extends FactorFunction
     }
     
     
+    @Override
+    public String getTableCacheKey()
+    {
+    	return getClass().getName() + ":" + _beta;
+    }
+    
+    @Override
+    public boolean isThreadSafe()
+    {
+    	return true;
+    }
+    
     @Override
     public final boolean isDirected() {return true;}
     @Override
@@ -48,6 +48,12 @@ public class Xor extends FactorFunction
     }
     
     
+    @Override
+    public boolean isThreadSafe()
+    {
+    	return true;
+    }
+    
     @Override
     public final boolean isDirected() {return true;}
     @Override
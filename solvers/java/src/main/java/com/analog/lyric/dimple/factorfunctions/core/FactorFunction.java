@@ -38,6 +38,7 @@ import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.values.IndexedValue;
 import com.analog.lyric.dimple.model.values.RealValue;
 import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.options.DimpleOptions;
 import com.analog.lyric.util.misc.Matlab;
 
 @ThreadSafe
@@ -324,12 +325,44 @@ public abstract class FactorFunction implements IFactorFunction
     	return getFactorTableIfExists(factor.getDomainList().asJointDomainIndexer());
     }
     
+    /**
+     * Adds a copy of {@code other}'s factor table for {@code domains} to this function's cache, if
+     * {@code other} has one and this function does not.
+     */
+    void copyFactorTable(FactorFunction other, JointDomainIndexer domains)
+    {
+    	final IFactorTable table = other.getFactorTableIfExists(domains);
+    	if (table != null)
+    	{
+    		_factorTables.compareAndSet(null, new ConcurrentHashMap<JointDomainIndexer, IFactorTable>());
+    		Objects.requireNonNull(_factorTables.get()).putIfAbsent(domains, table.clone());
+    	}
+    }
+    
 	@Override
 	public String getName()
 	{
 		return _name;
 	}
 
+	/**
+	 * Key identifying the values computed by this function for use with the persistent factor table cache.
+	 * <p>
+	 * If non-null, factor tables generated from this function may be saved to and loaded from the
+	 * directory specified by {@link DimpleOptions#factorTableCacheDirectory}. The key must uniquely
+	 * identify the energies and deterministic outputs the function computes for any given arguments
+	 * and must be the same across JVM instances, so it should be built from the class name and any
+	 * parameters that affect evaluation. The domains of the table are added to the key separately.
+	 * <p>
+	 * The default implementation returns null, which disables caching for the function.
+	 * <p>
+	 * @since 0.08
+	 */
+	public @Nullable String getTableCacheKey()
+	{
+		return null;
+	}
+
 	@Override
 	public boolean isDeterministicDirected()
 	{return false;}
@@ -343,7 +376,23 @@ public abstract class FactorFunction implements IFactorFunction
 	{
 		return IParametricFactorFunction.class.isInstance(this);
 	}
-	
+
+	/**
+	 * Indicates whether {@link #evalEnergy(Value[])} and {@link #evalDeterministic} may be invoked
+	 * concurrently from multiple threads on different argument arrays.
+	 * <p>
+	 * When true, large factor tables for this function may be populated in parallel
+	 * (see {@link DimpleOptions#parallelTablePopulationThreshold}).
+	 * <p>
+	 * The default implementation returns false.
+	 * <p>
+	 * @since 0.08
+	 */
+	public boolean isThreadSafe()
+	{
+		return false;
+	}
+
     /**
      * The maximum number of variable updates beyond which {@link #updateDeterministic}
      * should not be called.
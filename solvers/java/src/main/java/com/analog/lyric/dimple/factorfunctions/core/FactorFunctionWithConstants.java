@@ -22,10 +22,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.concurrent.atomic.AtomicReference;
 
+import net.jcip.annotations.Immutable;
+
 import org.eclipse.jdt.annotation.Nullable;
 
 import com.analog.lyric.collect.ArrayUtil;
 import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.values.IndexedValue;
 import com.analog.lyric.dimple.model.values.Value;
@@ -42,8 +45,90 @@ public class FactorFunctionWithConstants extends FactorFunction
 	private int[] _edgeToIndex;
 	private int _largestConstantIndex;
 	private int _smallestConstantIndex;
+	private @Nullable Key _key;
 	public final static int NO_PORT = -1;
 	
+	/**
+	 * Identifies a {@link FactorFunctionWithConstants} by its contained function, constants and
+	 * constant indices.
+	 * <p>
+	 * Two keys are equal if they refer to the same contained function instance and the same constant indices,
+	 * and if their constants are equal. Constants that are boxed primitives or strings are compared by value.
+	 * Other constants, including arrays, are compared by identity, since they may be mutable or lack a
+	 * meaningful notion of equality.
+	 * <p>
+	 * Used by {@link com.analog.lyric.dimple.model.core.FactorGraph FactorGraph} to share a single instance,
+	 * and therefore a single set of factor tables, among factors that are added with the same function and
+	 * constants. Changing such a table in place changes it for all of those factors; see
+	 * {@link #copyWithFactorTable(JointDomainIndexer)}.
+	 * <p>
+	 * @since 0.08
+	 */
+	@Immutable
+	@Internal
+	public static final class Key
+	{
+		private final FactorFunction _function;
+		private final Object[] _constants;
+		private final int[] _constantIndices;
+		private final int _hashCode;
+		
+		public Key(FactorFunction function, Object[] constants, int[] constantIndices)
+		{
+			_function = function;
+			_constants = constants;
+			_constantIndices = constantIndices;
+			
+			int hash = System.identityHashCode(function) * 31 + Arrays.hashCode(constantIndices);
+			for (Object constant : constants)
+			{
+				final int constantHash = isImmutableConstant(constant) ?
+					constant.hashCode() : System.identityHashCode(constant);
+				hash = hash * 31 + constantHash;
+			}
+			_hashCode = hash;
+		}
+		
+		@Override
+		public boolean equals(@Nullable Object other)
+		{
+			if (other == this)
+			{
+				return true;
+			}
+			
+			if (!(other instanceof Key))
+			{
+				return false;
+			}
+			
+			final Key that = (Key)other;
+			if (_hashCode != that._hashCode || _function != that._function ||
+				!Arrays.equals(_constantIndices, that._constantIndices))
+			{
+				return false;
+			}
+			
+			for (int i = _constants.length; --i>=0;)
+			{
+				final Object constant = _constants[i], thatConstant = that._constants[i];
+				if (constant != thatConstant &&
+					!(isImmutableConstant(constant) && constant.equals(thatConstant)))
+				{
+					return false;
+				}
+			}
+			
+			return true;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return _hashCode;
+		}
+	}
+	
 	@Internal
 	public FactorFunctionWithConstants(FactorFunction factorFunction, Object[] constants, int[] constantIndices)
 	{
@@ -93,6 +178,45 @@ public class FactorFunctionWithConstants extends FactorFunction
 	}
 	
 
+	/**
+	 * The key identifying this function's contained function and constants.
+	 * <p>
+	 * The key is retained by this object, so it remains reachable as long as the function is.
+	 * <p>
+	 * @since 0.08
+	 */
+	@Internal
+	public Key getKey()
+	{
+		Key key = _key;
+		if (key == null)
+		{
+			key = _key = new Key(_factorFunction, _constants, _constantIndices);
+		}
+		return key;
+	}
+	
+	/**
+	 * Returns a new function with the same contained function and constants as this one, but
+	 * with its own copy of this function's factor table for {@code domains}, if any.
+	 * <p>
+	 * Used to give a factor its own function before changing its table in place, since this
+	 * function may be shared with other factors (see {@link Key}).
+	 * <p>
+	 * @since 0.08
+	 */
+	@Internal
+	public FactorFunctionWithConstants copyWithFactorTable(@Nullable JointDomainIndexer domains)
+	{
+		final FactorFunctionWithConstants copy =
+			new FactorFunctionWithConstants(_factorFunction, _constants, _constantIndices);
+		if (domains != null)
+		{
+			copy.copyFactorTable(this, domains);
+		}
+		return copy;
+	}
+	
 	@Override
 	public final boolean hasConstants()
 	{
@@ -247,6 +371,40 @@ public class FactorFunctionWithConstants extends FactorFunction
 		return _factorFunction.isDirected();
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Combines the key of the {@linkplain #getContainedFactorFunction() contained function} with the
+	 * constants and their indices. Returns null if the contained function has no key or if any constant
+	 * is not a number, string, boolean or (possibly nested) array of those types, since other objects
+	 * cannot be reliably identified across JVM instances.
+	 */
+	@Override
+	public @Nullable String getTableCacheKey()
+	{
+		final String key = _factorFunction.getTableCacheKey();
+		if (key == null)
+		{
+			return null;
+		}
+		
+		for (Object constant : _constants)
+		{
+			if (!isCacheableConstant(constant))
+			{
+				return null;
+			}
+		}
+		
+		return key + Arrays.toString(_constantIndices) + Arrays.deepToString(_constants);
+	}
+	
+	@Override
+	public boolean isThreadSafe()
+	{
+		return _factorFunction.isThreadSafe();
+	}
+	
 	@Override
 	public @Nullable int[] getDirectedToIndices(int numEdges)
 	{
@@ -408,6 +566,35 @@ public class FactorFunctionWithConstants extends FactorFunction
 		return expandedValues;
 	}
 
+	private static boolean isImmutableConstant(@Nullable Object constant)
+	{
+		return constant instanceof Integer || constant instanceof Long || constant instanceof Double ||
+			constant instanceof Float || constant instanceof Short || constant instanceof Byte ||
+			constant instanceof Character || constant instanceof Boolean || constant instanceof String;
+	}
+	
+	private static boolean isCacheableConstant(@Nullable Object constant)
+	{
+		if (constant instanceof Number || constant instanceof String || constant instanceof Boolean)
+		{
+			return true;
+		}
+		
+		if (constant instanceof Object[])
+		{
+			for (Object element : (Object[])constant)
+			{
+				if (!isCacheableConstant(element))
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		return constant != null && constant.getClass().isArray(); // primitive array
+	}
+	
 	/**
 	 *  Contract a list of indices to exclude the constant indices and renumber the others accordingly.
 	 */
@@ -27,10 +27,13 @@ import org.eclipse.jdt.annotation.Nullable;
 import cern.colt.list.DoubleArrayList;
 import cern.colt.list.IntArrayList;
 
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
 import com.analog.lyric.dimple.model.domains.DiscreteDomain;
 import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
 import com.analog.lyric.dimple.model.domains.JointDomainReindexer;
 import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.solvers.core.multithreading.ParallelTableRange;
 
 @NotThreadSafe
 public abstract class FactorTableBase implements IFactorTableBase, IFactorTable
@@ -280,51 +283,51 @@ public abstract class FactorTableBase implements IFactorTableBase, IFactorTable
 		final JointDomainIndexer domains = getDomainIndexer();
 		final IFactorTable table = this;
 		
-    	final Value[] values = Value.createFromDomains(domains);
-
-    	if (function.isDeterministicDirected() && domains.isDirected())
-    	{
-    		final int maxInput = domains.getInputCardinality();
-    		final int[] outputs = new int[maxInput];
-
-    		for (int inputIndex = 0; inputIndex < maxInput; ++inputIndex)
-    		{
-    			domains.inputIndexToValues(inputIndex, values);
-    			function.evalDeterministic(values);
-    			outputs[inputIndex] = domains.outputIndexFromValues(values);
-    		}
-
-    		table.setDeterministicOutputIndices(outputs);
-    	}
-    	else
-    	{
-    		IntArrayList indexes = new IntArrayList();
-    		DoubleArrayList energies = new DoubleArrayList();
-
-    		final int maxJoint = domains.getCardinality();
-    		for (int jointIndex = 0; jointIndex < maxJoint; ++ jointIndex)
-    		{
-    			domains.jointIndexToValues(jointIndex, values);
-    			double energy = function.evalEnergy(values);
-    			if (!Double.isInfinite(energy))
-    			{
-    				indexes.add(jointIndex);
-    				energies.add(energy);
-    			}
-    		}
+		final FactorTableCache cache = FactorTableCache.forTable(function, domains);
+		
+		if (cache == null || !cache.load(table))
+		{
+			if (function.isDeterministicDirected() && domains.isDirected())
+			{
+				final int[] outputs = evalDeterministicOutputs(function, domains);
+				table.setDeterministicOutputIndices(outputs);
+				if (cache != null)
+				{
+					cache.saveDeterministic(outputs);
+				}
+			}
+			else
+			{
+				final IntArrayList indexes = new IntArrayList();
+				final DoubleArrayList energies = new DoubleArrayList();
+				evalFiniteEnergies(function, domains, indexes, energies);
 
-    		if (indexes.size() == maxJoint)
-    		{
-    			table.setEnergiesDense(Arrays.copyOf(energies.elements(), maxJoint));
-    		}
-    		else
-    		{
-    			table.setEnergiesSparse(Arrays.copyOf(indexes.elements(), indexes.size()),
-    				Arrays.copyOf(energies.elements(), indexes.size()));
-    		}
-    	}
+				final int maxJoint = domains.getCardinality();
+				final int nFinite = indexes.size();
+				
+				if (nFinite == maxJoint)
+				{
+					final double[] denseEnergies = Arrays.copyOf(energies.elements(), maxJoint);
+					table.setEnergiesDense(denseEnergies);
+					if (cache != null)
+					{
+						cache.saveDense(denseEnergies);
+					}
+				}
+				else
+				{
+					final int[] sparseIndices = Arrays.copyOf(indexes.elements(), nFinite);
+					final double[] sparseEnergies = Arrays.copyOf(energies.elements(), nFinite);
+					table.setEnergiesSparse(sparseIndices, sparseEnergies);
+					if (cache != null)
+					{
+						cache.saveSparse(sparseIndices, sparseEnergies);
+					}
+				}
+			}
+		}
 		
-    	_function = function;
+		_function = function;
 	}
 	
 	@Override
@@ -348,4 +351,119 @@ public abstract class FactorTableBase implements IFactorTableBase, IFactorTable
 		}
 	}
 
-}
\ No newline at end of file
+	/*-----------------
+	 * Private methods
+	 */
+	
+	private static boolean populateInParallel(FactorFunction function, int size)
+	{
+		return function.isThreadSafe() &&
+			size >= DimpleEnvironment.active().getOptionOrDefault(DimpleOptions.parallelTablePopulationThreshold);
+	}
+	
+	/**
+	 * Computes output index for each input index of a deterministic directed function.
+	 */
+	private static int[] evalDeterministicOutputs(final FactorFunction function, final JointDomainIndexer domains)
+	{
+		final int maxInput = domains.getInputCardinality();
+		final int[] outputs = new int[maxInput];
+
+		if (populateInParallel(function, maxInput))
+		{
+			new ParallelTableRange(maxInput) {
+				@Override
+				protected void computeChunk(int chunk, int start, int end)
+				{
+					evalDeterministicOutputs(function, domains, outputs, start, end);
+				}
+			}.run();
+		}
+		else
+		{
+			evalDeterministicOutputs(function, domains, outputs, 0, maxInput);
+		}
+		
+		return outputs;
+	}
+
+	private static void evalDeterministicOutputs(FactorFunction function, JointDomainIndexer domains, int[] outputs,
+		int start, int end)
+	{
+		final Value[] values = Value.createFromDomains(domains);
+		for (int inputIndex = start; inputIndex < end; ++inputIndex)
+		{
+			domains.inputIndexToValues(inputIndex, values);
+			function.evalDeterministic(values);
+			outputs[inputIndex] = domains.outputIndexFromValues(values);
+		}
+	}
+	
+	/**
+	 * Appends joint index and energy of every entry with finite energy, in joint index order.
+	 */
+	private static void evalFiniteEnergies(FactorFunction function, JointDomainIndexer domains,
+		IntArrayList indexes, DoubleArrayList energies)
+	{
+		final int maxJoint = domains.getCardinality();
+		
+		if (populateInParallel(function, maxJoint))
+		{
+			final FiniteEnergyRange range = new FiniteEnergyRange(function, domains);
+			range.run();
+			for (int chunk = 0, n = range.chunks(); chunk < n; ++chunk)
+			{
+				indexes.addAllOf(range._indexes[chunk]);
+				energies.addAllOf(range._energies[chunk]);
+			}
+		}
+		else
+		{
+			evalFiniteEnergies(function, domains, indexes, energies, 0, maxJoint);
+		}
+	}
+	
+	private static void evalFiniteEnergies(FactorFunction function, JointDomainIndexer domains,
+		IntArrayList indexes, DoubleArrayList energies, int start, int end)
+	{
+		final Value[] values = Value.createFromDomains(domains);
+		for (int jointIndex = start; jointIndex < end; ++jointIndex)
+		{
+			domains.jointIndexToValues(jointIndex, values);
+			final double energy = function.evalEnergy(values);
+			if (!Double.isInfinite(energy))
+			{
+				indexes.add(jointIndex);
+				energies.add(energy);
+			}
+		}
+	}
+	
+	/**
+	 * Collects finite energies separately for each chunk, so that they can be concatenated in order.
+	 */
+	private static class FiniteEnergyRange extends ParallelTableRange
+	{
+		private final FactorFunction _function;
+		private final JointDomainIndexer _domains;
+		private final IntArrayList[] _indexes;
+		private final DoubleArrayList[] _energies;
+		
+		private FiniteEnergyRange(FactorFunction function, JointDomainIndexer domains)
+		{
+			super(domains.getCardinality());
+			_function = function;
+			_domains = domains;
+			_indexes = new IntArrayList[chunks()];
+			_energies = new DoubleArrayList[chunks()];
+		}
+		
+		@Override
+		protected void computeChunk(int chunk, int start, int end)
+		{
+			final IntArrayList indexes = _indexes[chunk] = new IntArrayList();
+			final DoubleArrayList energies = _energies[chunk] = new DoubleArrayList();
+			evalFiniteEnergies(_function, _domains, indexes, energies, start, end);
+		}
+	}
+}
@@ -0,0 +1,313 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.factorfunctions.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
+import com.analog.lyric.dimple.options.DimpleOptions;
+
+/**
+ * Persistent on-disk cache entry for a factor table generated from a {@link FactorFunction}.
+ * <p>
+ * Each entry is stored in its own file in the directory given by
+ * {@link DimpleOptions#factorTableCacheDirectory}. The file name is a hash of a description of the
+ * function's {@linkplain FactorFunction#getTableCacheKey() cache key} and the table's domains, and
+ * the full description is also stored in the file so that hash collisions are detected on load.
+ * <p>
+ * Files are written to a temporary file in the same directory and then renamed, so concurrent
+ * processes sharing the directory will never see a partially written entry.
+ * <p>
+ * @since 0.08
+ */
+final class FactorTableCache
+{
+	/*-------
+	 * State
+	 */
+	
+	private static final int MAGIC = 0x44465443; // "DFTC"
+	private static final int VERSION = 1;
+	
+	private static final byte DETERMINISTIC = 1;
+	private static final byte DENSE = 2;
+	private static final byte SPARSE = 3;
+	
+	private final File _directory;
+	private final File _file;
+	private final byte[] _description;
+	private final JointDomainIndexer _domains;
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	private FactorTableCache(File directory, String description, JointDomainIndexer domains)
+	{
+		_directory = directory;
+		_description = description.getBytes(StandardCharsets.UTF_8);
+		_file = new File(directory, hash(_description) + ".dft");
+		_domains = domains;
+	}
+	
+	/**
+	 * Returns cache entry for table for given {@code function} and {@code domains}, or null if
+	 * the cache is not enabled in the active environment or the function does not support caching.
+	 */
+	static @Nullable FactorTableCache forTable(FactorFunction function, JointDomainIndexer domains)
+	{
+		final String directory = DimpleEnvironment.active().getOptionOrDefault(DimpleOptions.factorTableCacheDirectory);
+		if (directory.isEmpty())
+		{
+			return null;
+		}
+		
+		final String key = function.getTableCacheKey();
+		if (key == null)
+		{
+			return null;
+		}
+		
+		final StringBuilder description = new StringBuilder(key);
+		for (DiscreteDomain domain : domains)
+		{
+			description.append('\n');
+			description.append(domain.getClass().getName());
+			description.append(Arrays.deepToString(domain.getElements()));
+		}
+		final BitSet outputs = domains.getOutputSet();
+		if (outputs != null)
+		{
+			description.append("\noutputs").append(outputs);
+		}
+		
+		return new FactorTableCache(new File(directory), description.toString(), domains);
+	}
+	
+	/*--------------------------
+	 * FactorTableCache methods
+	 */
+	
+	/**
+	 * Populates {@code table} from cache file, if it exists.
+	 * <p>
+	 * @return false if there was no valid cache entry, in which case the table is not modified.
+	 */
+	boolean load(IFactorTable table)
+	{
+		if (!_file.isFile())
+		{
+			return false;
+		}
+		
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(_file))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != _description.length)
+			{
+				return false;
+			}
+			final byte[] description = new byte[_description.length];
+			in.readFully(description);
+			if (!Arrays.equals(description, _description))
+			{
+				return false;
+			}
+			
+			final byte kind = in.readByte();
+			final int length = in.readInt();
+			
+			switch (kind)
+			{
+			case DETERMINISTIC:
+			{
+				if (length != _domains.getInputCardinality())
+				{
+					return false;
+				}
+				table.setDeterministicOutputIndices(readInts(in, length));
+				return true;
+			}
+			
+			case DENSE:
+			{
+				if (length != _domains.getCardinality())
+				{
+					return false;
+				}
+				table.setEnergiesDense(readDoubles(in, length));
+				return true;
+			}
+			
+			case SPARSE:
+			{
+				if (length > _domains.getCardinality())
+				{
+					return false;
+				}
+				final int[] indices = readInts(in, length);
+				table.setEnergiesSparse(indices, readDoubles(in, length));
+				return true;
+			}
+			
+			default:
+				return false;
+			}
+		}
+		catch (IOException | RuntimeException ex)
+		{
+			DimpleEnvironment.logWarning("Cannot read factor table cache file '%s': %s", _file, ex);
+			return false;
+		}
+	}
+	
+	void saveDeterministic(int[] outputIndices)
+	{
+		save(DETERMINISTIC, outputIndices, null);
+	}
+	
+	void saveDense(double[] energies)
+	{
+		save(DENSE, null, energies);
+	}
+	
+	void saveSparse(int[] jointIndices, double[] energies)
+	{
+		save(SPARSE, jointIndices, energies);
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	private void save(byte kind, @Nullable int[] ints, @Nullable double[] doubles)
+	{
+		File tmpFile = null;
+		try
+		{
+			if (!_directory.isDirectory() && !_directory.mkdirs() && !_directory.isDirectory())
+			{
+				throw new IOException("cannot create directory");
+			}
+			
+			tmpFile = File.createTempFile(_file.getName(), ".tmp", _directory);
+			
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile))))
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(_description.length);
+				out.write(_description);
+				out.writeByte(kind);
+				out.writeInt(ints != null ? ints.length : doubles != null ? doubles.length : 0);
+				if (ints != null)
+				{
+					for (int i : ints)
+					{
+						out.writeInt(i);
+					}
+				}
+				if (doubles != null)
+				{
+					for (double d : doubles)
+					{
+						out.writeDouble(d);
+					}
+				}
+			}
+			
+			try
+			{
+				Files.move(tmpFile.toPath(), _file.toPath(),
+					StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch (AtomicMoveNotSupportedException ex)
+			{
+				Files.move(tmpFile.toPath(), _file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			tmpFile = null;
+		}
+		catch (IOException | RuntimeException ex)
+		{
+			DimpleEnvironment.logWarning("Cannot write factor table cache file '%s': %s", _file, ex);
+		}
+		finally
+		{
+			if (tmpFile != null)
+			{
+				tmpFile.delete();
+			}
+		}
+	}
+	
+	private static int[] readInts(DataInputStream in, int length) throws IOException
+	{
+		final int[] ints = new int[length];
+		for (int i = 0; i < length; ++i)
+		{
+			ints[i] = in.readInt();
+		}
+		return ints;
+	}
+	
+	private static double[] readDoubles(DataInputStream in, int length) throws IOException
+	{
+		final double[] doubles = new double[length];
+		for (int i = 0; i < length; ++i)
+		{
+			doubles[i] = in.readDouble();
+		}
+		return doubles;
+	}
+	
+	private static String hash(byte[] description)
+	{
+		try
+		{
+			final byte[] digest = MessageDigest.getInstance("SHA-256").digest(description);
+			final StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest)
+			{
+				sb.append(String.format("%02x", b & 0xFF));
+			}
+			return sb.toString();
+		}
+		catch (NoSuchAlgorithmException ex)
+		{
+			// SHA-256 is required to be supported by every Java platform
+			throw new RuntimeException(ex);
+		}
+	}
+}
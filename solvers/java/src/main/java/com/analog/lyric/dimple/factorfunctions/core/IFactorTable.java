@@ -79,6 +79,7 @@ public interface IFactorTable extends IFactorTableBase
 	 * <li>{@link #getEnergiesSparseUnsafe()}
 	 * <li>{@link #getEnergyForSparseIndex(int)}
 	 * <li>{@link #getIndicesSparseUnsafe()}
+	 * <li>{@link #getIndicesSparseColumnMajorUnsafe()}
 	 * <li>{@link #getWeightForSparseIndex(int)}
 	 * <li>{@link #getWeightsSparseUnsafe()}
 	 * <li>{@link #setEnergyForJointIndex(double, int)}
@@ -202,6 +203,23 @@ public interface IFactorTable extends IFactorTableBase
 	 */
 	public int[][] getIndicesSparseUnsafe();
 	
+	/**
+	 * Returns the sparse element indices flattened into a single array in column-major order.
+	 * <p>
+	 * The indices for dimension {@code dim} of all of the sparse elements are stored contiguously
+	 * starting at offset {@code dim * sparseSize()}, so that
+	 * {@code getIndicesSparseColumnMajorUnsafe()[dim * sparseSize() + si] == getIndicesSparseUnsafe()[si][dim]}.
+	 * This allows inner loops that visit every entry of a large table to stream through
+	 * contiguous memory one dimension at a time.
+	 * <p>
+	 * <b>IMPORTANT</b>: the array is computed from {@link #getIndicesSparseUnsafe()} and cached in the table,
+	 * so it must be treated as a read-only value. It has the same side effects on the table representation
+	 * as that method.
+	 * <p>
+	 * @since 0.08
+	 */
+	public int[] getIndicesSparseColumnMajorUnsafe();
+	
 	/**
 	 * {@inheritDoc}
 	 * <p>
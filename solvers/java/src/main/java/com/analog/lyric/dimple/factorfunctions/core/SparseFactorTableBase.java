@@ -95,6 +95,36 @@ public abstract class SparseFactorTableBase extends FactorTableBase implements I
 	 * </ul>
 	 */
 	int _computedMask = 0;
+	
+	/**
+	 * Cached column-major copy of {@link #_sparseIndices} for {@link #getIndicesSparseColumnMajorUnsafe()}.
+	 * <p>
+	 * The sparse indices array is always replaced rather than modified when the table changes, so the cache is
+	 * valid as long as its source is the same array as the current {@link #_sparseIndices}.
+	 */
+	private transient volatile @Nullable ColumnMajorIndices _columnMajorIndices = null;
+	
+	private static final class ColumnMajorIndices
+	{
+		private final int[][] _source;
+		private final int[] _indices;
+		
+		private ColumnMajorIndices(int[][] source, int dimensions)
+		{
+			final int size = source.length;
+			final int[] indices = new int[size * dimensions];
+			for (int si = 0; si < size; ++si)
+			{
+				final int[] row = source[si];
+				for (int dim = 0, offset = si; dim < dimensions; ++dim, offset += size)
+				{
+					indices[offset] = row[dim];
+				}
+			}
+			_source = source;
+			_indices = indices;
+		}
+	}
 
 	/*--------------
 	 * Construction
@@ -222,6 +252,18 @@ public abstract class SparseFactorTableBase extends FactorTableBase implements I
 		return getEnergySlice(null, sliceDimension, values);
 	}
 
+	@Override
+	public final int[] getIndicesSparseColumnMajorUnsafe()
+	{
+		final int[][] sparseIndices = getIndicesSparseUnsafe();
+		ColumnMajorIndices columnMajor = _columnMajorIndices;
+		if (columnMajor == null || columnMajor._source != sparseIndices)
+		{
+			_columnMajorIndices = columnMajor = new ColumnMajorIndices(sparseIndices, getDimensions());
+		}
+		return columnMajor._indices;
+	}
+	
 	@Override
 	public final FactorTableRepresentation getRepresentation()
 	{
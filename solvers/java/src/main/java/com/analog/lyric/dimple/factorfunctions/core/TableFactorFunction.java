@@ -142,4 +142,8 @@ public class TableFactorFunction extends FactorFunction
 	@Override
 	public void evalDeterministic(Value[] arguments){_factorTable.evalDeterministic(arguments);}
 	
+	// Looking up entries of a FactorTable by value does not change its representation, but sparse tables
+	// use scratch state for the lookup.
+	@Override
+	public boolean isThreadSafe() {return _factorTable instanceof FactorTable;}
 }
@@ -18,6 +18,7 @@ package com.analog.lyric.dimple.model.core;
 
 import static java.util.Objects.*;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -34,6 +35,7 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.WeakHashMap;
 
 import net.jcip.annotations.Immutable;
 import net.jcip.annotations.NotThreadSafe;
@@ -48,6 +50,7 @@ import com.analog.lyric.collect.IndexedArrayList;
 import com.analog.lyric.collect.Tuple2;
 import com.analog.lyric.dimple.environment.DimpleEnvironment;
 import com.analog.lyric.dimple.events.DimpleEventListener;
+import com.analog.lyric.dimple.events.FactorGraphEvent;
 import com.analog.lyric.dimple.events.IDimpleEventListener;
 import com.analog.lyric.dimple.events.IDimpleEventSource;
 import com.analog.lyric.dimple.exceptions.DimpleException;
@@ -67,6 +70,8 @@ import com.analog.lyric.dimple.model.factors.FactorBase;
 import com.analog.lyric.dimple.model.factors.FactorList;
 import com.analog.lyric.dimple.model.repeated.BlastFromThePastFactor;
 import com.analog.lyric.dimple.model.repeated.FactorGraphStream;
+import com.analog.lyric.dimple.model.repeated.GraphInstances;
+import com.analog.lyric.dimple.model.repeated.GraphTemplate;
 import com.analog.lyric.dimple.model.repeated.IVariableStreamSlice;
 import com.analog.lyric.dimple.model.repeated.VariableStreamBase;
 import com.analog.lyric.dimple.model.variables.Discrete;
@@ -225,7 +230,44 @@ public class FactorGraph extends FactorBase
 	private @Nullable IFactorGraphFactory<?> _solverFactory;
 	private @Nullable ISolverFactorGraph _solverFactorGraph;
 	private @Nullable LoadingCache<Functions, JointFactorFunction> _jointFactorCache = null;
-	private final HashSet<VariableStreamBase<?>> _variableStreams = new HashSet<>();
+	
+	/**
+	 * Functions created by {@link #addFactor(FactorFunction, Object...)} for factors with constants, so that
+	 * factors with the same function and constants can share factor tables. Only used on the root graph.
+	 * <p>
+	 * Both keys and values are held weakly. Since each function holds on to its own key, an entry goes away
+	 * once its function is no longer used by any factor.
+	 */
+	private @Nullable WeakHashMap<FactorFunctionWithConstants.Key, WeakReference<FactorFunctionWithConstants>>
+		_constantFunctionCache = null;
+
+	/**
+	 * Nesting depth of {@link #beginBulkUpdate()} calls that have not yet been matched by {@link #endBulkUpdate()}.
+	 */
+	private int _bulkUpdateDepth = 0;
+
+	/**
+	 * True if structure changed while in bulk update mode.
+	 */
+	private boolean _bulkStructureChanged = false;
+
+	/**
+	 * Variables and factors added in bulk update mode whose solver objects have not yet been created.
+	 * Only non-null while in bulk update mode.
+	 */
+	private @Nullable ArrayList<Variable> _bulkAddedVariables = null;
+	private @Nullable ArrayList<Factor> _bulkAddedFactors = null;
+	
+	/**
+	 * Add events deferred until the end of bulk update mode. Only non-null if there are any.
+	 */
+	private @Nullable ArrayList<FactorGraphEvent> _bulkAddEvents = null;
+
+	/**
+	 * Streams used by {@link #addRepeatedFactor}. Allocated on first use, since graphs that are instances
+	 * of templates, of which there may be very many, rarely have any.
+	 */
+	private Set<VariableStreamBase<?>> _variableStreams = Collections.emptySet();
 	private final ArrayList<FactorGraphStream> _factorGraphStreams = new ArrayList<FactorGraphStream>();
 	private int _numSteps = 1;
 	private boolean _numStepsInfinite = true;
@@ -945,6 +987,12 @@ public class FactorGraph extends FactorBase
 	 */
 	public @Nullable <SG extends ISolverFactorGraph> SG setSolverFactory(@Nullable IFactorGraphFactory<SG> factory)
 	{
+		final ISolverFactorGraph oldSolverGraph = _solverFactorGraph;
+		if (oldSolverGraph != null)
+		{
+			oldSolverGraph.preSetSolverFactory();
+		}
+		
 		_solverFactory = factory;
 
 		final FactorGraph parent = getParentGraph();
@@ -982,6 +1030,177 @@ public class FactorGraph extends FactorBase
 		return solverGraph;
 	}
 
+	//========================
+	//
+	// Bulk update
+	//
+	//========================
+
+	/**
+	 * Enters bulk update mode for efficiently adding many variables and factors to the graph.
+	 * <p>
+	 * Until the matching call to {@link #endBulkUpdate()}, variables and factors added directly to this
+	 * graph using {@link #addVariables} or {@link #addFactor(FactorFunction, Object...)} will:
+	 * <ul>
+	 * <li>not immediately raise {@link VariableAddEvent}s or {@link FactorAddEvent}s,
+	 * <li>not have their solver objects created nor be announced to the solver graph
+	 * via {@link ISolverFactorGraph#postAddFactor}, and
+	 * <li>not increment the {@linkplain #structureVersion() structure version} for each change.
+	 * </ul>
+	 * All of this is instead done in one pass by the outermost {@link #endBulkUpdate()}. Add events are raised
+	 * there, after the solver objects have been created, for nodes that are still in the graph. Solver
+	 * state for nodes added during bulk update should not be accessed until then.
+	 * <p>
+	 * Calls may be nested; only the outermost pair has any effect. Use a {@code try/finally}
+	 * block to ensure that {@link #endBulkUpdate()} is always invoked.
+	 * <p>
+	 * @since 0.08
+	 * @see #beginBulkUpdate(int, int, int)
+	 */
+	public void beginBulkUpdate()
+	{
+		if (_bulkUpdateDepth == 0)
+		{
+			// Invalidate anything that was cached against the current structure, since
+			// intermediate changes will not be counted.
+			structureChanged();
+			_bulkAddedVariables = new ArrayList<>();
+			_bulkAddedFactors = new ArrayList<>();
+		}
+		++_bulkUpdateDepth;
+	}
+	
+	/**
+	 * Enters bulk update mode and reserves space for new nodes and edges.
+	 * <p>
+	 * Same as {@link #beginBulkUpdate()} followed by {@link #reserve(int, int, int)}.
+	 * <p>
+	 * @since 0.08
+	 */
+	public void beginBulkUpdate(int nVariables, int nFactors, int nEdges)
+	{
+		beginBulkUpdate();
+		reserve(nVariables, nFactors, nEdges);
+	}
+	
+	/**
+	 * Exits bulk update mode entered by {@link #beginBulkUpdate()}.
+	 * <p>
+	 * When exiting the outermost bulk update, this increments the {@linkplain #structureVersion() structure version}
+	 * if anything changed and, if the graph has a solver, creates the solver objects for all variables
+	 * and factors added in bulk mode and then invokes {@link ISolverFactorGraph#postAddFactor} for each
+	 * new factor. Finally it raises the add events that were deferred during bulk mode, in the order in
+	 * which the nodes were added, omitting nodes that have since been removed from this graph.
+	 * <p>
+	 * @throws DimpleException if not in bulk update mode.
+	 * @since 0.08
+	 */
+	public void endBulkUpdate()
+	{
+		if (_bulkUpdateDepth <= 0)
+		{
+			throw new DimpleException("endBulkUpdate called without matching beginBulkUpdate");
+		}
+		
+		if (--_bulkUpdateDepth > 0)
+		{
+			return;
+		}
+		
+		final ArrayList<Variable> variables = requireNonNull(_bulkAddedVariables);
+		final ArrayList<Factor> factors = requireNonNull(_bulkAddedFactors);
+		_bulkAddedVariables = null;
+		_bulkAddedFactors = null;
+		
+		if (_bulkStructureChanged)
+		{
+			_bulkStructureChanged = false;
+			structureChanged();
+		}
+
+		final ISolverFactorGraph sfg = _solverFactorGraph;
+		if (sfg != null)
+		{
+			for (Variable var : variables)
+			{
+				if (var.getParentGraph() != null)
+				{
+					var.createSolverObject(sfg);
+				}
+			}
+			
+			// Remove any factors that were removed from the graph before the update finished.
+			int nFactors = 0;
+			for (Factor factor : factors)
+			{
+				if (factor.getParentGraph() == this)
+				{
+					factor.createSolverObject(sfg);
+					factors.set(nFactors++, factor);
+				}
+			}
+			
+			for (int i = 0; i < nFactors; ++i)
+			{
+				sfg.postAddFactor(factors.get(i));
+			}
+		}
+		
+		final ArrayList<FactorGraphEvent> events = _bulkAddEvents;
+		if (events != null)
+		{
+			_bulkAddEvents = null;
+			for (FactorGraphEvent event : events)
+			{
+				final Node node = event.getNode();
+				if (node != null && node.getParentGraph() == this)
+				{
+					raiseEvent(event);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * True if in bulk update mode.
+	 * @since 0.08
+	 * @see #beginBulkUpdate()
+	 */
+	public boolean isBulkUpdate()
+	{
+		return _bulkUpdateDepth > 0;
+	}
+	
+	/**
+	 * Reserves space for adding additional nodes and edges directly to this graph.
+	 * <p>
+	 * This is simply an optimization that avoids repeated reallocation of internal storage when
+	 * the number of nodes to be added is known in advance.
+	 * <p>
+	 * @param nVariables is the number of variables expected to be added.
+	 * @param nFactors is the number of factors expected to be added.
+	 * @param nEdges is the number of edges expected to be added, i.e. the total number of
+	 * variables connected to the new factors.
+	 * @since 0.08
+	 */
+	public void reserve(int nVariables, int nFactors, int nEdges)
+	{
+		_ownedVariables.reserve(nVariables);
+		_ownedFactors.reserve(nFactors);
+		_edges.ensureCapacity(_edges.size() + nEdges);
+		
+		final ArrayList<Variable> bulkAddedVariables = _bulkAddedVariables;
+		if (bulkAddedVariables != null && _solverFactorGraph != null)
+		{
+			bulkAddedVariables.ensureCapacity(bulkAddedVariables.size() + nVariables);
+		}
+		final ArrayList<Factor> bulkAddedFactors = _bulkAddedFactors;
+		if (bulkAddedFactors != null)
+		{
+			bulkAddedFactors.ensureCapacity(bulkAddedFactors.size() + nFactors);
+		}
+	}
+
 	//========================
 	//
 	// Tables and Functions
@@ -1056,6 +1275,10 @@ public class FactorGraph extends FactorBase
 		{
 			if (v instanceof IVariableStreamSlice)
 			{
+				if (_variableStreams.isEmpty())
+				{
+					_variableStreams = new HashSet<>();
+				}
 				_variableStreams.add(((IVariableStreamSlice<?>) v).getStream());
 			}
 		}
@@ -1085,6 +1308,10 @@ public class FactorGraph extends FactorBase
 	{
 		ISolverFactorGraph solver = requireSolver("advance");
 		
+		for (FactorGraphStream s : _factorGraphStreams)
+		{
+			s.preAdvance();
+		}
 		for (VariableStreamBase<?> vs : _variableStreams)
 		{
 			vs.advanceState();
@@ -1146,6 +1373,16 @@ public class FactorGraph extends FactorBase
 		return addFactor(factorFunctionName, (Object[])vars);
 	}
 	
+	/**
+	 * Adds factor with given function connected to the variables in {@code vars}.
+	 * <p>
+	 * Elements of {@code vars} that are not {@link Variable}s are treated as constants. Factors added with the
+	 * same function and equal constants anywhere in the graph tree share a single
+	 * {@link FactorFunctionWithConstants} (see {@link FactorFunctionWithConstants.Key}), and therefore also
+	 * share its factor tables. Modifying the table of one such factor in place, for example through
+	 * {@link Factor#getFactorTable()}, affects all of them. {@link Factor#setDirectedTo(int[])} gives the
+	 * factor its own copy of the function and table before converting the table.
+	 */
 	public Factor addFactor(FactorFunction factorFunction, Object ... vars)
 	{
 		int numConstants = 0;
@@ -1185,11 +1422,44 @@ public class FactorGraph extends FactorBase
 		}
 		else
 		{
-			return addFactorNoConstants(new FactorFunctionWithConstants(factorFunction, constants, constantIndices),newvars);
+			return addFactorNoConstants(getFactorFunctionWithConstants(factorFunction, constants, constantIndices),
+				newvars);
 		}
 
 	}
 
+	/**
+	 * Returns function wrapping {@code factorFunction} with given constants.
+	 * <p>
+	 * Returns the same instance for repeated calls with the same function and equal constants
+	 * (see {@link FactorFunctionWithConstants.Key}) anywhere in the graph tree, so that factor tables
+	 * are only computed once for such factors. The tables are therefore aliased among those factors.
+	 */
+	private FactorFunctionWithConstants getFactorFunctionWithConstants(FactorFunction factorFunction,
+		Object[] constants, int[] constantIndices)
+	{
+		final FactorGraph root = getRootGraph();
+		WeakHashMap<FactorFunctionWithConstants.Key, WeakReference<FactorFunctionWithConstants>> cache =
+			root._constantFunctionCache;
+		if (cache == null)
+		{
+			cache = root._constantFunctionCache = new WeakHashMap<>();
+		}
+		
+		final FactorFunctionWithConstants.Key key =
+			new FactorFunctionWithConstants.Key(factorFunction, constants, constantIndices);
+		final WeakReference<FactorFunctionWithConstants> ref = cache.get(key);
+		FactorFunctionWithConstants function = ref != null ? ref.get() : null;
+		if (function == null)
+		{
+			function = new FactorFunctionWithConstants(factorFunction, constants, constantIndices);
+			// Remove any stale entry first, since put would otherwise keep its unreachable key.
+			cache.remove(key);
+			cache.put(function.getKey(), new WeakReference<>(function));
+		}
+		return function;
+	}
+
 	private Factor addFactorNoConstants(FactorFunction factorFunction, Variable ... vars)
 	{
 		if (vars.length == 0)
@@ -1218,7 +1488,12 @@ public class FactorGraph extends FactorBase
 		addFactor(f,vars);
 
 		final ISolverFactorGraph sfg = _solverFactorGraph;
-		if (sfg != null)
+		final ArrayList<Factor> bulkAddedFactors = _bulkAddedFactors;
+		if (bulkAddedFactors != null)
+		{
+			bulkAddedFactors.add(f);
+		}
+		else if (sfg != null)
 		{
 			f.createSolverObject(_solverFactorGraph);
 			sfg.postAddFactor(f);
@@ -1241,7 +1516,7 @@ public class FactorGraph extends FactorBase
 				if (v.getSiblingCount() > 0)
 					throw new DimpleException(String.format("Can't connect variable %s to multiple graphs", v));
 
-				v.createSolverObject(_solverFactorGraph);
+				createVariableSolverObject(v);
 			}
 		}
 	}
@@ -1412,11 +1687,31 @@ public class FactorGraph extends FactorBase
 				throw new DimpleException("Variable [" + v.getLabel() + "] already owned by graph [" + parent.getLabel() + "]");
 			}
 			addOwnedVariable(v, false);
-			v.createSolverObject(_solverFactorGraph);
+			createVariableSolverObject(v);
 
 		}
 	}
 
+	/**
+	 * Creates solver object for variable added to this graph, or defers it until
+	 * {@link #endBulkUpdate()} if in bulk update mode.
+	 */
+	private void createVariableSolverObject(Variable v)
+	{
+		final ArrayList<Variable> bulkAddedVariables = _bulkAddedVariables;
+		if (bulkAddedVariables != null)
+		{
+			if (_solverFactorGraph != null)
+			{
+				bulkAddedVariables.add(v);
+			}
+		}
+		else
+		{
+			v.createSolverObject(_solverFactorGraph);
+		}
+	}
+
 	/**
 	 * Creates a {@link VariableBlock} containing the specified variables.
 	 * @param variables are the variables that will comprise the block. The variables will be added in the
@@ -1851,6 +2146,71 @@ public class FactorGraph extends FactorBase
 		return subGraphCopy;
 	}
 
+	/**
+	 * Add many instances of a template graph that share a single copy of its structure.
+	 * <p>
+	 * Compiles {@code subGraphTemplate} into a {@link GraphTemplate} and invokes
+	 * {@link #addGraphInstances(GraphTemplate, Variable[][])}.
+	 * <p>
+	 * @since 0.08
+	 */
+	public Factor addGraphInstances(FactorGraph subGraphTemplate, Variable[][] boundaryVariables)
+	{
+		return addGraphInstances(new GraphTemplate(subGraphTemplate), boundaryVariables);
+	}
+
+	/**
+	 * Add many instances of a template graph that share a single copy of its structure.
+	 * <p>
+	 * Unlike {@link #addGraph}, this does not copy the variables and factors of the template for each
+	 * instance. Instead it adds a single factor with a {@link GraphInstances} function whose siblings are
+	 * the boundary variables of each instance in turn. The sum-product and Gibbs solvers run the
+	 * template's internal variables and factors for all instances in batches and only keep
+	 * per-instance messages or samples; beliefs and samples of internal variables are obtained from
+	 * the solver factor rather than from model variables. Other solvers do not support the factor.
+	 * <p>
+	 * @param boundaryVariables contains one array of boundary variables for each instance, in the same
+	 * order and with the same domains as the template's boundary variables. A variable may be shared by
+	 * different instances but may not appear more than once in the same instance.
+	 * @return the newly created factor
+	 * @since 0.08
+	 */
+	public Factor addGraphInstances(GraphTemplate template, Variable[][] boundaryVariables)
+	{
+		final int nInstances = boundaryVariables.length;
+		final int nBoundary = template.getBoundaryVariableCount();
+		final Variable[] siblings = new Variable[nInstances * nBoundary];
+
+		for (int instance = 0, i = 0; instance < nInstances; ++instance)
+		{
+			final Variable[] variables = boundaryVariables[instance];
+			if (variables.length != nBoundary)
+			{
+				throw new DimpleException("Boundary variable list for instance %d does not have the same length (%d) as template graph (%d)",
+					instance, variables.length, nBoundary);
+			}
+			for (int j = 0; j < nBoundary; ++j, ++i)
+			{
+				final Variable variable = variables[j];
+				if (!variable.getDomain().equals(template.getDomain(j)))
+				{
+					throw new DimpleException("Boundary variable does not have the same domain as template graph.  Instance: %d Index: %d",
+						instance, j);
+				}
+				for (int k = 0; k < j; ++k)
+				{
+					if (variables[k] == variable)
+					{
+						throw new DimpleException("Boundary variable '%s' appears more than once in instance %d", variable, instance);
+					}
+				}
+				siblings[i] = variable;
+			}
+		}
+
+		return addFactor(new GraphInstances(template, nInstances), siblings);
+	}
+
 
 	private void _setParentGraph(@Nullable FactorGraph parentGraph)
 	{
@@ -2296,7 +2656,7 @@ public class FactorGraph extends FactorBase
 		addName(factor);
 		if ((_flags & FACTOR_ADD_EVENT) != 0)
 		{
-			raiseEvent(new FactorAddEvent(this, factor, absorbedFromSubgraph));
+			raiseAddEvent(new FactorAddEvent(this, factor, absorbedFromSubgraph));
 		}
 	}
 
@@ -2324,12 +2684,32 @@ public class FactorGraph extends FactorBase
 			
 			if ((_flags & VARIABLE_ADD_EVENT) != 0)
 			{
-				raiseEvent(new VariableAddEvent(this, variable, absorbedFromSubgraph));
+				raiseAddEvent(new VariableAddEvent(this, variable, absorbedFromSubgraph));
 			}
 		}
 		addName(variable);
 	}
 
+	/**
+	 * Raises add event, or defers it until {@link #endBulkUpdate()} if in bulk update mode.
+	 */
+	private void raiseAddEvent(FactorGraphEvent event)
+	{
+		if (_bulkUpdateDepth > 0)
+		{
+			ArrayList<FactorGraphEvent> events = _bulkAddEvents;
+			if (events == null)
+			{
+				events = _bulkAddEvents = new ArrayList<>();
+			}
+			events.add(event);
+		}
+		else
+		{
+			raiseEvent(event);
+		}
+	}
+
 	public void recreateMessages()
 	{
 		for (Variable v : getVariablesFlat())
@@ -3325,6 +3705,11 @@ public class FactorGraph extends FactorBase
 	
 	final void structureChanged()
 	{
+		if (_bulkUpdateDepth > 0)
+		{
+			_bulkStructureChanged = true;
+			return;
+		}
 		++_structureVersion;
 		++_graphTreeState._globalStructureVersion;
 	}
@@ -3815,6 +4200,26 @@ public class FactorGraph extends FactorBase
 	 */
 	@Internal
 	public void replaceEdge(Factor factor, int edgeIndex, Variable newVariable)
+	{
+		replaceEdge(factor, edgeIndex, newVariable, true);
+	}
+	
+	/**
+	 * Like {@link #replaceEdge} but does not change the {@linkplain #structureVersion() structure version}.
+	 * <p>
+	 * Used by {@link FactorGraphStream} in circular buffer mode, which moves edges in a way that leaves
+	 * the graph with the same shape.
+	 * <p>
+	 * @category internal
+	 * @since 0.08
+	 */
+	@Internal
+	public void rebindEdge(Factor factor, int edgeIndex, Variable newVariable)
+	{
+		replaceEdge(factor, edgeIndex, newVariable, false);
+	}
+	
+	private void replaceEdge(Factor factor, int edgeIndex, Variable newVariable, boolean changeStructure)
 	{
 		final FactorGraph factorGraph = requireNonNull(factor.getParentGraph());
 		
@@ -3851,17 +4256,140 @@ public class FactorGraph extends FactorBase
 
 		factorGraph._edges.set(factorEdgeIndex, newEdge);
 		
-		factorGraph.structureChanged();
-		if (!oldEdge.isLocal())
+		if (changeStructure)
 		{
-			oldVariableGraph.structureChanged();
+			factorGraph.structureChanged();
+			if (!oldEdge.isLocal())
+			{
+				oldVariableGraph.structureChanged();
+			}
+			if (!newEdge.isLocal())
+			{
+				newVariableGraph.structureChanged();
+			}
 		}
-		if (!newEdge.isLocal())
+		else
 		{
-			newVariableGraph.structureChanged();
+			factorGraph._siblingVersionId = -1;
+			oldVariableGraph._siblingVersionId = -1;
+			newVariableGraph._siblingVersionId = -1;
 		}
 	}
-	
+
+	/**
+	 * Moves this graph's connections from its current boundary variables to new ones.
+	 * <p>
+	 * Edges from factors in this graph or its subgraphs to the {@code i}th boundary variable are
+	 * transferred to {@code variables[i]}, which must belong to the same graph as the variable it
+	 * replaces. The edges and their indexes are unchanged, so any solver state kept for them is
+	 * retained, and the {@linkplain #structureVersion() structure version} of the graphs involved is not
+	 * changed, since the caller is expected to leave the graph with the same shape.
+	 * <p>
+	 * Used by {@link FactorGraphStream} in circular buffer mode to reuse its oldest nested graph as
+	 * the newest one.
+	 * <p>
+	 * @category internal
+	 * @since 0.08
+	 */
+	@Internal
+	public void rebindBoundaryVariables(Variable[] variables)
+	{
+		final int n = _boundaryVariables.size();
+		if (variables.length != n)
+		{
+			throw new DimpleException("Expected %d boundary variables but got %d", n, variables.length);
+		}
+
+		final Map<Variable,Variable> old2new = new HashMap<>(n);
+		for (int i = 0; i < n; ++i)
+		{
+			final Variable oldVariable = _boundaryVariables.get(i);
+			final Variable newVariable = variables[i];
+			if (oldVariable != newVariable)
+			{
+				if (ownsDirectly(oldVariable) || newVariable.getParentGraph() != oldVariable.getParentGraph())
+				{
+					throw new DimpleException("Cannot rebind boundary variable '%s' of '%s' to '%s'",
+						oldVariable, this, newVariable);
+				}
+				old2new.put(oldVariable, newVariable);
+			}
+		}
+
+		if (old2new.isEmpty())
+		{
+			return;
+		}
+
+		// Detach all of the edges before attaching any, since a variable may both lose and gain edges.
+		final List<EdgeState> edges = new ArrayList<>();
+		final List<Variable> targets = new ArrayList<>();
+		for (int i = 0; i < n; ++i)
+		{
+			final Variable oldVariable = _boundaryVariables.get(i);
+			final Variable newVariable = old2new.get(oldVariable);
+			if (newVariable != null)
+			{
+				final FactorGraph variableGraph = requireNonNull(oldVariable.getParentGraph());
+				final int start = edges.size();
+				for (int j = 0, nj = oldVariable.getSiblingCount(); j < nj; ++j)
+				{
+					final EdgeState edge = oldVariable.getSiblingEdgeState(j);
+					if (isAncestorOf(edge.getFactor(variableGraph)))
+					{
+						edges.add(edge);
+						targets.add(newVariable);
+					}
+				}
+				for (int j = start, nj = edges.size(); j < nj; ++j)
+				{
+					final EdgeState edge = edges.get(j);
+					oldVariable.removeSiblingEdgeState(edge);
+					edge.getFactor(variableGraph).siblingNodeChanged();
+				}
+			}
+		}
+
+		replaceBoundaryVariables(old2new);
+
+		for (int i = 0, end = edges.size(); i < end; ++i)
+		{
+			targets.get(i).addSiblingEdgeState(edges.get(i));
+		}
+	}
+
+	/**
+	 * Substitutes boundary variables of this graph and its subgraphs according to {@code old2new}.
+	 */
+	private void replaceBoundaryVariables(Map<Variable,Variable> old2new)
+	{
+		final Variable[] variables = _boundaryVariables.toArray(new Variable[_boundaryVariables.size()]);
+		boolean changed = false;
+		for (int i = 0; i < variables.length; ++i)
+		{
+			final Variable newVariable = old2new.get(variables[i]);
+			if (newVariable != null)
+			{
+				variables[i] = newVariable;
+				changed = true;
+			}
+		}
+
+		if (changed)
+		{
+			// Rebuild the list rather than setting elements in place, which would drop a variable
+			// that temporarily appears twice.
+			_boundaryVariables.clear();
+			_boundaryVariables.addAll(Arrays.asList(variables));
+			_siblingVersionId = -1;
+
+			for (FactorGraph subgraph : _ownedSubGraphs)
+			{
+				subgraph.replaceBoundaryVariables(old2new);
+			}
+		}
+	}
+
 	/**
 	 * @category internal
 	 */
@@ -78,7 +78,7 @@ public abstract class Node extends FactorGraphChild implements INode
 	 * <p>
 	 * Contains integer indexes into the parent graph's edge list.
 	 */
-	private final IntArrayList _siblingEdges = new IntArrayList();
+	private final IntArrayList _siblingEdges = new IntArrayList(4);
 	
 	/**
 	 * Temporary flags that can be used to mark the node during the execution of various algorithms
@@ -866,7 +866,19 @@ public abstract class Node extends FactorGraphChild implements INode
 		}
 		notifyConnectionsChanged();
 	}
-	
+
+	/**
+	 * Invoked when the node at the other end of one of this node's edges has been changed
+	 * without replacing the edge itself.
+	 * @since 0.08
+	 */
+	@Internal
+	protected void siblingNodeChanged()
+	{
+		_siblingToIndex = null;
+		notifyConnectionsChanged();
+	}
+
 	/**
 	 * Clear all flag values. Invoked automatically by {@link #initialize()}.
 	 */
@@ -216,6 +216,14 @@ abstract class OwnedArray<T extends FactorGraphChild> extends AbstractCollection
 		}
 	}
 	
+	/**
+	 * Ensures there is room for {@code count} more nodes to be added without reallocating.
+	 */
+	void reserve(int count)
+	{
+		ensureCapacity(_end + count);
+	}
+	
 	@SuppressWarnings("null")
 	T get(int n)
 	{
@@ -560,7 +560,15 @@ public class Factor extends FactorBase implements Cloneable
 			JointDomainIndexer newDomains = getDomainList().asJointDomainIndexer();
 			if (!curDomains.equals(newDomains))
 			{
-				getFactorFunction().convertFactorTable(curDomains, newDomains);
+				FactorFunction function = getFactorFunction();
+				if (function instanceof FactorFunctionWithConstants && function.factorTableExists(curDomains))
+				{
+					// The function and its table may be shared with other factors that have the same
+					// function and constants, so convert a copy that belongs only to this factor.
+					_factorFunction = function =
+						((FactorFunctionWithConstants)function).copyWithFactorTable(curDomains);
+				}
+				function.convertFactorTable(curDomains, newDomains);
 			}
 		}
 
@@ -583,6 +591,14 @@ public class Factor extends FactorBase implements Cloneable
 		_directedFrom = null;
 		if (hasFactorTable())
 		{
+			final FactorFunction function = getFactorFunction();
+			if (function instanceof FactorFunctionWithConstants)
+			{
+				// The function and its table may be shared with other factors that have the same
+				// function and constants, so change a copy that belongs only to this factor.
+				_factorFunction = ((FactorFunctionWithConstants)function).copyWithFactorTable(
+					getDomainList().asJointDomainIndexer());
+			}
 			getFactorTable().setDirected(null);
 		}
 	}
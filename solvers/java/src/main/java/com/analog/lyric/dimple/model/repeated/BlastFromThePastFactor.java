@@ -28,8 +28,8 @@ import com.analog.lyric.util.misc.Internal;
 public class BlastFromThePastFactor extends Factor
 {
 	
-	private final Port _portForOtherVariable;
-	private final Variable _variableConnectedToBlast;
+	private Port _portForOtherVariable;
+	private Variable _variableConnectedToBlast;
 	
 	@Internal
 	public BlastFromThePastFactor(Variable varConnectedToBlast, Port portForOtherVar)
@@ -62,6 +62,28 @@ public class BlastFromThePastFactor extends Factor
 	}
 	
 	
+	/**
+	 * Moves this factor to a new variable and source port.
+	 * <p>
+	 * Used by {@link FactorGraphStream} in circular buffer mode. The factor's edge keeps its index
+	 * in the parent graph, so the solver edge state, including the message received on the last
+	 * {@link #advance()}, is retained.
+	 * <p>
+	 * @param varConnectedToBlast is the variable the factor should now be connected to.
+	 * @param portForOtherVar is the port whose message should be taken on the next advance.
+	 * @since 0.08
+	 */
+	@Internal
+	public void rebind(Variable varConnectedToBlast, Port portForOtherVar)
+	{
+		if (varConnectedToBlast != _variableConnectedToBlast)
+		{
+			requireParentGraph().rebindEdge(this, 0, varConnectedToBlast);
+			_variableConnectedToBlast = varConnectedToBlast;
+		}
+		_portForOtherVariable = portForOtherVar;
+	}
+	
 	@Override
 	public void initialize()
 	{
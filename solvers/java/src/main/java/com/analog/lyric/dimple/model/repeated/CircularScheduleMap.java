@@ -0,0 +1,272 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.model.repeated;
+
+import static java.util.Objects.*;
+
+import java.util.IdentityHashMap;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.core.INode;
+import com.analog.lyric.dimple.model.core.Node;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.EdgeScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.SubgraphScheduleEntry;
+import com.analog.lyric.util.misc.Internal;
+
+/**
+ * Maps the nodes named by a schedule of a graph with {@linkplain FactorGraphStream#setCircularBuffer
+ * circular} streams to the nodes that now occupy the same positions in those streams.
+ * <p>
+ * In circular buffer mode, advancing a stream reconnects its oldest nested graph as the newest one, which
+ * leaves the graph with the same shape but with each nested graph and stream variable moved down one
+ * position. Instead of rebuilding the schedule on every step, the solver graph keeps running the
+ * schedule it had when this map was created and, for each entry, updates whichever node is now where
+ * the entry's node was at that time.
+ * <p>
+ * The map records the positions of the nodes of every stream of the graph when it is created, so it
+ * must be created before any circular stream advances after the schedule is built, and discarded when
+ * the schedule changes.
+ * <p>
+ * @since 0.08
+ * @category internal
+ */
+@Internal
+public final class CircularScheduleMap
+{
+	/*-------
+	 * State
+	 */
+
+	private final ISchedule _schedule;
+	private final long _scheduleVersion;
+
+	/**
+	 * Original stream position of each node in a nested graph or variable stream.
+	 */
+	private final IdentityHashMap<INode, Position> _positions = new IdentityHashMap<>();
+
+	/**
+	 * Original siblings of each variable owned by the graph, whose port numbers change when
+	 * nested graphs are reconnected.
+	 */
+	private final IdentityHashMap<Variable, Factor[]> _siblings = new IdentityHashMap<>();
+	private final IdentityHashMap<Variable, int[]> _siblingPorts = new IdentityHashMap<>();
+
+	private static abstract class Position
+	{
+		abstract INode node();
+	}
+
+	private static final class VariablePosition extends Position
+	{
+		private final VariableStreamBase<?> _stream;
+		private final int _index;
+
+		private VariablePosition(VariableStreamBase<?> stream, int index)
+		{
+			_stream = stream;
+			_index = index;
+		}
+
+		@Override
+		INode node()
+		{
+			return _stream.get(_index);
+		}
+	}
+
+	private static final class GraphPosition extends Position
+	{
+		private final FactorGraphStream _stream;
+		private final int _index;
+
+		/**
+		 * Local ids of the subgraphs leading from the nested graph to the node, followed by that of the node.
+		 * Empty for the nested graph itself.
+		 */
+		private final int[] _path;
+
+		private GraphPosition(FactorGraphStream stream, int index, int[] path)
+		{
+			_stream = stream;
+			_index = index;
+			_path = path;
+		}
+
+		@Override
+		INode node()
+		{
+			INode node = _stream.getNestedGraph(_index);
+			for (int id : _path)
+			{
+				node = requireNonNull(((FactorGraph)node).getNodeByLocalId(id));
+			}
+			return node;
+		}
+	}
+
+	/*--------------
+	 * Construction
+	 */
+
+	/**
+	 * Creates map for given {@code schedule} of {@code graph}, which must describe its current structure.
+	 */
+	public CircularScheduleMap(FactorGraph graph, ISchedule schedule)
+	{
+		_schedule = schedule;
+		_scheduleVersion = schedule.scheduleVersion();
+
+		for (FactorGraphStream stream : graph.getFactorGraphStreams())
+		{
+			for (int i = 0, n = stream._nestedGraphs.size(); i < n; ++i)
+			{
+				addPositions(stream, i, stream.getNestedGraph(i), new int[0]);
+			}
+			for (VariableStreamBase<?> vstream : stream._variableStreams)
+			{
+				for (int i = 0, n = vstream.size(); i < n; ++i)
+				{
+					_positions.put(vstream.get(i), new VariablePosition(vstream, i));
+				}
+			}
+		}
+
+		for (Variable var : graph.getOwnedVariables())
+		{
+			final int n = var.getSiblingCount();
+			final Factor[] factors = new Factor[n];
+			final int[] ports = new int[n];
+			for (int i = 0; i < n; ++i)
+			{
+				factors[i] = var.getSibling(i);
+				ports[i] = var.getReverseSiblingNumber(i);
+			}
+			_siblings.put(var, factors);
+			_siblingPorts.put(var, ports);
+		}
+	}
+
+	private void addPositions(FactorGraphStream stream, int index, FactorGraph graph, int[] path)
+	{
+		_positions.put(graph, new GraphPosition(stream, index, path));
+		for (Factor factor : graph.getOwnedFactors())
+		{
+			_positions.put(factor, new GraphPosition(stream, index, append(path, factor)));
+		}
+		for (Variable var : graph.getOwnedVariables())
+		{
+			_positions.put(var, new GraphPosition(stream, index, append(path, var)));
+		}
+		for (FactorGraph subgraph : graph.getOwnedGraphs())
+		{
+			addPositions(stream, index, subgraph, append(path, subgraph));
+		}
+	}
+
+	private static int[] append(int[] path, Node node)
+	{
+		final int[] result = new int[path.length + 1];
+		System.arraycopy(path, 0, result, 0, path.length);
+		result[path.length] = node.getLocalId();
+		return result;
+	}
+
+	/*----------------------------
+	 * CircularScheduleMap methods
+	 */
+
+	/**
+	 * True if map was created for {@code schedule} and the schedule has not been modified since.
+	 */
+	public boolean isFor(ISchedule schedule)
+	{
+		return schedule == _schedule && schedule.scheduleVersion() == _scheduleVersion;
+	}
+
+	/**
+	 * Returns the node now at the position of {@code node} when the map was created.
+	 */
+	public INode node(INode node)
+	{
+		final Position position = _positions.get(node);
+		return position != null ? position.node() : node;
+	}
+
+	/**
+	 * Returns the sibling number of the edge of {@link #node node(node)} corresponding to the
+	 * edge of {@code node} with sibling number {@code portNum} when the map was created.
+	 */
+	public int portNum(INode node, int portNum)
+	{
+		final Factor[] factors = node instanceof Variable ? _siblings.get(node) : null;
+		if (factors == null)
+		{
+			return portNum;
+		}
+		return node(factors[portNum]).getReverseSiblingNumber(requireNonNull(_siblingPorts.get(node))[portNum]);
+	}
+
+	/**
+	 * Returns an entry that performs the update of {@code entry} on the nodes now at the positions
+	 * of those it named when the map was created.
+	 */
+	public IScheduleEntry entry(IScheduleEntry entry)
+	{
+		switch (entry.type())
+		{
+		case NODE:
+		{
+			final INode node = ((NodeScheduleEntry)entry).getNode();
+			final INode newNode = node(node);
+			return newNode != node ? new NodeScheduleEntry(newNode) : entry;
+		}
+		case EDGE:
+		{
+			final EdgeScheduleEntry edgeEntry = (EdgeScheduleEntry)entry;
+			final INode node = edgeEntry.getNode();
+			final int portNum = edgeEntry.getPortNum();
+			final INode newNode = node(node);
+			final int newPortNum = portNum(node, portNum);
+			return newNode != node || newPortNum != portNum ? new EdgeScheduleEntry(newNode, newPortNum) : entry;
+		}
+		case SUBGRAPH:
+		{
+			final FactorGraph subgraph = ((SubgraphScheduleEntry)entry).getSubgraph();
+			final FactorGraph newSubgraph = (FactorGraph)node(subgraph);
+			return newSubgraph != subgraph ? new SubgraphScheduleEntry(newSubgraph) : entry;
+		}
+		default:
+			return entry;
+		}
+	}
+
+	/**
+	 * Returns {@link #entry entry(entry)} if {@code map} is non-null, else {@code entry}.
+	 */
+	public static IScheduleEntry entry(@Nullable CircularScheduleMap map, IScheduleEntry entry)
+	{
+		return map != null ? map.entry(entry) : entry;
+	}
+}
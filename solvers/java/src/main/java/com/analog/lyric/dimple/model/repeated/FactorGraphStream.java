@@ -20,16 +20,24 @@ import static java.util.Objects.*;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 
 import org.eclipse.jdt.annotation.Nullable;
 
+import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.model.core.FactorGraph;
 import com.analog.lyric.dimple.model.core.Port;
+import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.schedulers.schedule.ResidualBPSchedule;
+import com.analog.lyric.dimple.solvers.core.BPSolverGraph;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
+import com.analog.lyric.util.misc.Internal;
 
 /*
  * This class represents one stream of Nested Factor Graphs.
@@ -40,6 +48,20 @@ public class FactorGraphStream
 	ArrayList<ArrayList<BlastFromThePastFactor>> _blastFromThePastChains = new ArrayList<ArrayList<BlastFromThePastFactor>>();
 	ArrayList<FactorGraph> _nestedGraphs = new ArrayList<FactorGraph>();
 	ArrayList<VariableStreamBase<?>> _variableStreams = new ArrayList<>();
+	
+	/*
+	 * For each entry of _blastFromThePastChains, the stream it is attached to and the stream index of the
+	 * variable whose messages feed the chain. The kth factor in the chain sits on the variable before it.
+	 */
+	private ArrayList<VariableStreamBase<?>> _chainStreams = new ArrayList<>();
+	private ArrayList<Integer> _chainIndices = new ArrayList<>();
+	
+	/*
+	 * In circular buffer mode, the index in _nestedGraphs of the oldest nested graph. Otherwise zero.
+	 */
+	private int _head = 0;
+	private boolean _circularBuffer = false;
+	
 	private int _bufferSize = 0;
 	private Object [] _args;
 	private FactorGraph _graph;
@@ -128,6 +150,8 @@ public class FactorGraphStream
 				{
 					ArrayList<BlastFromThePastFactor> bfc = new ArrayList<BlastFromThePastFactor>();
 					_blastFromThePastChains.add(bfc);
+					_chainStreams.add(vsb);
+					_chainIndices.add(index);
 					
 					//For each variable before this one
 					for (int i = index-1; i >= 0; i--)
@@ -163,6 +187,8 @@ public class FactorGraphStream
 
 	public void setBufferSize(int size)
 	{
+		normalize();
+		
 		if (size > _bufferSize)
 		{
 			for (int i = 0; i < size-_bufferSize; i++)
@@ -224,8 +250,33 @@ public class FactorGraphStream
 			
 			requireNonNull(sfactor.getSiblingEdgeState(0)).setFactorToVarMsg(_myVar.getBeliefObject());
 		}
+		
+		/*
+		 * Points the blasts from the past that take messages from nested graph {@code from} at the
+		 * corresponding edges of {@code to}.
+		 */
+		public void rebind(FactorGraph from, FactorGraph to)
+		{
+			final BlastFromThePastFactor main = _mainBlastFromThePast;
+			main.rebind(_otherVar, correspondingPort(main.getPortForOtherVariable(), from, to));
+			
+			// The first entry takes its messages from the main blast from the past, which has not moved.
+			for (int i = 1, n = _allBlastFromThePasts.size(); i < n; ++i)
+			{
+				final BlastFromThePastFactor f = _allBlastFromThePasts.get(i);
+				f.rebind(_myVar, correspondingPort(f.getPortForOtherVariable(), from, to));
+			}
+		}
 	}
 
+	/**
+	 * Advances the stream by one step.
+	 * <p>
+	 * By default this shifts the messages of each nested graph to its predecessor, so the cost of each
+	 * step is proportional to the {@linkplain #getBufferSize() buffer size}, and only the newest graph
+	 * has its messages reset. In {@linkplain #setCircularBuffer circular buffer mode}, the oldest graph
+	 * is instead reset and reconnected as the newest one.
+	 */
 	public void advance()
 	{
 	
@@ -249,12 +300,20 @@ public class FactorGraphStream
 			}
 		}
 
+		if (_circularBuffer)
+		{
+			advanceCircular();
+			return;
+		}
+		
 		//For each graph in list of nested graphs
-		for (int j = 0; j < _nestedGraphs.size()-1; j++)
+		final int last = _nestedGraphs.size()-1;
+		for (int j = 0; j < last; j++)
 		{
-			//Tell it to move all factor messages to left
+			//Tell it to move all factor messages to left. The messages of the next graph are about to be
+			//overwritten in turn, so only the newest graph needs its edge messages reset.
 			final ISolverFactorGraph otherGraph = requireNonNull(_nestedGraphs.get(j+1).getSolver());
-			requireNonNull(_nestedGraphs.get(j).getSolver()).moveMessages(otherGraph);
+			requireNonNull(_nestedGraphs.get(j).getSolver()).moveMessages(otherGraph, j+1 == last);
 		}
 
 		//Newest nested graph should initialize its messages
@@ -265,6 +324,25 @@ public class FactorGraphStream
 
 
 
+	/**
+	 * Prepares for the graph to {@linkplain FactorGraph#advance() advance}, before its variable streams do.
+	 * <p>
+	 * In {@linkplain #setCircularBuffer circular buffer mode} this makes sure that the solver graph has
+	 * recorded the current positions of the nodes named by its schedule, so that it can keep running that
+	 * schedule after the stream advances.
+	 * <p>
+	 * @category internal
+	 * @since 0.08
+	 */
+	@Internal
+	public void preAdvance()
+	{
+		if (_circularBuffer)
+		{
+			requireCircularSolver().getCircularScheduleMap();
+		}
+	}
+
 	public boolean hasNext()
 	{
         for (VariableStreamBase<?> s : _variableStreams)
@@ -291,6 +369,140 @@ public class FactorGraphStream
 		_nestedGraphs.add(ng);
 	}
 
+	/*
+	 * Recycles the oldest nested graph as the newest one. The variable streams have already
+	 * rotated their heads, so stream indexes refer to the positions after this step.
+	 */
+	private void advanceCircular()
+	{
+		final int size = _nestedGraphs.size();
+		final FactorGraph recycled = _nestedGraphs.get(_head);
+		if (++_head == size)
+		{
+			_head = 0;
+		}
+		final FactorGraph oldest = _nestedGraphs.get(_head);
+		
+		requireNonNull(recycled.getSolver()).resetMessages();
+		recycled.recreateMessages();
+
+		// Variables whose sibling edges change and whose solver state must be recached.
+		final LinkedHashSet<Variable> changed = new LinkedHashSet<>();
+		
+		final Variable[] boundaryVariables = new Variable[_args.length];
+		for (int j = 0; j < _args.length; j++)
+		{
+			if (_args[j] instanceof IVariableStreamSlice)
+				boundaryVariables[j] = ((IVariableStreamSlice<?>)_args[j]).get(size-1);
+			else
+				boundaryVariables[j] = (Variable)_args[j];
+		}
+		changed.addAll(recycled.getBoundaryVariables());
+		recycled.rebindBoundaryVariables(boundaryVariables);
+		Collections.addAll(changed, boundaryVariables);
+		
+		// Move each chain so that it is fed by the graph that is now the oldest.
+		for (int i = 0, n = _blastFromThePastChains.size(); i < n; ++i)
+		{
+			final VariableStreamBase<?> vsb = _chainStreams.get(i);
+			final int index = _chainIndices.get(i);
+			final ArrayList<BlastFromThePastFactor> chain = _blastFromThePastChains.get(i);
+			
+			Port port = correspondingPort(chain.get(0).getPortForOtherVariable(), recycled, oldest);
+			for (int k = 0, nk = chain.size(); k < nk; ++k)
+			{
+				final BlastFromThePastFactor f = chain.get(k);
+				final Variable var = vsb.get(index - 1 - k);
+				changed.add(f.getVariableConnectedToBlast());
+				changed.add(var);
+				f.rebind(var, port);
+				port = f.getPort(0).getSiblingPort();
+			}
+		}
+		
+		for (ParameterBlastFromThePastHandler h : _parameter2blastFromThePastHandler.values())
+		{
+			h.rebind(recycled, oldest);
+		}
+		
+		for (Variable var : changed)
+		{
+			final ISolverVariable svar = var.getSolver();
+			if (svar != null)
+			{
+				svar.notifySiblingsChanged();
+			}
+		}
+	}
+	
+	/*
+	 * Given a variable port for an edge from a factor in nested graph {@code from}, returns the port for the
+	 * edge at the same position in nested graph {@code to}. The nested graphs are copies of the same
+	 * graph, so their nodes have the same local ids.
+	 */
+	private static Port correspondingPort(Port port, FactorGraph from, FactorGraph to)
+	{
+		final Factor factor = (Factor)port.getSiblingNode();
+		final int edgeNumber = port.getSiblingPort().getSiblingNumber();
+		
+		final ArrayList<FactorGraph> path = new ArrayList<>();
+		for (FactorGraph graph = requireNonNull(factor.getParentGraph()); graph != from;
+			graph = requireNonNull(graph.getParentGraph()))
+		{
+			path.add(graph);
+		}
+		
+		FactorGraph graph = to;
+		for (int i = path.size(); --i >= 0;)
+		{
+			graph = requireNonNull(graph.getGraphByLocalId(path.get(i).getLocalId()));
+		}
+		
+		final Factor factor2 = requireNonNull(graph.getFactorByLocalId(factor.getLocalId()));
+		return factor2.getPort(edgeNumber).getSiblingPort();
+	}
+	
+	/*
+	 * Returns the solver graph that runs the nested graphs in circular buffer mode, or throws if it does not
+	 * support that mode.
+	 */
+	private BPSolverGraph<?,?,?> requireCircularSolver()
+	{
+		final ISolverFactorGraph sgraph = _graph.getSolver();
+		if (!(sgraph instanceof BPSolverGraph) || _graph.hasParentGraph())
+		{
+			throw new DimpleException("Circular buffer mode requires a root graph with a belief propagation solver but '%s' has %s",
+				_graph, sgraph != null ? sgraph.getClass().getSimpleName() : "no solver");
+		}
+		if (sgraph.getSchedule() instanceof ResidualBPSchedule)
+		{
+			throw new DimpleException("Circular buffer mode does not support residual belief propagation schedules");
+		}
+		return (BPSolverGraph<?,?,?>)sgraph;
+	}
+	
+	/*
+	 * The nested graph with given index from the oldest, without reordering _nestedGraphs.
+	 */
+	FactorGraph getNestedGraph(int index)
+	{
+		final int size = _nestedGraphs.size();
+		final int i = index + _head;
+		return _nestedGraphs.get(i < size ? i : i - size);
+	}
+	
+	/*
+	 * Physically reorders _nestedGraphs so that the oldest graph comes first.
+	 */
+	private void normalize()
+	{
+		if (_head != 0)
+		{
+			Collections.rotate(_nestedGraphs, -_head);
+			_head = 0;
+		}
+	}
+
 	private @Nullable VariableStreamBase<?> getVariableStream(Variable var)
 	{
 		for (int i = 0; i < _variableStreams.size(); i++)
@@ -302,8 +514,72 @@ public class FactorGraphStream
 	}
 
 	
+	/**
+	 * The nested graphs in the stream, from oldest to newest.
+	 */
 	public ArrayList<FactorGraph> getNestedGraphs()
 	{
+		normalize();
 		return _nestedGraphs;
 	}
+	
+	/**
+	 * True if {@link #advance()} recycles the oldest nested graph in place.
+	 * @see #setCircularBuffer(boolean)
+	 * @since 0.08
+	 */
+	public boolean isCircularBuffer()
+	{
+		return _circularBuffer;
+	}
+	
+	/**
+	 * Selects how {@link #advance()} moves the stream forward.
+	 * <p>
+	 * By default, messages are copied from each nested graph to its predecessor and the variable streams
+	 * shift their state in the same way, so the cost of each step is proportional to the
+	 * {@linkplain #getBufferSize() buffer size}. In circular buffer mode, the nested graphs and stream
+	 * variables are instead treated as a ring: each step moves a head index forward, resets the messages
+	 * of the oldest nested graph and reconnects it to the newest stream variables, so that only the
+	 * edges of that one graph are touched. A stream variable therefore keeps its identity, but not its
+	 * index in the stream, when the stream advances.
+	 * <p>
+	 * The graph's schedule is not rebuilt when the stream advances. Instead the solver keeps the schedule
+	 * it had and applies each entry to the node that now occupies the stream position of the node the entry
+	 * names (see {@link CircularScheduleMap}), so the cost of each step only depends on the size of one
+	 * nested graph.
+	 * <p>
+	 * Circular buffer mode is only supported on a root graph with a belief propagation solver and a
+	 * schedule other than residual BP; this method and {@link #advance()} throw a {@link DimpleException}
+	 * otherwise. The variable streams used by this stream must not be shared with another
+	 * {@link FactorGraphStream}, and any custom schedule on the nested graph must not refer to its boundary
+	 * variables.
+	 * <p>
+	 * @since 0.08
+	 */
+	public void setCircularBuffer(boolean circular)
+	{
+		if (circular && !_circularBuffer)
+		{
+			requireCircularSolver();
+			for (FactorGraphStream other : _graph.getFactorGraphStreams())
+			{
+				if (other != this && !Collections.disjoint(other._variableStreams, _variableStreams))
+				{
+					throw new DimpleException("Cannot use circular buffer for stream whose variables are shared with another stream");
+				}
+			}
+		}
+		
+		if (!circular)
+		{
+			normalize();
+		}
+		
+		_circularBuffer = circular;
+		for (VariableStreamBase<?> vsb : _variableStreams)
+		{
+			vsb.setCircular(circular);
+		}
+	}
 }
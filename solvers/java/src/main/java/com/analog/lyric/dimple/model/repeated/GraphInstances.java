@@ -0,0 +1,97 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.model.repeated;
+
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.values.Value;
+
+/**
+ * Factor function representing many instances of one {@link GraphTemplate}.
+ * <p>
+ * A factor with this function is created by {@link FactorGraph#addGraphInstances}. Its siblings
+ * are the boundary variables of every instance in turn, so that sibling
+ * {@code instance * m + j} is boundary variable {@code j} of {@code instance}, where {@code m} is
+ * the template's {@linkplain GraphTemplate#getBoundaryVariableCount() boundary variable count}.
+ * <p>
+ * The sum-product and Gibbs solvers implement this factor with custom solver factors that run the
+ * template's internal variables and factors for all instances in batches, keeping only the
+ * per-instance messages or samples. Other solvers would have to build a factor table over the
+ * boundary variables of all of the instances, so they reject this factor with an error when
+ * their solver factors are created. The function's energy is the sum over instances of the
+ * energy of the instance's boundary values with its internal variables summed out.
+ * <p>
+ * @since 0.08
+ */
+public class GraphInstances extends FactorFunction
+{
+	/*-------
+	 * State
+	 */
+
+	private final GraphTemplate _template;
+	private final int _instanceCount;
+
+	/*--------------
+	 * Construction
+	 */
+
+	public GraphInstances(GraphTemplate template, int instanceCount)
+	{
+		super();
+		_template = template;
+		_instanceCount = instanceCount;
+	}
+
+	/*------------------------
+	 * FactorFunction methods
+	 */
+
+	@Override
+	public double evalEnergy(Value[] values)
+	{
+		final GraphTemplate template = _template;
+		final int nBoundary = template.getBoundaryVariableCount();
+		final int[] indices = new int[template.getVariableCount()];
+
+		double energy = 0;
+		for (int instance = 0, i = 0; instance < _instanceCount; ++instance)
+		{
+			for (int j = 0; j < nBoundary; ++j, ++i)
+			{
+				indices[j] = values[i].getIndex();
+			}
+			energy += template.getMarginalEnergy(indices, 0);
+		}
+
+		return energy;
+	}
+
+	/*-------------------------
+	 * GraphInstances methods
+	 */
+
+	public GraphTemplate getTemplate()
+	{
+		return _template;
+	}
+
+	public int getInstanceCount()
+	{
+		return _instanceCount;
+	}
+}
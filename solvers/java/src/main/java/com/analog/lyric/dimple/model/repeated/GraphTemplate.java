@@ -0,0 +1,671 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.model.repeated;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.util.misc.Internal;
+
+/**
+ * Immutable compiled form of a template graph that is shared by all of its instances.
+ * <p>
+ * A template is compiled once from a {@link FactorGraph} and may then be instantiated any number
+ * of times using {@link FactorGraph#addGraphInstances(GraphTemplate, Variable[][])}. All instances
+ * share the topology, factor tables, variable inputs and message schedule held here; solvers keep
+ * only the per-instance state (messages or sample values) in dense arrays indexed by instance.
+ * <p>
+ * Template variables are numbered with the boundary variables first, in the order of
+ * {@link FactorGraph#getBoundaryVariables()}, followed by the remaining owned variables. Edges
+ * are numbered in order of factor and then factor dimension. Each edge has a fixed offset into
+ * a per-instance block of {@link #getMessageLength()} message values, which holds one weight per
+ * element of the domain of the edge's variable.
+ * <p>
+ * The template graph must consist only of discrete variables and factors and must not contain
+ * nested subgraphs. Changes made to the template graph after compilation are not reflected here.
+ * <p>
+ * @since 0.08
+ */
+public final class GraphTemplate
+{
+	/*-------
+	 * State
+	 */
+
+	private final FactorGraph _graph;
+	private final Variable[] _variables;
+	private final int _boundaryCount;
+	private final int[] _domainSizes;
+
+	/**
+	 * Normalized input weights and corresponding energies of each variable. Only used for
+	 * non-boundary variables, whose inputs come from the graph in which the instance is placed.
+	 */
+	private final double[][] _inputWeights;
+	private final double[][] _inputEnergies;
+
+	private final int[][] _factorVariables;
+	private final int[][] _factorEdges;
+	private final int[][] _factorSparseIndices;
+	private final double[][] _factorSparseWeights;
+	private final double[][] _factorEnergies;
+	private final int[][] _factorStrides;
+
+	private final int[] _edgeFactor;
+	private final int[] _edgeVariable;
+	private final int[] _edgeOffset;
+	private final int _messageLength;
+
+	private final int[][] _variableEdges;
+	private final int[][] _variableFactors;
+
+	private final int[] _schedule;
+	private final boolean _isTree;
+
+	/*--------------
+	 * Construction
+	 */
+
+	/**
+	 * Compiles a template from {@code graph}.
+	 * <p>
+	 * @throws DimpleException if {@code graph} contains subgraphs or any variable that is not
+	 * {@link Discrete}.
+	 */
+	public GraphTemplate(FactorGraph graph)
+	{
+		if (!graph.getOwnedGraphs().isEmpty())
+		{
+			throw new DimpleException("Graph template '%s' must not contain nested subgraphs", graph);
+		}
+
+		_graph = graph;
+
+		// Number the variables, boundary variables first
+		final ArrayList<Variable> variables = new ArrayList<>(graph.getBoundaryVariables());
+		_boundaryCount = variables.size();
+		for (Variable variable : graph.getOwnedVariables())
+		{
+			if (!graph.isBoundaryVariable(variable))
+			{
+				variables.add(variable);
+			}
+		}
+		final int nVariables = variables.size();
+		_variables = variables.toArray(new Variable[nVariables]);
+
+		final Map<Variable,Integer> variableIndex = new HashMap<>(nVariables * 2);
+		_domainSizes = new int[nVariables];
+		_inputWeights = new double[nVariables][];
+		_inputEnergies = new double[nVariables][];
+		for (int v = 0; v < nVariables; ++v)
+		{
+			final Variable variable = _variables[v];
+			if (!(variable instanceof Discrete))
+			{
+				throw new DimpleException("Graph template variable '%s' is not discrete", variable);
+			}
+			final Discrete discrete = (Discrete)variable;
+			final int size = _domainSizes[v] = discrete.getDomain().size();
+			variableIndex.put(variable, v);
+
+			if (v >= _boundaryCount)
+			{
+				final double[] weights = new double[size];
+				if (discrete.hasFixedValue())
+				{
+					weights[discrete.getFixedValueIndex()] = 1;
+				}
+				else
+				{
+					System.arraycopy(discrete.getInput(), 0, weights, 0, size);
+				}
+				normalize(weights, 0, size, variable);
+				final double[] energies = new double[size];
+				for (int i = 0; i < size; ++i)
+				{
+					energies[i] = -Math.log(weights[i]);
+				}
+				_inputWeights[v] = weights;
+				_inputEnergies[v] = energies;
+			}
+		}
+
+		// Factors and edges
+		final Factor[] factors = graph.getOwnedFactors().toArray(new Factor[0]);
+		final int nFactors = factors.length;
+		_factorVariables = new int[nFactors][];
+		_factorEdges = new int[nFactors][];
+		_factorSparseIndices = new int[nFactors][];
+		_factorSparseWeights = new double[nFactors][];
+		_factorEnergies = new double[nFactors][];
+		_factorStrides = new int[nFactors][];
+
+		int nEdges = 0;
+		for (Factor factor : factors)
+		{
+			nEdges += factor.getSiblingCount();
+		}
+		_edgeFactor = new int[nEdges];
+		_edgeVariable = new int[nEdges];
+		_edgeOffset = new int[nEdges];
+
+		int edge = 0, offset = 0;
+		for (int f = 0; f < nFactors; ++f)
+		{
+			final Factor factor = factors[f];
+			final int nDims = factor.getSiblingCount();
+			final int[] vars = _factorVariables[f] = new int[nDims];
+			final int[] edges = _factorEdges[f] = new int[nDims];
+			final int[] strides = _factorStrides[f] = new int[nDims];
+
+			int stride = 1;
+			for (int d = nDims; --d>=0;)
+			{
+				final Integer v = variableIndex.get(factor.getSibling(d));
+				if (v == null)
+				{
+					throw new DimpleException("Graph template factor '%s' is connected to a variable outside the template",
+						factor);
+				}
+				vars[d] = v;
+				strides[d] = stride;
+				stride *= _domainSizes[v];
+			}
+
+			for (int d = 0; d < nDims; ++d, ++edge)
+			{
+				edges[d] = edge;
+				_edgeFactor[edge] = f;
+				_edgeVariable[edge] = vars[d];
+				_edgeOffset[edge] = offset;
+				offset += _domainSizes[vars[d]];
+			}
+
+			final IFactorTable table = factor.getFactorTable();
+			final int[][] sparseIndices = table.getIndicesSparseUnsafe();
+			final double[] sparseWeights = table.getWeightsSparseUnsafe();
+			final double[] sparseEnergies = table.getEnergiesSparseUnsafe();
+			final int nEntries = sparseWeights.length;
+			final int[] indices = _factorSparseIndices[f] = new int[nEntries * nDims];
+			final double[] energies = _factorEnergies[f] = new double[stride];
+			Arrays.fill(energies, Double.POSITIVE_INFINITY);
+			for (int si = 0; si < nEntries; ++si)
+			{
+				int joint = 0;
+				for (int d = 0; d < nDims; ++d)
+				{
+					final int index = sparseIndices[si][d];
+					indices[si * nDims + d] = index;
+					joint += index * strides[d];
+				}
+				energies[joint] = sparseEnergies[si];
+			}
+			_factorSparseWeights[f] = sparseWeights.clone();
+		}
+		_messageLength = offset;
+
+		// Adjacency of variables
+		final int[] edgeCounts = new int[nVariables];
+		for (int e = 0; e < nEdges; ++e)
+		{
+			++edgeCounts[_edgeVariable[e]];
+		}
+		_variableEdges = new int[nVariables][];
+		_variableFactors = new int[nVariables][];
+		for (int v = 0; v < nVariables; ++v)
+		{
+			_variableEdges[v] = new int[edgeCounts[v]];
+			edgeCounts[v] = 0;
+		}
+		for (int e = 0; e < nEdges; ++e)
+		{
+			final int v = _edgeVariable[e];
+			_variableEdges[v][edgeCounts[v]++] = e;
+		}
+		for (int v = 0; v < nVariables; ++v)
+		{
+			final int[] edges = _variableEdges[v];
+			int n = 0;
+			final int[] distinct = new int[edges.length];
+			for (int e : edges)
+			{
+				// Edges are in factor order, so repeated factors are adjacent
+				final int f = _edgeFactor[e];
+				if (n == 0 || distinct[n - 1] != f)
+				{
+					distinct[n++] = f;
+				}
+			}
+			_variableFactors[v] = Arrays.copyOf(distinct, n);
+		}
+
+		final int[] treeSchedule = buildTreeSchedule();
+		_isTree = treeSchedule != null;
+		_schedule = treeSchedule != null ? treeSchedule : buildFloodingSchedule();
+	}
+
+	/*--------------------
+	 * Template structure
+	 */
+
+	/**
+	 * The graph from which this template was compiled.
+	 */
+	public FactorGraph getGraph()
+	{
+		return _graph;
+	}
+
+	/**
+	 * The number of boundary variables, which are numbered from zero.
+	 */
+	public int getBoundaryVariableCount()
+	{
+		return _boundaryCount;
+	}
+
+	/**
+	 * The total number of variables in the template, including boundary variables.
+	 */
+	public int getVariableCount()
+	{
+		return _variables.length;
+	}
+
+	/**
+	 * The template variable with given index.
+	 */
+	public Variable getVariable(int variable)
+	{
+		return _variables[variable];
+	}
+
+	/**
+	 * The index of {@code variable} in the template or -1 if not a template variable.
+	 */
+	public int indexOf(Variable variable)
+	{
+		for (int v = _variables.length; --v>=0;)
+		{
+			if (_variables[v] == variable)
+			{
+				return v;
+			}
+		}
+		return -1;
+	}
+
+	public DiscreteDomain getDomain(int variable)
+	{
+		return (DiscreteDomain)_variables[variable].getDomain();
+	}
+
+	public int getDomainSize(int variable)
+	{
+		return _domainSizes[variable];
+	}
+
+	/**
+	 * Normalized input weights of non-boundary template variable. The returned array must not be modified.
+	 */
+	@Internal
+	public double[] getInputWeightsUnsafe(int variable)
+	{
+		return _inputWeights[variable];
+	}
+
+	/**
+	 * Input energies of non-boundary template variable. The returned array must not be modified.
+	 */
+	@Internal
+	public double[] getInputEnergiesUnsafe(int variable)
+	{
+		return _inputEnergies[variable];
+	}
+
+	public int getFactorCount()
+	{
+		return _factorVariables.length;
+	}
+
+	/**
+	 * The template variable index for each dimension of the factor. The returned array must not be modified.
+	 */
+	@Internal
+	public int[] getFactorVariablesUnsafe(int factor)
+	{
+		return _factorVariables[factor];
+	}
+
+	/**
+	 * The edge index for each dimension of the factor. The returned array must not be modified.
+	 */
+	@Internal
+	public int[] getFactorEdgesUnsafe(int factor)
+	{
+		return _factorEdges[factor];
+	}
+
+	/**
+	 * The domain indices of the sparse entries of the factor's table, in row-major order with one
+	 * row per entry. The returned array must not be modified.
+	 */
+	@Internal
+	public int[] getFactorSparseIndicesUnsafe(int factor)
+	{
+		return _factorSparseIndices[factor];
+	}
+
+	/**
+	 * The weights of the sparse entries of the factor's table. The returned array must not be modified.
+	 */
+	@Internal
+	public double[] getFactorSparseWeightsUnsafe(int factor)
+	{
+		return _factorSparseWeights[factor];
+	}
+
+	/**
+	 * The energy of {@code factor} given the domain index of every template variable
+	 * in {@code values}, starting at {@code valueOffset}.
+	 */
+	public double getFactorEnergy(int factor, int[] values, int valueOffset)
+	{
+		final int[] vars = _factorVariables[factor];
+		final int[] strides = _factorStrides[factor];
+		int joint = 0;
+		for (int d = vars.length; --d>=0;)
+		{
+			joint += values[valueOffset + vars[d]] * strides[d];
+		}
+		return _factorEnergies[factor][joint];
+	}
+
+	public int getEdgeCount()
+	{
+		return _edgeFactor.length;
+	}
+
+	public int getEdgeFactor(int edge)
+	{
+		return _edgeFactor[edge];
+	}
+
+	public int getEdgeVariable(int edge)
+	{
+		return _edgeVariable[edge];
+	}
+
+	/**
+	 * The offset of the message on {@code edge} within a block of {@link #getMessageLength()} values.
+	 */
+	public int getEdgeOffset(int edge)
+	{
+		return _edgeOffset[edge];
+	}
+
+	/**
+	 * The number of message values needed to hold one message in each direction on every edge of
+	 * a single instance.
+	 */
+	public int getMessageLength()
+	{
+		return _messageLength;
+	}
+
+	/**
+	 * The edges connected to the template variable. The returned array must not be modified.
+	 */
+	@Internal
+	public int[] getVariableEdgesUnsafe(int variable)
+	{
+		return _variableEdges[variable];
+	}
+
+	/**
+	 * The distinct factors connected to the template variable. The returned array must not be modified.
+	 */
+	@Internal
+	public int[] getVariableFactorsUnsafe(int variable)
+	{
+		return _variableFactors[variable];
+	}
+
+	/*----------
+	 * Schedule
+	 */
+
+	/**
+	 * True if the template graph is a forest, in which case one pass of the {@linkplain #getScheduleUnsafe()
+	 * schedule} computes exact messages for an instance given the messages into its boundary variables.
+	 */
+	public boolean isTree()
+	{
+		return _isTree;
+	}
+
+	/**
+	 * The message schedule shared by all instances.
+	 * <p>
+	 * Each entry is the index of an edge shifted left by one bit, with the low bit set if the message
+	 * is from the factor to the variable and clear if from the variable to the factor. For a
+	 * {@linkplain #isTree() tree} this is a leaves-to-root pass followed by a root-to-leaves pass,
+	 * otherwise it is all variable-to-factor messages followed by all factor-to-variable messages.
+	 * <p>
+	 * The returned array must not be modified.
+	 */
+	@Internal
+	public int[] getScheduleUnsafe()
+	{
+		return _schedule;
+	}
+
+	/*--------------
+	 * Marginalization
+	 */
+
+	/**
+	 * The energy of the boundary variable values in {@code values} with all other template variables
+	 * summed out.
+	 * <p>
+	 * {@code values} must hold the domain index of each template variable starting at {@code valueOffset}.
+	 * Entries for non-boundary variables are used as scratch space.
+	 * <p>
+	 * This enumerates every joint value of the non-boundary variables and is intended only for
+	 * small templates.
+	 */
+	public double getMarginalEnergy(int[] values, int valueOffset)
+	{
+		final int nVariables = _variables.length;
+		for (int v = _boundaryCount; v < nVariables; ++v)
+		{
+			values[valueOffset + v] = 0;
+		}
+
+		double minEnergy = Double.POSITIVE_INFINITY;
+		double sum = 0;
+		while (true)
+		{
+			double energy = 0;
+			for (int v = _boundaryCount; v < nVariables; ++v)
+			{
+				energy += _inputEnergies[v][values[valueOffset + v]];
+			}
+			for (int f = _factorVariables.length; --f>=0;)
+			{
+				energy += getFactorEnergy(f, values, valueOffset);
+			}
+
+			// Running log-sum-exp relative to the smallest energy seen so far
+			if (energy < minEnergy)
+			{
+				sum = sum * Math.exp(energy - minEnergy) + 1;
+				minEnergy = energy;
+			}
+			else if (energy < Double.POSITIVE_INFINITY)
+			{
+				sum += Math.exp(minEnergy - energy);
+			}
+
+			int v = _boundaryCount;
+			for (; v < nVariables; ++v)
+			{
+				if (++values[valueOffset + v] < _domainSizes[v])
+				{
+					break;
+				}
+				values[valueOffset + v] = 0;
+			}
+			if (v == nVariables)
+			{
+				break;
+			}
+		}
+
+		return minEnergy < Double.POSITIVE_INFINITY ? minEnergy - Math.log(sum) : Double.POSITIVE_INFINITY;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private static void normalize(double[] weights, int offset, int length, Variable variable)
+	{
+		double sum = 0;
+		for (int i = offset, end = offset + length; i < end; ++i)
+		{
+			sum += weights[i];
+		}
+		if (!(sum > 0))
+		{
+			throw new DimpleException("Input of graph template variable '%s' has no positive weights", variable);
+		}
+		for (int i = offset, end = offset + length; i < end; ++i)
+		{
+			weights[i] /= sum;
+		}
+	}
+
+	private int[] buildFloodingSchedule()
+	{
+		final int nEdges = _edgeFactor.length;
+		final int[] schedule = new int[nEdges * 2];
+		for (int e = 0; e < nEdges; ++e)
+		{
+			schedule[e] = e << 1;
+			schedule[nEdges + e] = (e << 1) | 1;
+		}
+		return schedule;
+	}
+
+	/**
+	 * Builds two-pass schedule if template is a forest, otherwise returns null.
+	 */
+	private @Nullable int[] buildTreeSchedule()
+	{
+		final int nVariables = _variables.length;
+		final int nFactors = _factorVariables.length;
+		final int nEdges = _edgeFactor.length;
+
+		// Nodes are numbered with variables first followed by factors
+		final int[] parentEdge = new int[nVariables + nFactors];
+		Arrays.fill(parentEdge, -2);
+		final int[] order = new int[nVariables + nFactors];
+		int orderSize = 0;
+		int treeEdges = 0;
+
+		for (int root = 0; root < nVariables; ++root)
+		{
+			if (parentEdge[root] != -2)
+			{
+				continue;
+			}
+			parentEdge[root] = -1;
+			order[orderSize++] = root;
+			for (int head = orderSize - 1; head < orderSize; ++head)
+			{
+				final int node = order[head];
+				final int[] edges = node < nVariables ? _variableEdges[node] : _factorEdges[node - nVariables];
+				for (int e : edges)
+				{
+					if (e == parentEdge[node])
+					{
+						continue;
+					}
+					final int other = node < nVariables ? nVariables + _edgeFactor[e] : _edgeVariable[e];
+					if (parentEdge[other] != -2)
+					{
+						// Reached a node a second time, so there is a cycle.
+						return null;
+					}
+					parentEdge[other] = e;
+					order[orderSize++] = other;
+					++treeEdges;
+				}
+			}
+		}
+
+		if (treeEdges != nEdges)
+		{
+			// Some factor was not reachable from any variable, which can only happen for a factor
+			// without edges. Flooding handles this trivially.
+			return null;
+		}
+
+		final int[] schedule = new int[nEdges * 2];
+		int i = 0;
+
+		// Leaves to root
+		for (int j = orderSize; --j>=0;)
+		{
+			final int node = order[j];
+			final int e = parentEdge[node];
+			if (e >= 0)
+			{
+				schedule[i++] = node < nVariables ? e << 1 : (e << 1) | 1;
+			}
+		}
+
+		// Root to leaves
+		for (int j = 0; j < orderSize; ++j)
+		{
+			final int node = order[j];
+			final int[] edges = node < nVariables ? _variableEdges[node] : _factorEdges[node - nVariables];
+			for (int e : edges)
+			{
+				if (e != parentEdge[node])
+				{
+					schedule[i++] = node < nVariables ? e << 1 : (e << 1) | 1;
+				}
+			}
+		}
+
+		return schedule;
+	}
+}
@@ -20,6 +20,7 @@ import static java.util.Objects.*;
 
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Objects;
 
 import org.eclipse.jdt.annotation.Nullable;
@@ -39,6 +40,13 @@ public abstract class VariableStreamBase<V extends Variable> implements IVariabl
 	private ArrayList<VariableStreamSlice<V>> _slices = new ArrayList<>();
 	private VariableStreamSlice<V> _slice;
 	private final @Nullable String _namePrefix;
+	
+	/**
+	 * Index in {@link #_variables} of the oldest variable in the stream. Always zero unless
+	 * {@link #_circular} is set.
+	 */
+	private int _head = 0;
+	private boolean _circular = false;
 
 	protected VariableStreamBase(Domain domain, @Nullable String namePrefix)
 	{
@@ -58,9 +66,13 @@ public abstract class VariableStreamBase<V extends Variable> implements IVariabl
 		return _variables.size();
 	}
 	
+	/**
+	 * The stream's variables, from oldest to newest.
+	 */
 	@SuppressWarnings("unchecked")
 	public V [] getVariables()
 	{
+		normalize();
 		return _variables.toArray((V[])Array.newInstance(variableType(), _variables.size()));
 	}
 	
@@ -69,15 +81,38 @@ public abstract class VariableStreamBase<V extends Variable> implements IVariabl
 		return _variables.contains(vb);
 	}
 	
+	/**
+	 * Pushes the belief of the oldest variable in the stream to the {@linkplain #getDataSink() data sink},
+	 * if any, and advances the stream by one step, giving the newest variable fresh state and the next input
+	 * from the {@linkplain #getDataSource() data source}.
+	 * <p>
+	 * Normally this shifts the inputs and solver state of each variable to its predecessor, so its cost is
+	 * proportional to the number of variables in the stream. When the stream is used by a
+	 * {@link FactorGraphStream} in {@linkplain FactorGraphStream#setCircularBuffer circular buffer mode},
+	 * the oldest variable instead becomes the newest one and nothing else is touched.
+	 */
 	public void advanceState()
 	{
 		final IDataSink dataSink = _dataSink;
 		if (dataSink != null)
 		{
-			Object output = _variables.get(0).getBeliefObject();
+			Object output = _variables.get(_head).getBeliefObject();
 			dataSink.push(Objects.requireNonNull(output));
 		}
 		
+		if (_circular)
+		{
+			final V newest = _variables.get(_head);
+			if (++_head == _variables.size())
+			{
+				_head = 0;
+			}
+			requireNonNull(newest.getSolver()).createNonEdgeSpecificState();
+			final IDataSource dataSource = _dataSource;
+			newest.setInputObject(dataSource != null ? dataSource.getNext() : null);
+			return;
+		}
+		
 		for (int i = 0; i < _variables.size()-1; i++)
 		{
 			_variables.get(i).moveInputs(_variables.get(i+1));
@@ -128,6 +163,7 @@ public abstract class VariableStreamBase<V extends Variable> implements IVariabl
 		_dataSource = source;
 		
 		//fill variables with data
+		normalize();
 		for (Variable vb : _variables)
 		{
 			if (!source.hasNext())
@@ -181,6 +217,7 @@ public abstract class VariableStreamBase<V extends Variable> implements IVariabl
 			return false;
 		}
 
+		normalize();
 		for (int i = _variables.size(); i <= index; ++i)
 		{
 			if (!hasNext())
@@ -210,7 +247,15 @@ public abstract class VariableStreamBase<V extends Variable> implements IVariabl
 		if (!createIfDoesntExist && index >= _variables.size())
 			throw new DimpleException("A variable has not yet been instantiated for the specified index: " + index);
 		
-		for (int i = _variables.size(); i <= index; ++i)
+		final int size = _variables.size();
+		if (index < size)
+		{
+			final int i = index + _head;
+			return _variables.get(i < size ? i : i - size);
+		}
+		
+		normalize();
+		for (int i = size; i <= index; ++i)
 		{
 			_variables.add(createVariable(i));
 		}
@@ -243,11 +288,43 @@ public abstract class VariableStreamBase<V extends Variable> implements IVariabl
 
 	int indexOf(Variable vb)
 	{
-		return _variables.indexOf(vb);
+		final int i = _variables.indexOf(vb);
+		if (i < _head)
+		{
+			return i < 0 ? i : i + _variables.size() - _head;
+		}
+		return i - _head;
+	}
+	
+	/**
+	 * Enables or disables circular buffer mode, in which {@link #advanceState()} rotates the stream's
+	 * head instead of shifting state between its variables.
+	 * @since 0.08
+	 */
+	void setCircular(boolean circular)
+	{
+		if (!circular)
+		{
+			normalize();
+		}
+		_circular = circular;
+	}
+	
+	/**
+	 * Physically reorders {@link #_variables} so that the oldest variable comes first.
+	 */
+	private void normalize()
+	{
+		if (_head != 0)
+		{
+			Collections.rotate(_variables, -_head);
+			_head = 0;
+		}
 	}
 	
 	void cleanupUnusedVariables()
 	{
+		normalize();
 
 		for(int i =  _variables.size()-1; i >= 0; i--)
 		{
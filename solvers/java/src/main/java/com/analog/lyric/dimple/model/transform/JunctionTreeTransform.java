@@ -50,6 +50,7 @@ import com.analog.lyric.dimple.model.domains.JointDiscreteDomain;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.transform.JunctionTreeTransformMap.AddedJointDiscreteVariable;
 import com.analog.lyric.dimple.model.transform.JunctionTreeTransformMap.AddedJointVariable;
+import com.analog.lyric.dimple.model.transform.JunctionTreeTransformMap.ConditionedClique;
 import com.analog.lyric.dimple.model.transform.VariableEliminator.CostFunction;
 import com.analog.lyric.dimple.model.transform.VariableEliminator.Ordering;
 import com.analog.lyric.dimple.model.transform.VariableEliminator.Stats;
@@ -145,6 +146,7 @@ public class JunctionTreeTransform
 	public static final int DEFAULT_MAX_TRANSFORMATION_ATTEMPTS = 10;
 	
 	private int _nEliminationAttempts = DEFAULT_MAX_TRANSFORMATION_ATTEMPTS;
+	private int _nEliminationThreads = 1;
 	private boolean _useConditioning = false;
 	private CostFunction[] _costFunctions = {};
 	private Random _rand = new Random();
@@ -191,8 +193,8 @@ public class JunctionTreeTransform
 	
 	/**
 	 * If true, then the transformation will condition out any variables that have a fixed value.
-	 * This will produce a more efficient graph but will prevent it from being reused if the fixed
-	 * value changes.
+	 * This will produce a more efficient graph. If only the fixed values change, the transformation
+	 * can be updated in place, but it must be recomputed if a different set of variables has fixed values.
 	 * <p>
 	 * False by default.
 	 * @see #useConditioning(boolean)
@@ -277,6 +279,35 @@ public class JunctionTreeTransform
 		_nEliminationAttempts = attempts;
 		return this;
 	}
+	
+	/**
+	 * Specifies the maximum number of {@linkplain #maxTransformationAttempts() transformation attempts}
+	 * to run concurrently.
+	 * <p>
+	 * If greater than one, the variable elimination ordering will be computed using
+	 * {@link VariableEliminator#generateParallel(VariableEliminator, int, Stats, int, CostFunction...)},
+	 * which gives the same result for a given {@link #random()} seed regardless of the number of threads.
+	 * <p>
+	 * Default value is one.
+	 * <p>
+	 * @see #variableEliminatorThreads(int)
+	 * @since 0.08
+	 */
+	public int variableEliminatorThreads()
+	{
+		return _nEliminationThreads;
+	}
+	
+	/**
+	 * Sets {@link #variableEliminatorThreads()} to the specified value.
+	 * @return this
+	 * @since 0.08
+	 */
+	public JunctionTreeTransform variableEliminatorThreads(int nThreads)
+	{
+		_nEliminationThreads = nThreads;
+		return this;
+	}
 
 	/*------------------------------
 	 * Inner implementation classes
@@ -304,6 +335,12 @@ public class JunctionTreeTransform
 		 */
 		private @Nullable Factor _mergedFactor = null;
 		
+		/**
+		 * If {@link #joinMultivariateEdges()} rewrote the merged factor, this maps each dimension of the
+		 * new factor to the dimensions of the original merged factor.
+		 */
+		private @Nullable int[][] _edgeFromMerged = null;
+		
 		//
 		// Temporary spanning tree state
 		//
@@ -402,7 +439,6 @@ public class JunctionTreeTransform
 			final Discrete[] newVariables = new Discrete[nEdges];
 			final DiscreteDomain[] newDomains = new DiscreteDomain[nEdges];
 			final int[][] newFromOld = new int[nEdges][];
-			final int[][] scratchIndices = new int[nEdges][];
 			
 			for (int edgei = 0; edgei < nEdges; ++edgei)
 			{
@@ -419,56 +455,13 @@ public class JunctionTreeTransform
 					a[vari] = indexOfVariable(edgeVar);
 				}
 				newFromOld[edgei] = a;
-				if (nEdgeVars > 1)
-				{
-					scratchIndices[edgei] = new int[nEdgeVars];
-				}
 			}
 			
 			// Compute new factor table energies and indices.
 			final Factor mergedFactor = requireNonNull(_mergedFactor);
-			final IFactorTable oldFactorTable = requireNonNull(mergedFactor.getFactorTable());
-			final int nEntries = oldFactorTable.countNonZeroWeights();
-
-			final int[][] indices = new int[nEntries][];
-			final double[] energies = new double[nEntries];
-			
-			final IFactorTableIterator oldIter = oldFactorTable.iterator();
-			int si = 0;
-			while (oldIter.advance())
-			{
-				final int[] oldIndices = oldIter.indicesUnsafe();
-				final int[] newIndices = new int[nEdges];
-				
-				for (int edgei = 0; edgei < nEdges; ++edgei)
-				{
-					final CliqueEdge edge = edges[edgei];
-					final int nEdgeVars = edge._variables.length;
-					final int[] map = newFromOld[edgei];
-					
-					if (nEdgeVars == 1)
-					{
-						newIndices[edgei] = oldIndices[map[0]];
-					}
-					else
-					{
-						final int[] scratch = scratchIndices[edgei];
-						for (int vari = 0; vari < nEdgeVars; ++vari)
-						{
-							scratch[vari] = oldIndices[map[vari]];
-						}
-						newIndices[edgei] = ((JointDiscreteDomain<?>)newDomains[edgei]).getIndexFromIndices(scratch);
-					}
-				}
-
-				energies[si] = oldIter.energy();
-				indices[si] = newIndices;
-				++si;
-			}
-			
-			// Create the new table
 			final IFactorTable newFactorTable = FactorTable.create(newDomains);
-			newFactorTable.setEnergiesSparse(indices, energies);
+			reindexTable(requireNonNull(mergedFactor.getFactorTable()), newFactorTable, newFromOld);
+			_edgeFromMerged = newFromOld;
 
 			// Remove the old factor
 			FactorGraph graph = requireNonNull(mergedFactor.getParentGraph());
@@ -766,7 +759,14 @@ public class JunctionTreeTransform
 		
 		for (Clique clique : cliques)
 		{
-			clique.joinMultivariateEdges();
+			final Factor mergedFactor = clique._mergedFactor;
+			final ConditionedClique conditionedClique =
+				mergedFactor != null ? transformMap.addConditionedClique(clique._factors, mergedFactor) : null;
+			if (clique.joinMultivariateEdges() && conditionedClique != null)
+			{
+				conditionedClique.setEdgeTable(requireNonNull(clique._mergedFactor).getFactorTable(),
+					requireNonNull(clique._edgeFromMerged));
+			}
 			for (Factor cliqueFactor : clique._factors)
 			{
 				Factor sourceFactor = (Factor) old2new.inverse().get(cliqueFactor);
@@ -782,6 +782,71 @@ public class JunctionTreeTransform
 		return transformMap;
 	}
 
+	//-----------------
+	// Package methods
+	//
+	
+	/**
+	 * Sets the entries of {@code newTable} from those of {@code oldTable} where each dimension of
+	 * the new table is either a single dimension of the old table or a {@link JointDiscreteDomain}
+	 * over several of them, as specified by {@code newFromOld}.
+	 * <p>
+	 * Used when rewriting a merged clique factor to connect to its joint edge variables.
+	 */
+	static void reindexTable(IFactorTable oldTable, IFactorTable newTable, int[][] newFromOld)
+	{
+		final int nEdges = newFromOld.length;
+		final DiscreteDomain[] newDomains = newTable.getDomainIndexer().toArray(new DiscreteDomain[nEdges]);
+		final int[][] scratchIndices = new int[nEdges][];
+		for (int edgei = 0; edgei < nEdges; ++edgei)
+		{
+			final int nEdgeVars = newFromOld[edgei].length;
+			if (nEdgeVars > 1)
+			{
+				scratchIndices[edgei] = new int[nEdgeVars];
+			}
+		}
+		
+		final int nEntries = oldTable.countNonZeroWeights();
+
+		final int[][] indices = new int[nEntries][];
+		final double[] energies = new double[nEntries];
+		
+		final IFactorTableIterator oldIter = oldTable.iterator();
+		int si = 0;
+		while (oldIter.advance())
+		{
+			final int[] oldIndices = oldIter.indicesUnsafe();
+			final int[] newIndices = new int[nEdges];
+			
+			for (int edgei = 0; edgei < nEdges; ++edgei)
+			{
+				final int[] map = newFromOld[edgei];
+				final int nEdgeVars = map.length;
+				
+				if (nEdgeVars == 1)
+				{
+					newIndices[edgei] = oldIndices[map[0]];
+				}
+				else
+				{
+					final int[] scratch = scratchIndices[edgei];
+					for (int vari = 0; vari < nEdgeVars; ++vari)
+					{
+						scratch[vari] = oldIndices[map[vari]];
+					}
+					newIndices[edgei] = ((JointDiscreteDomain<?>)newDomains[edgei]).getIndexFromIndices(scratch);
+				}
+			}
+
+			energies[si] = oldIter.energy();
+			indices[si] = newIndices;
+			++si;
+		}
+		
+		newTable.setEnergiesSparse(indices, energies);
+	}
+	
 	//-----------------
 	// Private methods
 	//
@@ -802,6 +867,12 @@ public class JunctionTreeTransform
 		
 		VariableEliminator eliminator = new VariableEliminator(model, _useConditioning, _rand);
 		
+		if (_nEliminationThreads > 1)
+		{
+			return VariableEliminator.generateParallel(eliminator, _nEliminationAttempts, threshold,
+				_nEliminationThreads, _costFunctions);
+		}
+		
 		return VariableEliminator.generate(eliminator, _nEliminationAttempts, threshold, _costFunctions);
 	}
 
@@ -830,7 +901,17 @@ public class JunctionTreeTransform
 
 			for (Factor factor : factors.values())
 			{
+				// Remember original variables and table so that the conditioned table can be
+				// recomputed if only the fixed values change.
+				final Variable[] factorVariables = new Variable[factor.getSiblingCount()];
+				for (int j = 0; j < factorVariables.length; ++j)
+				{
+					factorVariables[j] = factor.getSibling(j);
+				}
+				final IFactorTable factorTable = factor.isDiscrete() ? factor.getFactorTable() : null;
+				
 				factor.removeFixedVariables();
+				transformMap.addConditionedFactor(factor, factorVariables, factorTable);
 			}
 		}
 		
@@ -18,16 +18,21 @@ package com.analog.lyric.dimple.model.transform;
 
 import static java.util.Objects.*;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
 import org.eclipse.jdt.annotation.Nullable;
 
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.TableFactorFunction;
 import com.analog.lyric.dimple.model.core.FactorGraph;
 import com.analog.lyric.dimple.model.domains.Domain;
 import com.analog.lyric.dimple.model.domains.JointDiscreteDomain;
@@ -62,6 +67,29 @@ public class JunctionTreeTransformMap
 	private final LinkedHashMap<Variable, AddedJointVariable<?>> _addedDeterministicVariables;
 	private final Set<Variable> _conditionedVariables;
 	
+	/**
+	 * Maps target factors from which conditioned variables were removed to the information needed to
+	 * recompute their tables when the conditioned values change.
+	 */
+	private final Map<Factor, ConditionedFactor> _conditionedFactors;
+	
+	/**
+	 * Merged clique factors that incorporate one or more of the {@link #_conditionedFactors}.
+	 */
+	private final List<ConditionedClique> _conditionedCliques;
+	
+	/**
+	 * False if some conditioned factor cannot be recomputed in place, in which case
+	 * {@link #updateConditionedValues()} will always fail.
+	 */
+	private boolean _conditionedValuesUpdatable = true;
+	
+	/**
+	 * Incremented each time {@link #updateConditionedValues()} changes the values of the
+	 * conditioned variables in the target model.
+	 */
+	private int _conditionedValuesVersion = 0;
+	
 	/**
 	 * Represents a variable that joins two or more other variables along an edge between
 	 * two factors in the target model to ensure that it is singly connected. There may be
@@ -186,6 +214,127 @@ public class JunctionTreeTransformMap
 		
 	}
 	
+	/**
+	 * Target factor from which conditioned variables were removed.
+	 * <p>
+	 * Holds the original table and variables so that the factor's conditioned table can be
+	 * recomputed in place when the fixed values change.
+	 */
+	static final class ConditionedFactor
+	{
+		private final IFactorTable _sourceTable;
+		private final Variable[] _variables;
+		private final boolean[] _conditioned;
+		private final IFactorTable _targetTable;
+		private boolean _changed = false;
+		
+		private ConditionedFactor(IFactorTable sourceTable, Variable[] variables, IFactorTable targetTable)
+		{
+			final int n = variables.length;
+			_sourceTable = sourceTable;
+			_variables = variables;
+			_conditioned = new boolean[n];
+			for (int i = 0; i < n; ++i)
+			{
+				_conditioned[i] = variables[i].hasFixedValue();
+			}
+			_targetTable = targetTable;
+		}
+		
+		/**
+		 * Recomputes target table if any of its conditioned variables are in {@code changedVariables}.
+		 */
+		private void update(Set<Variable> changedVariables)
+		{
+			_changed = false;
+			
+			final int n = _variables.length;
+			for (int i = 0; i < n; ++i)
+			{
+				if (_conditioned[i] && changedVariables.contains(_variables[i]))
+				{
+					_changed = true;
+					break;
+				}
+			}
+			
+			if (_changed)
+			{
+				final int[] valueIndices = new int[n];
+				for (int i = 0; i < n; ++i)
+				{
+					valueIndices[i] = _conditioned[i] ? _variables[i].asDiscreteVariable().getFixedValueIndex() : -1;
+				}
+				_targetTable.copy(_sourceTable.createTableConditionedOn(valueIndices));
+			}
+		}
+	}
+	
+	/**
+	 * Merged clique factor in the target model that incorporates one or more {@link ConditionedFactor}s.
+	 */
+	static final class ConditionedClique
+	{
+		private final ConditionedFactor[] _factors;
+		
+		/**
+		 * The joint function produced by merging the clique's factors or null if the clique
+		 * consisted of a single factor that did not need to be merged.
+		 */
+		private final @Nullable FactorFunction _mergedFunction;
+		
+		private final IFactorTable _mergedTable;
+		
+		/**
+		 * If the merged factor was rewritten to connect to joint edge variables, this is the rewritten
+		 * factor's table and the mapping from its dimensions to those of {@link #_mergedTable}.
+		 */
+		private @Nullable IFactorTable _edgeTable = null;
+		private @Nullable int[][] _edgeFromMerged = null;
+		
+		private ConditionedClique(ConditionedFactor[] factors, @Nullable FactorFunction mergedFunction,
+			IFactorTable mergedTable)
+		{
+			_factors = factors;
+			_mergedFunction = mergedFunction;
+			_mergedTable = mergedTable;
+		}
+		
+		/**
+		 * Records that the merged factor was replaced by one whose table was computed from
+		 * the merged table by {@link JunctionTreeTransform#reindexTable}.
+		 */
+		void setEdgeTable(IFactorTable edgeTable, int[][] edgeFromMerged)
+		{
+			_edgeTable = edgeTable;
+			_edgeFromMerged = edgeFromMerged;
+		}
+		
+		private void update()
+		{
+			boolean changed = false;
+			for (ConditionedFactor factor : _factors)
+			{
+				changed |= factor._changed;
+			}
+			
+			if (changed)
+			{
+				final FactorFunction mergedFunction = _mergedFunction;
+				if (mergedFunction != null)
+				{
+					_mergedTable.populateFromFunction(mergedFunction);
+				}
+				
+				final IFactorTable edgeTable = _edgeTable;
+				if (edgeTable != null)
+				{
+					JunctionTreeTransform.reindexTable(_mergedTable, edgeTable, requireNonNull(_edgeFromMerged));
+				}
+			}
+		}
+	}
+	
 	/*--------------
 	 * Construction
 	 */
@@ -200,6 +349,8 @@ public class JunctionTreeTransformMap
 		_sourceToTargetFactors = identity? null : new HashMap<Factor,Factor>(source.getFactorCount());
 		_addedDeterministicVariables = new LinkedHashMap<Variable, AddedJointVariable<?>>();
 		_conditionedVariables = new LinkedHashSet<Variable>();
+		_conditionedFactors = new LinkedHashMap<Factor, ConditionedFactor>();
+		_conditionedCliques = new ArrayList<ConditionedClique>();
 	}
 	
 	protected JunctionTreeTransformMap(FactorGraph source)
@@ -361,6 +512,17 @@ public class JunctionTreeTransformMap
 		return _sourceVersion;
 	}
 	
+	/**
+	 * Counts the number of times {@link #updateConditionedValues()} has changed the fixed values of
+	 * the conditioned variables in the {@link #target()} model. Can be used to invalidate state
+	 * that depends on those values.
+	 * @since 0.08
+	 */
+	public int conditionedValuesVersion()
+	{
+		return _conditionedValuesVersion;
+	}
+	
 	/**
 	 * The generated target model generated from {@link #source()} by {@link JunctionTreeTransform}.
 	 * <p>
@@ -374,6 +536,68 @@ public class JunctionTreeTransformMap
 		return _targetModel;
 	}
 	
+	/**
+	 * Updates the {@link #target()} model to reflect new fixed values of the {@link #conditionedVariables()}
+	 * without recomputing the transformation.
+	 * <p>
+	 * When only the values of conditioned variables have changed, the structure of the junction tree
+	 * is unaffected, so this simply recomputes the tables of the factors that were conditioned on
+	 * the changed variables and of the merged clique factors that include them.
+	 * <p>
+	 * @return true if the transform map {@link #isValid()} after the update, false if the transformation
+	 * must be recomputed because the structure of the {@link #source()} model has changed, a conditioned
+	 * variable no longer has a fixed value or the conditioned factors do not support updating.
+	 * @since 0.08
+	 */
+	public boolean updateConditionedValues()
+	{
+		if (_sourceVersion != _sourceModel.structureVersion() || !_conditionedValuesUpdatable)
+		{
+			return false;
+		}
+
+		final Set<Variable> changedVariables = new LinkedHashSet<Variable>();
+		for (Variable sourceVar : _conditionedVariables)
+		{
+			final Object value = sourceVar.getFixedValueObject();
+			if (value == null)
+			{
+				return false;
+			}
+			final Variable targetVar = sourceToTargetVariable(sourceVar);
+			if (!value.equals(targetVar.getFixedValueObject()))
+			{
+				changedVariables.add(targetVar);
+			}
+		}
+		
+		if (!changedVariables.isEmpty())
+		{
+			for (Variable sourceVar : _conditionedVariables)
+			{
+				final Variable targetVar = sourceToTargetVariable(sourceVar);
+				if (changedVariables.contains(targetVar))
+				{
+					targetVar.setFixedValueFromObject(sourceVar.getFixedValueAsObject());
+				}
+			}
+			
+			for (ConditionedFactor factor : _conditionedFactors.values())
+			{
+				factor.update(changedVariables);
+			}
+			
+			for (ConditionedClique clique : _conditionedCliques)
+			{
+				clique.update();
+			}
+			
+			++_conditionedValuesVersion;
+		}
+		
+		return true;
+	}
+	
 	/*------------------
 	 * Internal methods
 	 */
@@ -423,6 +647,64 @@ public class JunctionTreeTransformMap
 		_conditionedVariables.add(variable);
 	}
 
+	/**
+	 * Records a target factor from which conditioned variables have been removed.
+	 * 
+	 * @param targetFactor is the factor after invoking {@link Factor#removeFixedVariables()}.
+	 * @param variables are the variables of the factor prior to removing the conditioned variables.
+	 * @param sourceTable is the factor's table prior to removing the conditioned variables or null
+	 * if not a discrete factor.
+	 */
+	void addConditionedFactor(Factor targetFactor, Variable[] variables, @Nullable IFactorTable sourceTable)
+	{
+		if (sourceTable != null && targetFactor.getFactorFunction() instanceof TableFactorFunction)
+		{
+			_conditionedFactors.put(targetFactor,
+				new ConditionedFactor(sourceTable, variables, targetFactor.getFactorTable()));
+		}
+		else
+		{
+			_conditionedValuesUpdatable = false;
+		}
+	}
+	
+	/**
+	 * Records a merged clique factor if it incorporates any conditioned factors.
+	 * 
+	 * @param factors are the target factors that were merged to form {@code mergedFactor}.
+	 * @param mergedFactor is the factor produced by {@link FactorGraph#join(Variable[], Factor...)}.
+	 * @return the new clique record or null if none of the {@code factors} were conditioned.
+	 */
+	@Nullable ConditionedClique addConditionedClique(Factor[] factors, Factor mergedFactor)
+	{
+		final List<ConditionedFactor> conditionedFactors = new ArrayList<ConditionedFactor>(factors.length);
+		boolean isMerged = true;
+		for (Factor factor : factors)
+		{
+			final ConditionedFactor conditionedFactor = _conditionedFactors.get(factor);
+			if (conditionedFactor != null)
+			{
+				conditionedFactors.add(conditionedFactor);
+			}
+			if (factor == mergedFactor)
+			{
+				isMerged = false;
+			}
+		}
+		
+		if (conditionedFactors.isEmpty())
+		{
+			return null;
+		}
+		
+		final ConditionedClique clique = new ConditionedClique(
+			conditionedFactors.toArray(new ConditionedFactor[conditionedFactors.size()]),
+			isMerged ? mergedFactor.getFactorFunction() : null,
+			mergedFactor.getFactorTable());
+		_conditionedCliques.add(clique);
+		return clique;
+	}
+
 	void addDeterministicVariable(AddedJointVariable<?> addedVar)
 	{
 		_addedDeterministicVariables.put(addedVar.getVariable(), addedVar);
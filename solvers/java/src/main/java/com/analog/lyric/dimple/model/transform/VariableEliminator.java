@@ -24,28 +24,30 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.jcip.annotations.Immutable;
 
 import org.eclipse.jdt.annotation.Nullable;
 
+import cern.colt.list.IntArrayList;
+
 import com.analog.lyric.collect.BinaryHeap;
 import com.analog.lyric.collect.IHeap;
 import com.analog.lyric.collect.IHeap.IEntry;
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.model.core.FactorGraph;
 import com.analog.lyric.dimple.model.factors.Factor;
-import com.analog.lyric.dimple.model.factors.FactorBase;
 import com.analog.lyric.dimple.model.factors.FactorList;
 import com.analog.lyric.dimple.model.variables.Variable;
 import com.analog.lyric.dimple.model.variables.VariableList;
+import com.analog.lyric.dimple.solvers.core.multithreading.ThreadPool;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Sets;
 
@@ -472,6 +474,104 @@ public class VariableEliminator
 		return new Ordering(bestList, bestStats);
 	}
 	
+	/**
+	 * Computes a variable elimination order by running a portfolio of randomized attempts concurrently
+	 * and choosing the best fit according to the specified threshold statistics.
+	 * <p>
+	 * Same as {@link #generateParallel(VariableEliminator, int, Stats, int, CostFunction...)} but
+	 * with {@link VariableCost} values.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static Ordering generateParallel(
+		VariableEliminator eliminator,
+		int nAttempts,
+		Stats threshold,
+		int nThreads,
+		VariableCost ... costFunctions)
+	{
+		return generateParallel(eliminator, nAttempts, threshold, nThreads, VariableCost.toFunctions(costFunctions));
+	}
+	
+	/**
+	 * Computes a variable elimination order by running a portfolio of randomized attempts concurrently
+	 * and choosing the best fit according to the specified threshold statistics.
+	 * <p>
+	 * This is a parallel alternative to {@link #generate(VariableEliminator, int, Stats, CostFunction...)}.
+	 * Before any attempt is run, a separate seed is drawn for each attempt from the eliminator's
+	 * {@linkplain #getRandomizer() randomizer}, and attempt <i>i</i> uses cost function <i>i</i> modulo
+	 * the number of cost functions. Up to {@code nThreads} attempts are then run at the same time,
+	 * using the calling thread and the shared Dimple {@linkplain ThreadPool thread pool}.
+	 * <p>
+	 * The result is the best ordering (lowest index on ties) among attempts 0 through <i>k</i>, where
+	 * <i>k</i> is the first attempt at which the best ordering so far satisfies {@code threshold}
+	 * or adds no edges, or the last attempt if there is no such attempt. Attempts after <i>k</i> are
+	 * cancelled as soon as <i>k</i> is known, and an attempt whose partial statistics are already worse
+	 * than those of a completed attempt with a lower index is abandoned early. Because the choice
+	 * does not depend on the order in which attempts finish, the result for a given seed is the same
+	 * for any number of threads.
+	 * <p>
+	 * Unlike the sequential version, the choice of cost function is not adjusted based on timing.
+	 * <p>
+	 * @param nAttempts is the number of potential iteration orders to compute. If not a positive value,
+	 * then this simply invokes the deterministic sequential version.
+	 * @param nThreads is the maximum number of attempts to run at the same time. If less than two,
+	 * all attempts are run on the calling thread.
+	 * @since 0.08
+	 */
+	public static Ordering generateParallel(
+		VariableEliminator eliminator,
+		int nAttempts,
+		Stats threshold,
+		int nThreads,
+		CostFunction ... costFunctions)
+	{
+		if (nAttempts <= 0)
+		{
+			return generate(eliminator, nAttempts, threshold, costFunctions);
+		}
+		
+		if (costFunctions.length == 0)
+		{
+			costFunctions = VariableCost.toFunctions(VariableCost.values());
+		}
+		
+		Random rand = eliminator.getRandomizer();
+		if (rand == null)
+		{
+			rand = new Random();
+		}
+		
+		final long[] seeds = new long[nAttempts];
+		for (int i = 0; i < nAttempts; ++i)
+		{
+			seeds[i] = rand.nextLong();
+		}
+		
+		final Portfolio portfolio =
+			new Portfolio(eliminator, eliminator.buildAdjacency(), threshold, costFunctions, seeds);
+		
+		final int nWorkers = Math.min(nThreads, nAttempts) - 1;
+		if (nWorkers > 0)
+		{
+			final ExecutorService service = ThreadPool.getThreadPool();
+			for (int i = 0; i < nWorkers; ++i)
+			{
+				service.submit(new Runnable() {
+					@Override
+					public void run()
+					{
+						portfolio.runWorker();
+					}
+				});
+			}
+		}
+		
+		portfolio.runAttempts();
+		
+		return portfolio.finish();
+	}
+	
 	/**
 	 * The model for which ordering can be computed.
 	 */
@@ -570,12 +670,18 @@ public class VariableEliminator
 		 */
 		
 		private OrderIterator(VariableEliminator eliminator, CostFunction costFunction)
+		{
+			this(eliminator, costFunction, eliminator.buildAdjacency(), eliminator._rand);
+		}
+		
+		private OrderIterator(VariableEliminator eliminator, CostFunction costFunction, Adjacency adjacency,
+			@Nullable Random rand)
 		{
 			_eliminator = eliminator;
 			_costFunction = costFunction;
 			_stats = new Stats(costFunction, 0);
 		
-			final List<Var> adjacencyList = eliminator.buildAdjacencyList(_stats);
+			final List<Var> adjacencyList = eliminator.buildAdjacencyList(adjacency, _stats, rand);
 			final int size = adjacencyList.size();
 		
 			final IHeap<Var> heap = _heap = new BinaryHeap<Var>(size);
@@ -728,6 +834,241 @@ public class VariableEliminator
 		
 	} // OrderIterator
 	
+	/*-----------
+	 * Portfolio
+	 */
+	
+	/**
+	 * Shared state for the attempts run by {@link VariableEliminator#generateParallel}.
+	 */
+	private static final class Portfolio
+	{
+		/**
+		 * How many variables to eliminate between checks for cancellation.
+		 */
+		private static final int CHECK_INTERVAL = 32;
+		
+		private final VariableEliminator _eliminator;
+		private final Adjacency _adjacency;
+		private final Stats _threshold;
+		private final CostFunction[] _costFunctions;
+		private final long[] _seeds;
+		
+		/**
+		 * Index of the next attempt to be claimed by a thread.
+		 */
+		private final AtomicInteger _nextAttempt = new AtomicInteger();
+		
+		/**
+		 * Attempts with an index greater than this are no longer needed.
+		 */
+		private volatile int _lastNeededAttempt;
+		
+		/**
+		 * Results for each attempt, or null if not yet done or abandoned.
+		 */
+		private final Ordering[] _results;
+		private final boolean[] _done;
+		
+		/**
+		 * Index of the first attempt that is not yet done. All attempts before this have been
+		 * folded into {@link #_best}.
+		 */
+		private int _frontier = 0;
+		private @Nullable Ordering _best = null;
+		
+		/**
+		 * Number of worker threads currently running attempts. Once {@link #_closed}, no new
+		 * workers will start.
+		 */
+		private int _activeWorkers = 0;
+		private boolean _closed = false;
+		private @Nullable RuntimeException _error = null;
+		
+		private Portfolio(VariableEliminator eliminator, Adjacency adjacency, Stats threshold,
+			CostFunction[] costFunctions, long[] seeds)
+		{
+			_eliminator = eliminator;
+			_adjacency = adjacency;
+			_threshold = threshold;
+			_costFunctions = costFunctions;
+			_seeds = seeds;
+			_lastNeededAttempt = seeds.length - 1;
+			_results = new Ordering[seeds.length];
+			_done = new boolean[seeds.length];
+		}
+		
+		/**
+		 * Runs attempts on a pool thread unless the portfolio has already finished.
+		 */
+		private void runWorker()
+		{
+			synchronized (this)
+			{
+				if (_closed)
+				{
+					return;
+				}
+				++_activeWorkers;
+			}
+			
+			try
+			{
+				runAttempts();
+			}
+			finally
+			{
+				synchronized (this)
+				{
+					--_activeWorkers;
+					notifyAll();
+				}
+			}
+		}
+		
+		/**
+		 * Claims and runs attempts until there are none left that are needed. If an attempt
+		 * fails, the error is saved to be rethrown by {@link #finish()} and remaining attempts
+		 * are cancelled.
+		 */
+		private void runAttempts()
+		{
+			try
+			{
+				for (int attempt; (attempt = _nextAttempt.getAndIncrement()) <= _lastNeededAttempt; )
+				{
+					attemptDone(attempt, runAttempt(attempt));
+				}
+			}
+			catch (RuntimeException ex)
+			{
+				synchronized (this)
+				{
+					if (_error == null)
+					{
+						_error = ex;
+					}
+					_lastNeededAttempt = -1;
+				}
+			}
+		}
+		
+		private @Nullable Ordering runAttempt(int attempt)
+		{
+			final CostFunction cost = _costFunctions[attempt % _costFunctions.length];
+			final OrderIterator iterator =
+				new OrderIterator(_eliminator, cost, _adjacency, new Random(_seeds[attempt]));
+			final ArrayList<Variable> variables = new ArrayList<Variable>(iterator.size());
+			
+			for (int count = 1; iterator.hasNext(); ++count)
+			{
+				variables.add(iterator.next());
+				
+				if (count % CHECK_INTERVAL == 0 && isAbandoned(attempt, iterator.getStats()))
+				{
+					return null;
+				}
+			}
+			
+			return new Ordering(variables, iterator.getStats());
+		}
+		
+		/**
+		 * True if {@code attempt} is no longer needed or if its {@code partialStats} are already
+		 * worse than the final stats of a completed attempt with a lower index.
+		 * <p>
+		 * All of the compared statistics can only increase as more variables are eliminated, so
+		 * an attempt that is worse partway through cannot end up better.
+		 */
+		private synchronized boolean isAbandoned(int attempt, Stats partialStats)
+		{
+			if (attempt > _lastNeededAttempt)
+			{
+				return true;
+			}
+			
+			final Ordering best = _best;
+			if (best != null && partialStats.compareTo(best.stats, _threshold) > 0)
+			{
+				return true;
+			}
+			
+			for (int i = _frontier; i < attempt; ++i)
+			{
+				final Ordering result = _results[i];
+				if (result != null && partialStats.compareTo(result.stats, _threshold) > 0)
+				{
+					return true;
+				}
+			}
+			
+			return false;
+		}
+		
+		/**
+		 * Records result of {@code attempt} (null if abandoned) and advances the frontier over
+		 * attempts that are done, updating the best ordering and the last needed attempt.
+		 */
+		private synchronized void attemptDone(int attempt, @Nullable Ordering result)
+		{
+			_results[attempt] = result;
+			_done[attempt] = true;
+			
+			while (_frontier <= _lastNeededAttempt && _done[_frontier])
+			{
+				final Ordering cur = _results[_frontier];
+				_results[_frontier] = null;
+				
+				Ordering best = _best;
+				if (cur != null && (best == null || cur.stats.compareTo(best.stats, _threshold) < 0))
+				{
+					_best = best = cur;
+				}
+				
+				if (best != null && (best.stats.addedEdges() == 0 || best.stats.meetsThreshold(_threshold)))
+				{
+					_lastNeededAttempt = Math.min(_lastNeededAttempt, _frontier);
+				}
+				
+				++_frontier;
+			}
+		}
+		
+		/**
+		 * Waits for running workers to finish and returns the best ordering.
+		 */
+		private synchronized Ordering finish()
+		{
+			_closed = true;
+			
+			boolean interrupted = false;
+			while (_activeWorkers > 0)
+			{
+				try
+				{
+					wait();
+				}
+				catch (InterruptedException ex)
+				{
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+			{
+				Thread.currentThread().interrupt();
+			}
+			
+			final RuntimeException error = _error;
+			if (error != null)
+			{
+				throw error;
+			}
+			
+			final Ordering best = _best;
+			return best != null ? best : new Ordering(new ArrayList<Variable>(), new Stats(null, 0));
+		}
+	}
+	
 	/*-------------------
 	 * Elimination stats
 	 */
@@ -1094,14 +1435,14 @@ public class VariableEliminator
 			++_conditionedVariables;
 		}
 
-		private void addFactorWithDuplicateVars(FactorBase factor)
+		private void addFactorsWithDuplicateVars(int count)
 		{
-			++_factorsWithDuplicateVariables;
+			_factorsWithDuplicateVariables += count;
 		}
 
-		private void addVariableWithDuplicateEdges(Variable variable)
+		private void addVariablesWithDuplicateEdges(int count)
 		{
-			++_variablesWithDuplicateEdges;
+			_variablesWithDuplicateEdges += count;
 		}
 	} // Stats
 	
@@ -1499,21 +1840,58 @@ public class VariableEliminator
 	 * Private methods
 	 */
 	
-	private List<Var> buildAdjacencyList(Stats stats)
+	/**
+	 * Snapshot of the variable adjacency structure of the model, computed once and used to
+	 * build the {@link Var} graph for each {@link OrderIterator}.
+	 * <p>
+	 * Unlike {@link Var} objects, this is not modified during elimination and can be shared
+	 * between iterators running on different threads.
+	 */
+	private static final class Adjacency
+	{
+		private final Variable[] _variables;
+		private final boolean[] _conditioned;
+		private final int[][] _neighbors;
+		private final int _factorsWithDuplicateVariables;
+		private final int _variablesWithDuplicateEdges;
+		
+		private Adjacency(Variable[] variables, boolean[] conditioned, int[][] neighbors,
+			int factorsWithDuplicateVariables, int variablesWithDuplicateEdges)
+		{
+			_variables = variables;
+			_conditioned = conditioned;
+			_neighbors = neighbors;
+			_factorsWithDuplicateVariables = factorsWithDuplicateVariables;
+			_variablesWithDuplicateEdges = variablesWithDuplicateEdges;
+		}
+	}
+	
+	/**
+	 * Computes the adjacency structure of the model.
+	 * <p>
+	 * This uses the marked flags on the model's nodes, so it must not be run concurrently
+	 * on the same model.
+	 */
+	private Adjacency buildAdjacency()
 	{
-		final List<Var> list = new LinkedList<Var>();
 		final VariableList variables = _model.getVariables();
-		final Map<Variable,Var> map = new LinkedHashMap<Variable,Var>(variables.size());
+		final int nVariables = variables.size();
+		final Variable[] variableArray = new Variable[nVariables];
+		final boolean[] conditioned = new boolean[nVariables];
+		final int[][] neighbors = new int[nVariables][];
+		final Map<Variable,Integer> indexMap = new HashMap<Variable,Integer>(nVariables * 2);
 
+		int index = 0;
 		for (Variable variable : variables)
 		{
 			if (!variable.getDomain().isDiscrete() && !isConditioned(variable))
 			{
 				throw new DimpleException("VariableEliminator cannot handle non-discrete variable '%s'", variable);
 			}
-			Var var = new Var(variable, generateCostIncrement(variable), isConditioned(variable));
-			map.put(variable, var);
-			list.add(var);
+			variableArray[index] = variable;
+			conditioned[index] = isConditioned(variable);
+			indexMap.put(variable, index);
+			++index;
 			variable.clearMarked();
 		}
 
@@ -1525,13 +1903,19 @@ public class VariableEliminator
 
 		Set<Factor> factorsWithDuplicateVars = new HashSet<Factor>();
 		Set<Variable> variablesWithDuplicateEdges = new HashSet<Variable>();
+		final IntArrayList neighborList = new IntArrayList();
 		
-		for (Var var : map.values())
+		for (int i = 0; i < nVariables; ++i)
 		{
-			if (var._isConditioned)
+			neighborList.clear();
+			
+			if (conditioned[i])
+			{
+				neighbors[i] = new int[0];
 				continue;
+			}
 			
-			final Variable variable = var._variable;
+			final Variable variable = variableArray[i];
 
 			for (int fi = 0, nFactors = variable.getSiblingCount(); fi < nFactors; ++fi)
 			{
@@ -1543,14 +1927,14 @@ public class VariableEliminator
 				}
 				factor.setMarked();
 
-				for (int vi = 0, nVariables = factor.getSiblingCount(); vi < nVariables; ++vi)
+				for (int vi = 0, nFactorVariables = factor.getSiblingCount(); vi < nFactorVariables; ++vi)
 				{
 					final Variable neighborVariable = factor.getSibling(vi);
 					if (neighborVariable == variable)
 						continue;
 					
-					final Var neighborVar = map.get(neighborVariable);
-					if (neighborVar._isConditioned)
+					final int neighborIndex = indexMap.get(neighborVariable);
+					if (conditioned[neighborIndex])
 						continue;
 
 					if (neighborVariable.isMarked())
@@ -1560,11 +1944,13 @@ public class VariableEliminator
 					else
 					{
 						neighborVariable.setMarked();
-						var.addNeighbor(map.get(neighborVariable));
+						neighborList.add(neighborIndex);
 					}
 				}
 			}
 
+			neighbors[i] = Arrays.copyOf(neighborList.elements(), neighborList.size());
+			
 			// Reset marks for visited factors and variables.
 			for (int fi = 0, nFactors = variable.getSiblingCount(); fi < nFactors; ++fi)
 			{
@@ -1572,32 +1958,52 @@ public class VariableEliminator
 				factor.clearMarked();
 			}
 
-			for (VarLink link = var._neighborList._next; link.hasVar(); link = link._next)
+			for (int neighborIndex : neighbors[i])
 			{
-				link.var()._variable.clearMarked();
+				variableArray[neighborIndex].clearMarked();
 			}
 		}
 
-		for (Factor factor : factorsWithDuplicateVars)
+		return new Adjacency(variableArray, conditioned, neighbors,
+			factorsWithDuplicateVars.size(), variablesWithDuplicateEdges.size());
+	}
+	
+	/**
+	 * Builds a new {@link Var} graph from {@code adjacency}, using {@code rand} to generate
+	 * cost increments.
+	 */
+	private List<Var> buildAdjacencyList(Adjacency adjacency, Stats stats, @Nullable Random rand)
+	{
+		final Variable[] variables = adjacency._variables;
+		final int nVariables = variables.length;
+		final Var[] vars = new Var[nVariables];
+		
+		for (int i = 0; i < nVariables; ++i)
 		{
-			stats.addFactorWithDuplicateVars(factor);
+			vars[i] = new Var(variables[i], generateCostIncrement(variables[i], rand), adjacency._conditioned[i]);
 		}
 		
-		for (Variable variable : variablesWithDuplicateEdges)
+		for (int i = 0; i < nVariables; ++i)
 		{
-			stats.addVariableWithDuplicateEdges(variable);
+			final Var var = vars[i];
+			for (int neighborIndex : adjacency._neighbors[i])
+			{
+				var.addNeighbor(vars[neighborIndex]);
+			}
 		}
+
+		stats.addFactorsWithDuplicateVars(adjacency._factorsWithDuplicateVariables);
+		stats.addVariablesWithDuplicateEdges(adjacency._variablesWithDuplicateEdges);
 		
-		return list;
+		return Arrays.asList(vars);
 	}
 	
 	/**
 	 * Generates a cost-increment in the range [0, 1) to break ties between
 	 * variables with same integer cost.
 	 */
-	private double generateCostIncrement(Variable variable)
+	private static double generateCostIncrement(Variable variable, @Nullable Random rand)
 	{
-		final Random rand = _rand;
 		if (rand == null)
 		{
 			return (double)variable.getGraphTreeId() / (double)Integer.MAX_VALUE;
@@ -20,12 +20,18 @@ import com.analog.lyric.dimple.schedulers.DefaultScheduler;
 import com.analog.lyric.dimple.schedulers.SchedulerOptionKey;
 import com.analog.lyric.dimple.schedulers.validator.AllEdgeScheduleValidator;
 import com.analog.lyric.dimple.schedulers.validator.ScheduleValidatorOptionKey;
+import com.analog.lyric.dimple.solvers.core.BPSolverGraph;
+import com.analog.lyric.dimple.solvers.core.MessageResidualNorm;
+import com.analog.lyric.dimple.solvers.core.MessageTraceReader;
+import com.analog.lyric.dimple.solvers.core.MessageTraceWriter;
 import com.analog.lyric.dimple.solvers.core.SNode;
 import com.analog.lyric.dimple.solvers.optimizedupdate.UpdateApproach;
+import com.analog.lyric.options.BooleanOptionKey;
 import com.analog.lyric.options.DoubleListOptionKey;
 import com.analog.lyric.options.DoubleOptionKey;
 import com.analog.lyric.options.EnumOptionKey;
 import com.analog.lyric.options.IntegerOptionKey;
+import com.analog.lyric.options.StringOptionKey;
 
 /**
  * Common options for belief-propagation based solvers.
@@ -58,6 +64,81 @@ public class BPOptions extends SolverOptions
 	public final static IntegerOptionKey iterations =
 		new IntegerOptionKey(BPOptions.class, "iterations", 1);
 
+	/**
+	 * Tolerance for early termination of iterations when messages have converged.
+	 * <p>
+	 * When set to a positive value, the solver will measure the change in outgoing discrete messages
+	 * on every {@link #convergenceCheckInterval}th iteration and will stop iterating before reaching
+	 * {@link #iterations} once the residual computed according to {@link #convergenceNorm} falls
+	 * below this value. Messages are compared in their normalized form: as normalized weights for
+	 * sum-product and as energies with minimum zero for min-sum.
+	 * <p>
+	 * This option is only looked up on the root graph when the solver graph is initialized. Use
+	 * {@link BPSolverGraph#getLastResidual()} and related methods to determine the result.
+	 * <p>
+	 * The default value of zero disables convergence detection.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final DoubleOptionKey convergenceTolerance =
+		new DoubleOptionKey(BPOptions.class, "convergenceTolerance", 0.0, 0.0, Double.POSITIVE_INFINITY);
+
+	/**
+	 * Specifies how message changes are combined for convergence detection.
+	 * <p>
+	 * Only used when {@link #convergenceTolerance} is positive.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final EnumOptionKey<MessageResidualNorm> convergenceNorm = new EnumOptionKey<MessageResidualNorm>(
+		BPOptions.class, "convergenceNorm", MessageResidualNorm.class, MessageResidualNorm.MAX);
+
+	/**
+	 * Specifies how often to check for convergence, in iterations.
+	 * <p>
+	 * Message changes are only measured on iterations whose number is a multiple of this value and on
+	 * the last iteration, so larger values reduce the overhead of convergence detection at the
+	 * cost of possibly running extra iterations.
+	 * <p>
+	 * Only used when {@link #convergenceTolerance} is positive.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final IntegerOptionKey convergenceCheckInterval =
+		new IntegerOptionKey(BPOptions.class, "convergenceCheckInterval", 1, 1, Integer.MAX_VALUE);
+
+	/**
+	 * Name of file to which the change in each outgoing message should be written.
+	 * <p>
+	 * When non-empty, the solver will write a record for every discrete message update on every
+	 * iteration to this file using a {@link MessageTraceWriter}, replacing any existing file. This
+	 * has much lower overhead than listening for message events, because records are buffered
+	 * per thread and written to the file in the background. The file can be read using a
+	 * {@link MessageTraceReader}.
+	 * <p>
+	 * This option is only looked up on the root graph when the solver graph is initialized. The
+	 * file is flushed at the end of each call to {@link BPSolverGraph#iterate(int)}, and closed when
+	 * the graph is next initialized, when this option is cleared and the graph is next iterated, when
+	 * the model's solver is replaced or removed, or when {@link BPSolverGraph#closeMessageTrace()} is
+	 * called. Discarding the graph without doing one of these leaks the open file.
+	 * <p>
+	 * The default is the empty string, which disables tracing.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final StringOptionKey messageTraceFile =
+		new StringOptionKey(BPOptions.class, "messageTraceFile", "");
+	
+	/**
+	 * Specifies whether records written to {@link #messageTraceFile} include the new message values.
+	 * <p>
+	 * When false, only the change in each message is recorded.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final BooleanOptionKey messageTraceIncludesMessages =
+		new BooleanOptionKey(BPOptions.class, "messageTraceIncludesMessages", false);
+	
 	/**
 	 * Node specific damping values.
 	 * <p>
@@ -134,6 +215,27 @@ public class BPOptions extends SolverOptions
 	public static final DoubleOptionKey optimizedUpdateSparseThreshold = new DoubleOptionKey(BPOptions.class,
 			"optimizedUpdateSparseThreshold", 1.0, 0.0, 1.0);
 
+	/**
+	 * Minimum factor table size for which the update of a single factor will be split across threads.
+	 * <p>
+	 * This option may be set on entire graph or on individual discrete factors.
+	 * <p>
+	 * When a discrete factor's table has at least this many entries, the sum-product and min-sum
+	 * solvers will divide the table into chunks that are processed in parallel using a shared
+	 * fork/join pool, and will then combine the partial output messages from each chunk. This is
+	 * independent of {@linkplain SolverOptions#enableMultithreading multithreading}, which runs separate
+	 * schedule entries in parallel and cannot help when the run time is dominated by a few very large
+	 * factors, such as the cliques of a junction tree.
+	 * <p>
+	 * Option is looked up when {@linkplain SNode#initialize initialize} is called.
+	 * <p>
+	 * Must be a positive number.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final IntegerOptionKey parallelUpdateThreshold =
+		new IntegerOptionKey(BPOptions.class, "parallelUpdateThreshold", 1 << 20, 1, Integer.MAX_VALUE);
+	
 	/**
 	 * Specifies schedule validation that should be applied for BP solvers.
 	 * <p>
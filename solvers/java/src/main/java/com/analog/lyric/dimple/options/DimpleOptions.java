@@ -16,7 +16,9 @@
 
 package com.analog.lyric.dimple.options;
 
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
 import com.analog.lyric.options.IOptionKey;
+import com.analog.lyric.options.IntegerOptionKey;
 import com.analog.lyric.options.LongOptionKey;
 import com.analog.lyric.options.OptionKeyDeclarer;
 import com.analog.lyric.options.StringOptionKey;
@@ -51,5 +53,39 @@ public class DimpleOptions extends OptionKeyDeclarer
 	public static final LongOptionKey randomSeed =
 		new LongOptionKey(DimpleOptions.class, "randomSeed");
 	
+	/**
+	 * Minimum number of entries in a factor table for it to be populated in parallel.
+	 * <p>
+	 * When a factor table is generated from a {@link FactorFunction} that is
+	 * {@linkplain FactorFunction#isThreadSafe() thread safe} and the table has at least this many
+	 * entries, the function will be evaluated concurrently over separate ranges of the table
+	 * using the shared multithreading thread pool. The same threshold applies to the
+	 * {@linkplain com.analog.lyric.dimple.solvers.particleBP.ParticleBPOptions#maxCachedFactorEvaluations
+	 * cached factor evaluations} of the particle BP solver.
+	 * <p>
+	 * This option is looked up on the active {@linkplain com.analog.lyric.dimple.environment.DimpleEnvironment
+	 * DimpleEnvironment}. The default is 2^16 entries.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final IntegerOptionKey parallelTablePopulationThreshold =
+		new IntegerOptionKey(DimpleOptions.class, "parallelTablePopulationThreshold", 1 << 16, 1, Integer.MAX_VALUE);
 	
+	/**
+	 * Directory in which to persist factor tables generated from factor functions.
+	 * <p>
+	 * When non-empty, factor tables generated from functions that provide a
+	 * {@linkplain FactorFunction#getTableCacheKey() table cache key} will be saved to a file in this
+	 * directory, and later requests for a table for the same function and domains, including those
+	 * in other JVM instances, will be loaded from that file instead of evaluating the function.
+	 * The directory will be created if it does not exist. Errors reading or writing the cache are
+	 * logged as warnings and otherwise ignored.
+	 * <p>
+	 * This option is looked up on the active {@linkplain com.analog.lyric.dimple.environment.DimpleEnvironment
+	 * DimpleEnvironment}. The default is the empty string, which disables the cache.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final StringOptionKey factorTableCacheDirectory =
+		new StringOptionKey(DimpleOptions.class, "factorTableCacheDirectory", "");
 }
@@ -0,0 +1,71 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.schedulers;
+
+import java.util.Map;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.options.SolverOptions;
+import com.analog.lyric.dimple.schedulers.schedule.GibbsChromaticSchedule;
+import com.analog.lyric.dimple.schedulers.schedule.IGibbsSchedule;
+
+/**
+ * Creates a {@link GibbsChromaticSchedule} for the Gibbs solver.
+ * <p>
+ * This is a sequential-scan schedule in which variables that share no factor are grouped
+ * together by color. When {@link SolverOptions#enableMultithreading} is true, the Gibbs solver
+ * will resample the variables of each color concurrently.
+ * <p>
+ * Like the other Gibbs schedulers, this ignores any schedulers associated with subgraphs.
+ * <p>
+ * @since 0.08
+ */
+public class GibbsChromaticScheduler extends GibbsSchedulerBase
+{
+	private static final long serialVersionUID = 1L;
+
+	/*--------------
+	 * Construction
+	 */
+	
+	public GibbsChromaticScheduler()
+	{
+		super();
+	}
+	
+	protected GibbsChromaticScheduler(GibbsChromaticScheduler other, Map<Object,Object> old2NewMap,
+		boolean copyToRoot)
+	{
+		super(other, old2NewMap, copyToRoot);
+	}
+	
+	/*--------------------
+	 * IScheduler methods
+	 */
+	
+	@Override
+	public IScheduler copy(Map<Object, Object> old2NewMap, boolean copyToRoot)
+	{
+		return new GibbsChromaticScheduler(this, old2NewMap, copyToRoot);
+	}
+	
+	@Override
+	public IGibbsSchedule createSchedule(FactorGraph g)
+	{
+		return addBlockEntries(new GibbsChromaticSchedule(this, g));
+	}
+}
@@ -0,0 +1,49 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.schedulers;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
+import com.analog.lyric.dimple.schedulers.schedule.ResidualBPSchedule;
+
+/**
+ * Scheduler that produces a dynamic {@link ResidualBPSchedule}.
+ * <p>
+ * Instead of visiting edges in a fixed order, the schedule always updates the edge whose message is
+ * expected to change the most, based on the measured change of the messages feeding it. On loopy graphs
+ * this typically converges with far fewer edge updates than a flooding schedule, especially when used
+ * together with {@link com.analog.lyric.dimple.options.BPOptions#convergenceTolerance}.
+ * <p>
+ * Note that this scheduler ignores any schedulers set on sub-graphs and does not support multithreaded
+ * execution.
+ * <p>
+ * @since 0.08
+ */
+public class ResidualBPScheduler extends StatelessBPScheduler
+{
+	private static final long serialVersionUID = 1L;
+
+	/*--------------------
+	 * IScheduler methods
+	 */
+	
+	@Override
+	public ISchedule createSchedule(FactorGraph g)
+	{
+		return new ResidualBPSchedule(this, g);
+	}
+}
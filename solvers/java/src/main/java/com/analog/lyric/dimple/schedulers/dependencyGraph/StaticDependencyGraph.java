@@ -21,13 +21,17 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedList;
 
+import org.eclipse.jdt.annotation.Nullable;
+
 import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.repeated.CircularScheduleMap;
 import com.analog.lyric.dimple.schedulers.dependencyGraph.helpers.LastUpdateGraph;
 import com.analog.lyric.dimple.schedulers.schedule.FixedSchedule;
 import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
 import com.analog.lyric.dimple.schedulers.scheduleEntry.BlockScheduleEntry;
 import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
 import com.analog.lyric.dimple.schedulers.scheduleEntry.SubgraphScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.BPSolverGraph;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 
 /**
@@ -74,6 +78,12 @@ public class StaticDependencyGraph
 		}
 	}
 	
+	private static @Nullable CircularScheduleMap circularMap(ISolverFactorGraph sfg)
+	{
+		final ISolverFactorGraph root = sfg.getRootSolverGraph();
+		return root instanceof BPSolverGraph ? ((BPSolverGraph<?,?,?>)root).getCircularScheduleMapIfExists() : null;
+	}
+	
 	/**
 	 * Multithreading can be done in phases of indepdent schedule entries.  Each phase
 	 * contains a list of scheduleEntries that can be updated concurrently.
@@ -204,8 +214,10 @@ public class StaticDependencyGraph
 			case NODE:
 			case EDGE:
 			{
-				//Instantiate a static dependency graph node (builds dependencies)
-				StaticDependencyGraphNode dgn = new StaticDependencyGraphNode(se,lug,_nextNodeId);
+				//Instantiate a static dependency graph node (builds dependencies). If circular streams have
+				//advanced, the dependencies come from the nodes that now take the place of the entry's nodes.
+				final IScheduleEntry structural = CircularScheduleMap.entry(circularMap(sfg), se);
+				StaticDependencyGraphNode dgn = new StaticDependencyGraphNode(se,structural,lug,_nextNodeId);
 				
 				//Increment some counters.
 				_nextNodeId++;
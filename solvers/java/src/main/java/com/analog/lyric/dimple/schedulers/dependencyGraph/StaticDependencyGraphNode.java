@@ -85,6 +85,16 @@ public class StaticDependencyGraphNode
 	 * @scheduleEntry must be either a {@link EdgeScheduleEntry} or a {@link NodeScheduleEntry}
 	 */
 	StaticDependencyGraphNode(IScheduleEntry scheduleEntry, LastUpdateGraph lastUpdateGraph, int id)
+	{
+		this(scheduleEntry, scheduleEntry, lastUpdateGraph, id);
+	}
+	
+	/*
+	 * Like the other constructor, but takes the dependencies from {@code structuralEntry}, which performs
+	 * the same update as {@code scheduleEntry} on the nodes that currently take the place of its nodes.
+	 */
+	StaticDependencyGraphNode(IScheduleEntry scheduleEntry, IScheduleEntry structuralEntry,
+		LastUpdateGraph lastUpdateGraph, int id)
 	{
 		_phase = 0;
 		_scheduleEntry = scheduleEntry;
@@ -93,7 +103,7 @@ public class StaticDependencyGraphNode
 		//retrievew all directed edges associated with this schedule entry.
 		//Will be all in/out edges for a node update.  Will be all input edges
 		//except for one and an output edge for an edge update.
-		ArrayList<Edge> edges = lastUpdateGraph.getEdges(scheduleEntry);
+		ArrayList<Edge> edges = lastUpdateGraph.getEdges(structuralEntry);
 	
 		//For each edge we find the last DependencyGraphNode that used that edge
 		//as an input or output.
@@ -0,0 +1,287 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.schedulers.schedule;
+
+import java.util.Arrays;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import cern.colt.map.OpenLongObjectHashMap;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.core.INode;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.schedulers.GibbsChromaticScheduler;
+import com.analog.lyric.dimple.schedulers.IScheduler;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+
+/**
+ * A sequential-scan Gibbs schedule whose entries are grouped by color.
+ * <p>
+ * The variables of the graph are colored so that no two variables of the same color share a factor.
+ * The entries are ordered so that all of the variables of each color are contiguous, followed by the
+ * entries that must be run serially. Since the conditional distribution of a variable depends only on
+ * the values of its neighbors, the variables of a single color are conditionally independent and
+ * may be resampled concurrently without changing the stationary distribution.
+ * <p>
+ * The following entries are not colored and are always placed at the end of the schedule:
+ * <ul>
+ * <li>block entries, which may update any number of variables at once
+ * <li>variables that are inputs or outputs of deterministic directed factors, whose updates
+ * propagate through the dependents recorded by the Gibbs solver
+ * <li>any other entry that is not a variable node entry
+ * </ul>
+ * <p>
+ * When run sequentially, this is simply a sequential-scan schedule in a different order.
+ * <p>
+ * @since 0.08
+ * @see GibbsChromaticScheduler
+ */
+public class GibbsChromaticSchedule extends FixedSchedule
+{
+	private static final long serialVersionUID = 1L;
+
+	/*-------
+	 * State
+	 */
+	
+	private @Nullable int[] _colorStarts = null;
+	private long _coloredVersion = -1;
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	public GibbsChromaticSchedule(FactorGraph fg)
+	{
+		this(null, fg);
+	}
+	
+	public GibbsChromaticSchedule(@Nullable IScheduler scheduler, FactorGraph fg)
+	{
+		super(scheduler, fg);
+		
+		for (Variable v : fg.getVariablesFlat())
+			add(new NodeScheduleEntry(v));
+	}
+	
+	/*---------------
+	 * Local methods
+	 */
+	
+	/**
+	 * The number of colors used by the variable entries of the schedule.
+	 * <p>
+	 * @since 0.08
+	 */
+	public int getColorCount()
+	{
+		return getColorStarts().length - 1;
+	}
+	
+	/**
+	 * Start indexes of each color in the schedule.
+	 * <p>
+	 * Returns an array with {@link #getColorCount()} + 1 elements, in which the entries with
+	 * indexes from {@code starts[c]} up to {@code starts[c+1]} have color {@code c}. The entries from
+	 * the last element of the array to the end of the schedule must be run serially.
+	 * <p>
+	 * The schedule is reordered and colored when this is first invoked after it has been modified,
+	 * so this should be called before iterating over the schedule. Do not modify the returned array.
+	 * <p>
+	 * @since 0.08
+	 */
+	public int[] getColorStarts()
+	{
+		final int[] starts = _colorStarts;
+		return starts != null && _coloredVersion == _version ? starts : recolor();
+	}
+	
+	/**
+	 * Recomputes the coloring and reorders the schedule accordingly.
+	 * <p>
+	 * Since whether a variable is a {@linkplain Variable#isDeterministicInput() deterministic input} or
+	 * {@linkplain Variable#isDeterministicOutput() output} is not known until the graph has been initialized,
+	 * this is invoked by the Gibbs solver during initialization.
+	 * <p>
+	 * @return the new value of {@link #getColorStarts()}.
+	 * @since 0.08
+	 */
+	public int[] recolor()
+	{
+		final int[] starts = _colorStarts = color();
+		_coloredVersion = _version;
+		return starts;
+	}
+	
+	/**
+	 * Index of the first entry that must be run serially, which is also the number of
+	 * entries that have a color.
+	 * <p>
+	 * @since 0.08
+	 */
+	public int getSerialStart()
+	{
+		final int[] starts = getColorStarts();
+		return starts[starts.length - 1];
+	}
+	
+	/**
+	 * Indicates whether {@code entry} can be given a color, i.e. whether it may be run concurrently
+	 * with other entries whose variables do not share any factor with it.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static boolean isColorable(IScheduleEntry entry)
+	{
+		if (entry instanceof NodeScheduleEntry)
+		{
+			final INode node = ((NodeScheduleEntry)entry).getNode();
+			if (node instanceof Variable)
+			{
+				final Variable var = (Variable)node;
+				return !var.isDeterministicInput() && !var.isDeterministicOutput();
+			}
+		}
+		return false;
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	/**
+	 * Greedily colors the variable entries, using the smallest color not already used by a neighboring
+	 * variable, and then stably reorders the schedule by color.
+	 */
+	private int[] color()
+	{
+		final int size = _schedule.size();
+		final IScheduleEntry[] entries = _schedule.toArray(new IScheduleEntry[size]);
+		final boolean[] colorable = new boolean[size];
+		
+		// Color of each entry, or -1 if not yet colored or not colorable.
+		final int[] colors = new int[size];
+		Arrays.fill(colors, -1);
+
+		// A variable that appears more than once is run serially, so that it cannot be updated concurrently
+		// with itself.
+		final OpenLongObjectHashMap indexForNode = new OpenLongObjectHashMap(size);
+		for (int i = 0; i < size; ++i)
+		{
+			if (isColorable(entries[i]))
+			{
+				final long id = ((NodeScheduleEntry)entries[i]).getNode().getGlobalId();
+				if (indexForNode.containsKey(id))
+				{
+					colorable[(Integer)indexForNode.get(id)] = false;
+				}
+				else
+				{
+					indexForNode.put(id, i);
+					colorable[i] = true;
+				}
+			}
+		}
+		
+		// neighborColorMark[c] == i + 1 indicates that color c is used by a neighbor of entry i.
+		int[] neighborColorMark = new int[8];
+		int numColors = 0;
+		
+		// Entries are colored in breadth-first order, which uses only two colors for bipartite graphs
+		// such as grids.
+		final boolean[] visited = new boolean[size];
+		final int[] queue = new int[size];
+		
+		for (int root = 0; root < size; ++root)
+		{
+			if (!colorable[root] || visited[root])
+			{
+				continue;
+			}
+			
+			int head = 0, tail = 0;
+			queue[tail++] = root;
+			visited[root] = true;
+			
+			while (head < tail)
+			{
+				final int i = queue[head++];
+				final Variable var = (Variable)((NodeScheduleEntry)entries[i]).getNode();
+				for (int j = 0, nj = var.getSiblingCount(); j < nj; ++j)
+				{
+					final Factor factor = var.getSibling(j);
+					for (int k = 0, nk = factor.getSiblingCount(); k < nk; ++k)
+					{
+						final Integer neighborIndex = (Integer)indexForNode.get(factor.getSibling(k).getGlobalId());
+						if (neighborIndex != null && colorable[neighborIndex])
+						{
+							final int neighbor = neighborIndex;
+							final int neighborColor = colors[neighbor];
+							if (neighborColor >= 0)
+							{
+								neighborColorMark[neighborColor] = i + 1;
+							}
+							else if (!visited[neighbor])
+							{
+								visited[neighbor] = true;
+								queue[tail++] = neighbor;
+							}
+						}
+					}
+				}
+				
+				int color = 0;
+				while (color < numColors && neighborColorMark[color] == i + 1)
+				{
+					++color;
+				}
+				if (color == numColors)
+				{
+					++numColors;
+					if (numColors > neighborColorMark.length)
+					{
+						neighborColorMark = Arrays.copyOf(neighborColorMark, numColors * 2);
+					}
+				}
+				colors[i] = color;
+			}
+		}
+		
+		// Counting sort by color, with uncolored entries last
+		final int[] starts = new int[numColors + 2];
+		for (int i = 0; i < size; ++i)
+		{
+			final int color = colors[i];
+			++starts[(color < 0 ? numColors : color) + 1];
+		}
+		for (int c = 0; c <= numColors; ++c)
+		{
+			starts[c + 1] += starts[c];
+		}
+		final int[] next = starts.clone();
+		for (int i = 0; i < size; ++i)
+		{
+			final int color = colors[i];
+			_schedule.set(next[color < 0 ? numColors : color]++, entries[i]);
+		}
+		
+		return Arrays.copyOf(starts, numColors + 1);
+	}
+}
@@ -19,6 +19,7 @@ package com.analog.lyric.dimple.schedulers.schedule;
 import java.util.Iterator;
 import java.util.Objects;
 
+import org.apache.commons.math3.random.RandomGenerator;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 
@@ -27,6 +28,8 @@ import com.analog.lyric.dimple.schedulers.GibbsSequentialScanScheduler;
 import com.analog.lyric.dimple.schedulers.IScheduler;
 import com.analog.lyric.dimple.schedulers.scheduleEntry.BlockScheduleEntry;
 import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.math.DimpleRandomGenerator;
 import com.google.common.collect.Iterators;
 
@@ -100,9 +103,12 @@ public class GibbsRandomScanSchedule extends ScheduleBase implements IGibbsSched
 	public Iterator<IScheduleEntry> iterator()
 	{
 		// Choose an entry in the list of schedule entries uniformly at random
-		// Note: the DimpleRandomGenerator is used here so that if a fixed seed is set in the solver,
+		// Note: the solver's random generator is used here so that if a fixed seed is set in the solver,
 		// then the schedule will also be repeatable
-		int entryIndex = DimpleRandomGenerator.rand.nextInt(_scheduleEntryPool.size());
+		final ISolverFactorGraph sgraph = getFactorGraph().getSolver();
+		final RandomGenerator rand =
+			sgraph instanceof GibbsSolverGraph ? ((GibbsSolverGraph)sgraph).getRandom() : DimpleRandomGenerator.rand;
+		int entryIndex = rand.nextInt(_scheduleEntryPool.size());
 		
 		// Create a single schedule entry that includes all of the selected variable
 		return Iterators.singletonIterator(_scheduleEntryPool.get(entryIndex));
@@ -0,0 +1,471 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.schedulers.schedule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import cern.colt.list.IntArrayList;
+
+import com.analog.lyric.collect.BinaryHeap;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.factors.FactorList;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.schedulers.IScheduler;
+import com.analog.lyric.dimple.schedulers.ResidualBPScheduler;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.EdgeScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.MessageResidualMonitor;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteMessage;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
+
+/**
+ * Dynamic schedule that implements residual belief propagation.
+ * <p>
+ * The schedule keeps a priority queue of directed edges keyed by an estimate of how much the
+ * message on that edge would change if it were updated, and always updates the edge with the largest
+ * estimated residual next. After each edge update, the actual change in its outgoing message is
+ * measured and used as the residual estimate for all of the edges leaving the receiving node other
+ * than the one going back the way the message came.
+ * <p>
+ * Note that this is an approximation of the residual described in the literature, which is the change
+ * that updating an edge would make to its own message. Computing that exactly would require computing
+ * each candidate message without committing it, roughly doubling the work per update. Instead, the
+ * priority of an edge is the largest change seen in any of the messages feeding into it since it was
+ * last updated. This is zero when none of its inputs have changed, in which case updating it would have
+ * no effect (apart from damping), and otherwise tends to grow with the actual residual.
+ * <p>
+ * Every edge starts out with infinite priority when the solver graph is initialized, so the first
+ * iteration updates every edge at least once. Each iteration performs at most as many edge updates as
+ * there are directed edges in the graph, which is the same number performed by a flooding schedule, and
+ * will stop early once no edge has a positive residual.
+ * <p>
+ * Message changes are only measured for discrete messages. Edges carrying other kinds of messages are
+ * queued at the start of every iteration and give the edges they feed a residual of zero, so that they
+ * are updated after all edges with measured positive residuals.
+ * <p>
+ * Unlike static schedules, the order of the entries depends on the effect of the previous entry, so
+ * the solver must run the entries produced by {@link #updateIterator()} one at a time. Multithreaded
+ * execution is not supported and will simply update all edges once per iteration.
+ * <p>
+ * Like the random schedules, this DOES NOT respect any existing sub-graph scheduler associations.
+ * <p>
+ * @since 0.08
+ * @see ResidualBPScheduler
+ */
+public class ResidualBPSchedule extends ScheduleBase
+{
+	private static final long serialVersionUID = 1L;
+
+	/*-------
+	 * State
+	 */
+
+	/**
+	 * Number of undirected edges in the graph. Directed edge {@code 2*i} is the factor-to-variable
+	 * direction of edge {@code i} and directed edge {@code 2*i+1} is the variable-to-factor direction.
+	 */
+	private int _nEdges;
+
+	private Factor[] _edgeFactor = new Factor[0];
+	private int[] _edgeFactorIndex = new int[0];
+	private int[] _edgeVariableIndex = new int[0];
+
+	/**
+	 * Undirected edges indexed by factor and by variable.
+	 */
+	private int[][] _factorEdges = new int[0][];
+	private int[][] _variableEdges = new int[0][];
+
+	/**
+	 * Schedule entries indexed by directed edge.
+	 */
+	private EdgeScheduleEntry[] _entries = new EdgeScheduleEntry[0];
+
+	private final BinaryHeap<Integer> _queue = new BinaryHeap<Integer>();
+
+	/**
+	 * Queue entries indexed by directed edge. Priorities are negated residuals because the queue returns
+	 * the entry with the lowest priority first.
+	 */
+	private BinaryHeap.Entry<Integer>[] _queueEntries = newQueueEntries(0);
+
+	/**
+	 * Solver edges indexed by undirected edge. Looked up lazily after {@link #reset()}.
+	 */
+	private ISolverEdgeState[] _solverEdges = new ISolverEdgeState[0];
+
+	/**
+	 * Directed edge whose update has been returned by the iterator but not yet measured, or -1.
+	 */
+	private int _pendingEdge = -1;
+
+	/**
+	 * Copy of the message on {@link #_pendingEdge} before it was updated, if it was a discrete message.
+	 */
+	private double[] _savedMessage = new double[0];
+	private boolean _pendingMeasurable = false;
+
+	/*--------------
+	 * Construction
+	 */
+
+	public ResidualBPSchedule(FactorGraph factorGraph)
+	{
+		this(null, factorGraph);
+	}
+
+	public ResidualBPSchedule(@Nullable IScheduler scheduler, FactorGraph factorGraph)
+	{
+		super(scheduler, factorGraph);
+		initialize();
+	}
+
+	/*-------------------
+	 * ISchedule methods
+	 */
+
+	@Override
+	public void attach(FactorGraph factorGraph)
+	{
+		super.attach(factorGraph);
+		initialize();
+	}
+
+	@Override
+	public @NonNull FactorGraph getFactorGraph()
+	{
+		return Objects.requireNonNull(_factorGraph);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Because the actual update order depends on the effect of each update, this simply returns one entry
+	 * for each directed edge in the graph, which is the set of entries that could be visited in one
+	 * iteration. This is what is seen by schedule visitors and by the multithreaded solver, which will
+	 * therefore just update every edge once per iteration. Use {@link #updateIterator()} to run the residual
+	 * schedule.
+	 */
+	@Override
+	public Iterator<IScheduleEntry> iterator()
+	{
+		return Collections.<IScheduleEntry>unmodifiableList(Arrays.asList(_entries)).iterator();
+	}
+
+	/*----------------------------
+	 * ResidualBPSchedule methods
+	 */
+
+	/**
+	 * Returns iterator that produces the entries for one iteration in residual order.
+	 * <p>
+	 * Each entry must be run before requesting the next one from the iterator, since that is when the
+	 * change in its message will be measured.
+	 */
+	public Iterator<IScheduleEntry> updateIterator()
+	{
+		finishPendingUpdate();
+
+		// Edges whose messages cannot be measured get updated at least once per iteration.
+		for (int edge = 0; edge < _nEdges; ++edge)
+		{
+			if (discreteMessage(edge, true) == null)
+			{
+				raisePriority(2 * edge, Double.POSITIVE_INFINITY);
+			}
+			if (discreteMessage(edge, false) == null)
+			{
+				raisePriority(2 * edge + 1, Double.POSITIVE_INFINITY);
+			}
+		}
+
+		return new EdgeIterator(2 * _nEdges);
+	}
+	
+	/**
+	 * Puts every edge back in the queue with infinite priority.
+	 * <p>
+	 * This is invoked automatically when the solver graph is {@linkplain
+	 * com.analog.lyric.dimple.solvers.core.BPSolverGraph#initialize() initialized} and should be used
+	 * whenever messages have been reset outside of the schedule.
+	 */
+	public void reset()
+	{
+		_pendingEdge = -1;
+		_queue.clear();
+		for (int edge = 0, n = 2 * _nEdges; edge < n; ++edge)
+		{
+			_queueEntries[edge] = null;
+		}
+		_queue.deferOrderingForBulkAdd(2 * _nEdges);
+		for (int edge = 0, n = 2 * _nEdges; edge < n; ++edge)
+		{
+			raisePriority(edge, Double.POSITIVE_INFINITY);
+		}
+		for (int edge = 0; edge < _nEdges; ++edge)
+		{
+			_solverEdges[edge] = null;
+		}
+	}
+
+	/**
+	 * The number of directed edges currently waiting to be updated.
+	 */
+	public int queueSize()
+	{
+		return _queue.size();
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private void initialize()
+	{
+		final FactorList factors = getFactorGraph().getNonGraphFactors();
+		final Map<Variable,Integer> variableIndex = new IdentityHashMap<Variable,Integer>();
+		final ArrayList<IntArrayList> variableEdges = new ArrayList<IntArrayList>();
+		final ArrayList<EdgeScheduleEntry> entries = new ArrayList<EdgeScheduleEntry>();
+		final IntArrayList edgeFactorIndex = new IntArrayList();
+		final IntArrayList edgeVariableIndex = new IntArrayList();
+		final ArrayList<Factor> edgeFactor = new ArrayList<Factor>();
+
+		_factorEdges = new int[factors.size()][];
+
+		int factorIndex = 0;
+		for (Factor factor : factors)
+		{
+			final int nSiblings = factor.getSiblingCount();
+			final int[] factorEdges = _factorEdges[factorIndex] = new int[nSiblings];
+			for (int i = 0; i < nSiblings; ++i)
+			{
+				final Variable variable = factor.getSibling(i);
+				Integer varIndex = variableIndex.get(variable);
+				if (varIndex == null)
+				{
+					varIndex = variableEdges.size();
+					variableIndex.put(variable, varIndex);
+					variableEdges.add(new IntArrayList());
+				}
+
+				final int edge = edgeFactor.size();
+				factorEdges[i] = edge;
+				variableEdges.get(varIndex).add(edge);
+				edgeFactor.add(factor);
+				edgeFactorIndex.add(factorIndex);
+				edgeVariableIndex.add(varIndex);
+				entries.add(new EdgeScheduleEntry(factor, i));
+				entries.add(new EdgeScheduleEntry(variable, factor.getReverseSiblingNumber(i)));
+			}
+			++factorIndex;
+		}
+
+		_variableEdges = new int[variableEdges.size()][];
+		for (int i = 0, n = variableEdges.size(); i < n; ++i)
+		{
+			final IntArrayList list = variableEdges.get(i);
+			list.trimToSize();
+			_variableEdges[i] = list.elements();
+		}
+
+		final int nEdges = _nEdges = edgeFactor.size();
+		edgeFactorIndex.trimToSize();
+		edgeVariableIndex.trimToSize();
+		_edgeFactorIndex = edgeFactorIndex.elements();
+		_edgeVariableIndex = edgeVariableIndex.elements();
+		_edgeFactor = edgeFactor.toArray(new Factor[nEdges]);
+		_entries = entries.toArray(new EdgeScheduleEntry[2 * nEdges]);
+		_queueEntries = newQueueEntries(2 * nEdges);
+		_solverEdges = new ISolverEdgeState[nEdges];
+
+		reset();
+		++_version;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static BinaryHeap.Entry<Integer>[] newQueueEntries(int size)
+	{
+		return new BinaryHeap.Entry[size];
+	}
+
+	/**
+	 * Ensures that the directed edge is in the queue with at least the given residual.
+	 */
+	private void raisePriority(int directedEdge, double residual)
+	{
+		final BinaryHeap.Entry<Integer> entry = _queueEntries[directedEdge];
+		if (entry == null || !entry.isOwned())
+		{
+			_queueEntries[directedEdge] = _queue.offer(directedEdge, -residual);
+		}
+		else if (-residual < entry.getPriority())
+		{
+			_queue.changePriority(entry, -residual);
+		}
+	}
+
+	private @Nullable double[] discreteMessage(int edge, boolean factorToVariable)
+	{
+		ISolverEdgeState sedge = _solverEdges[edge];
+		if (sedge == null)
+		{
+			final Factor factor = _edgeFactor[edge];
+			final ISolverFactor sfactor = factor.getSolver();
+			if (sfactor == null)
+			{
+				return null;
+			}
+			sedge = _solverEdges[edge] = sfactor.getSiblingEdgeState(_entries[2 * edge].getPortNum());
+			if (sedge == null)
+			{
+				return null;
+			}
+		}
+
+		final Object msg = factorToVariable ? sedge.getFactorToVarMsg() : sedge.getVarToFactorMsg();
+		return msg instanceof DiscreteMessage ? ((DiscreteMessage)msg).representation() : null;
+	}
+
+	/**
+	 * Pops the highest priority edge off the queue and saves its current message.
+	 */
+	private int startUpdate()
+	{
+		final int directedEdge = Objects.requireNonNull(_queue.poll());
+		_queueEntries[directedEdge] = null;
+
+		final double[] message = discreteMessage(directedEdge >> 1, (directedEdge & 1) == 0);
+		_pendingMeasurable = message != null;
+		if (message != null)
+		{
+			if (_savedMessage.length < message.length)
+			{
+				_savedMessage = new double[message.length];
+			}
+			System.arraycopy(message, 0, _savedMessage, 0, message.length);
+		}
+
+		_pendingEdge = directedEdge;
+		return directedEdge;
+	}
+
+	/**
+	 * Measures the change in the message on the pending edge, if any, and raises the priority of the edges
+	 * that depend on it.
+	 */
+	private void finishPendingUpdate()
+	{
+		final int directedEdge = _pendingEdge;
+		if (directedEdge < 0)
+		{
+			return;
+		}
+		_pendingEdge = -1;
+
+		final int edge = directedEdge >> 1;
+		final boolean factorToVariable = (directedEdge & 1) == 0;
+
+		double residual = 0.0;
+		if (_pendingMeasurable)
+		{
+			final double[] message = discreteMessage(edge, factorToVariable);
+			if (message == null)
+			{
+				return;
+			}
+			residual = MessageResidualMonitor.change(_savedMessage, message);
+			if (!(residual > 0.0))
+			{
+				// Also skips NaN
+				return;
+			}
+		}
+
+		if (factorToVariable)
+		{
+			// Message went to variable, so its messages to other factors are affected.
+			for (int otherEdge : _variableEdges[_edgeVariableIndex[edge]])
+			{
+				if (otherEdge != edge)
+				{
+					raisePriority(2 * otherEdge + 1, residual);
+				}
+			}
+		}
+		else
+		{
+			// Message went to factor, so its messages to other variables are affected.
+			for (int otherEdge : _factorEdges[_edgeFactorIndex[edge]])
+			{
+				if (otherEdge != edge)
+				{
+					raisePriority(2 * otherEdge, residual);
+				}
+			}
+		}
+	}
+
+	/*---------------
+	 * Inner classes
+	 */
+
+	private class EdgeIterator implements Iterator<IScheduleEntry>
+	{
+		private int _remaining;
+
+		private EdgeIterator(int maxUpdates)
+		{
+			_remaining = maxUpdates;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			finishPendingUpdate();
+			return _remaining > 0 && !_queue.isEmpty();
+		}
+
+		@Override
+		public IScheduleEntry next()
+		{
+			if (!hasNext())
+			{
+				throw new NoSuchElementException();
+			}
+			--_remaining;
+			return _entries[startUpdate()];
+		}
+
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException("remove");
+		}
+	}
+}
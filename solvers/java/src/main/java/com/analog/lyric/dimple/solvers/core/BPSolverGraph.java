@@ -16,15 +16,31 @@
 
 package com.analog.lyric.dimple.solvers.core;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
 import org.eclipse.jdt.annotation.Nullable;
 
+import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.core.INode;
+import com.analog.lyric.dimple.model.repeated.CircularScheduleMap;
+import com.analog.lyric.dimple.model.repeated.FactorGraphStream;
 import com.analog.lyric.dimple.options.BPOptions;
 import com.analog.lyric.dimple.schedulers.SchedulerOptionKey;
+import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
+import com.analog.lyric.dimple.schedulers.schedule.ResidualBPSchedule;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.EdgeScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.SubgraphScheduleEntry;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
+import com.analog.lyric.dimple.solvers.interfaces.SolverNodeMapping;
+import com.analog.lyric.util.misc.Internal;
 
 /**
  * Base implementation class for belief-propagation-style solvers.
@@ -39,6 +55,32 @@ public abstract class BPSolverGraph
 	<SFactor extends ISolverFactor, SVariable extends ISolverVariable, SEdge extends ISolverEdgeState>
 	extends SFactorGraphBase<SFactor, SVariable, SEdge, NoSolverVariableBlock>
 {
+	/*-------
+	 * State
+	 */
+	
+	/**
+	 * Non-null only on root graph when {@link BPOptions#convergenceTolerance} is positive.
+	 */
+	private @Nullable MessageResidualMonitor _residualMonitor = null;
+	
+	/**
+	 * Non-null only on root graph when {@link BPOptions#messageTraceFile} is non-empty.
+	 */
+	private @Nullable MessageTraceWriter _messageTrace = null;
+	private double _convergenceTolerance = 0.0;
+	private int _convergenceCheckInterval = 1;
+	
+	private int _lastIterationCount = 0;
+	private double _lastResidual = Double.NaN;
+	private boolean _converged = false;
+	
+	/**
+	 * Non-null only on root graph once a stream in circular buffer mode has advanced since the
+	 * schedule was built.
+	 */
+	private @Nullable CircularScheduleMap _circularScheduleMap = null;
+	
 	/*--------------
 	 * Construction
 	 */
@@ -61,4 +103,365 @@ public abstract class BPSolverGraph
 	{
 		return BPOptions.scheduler;
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Discards the {@linkplain #getCircularScheduleMap() circular schedule map} if the schedule has changed.
+	 */
+	@Override
+	public ISchedule getSchedule()
+	{
+		final ISchedule schedule = super.getSchedule();
+		final CircularScheduleMap map = _circularScheduleMap;
+		if (map != null && !map.isFor(schedule))
+		{
+			_circularScheduleMap = null;
+		}
+		return schedule;
+	}
+	
+	@Override
+	public void setSchedule(@Nullable ISchedule schedule)
+	{
+		super.setSchedule(schedule);
+		_circularScheduleMap = null;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If a {@linkplain FactorGraphStream#setCircularBuffer circular} stream has advanced since the schedule
+	 * was built, this instead updates the nodes that now occupy the stream positions of those named by
+	 * {@code entry}.
+	 */
+	@Override
+	public void runScheduleEntry(IScheduleEntry entry)
+	{
+		final CircularScheduleMap map = _circularScheduleMap;
+		if (map != null)
+		{
+			final SolverNodeMapping solvers = getSolverMapping();
+			switch (entry.type())
+			{
+			case NODE:
+				solvers.getSolverNode(map.node(((NodeScheduleEntry)entry).getNode())).update();
+				return;
+			case EDGE:
+			{
+				final EdgeScheduleEntry edgeEntry = (EdgeScheduleEntry)entry;
+				final INode node = edgeEntry.getNode();
+				solvers.getSolverNode(map.node(node)).updateEdge(map.portNum(node, edgeEntry.getPortNum()));
+				return;
+			}
+			case SUBGRAPH:
+				solvers.getSolverGraph((FactorGraph)map.node(((SubgraphScheduleEntry)entry).getSubgraph())).update();
+				return;
+			default:
+				break;
+			}
+		}
+		super.runScheduleEntry(entry);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * When {@link BPOptions#convergenceTolerance} is positive, this will also set up convergence detection
+	 * from that option, {@link BPOptions#convergenceNorm} and {@link BPOptions#convergenceCheckInterval}.
+	 * <p>
+	 * Likewise, when {@link BPOptions#messageTraceFile} is non-empty, any previously open trace file will
+	 * be closed and a new one opened.
+	 * <p>
+	 * If the graph uses a {@link ResidualBPSchedule}, it will be {@linkplain ResidualBPSchedule#reset() reset}.
+	 */
+	@Override
+	public void initialize()
+	{
+		_lastIterationCount = 0;
+		_lastResidual = Double.NaN;
+		_converged = false;
+
+		_residualMonitor = null;
+		closeMessageTrace();
+		if (getParentGraph() == null)
+		{
+			_convergenceTolerance = getOptionOrDefault(BPOptions.convergenceTolerance);
+			_convergenceCheckInterval = getOptionOrDefault(BPOptions.convergenceCheckInterval);
+			
+			final String traceFile = getOptionOrDefault(BPOptions.messageTraceFile);
+			if (!traceFile.isEmpty())
+			{
+				try
+				{
+					_messageTrace = new MessageTraceWriter(new File(traceFile),
+						getOptionOrDefault(BPOptions.messageTraceIncludesMessages));
+				}
+				catch (IOException ex)
+				{
+					throw new DimpleException(ex, "Cannot open message trace file '%s'", traceFile);
+				}
+			}
+			
+			if (_convergenceTolerance > 0.0 || _messageTrace != null)
+			{
+				_residualMonitor =
+					new MessageResidualMonitor(getOptionOrDefault(BPOptions.convergenceNorm), _messageTrace);
+			}
+		}
+		
+		// Nodes look up the monitor during their initialization, so it must be set up first.
+		super.initialize();
+		
+		final ISchedule schedule = getSchedule();
+		if (schedule instanceof ResidualBPSchedule)
+		{
+			// Messages have been reset, so residuals from any previous run are no longer meaningful.
+			((ResidualBPSchedule)schedule).reset();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If the graph uses a {@link ResidualBPSchedule}, this runs the entries from its
+	 * {@linkplain ResidualBPSchedule#updateIterator() update iterator}.
+	 */
+	@Override
+	public void update()
+	{
+		final ISchedule schedule = getSchedule();
+		if (schedule instanceof ResidualBPSchedule)
+		{
+			final Iterator<IScheduleEntry> entries = ((ResidualBPSchedule)schedule).updateIterator();
+			while (entries.hasNext())
+			{
+				runScheduleEntry(entries.next());
+			}
+		}
+		else
+		{
+			super.update();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If convergence detection is enabled (see {@link BPOptions#convergenceTolerance}), this will stop before
+	 * running the specified number of iterations if the measured residual falls below the tolerance. Use
+	 * {@link #getLastIterationCount()}, {@link #getLastResidual()} and {@link #hasConverged()} to find out
+	 * what happened.
+	 * <p>
+	 * If message tracing is enabled (see {@link BPOptions#messageTraceFile}), records for all of the iterations
+	 * will have been written to the file when this returns. If that option has been cleared since the graph
+	 * was initialized, the trace file is instead closed before iterating.
+	 */
+	@Override
+	public void iterate(int numIters)
+	{
+		final MessageResidualMonitor monitor = _residualMonitor;
+
+		if (monitor == null)
+		{
+			_lastIterationCount = numIters;
+			_lastResidual = Double.NaN;
+			_converged = false;
+			super.iterate(numIters);
+			return;
+		}
+		
+		MessageTraceWriter trace = _messageTrace;
+		if (trace != null && getOptionOrDefault(BPOptions.messageTraceFile).isEmpty())
+		{
+			closeMessageTrace();
+			trace = null;
+		}
+		
+		final double tolerance = _convergenceTolerance;
+		final int interval = _convergenceCheckInterval;
+		double residual = Double.NaN;
+		boolean converged = false;
+		int iter = 0;
+		
+		while (iter < numIters)
+		{
+			++iter;
+			final boolean check = tolerance > 0.0 && (iter % interval == 0 || iter == numIters);
+			final boolean measure = check || trace != null;
+			
+			if (measure)
+			{
+				monitor.begin();
+			}
+			final boolean completed = runIterations(1);
+			if (measure)
+			{
+				final double iterResidual = monitor.end();
+				if (check)
+				{
+					residual = iterResidual;
+				}
+			}
+			
+			if (!completed)
+			{
+				break;
+			}
+			
+			if (check && residual < tolerance)
+			{
+				converged = true;
+				break;
+			}
+		}
+		
+		_lastIterationCount = iter;
+		_lastResidual = residual;
+		_converged = converged;
+		
+		if (trace != null)
+		{
+			trace.flush();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Closes the {@linkplain #getMessageTrace() message trace}, if open.
+	 */
+	@Override
+	public void preSetSolverFactory()
+	{
+		closeMessageTrace();
+	}
+	
+	/*-----------------------
+	 * BPSolverGraph methods
+	 */
+	
+	/**
+	 * Map used to run the current schedule after {@linkplain FactorGraphStream#setCircularBuffer circular}
+	 * streams have advanced, creating it if necessary.
+	 * <p>
+	 * Called by {@link FactorGraphStream} before the graph advances, so that the map records the positions
+	 * of the nodes while they still match the schedule. The map is discarded when the schedule changes.
+	 * <p>
+	 * @since 0.08
+	 * @category internal
+	 */
+	@Internal
+	public CircularScheduleMap getCircularScheduleMap()
+	{
+		final ISchedule schedule = getSchedule();
+		CircularScheduleMap map = _circularScheduleMap;
+		if (map == null)
+		{
+			_circularScheduleMap = map = new CircularScheduleMap(getModelObject(), schedule);
+		}
+		return map;
+	}
+	
+	/**
+	 * The {@link #getCircularScheduleMap() circular schedule map}, if one has been created for the current
+	 * schedule.
+	 * @since 0.08
+	 * @category internal
+	 */
+	@Internal
+	public @Nullable CircularScheduleMap getCircularScheduleMapIfExists()
+	{
+		return _circularScheduleMap;
+	}
+	
+	/**
+	 * The number of iterations run by the most recent call to {@link #iterate(int)}.
+	 * <p>
+	 * This will be less than the number requested if the iteration stopped early because
+	 * of convergence or interruption.
+	 * <p>
+	 * @since 0.08
+	 * @see #hasConverged()
+	 */
+	public int getLastIterationCount()
+	{
+		return _lastIterationCount;
+	}
+	
+	/**
+	 * The residual from the last convergence check during the most recent call to {@link #iterate(int)}.
+	 * <p>
+	 * Returns NaN if convergence detection is not enabled, no check has been made since the graph was
+	 * initialized or no messages were measured on the last check.
+	 * <p>
+	 * @since 0.08
+	 * @see BPOptions#convergenceTolerance
+	 * @see BPOptions#convergenceNorm
+	 */
+	public double getLastResidual()
+	{
+		return _lastResidual;
+	}
+	
+	/**
+	 * True if the most recent call to {@link #iterate(int)} stopped because the residual fell below
+	 * {@link BPOptions#convergenceTolerance}.
+	 * <p>
+	 * @since 0.08
+	 */
+	public boolean hasConverged()
+	{
+		return _converged;
+	}
+	
+	/**
+	 * Monitor for recording message changes for convergence detection, if enabled.
+	 * <p>
+	 * Only non-null on the root graph after {@link #initialize()} when {@link BPOptions#convergenceTolerance}
+	 * is positive or {@link BPOptions#messageTraceFile} is non-empty.
+	 * <p>
+	 * @since 0.08
+	 * @category internal
+	 */
+	@Internal
+	public @Nullable MessageResidualMonitor getResidualMonitor()
+	{
+		return _residualMonitor;
+	}
+	
+	/**
+	 * Writer for message trace file, if enabled.
+	 * <p>
+	 * Only non-null on the root graph after {@link #initialize()} when {@link BPOptions#messageTraceFile}
+	 * is non-empty, until the trace is closed.
+	 * <p>
+	 * @since 0.08
+	 */
+	public @Nullable MessageTraceWriter getMessageTrace()
+	{
+		return _messageTrace;
+	}
+	
+	/**
+	 * Closes message trace file, if open.
+	 * <p>
+	 * No more records will be written until the graph is next {@linkplain #initialize() initialized}.
+	 * The trace is also closed when the solver graph is replaced or removed from its model, or by
+	 * {@link #iterate(int)} once {@link BPOptions#messageTraceFile} has been cleared. A graph that is
+	 * simply discarded while tracing must have this invoked first, or its file and background thread
+	 * will not be released.
+	 * <p>
+	 * @since 0.08
+	 * @see BPOptions#messageTraceFile
+	 */
+	public void closeMessageTrace()
+	{
+		final MessageTraceWriter trace = _messageTrace;
+		if (trace != null)
+		{
+			_messageTrace = null;
+			trace.close();
+		}
+	}
 }
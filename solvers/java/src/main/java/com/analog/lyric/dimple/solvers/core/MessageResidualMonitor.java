@@ -0,0 +1,315 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.collect.ScratchArena;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
+
+/**
+ * Accumulates changes in outgoing messages over a single solver iteration.
+ * <p>
+ * Used by {@link BPSolverGraph} to implement convergence detection when {@link BPOptions#convergenceTolerance}
+ * is positive. The root solver graph {@linkplain #begin() activates} the monitor for iterations on which
+ * convergence is to be checked. Solver nodes that support convergence detection save their outgoing messages
+ * before each update while the monitor is {@linkplain #isActive() active} and report the change afterward.
+ * <p>
+ * Messages are expected to be in normalized form so that changes can be compared directly: weights
+ * normalized to sum to one, or energies normalized to a minimum of zero.
+ * <p>
+ * The monitor is also used to write the change for each individual message to a {@link MessageTraceWriter}
+ * when {@link BPOptions#messageTraceFile} is set, in which case it is active on every iteration.
+ * <p>
+ * @since 0.08
+ */
+@ThreadSafe
+public final class MessageResidualMonitor
+{
+	/*-------
+	 * State
+	 */
+	
+	private final MessageResidualNorm _norm;
+	private final @Nullable MessageTraceWriter _trace;
+	
+	private volatile boolean _active = false;
+	
+	private double _maxChange;
+	private double _sumChange;
+	private long _nMessages;
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	public MessageResidualMonitor(MessageResidualNorm norm)
+	{
+		this(norm, null);
+	}
+	
+	/**
+	 * Constructs monitor that also writes the change in each message to {@code trace}, if non-null.
+	 * @since 0.08
+	 */
+	public MessageResidualMonitor(MessageResidualNorm norm, @Nullable MessageTraceWriter trace)
+	{
+		_norm = norm;
+		_trace = trace;
+	}
+	
+	/**
+	 * Returns monitor from root solver graph of {@code node}, if it has one.
+	 * <p>
+	 * Intended to be invoked from solver node's {@linkplain ISolverNode#initialize() initialize} method.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static @Nullable MessageResidualMonitor forNode(ISolverNode node)
+	{
+		final ISolverFactorGraph root = node.getRootSolverGraph();
+		return root instanceof BPSolverGraph ? ((BPSolverGraph<?,?,?>)root).getResidualMonitor() : null;
+	}
+	
+	/*---------
+	 * Methods
+	 */
+	
+	/**
+	 * The norm used to compute {@link #residual()}.
+	 * @since 0.08
+	 */
+	public MessageResidualNorm norm()
+	{
+		return _norm;
+	}
+	
+	/**
+	 * Writer for the message trace, if any.
+	 * @since 0.08
+	 */
+	public @Nullable MessageTraceWriter trace()
+	{
+		return _trace;
+	}
+	
+	/**
+	 * True if message changes are currently being recorded.
+	 * @since 0.08
+	 */
+	public boolean isActive()
+	{
+		return _active;
+	}
+	
+	/**
+	 * Clears accumulated changes and starts recording.
+	 * <p>
+	 * Also advances the {@linkplain MessageTraceWriter#iteration() iteration number} of the {@link #trace()}.
+	 * @since 0.08
+	 */
+	public synchronized void begin()
+	{
+		final MessageTraceWriter trace = _trace;
+		if (trace != null)
+		{
+			trace.nextIteration();
+		}
+
+		_maxChange = 0.0;
+		_sumChange = 0.0;
+		_nMessages = 0;
+		_active = true;
+	}
+	
+	/**
+	 * Stops recording and returns {@link #residual()}.
+	 * @since 0.08
+	 */
+	public synchronized double end()
+	{
+		_active = false;
+		return residual();
+	}
+	
+	/**
+	 * The residual computed from changes recorded since last call to {@link #begin()}.
+	 * <p>
+	 * Returns NaN if no changes have been recorded.
+	 * @since 0.08
+	 */
+	public synchronized double residual()
+	{
+		if (_nMessages == 0)
+		{
+			return Double.NaN;
+		}
+		
+		switch (_norm)
+		{
+		case MEAN:
+			return _sumChange / _nMessages;
+		case MAX:
+		default:
+			return _maxChange;
+		}
+	}
+	
+	/**
+	 * Number of message changes recorded since last call to {@link #begin()}.
+	 * @since 0.08
+	 */
+	public synchronized long messageCount()
+	{
+		return _nMessages;
+	}
+	
+	/**
+	 * Returns a temporary copy of a single outgoing message.
+	 * <p>
+	 * The returned array is allocated from {@code scratch} and should be passed to
+	 * {@link #recordChange(ISolverNode, int, double[], double[])} before the caller resets {@code scratch}.
+	 * @since 0.08
+	 */
+	public double[] saveMessage(ScratchArena scratch, double[] message)
+	{
+		final int length = message.length;
+		final double[] saved = scratch.allocateDoubles(length);
+		System.arraycopy(message, 0, saved, 0, length);
+		return saved;
+	}
+	
+	/**
+	 * Returns a temporary copy of all of the outgoing messages of a node concatenated together.
+	 * <p>
+	 * The returned array is allocated from {@code scratch} and should be passed to
+	 * {@link #recordChanges(ISolverNode, double[], double[][])} before the caller resets {@code scratch}.
+	 * @since 0.08
+	 */
+	public double[] saveMessages(ScratchArena scratch, double[][] messages)
+	{
+		int length = 0;
+		for (double[] message : messages)
+		{
+			length += message.length;
+		}
+		
+		final double[] saved = scratch.allocateDoubles(length);
+		for (int i = 0, offset = 0, n = messages.length; i < n; ++i)
+		{
+			final double[] message = messages[i];
+			System.arraycopy(message, 0, saved, offset, message.length);
+			offset += message.length;
+		}
+		
+		return saved;
+	}
+	
+	/**
+	 * Records change between message saved by {@link #saveMessage(ScratchArena, double[])} and its
+	 * current value.
+	 * <p>
+	 * @param node is the node that sent the message.
+	 * @param edge is the index of the message's edge on the node.
+	 * @since 0.08
+	 */
+	public void recordChange(ISolverNode node, int edge, double[] saved, double[] message)
+	{
+		final double change = change(saved, 0, message);
+		add(change, change, 1);
+		
+		final MessageTraceWriter trace = _trace;
+		if (trace != null)
+		{
+			trace.record(node.getModelObject().getGlobalId(), edge, change, message);
+		}
+	}
+
+	/**
+	 * Records changes between messages saved by {@link #saveMessages(ScratchArena, double[][])} and their
+	 * current values.
+	 * <p>
+	 * @param node is the node that sent the messages, which are indexed by the node's edges.
+	 * @since 0.08
+	 */
+	public void recordChanges(ISolverNode node, double[] saved, double[][] messages)
+	{
+		final MessageTraceWriter trace = _trace;
+		final long nodeId = trace != null ? node.getModelObject().getGlobalId() : -1;
+		
+		double maxChange = 0.0, sumChange = 0.0;
+		for (int i = 0, offset = 0, n = messages.length; i < n; ++i)
+		{
+			final double[] message = messages[i];
+			final double change = change(saved, offset, message);
+			maxChange = Math.max(maxChange, change);
+			sumChange += change;
+			offset += message.length;
+			if (trace != null)
+			{
+				trace.record(nodeId, i, change, message);
+			}
+		}
+		add(maxChange, sumChange, messages.length);
+	}
+	
+	/**
+	 * Maximum absolute difference between corresponding elements of {@code saved} and {@code message}.
+	 * <p>
+	 * Only the first {@code message.length} elements of {@code saved} are compared. Identical values,
+	 * including identical infinities, are treated as no change.
+	 * @since 0.08
+	 */
+	public static double change(double[] saved, double[] message)
+	{
+		return change(saved, 0, message);
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	private synchronized void add(double maxChange, double sumChange, int nMessages)
+	{
+		_maxChange = Math.max(_maxChange, maxChange);
+		_sumChange += sumChange;
+		_nMessages += nMessages;
+	}
+	
+	/**
+	 * Maximum absolute difference between elements of {@code message} and corresponding elements of
+	 * {@code saved} starting at {@code offset}. Identical values, including identical infinities,
+	 * are treated as no change.
+	 */
+	private static double change(double[] saved, int offset, double[] message)
+	{
+		double change = 0.0;
+		for (int i = message.length; --i>=0;)
+		{
+			final double oldValue = saved[offset + i], newValue = message[i];
+			if (oldValue != newValue)
+			{
+				change = Math.max(change, Math.abs(newValue - oldValue));
+			}
+		}
+		return change;
+	}
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core;
+
+import com.analog.lyric.dimple.options.BPOptions;
+
+/**
+ * Choices for combining per-message changes into a single residual for convergence detection.
+ * <p>
+ * The change in an individual message is always measured as the maximum absolute difference
+ * between corresponding elements of the old and new message. This determines how those values are
+ * combined across all messages updated in an iteration.
+ * <p>
+ * @see BPOptions#convergenceNorm
+ * @since 0.08
+ */
+public enum MessageResidualNorm
+{
+	/**
+	 * Use the largest change of any message updated during the iteration.
+	 */
+	MAX,
+	
+	/**
+	 * Use the mean change across all messages updated during the iteration.
+	 */
+	MEAN;
+}
@@ -0,0 +1,218 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+
+/**
+ * Reads records from a file written by {@link MessageTraceWriter}.
+ * <p>
+ * The reader is positioned before the first record when created. Each call to {@link #next()}
+ * advances to the following record, whose contents are then available from the accessor methods.
+ * To avoid allocation, the array returned by {@link #message()} is reused when consecutive messages
+ * have the same length.
+ * <p>
+ * <pre>
+ *     try (MessageTraceReader reader = new MessageTraceReader(file))
+ *     {
+ *         while (reader.next())
+ *         {
+ *             Node node = graph.getNodeByGlobalId(reader.nodeId());
+ *             ...
+ *         }
+ *     }
+ * </pre>
+ * <p>
+ * @since 0.08
+ */
+@NotThreadSafe
+public final class MessageTraceReader implements Closeable
+{
+	/*-------
+	 * State
+	 */
+	
+	private final DataInputStream _in;
+	private final boolean _includesMessages;
+	
+	private long _nodeId = -1;
+	private int _edge = -1;
+	private int _iteration = 0;
+	private double _change = Double.NaN;
+	private double[] _message = new double[0];
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	/**
+	 * Opens trace file for reading.
+	 * <p>
+	 * @throws IOException if file cannot be opened or is not a message trace file of a supported version.
+	 * @since 0.08
+	 */
+	public MessageTraceReader(File file) throws IOException
+	{
+		_in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		
+		try
+		{
+			if (_in.readInt() != MessageTraceWriter.MAGIC)
+			{
+				throw new IOException(String.format("'%s' is not a message trace file", file));
+			}
+			final int version = _in.readInt();
+			if (version != MessageTraceWriter.VERSION)
+			{
+				throw new IOException(String.format("Unsupported message trace file version %d in '%s'",
+					version, file));
+			}
+			_includesMessages = (_in.readInt() & MessageTraceWriter.INCLUDES_MESSAGES) != 0;
+		}
+		catch (IOException ex)
+		{
+			_in.close();
+			throw ex;
+		}
+	}
+	
+	/*-------------------
+	 * Closeable methods
+	 */
+	
+	@Override
+	public void close() throws IOException
+	{
+		_in.close();
+	}
+	
+	/*----------------------------
+	 * MessageTraceReader methods
+	 */
+	
+	/**
+	 * Indicates whether records include the message values.
+	 * @since 0.08
+	 */
+	public boolean includesMessages()
+	{
+		return _includesMessages;
+	}
+	
+	/**
+	 * Advances to the next record.
+	 * <p>
+	 * @return false if there are no more records.
+	 * @throws IOException if the file cannot be read or ends in the middle of a record.
+	 * @since 0.08
+	 */
+	public boolean next() throws IOException
+	{
+		final long nodeId;
+		try
+		{
+			nodeId = _in.readLong();
+		}
+		catch (EOFException ex)
+		{
+			return false;
+		}
+		
+		_nodeId = nodeId;
+		_edge = _in.readInt();
+		_iteration = _in.readInt();
+		_change = _in.readDouble();
+		
+		if (_includesMessages)
+		{
+			final int length = _in.readInt();
+			if (length != _message.length)
+			{
+				_message = new double[length];
+			}
+			for (int i = 0; i < length; ++i)
+			{
+				_message[i] = _in.readDouble();
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Global id of the node that sent the message in the current record.
+	 * <p>
+	 * Can be used to look up the node using {@link FactorGraph#getNodeByGlobalId(long)}.
+	 * @since 0.08
+	 */
+	public long nodeId()
+	{
+		return _nodeId;
+	}
+	
+	/**
+	 * Index of the outgoing edge on the {@linkplain #nodeId() node} for the current record.
+	 * @since 0.08
+	 */
+	public int edge()
+	{
+		return _edge;
+	}
+	
+	/**
+	 * Iteration number of the current record, starting at one.
+	 * @since 0.08
+	 */
+	public int iteration()
+	{
+		return _iteration;
+	}
+	
+	/**
+	 * Change in message from its previous value in current record.
+	 * <p>
+	 * This is the maximum absolute difference between corresponding message elements, as computed by
+	 * {@link MessageResidualMonitor#change(double[], double[])}.
+	 * @since 0.08
+	 */
+	public double change()
+	{
+		return _change;
+	}
+	
+	/**
+	 * Value of message in current record.
+	 * <p>
+	 * Returns an empty array if {@link #includesMessages()} is false. The returned array may be
+	 * overwritten by the next call to {@link #next()}.
+	 * @since 0.08
+	 */
+	public double[] message()
+	{
+		return _message;
+	}
+}
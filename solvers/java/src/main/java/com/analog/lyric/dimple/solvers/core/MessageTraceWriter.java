@@ -0,0 +1,455 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import net.jcip.annotations.ThreadSafe;
+
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.options.BPOptions;
+
+/**
+ * Records per-edge message changes to a compact binary file.
+ * <p>
+ * Used by {@link BPSolverGraph} when {@link BPOptions#messageTraceFile} is set. Each record identifies
+ * an outgoing message by the {@linkplain com.analog.lyric.dimple.model.core.Node#getGlobalId() global id}
+ * of the node that sent it and the index of the edge on that node, and holds the iteration number, the
+ * {@linkplain MessageResidualMonitor#change(double[], double[]) change} in the message from its previous
+ * value and optionally the new message itself.
+ * <p>
+ * Records are written into preallocated buffers owned by the writing thread. Full buffers are written
+ * to the file by a background thread and then returned for reuse, so recording a message does not
+ * allocate or wait on file IO unless every buffer is waiting to be written. Records from different
+ * threads may therefore appear in the file out of order with respect to each other.
+ * <p>
+ * Use {@link MessageTraceReader} to read the file.
+ * <p>
+ * Each writer holds an open file and a background thread until it is {@linkplain #close() closed}, which
+ * its creator must ensure happens. Neither is released if the writer is simply discarded.
+ * <p>
+ * All values in the file are big-endian. The file begins with a header consisting of the int values {@link #MAGIC},
+ * {@link #VERSION} and a flags word, in which bit {@link #INCLUDES_MESSAGES} indicates whether
+ * records include the message. Each record consists of:
+ * <ul>
+ * <li>long: global id of the node
+ * <li>int: edge index on the node
+ * <li>int: iteration number, starting at one
+ * <li>double: change in message
+ * <li>if messages are included, an int length followed by that many doubles
+ * </ul>
+ * <p>
+ * @since 0.08
+ */
+@ThreadSafe
+public final class MessageTraceWriter implements AutoCloseable
+{
+	/*-----------
+	 * Constants
+	 */
+	
+	/**
+	 * Identifies message trace files: "DMTR"
+	 * @since 0.08
+	 */
+	public static final int MAGIC = 0x444D5452;
+	
+	/**
+	 * Current version of the file format.
+	 * @since 0.08
+	 */
+	public static final int VERSION = 1;
+	
+	/**
+	 * Flag bit in header indicating records include the message.
+	 * @since 0.08
+	 */
+	public static final int INCLUDES_MESSAGES = 0x1;
+	
+	static final int HEADER_SIZE = 12;
+	static final int RECORD_SIZE = 24;
+	
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	/**
+	 * Number of buffers allocated in addition to the one owned by each writing thread.
+	 */
+	private static final int SPARE_BUFFERS = 4;
+
+	/*-------
+	 * State
+	 */
+	
+	private final File _file;
+	private final boolean _includeMessages;
+	private final FileChannel _channel;
+	
+	/**
+	 * Buffers ready to be written to by threads.
+	 */
+	private final BlockingQueue<ByteBuffer> _free = new LinkedBlockingQueue<>();
+	
+	/**
+	 * Buffers waiting to be written to the file, or {@link CountDownLatch} objects to signal when
+	 * everything before them has been written.
+	 */
+	private final BlockingQueue<Object> _full = new LinkedBlockingQueue<>();
+	
+	/**
+	 * Buffers currently owned by each thread that has written a record.
+	 */
+	private final List<ByteBuffer[]> _slots = new ArrayList<>();
+	
+	private final ThreadLocal<ByteBuffer[]> _slot = new ThreadLocal<ByteBuffer[]>() {
+		@Override
+		protected ByteBuffer[] initialValue()
+		{
+			synchronized (_slots)
+			{
+				final ByteBuffer[] slot = new ByteBuffer[] { ByteBuffer.allocateDirect(BUFFER_SIZE) };
+				_slots.add(slot);
+				return slot;
+			}
+		}
+	};
+	
+	private final Thread _flusher;
+	
+	private volatile int _iteration = 0;
+	private volatile boolean _closed = false;
+	private volatile boolean _failed = false;
+	
+	private final CountDownLatch _finished = new CountDownLatch(1);
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	/**
+	 * Creates writer for new trace file, replacing any existing file with the same name.
+	 * <p>
+	 * @param includeMessages specifies whether to include the message values in each record, in
+	 * addition to its change.
+	 * @throws IOException if file cannot be created.
+	 * @since 0.08
+	 */
+	public MessageTraceWriter(File file, boolean includeMessages) throws IOException
+	{
+		_file = file;
+		_includeMessages = includeMessages;
+		
+		@SuppressWarnings("resource")
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		_channel = raf.getChannel();
+		_channel.truncate(0);
+		
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putInt(VERSION).putInt(includeMessages ? INCLUDES_MESSAGES : 0);
+		header.flip();
+		while (header.hasRemaining())
+		{
+			_channel.write(header);
+		}
+		
+		for (int i = 0; i < SPARE_BUFFERS; ++i)
+		{
+			_free.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+		}
+		
+		_flusher = new Thread(new Runnable() {
+			@Override
+			public void run()
+			{
+				writeBuffers();
+			}
+		}, "Dimple message trace writer");
+		_flusher.setDaemon(true);
+		_flusher.start();
+	}
+	
+	/*---------
+	 * Methods
+	 */
+	
+	/**
+	 * The file being written.
+	 * @since 0.08
+	 */
+	public File file()
+	{
+		return _file;
+	}
+	
+	/**
+	 * Indicates whether records include message values.
+	 * @since 0.08
+	 */
+	public boolean includesMessages()
+	{
+		return _includeMessages;
+	}
+	
+	/**
+	 * The iteration number that will be written with new records.
+	 * <p>
+	 * This is zero until {@link #nextIteration()} is first called.
+	 * @since 0.08
+	 */
+	public int iteration()
+	{
+		return _iteration;
+	}
+	
+	/**
+	 * Increments the {@linkplain #iteration() iteration number}.
+	 * <p>
+	 * Should be called before records for the iteration are written.
+	 * @since 0.08
+	 */
+	public void nextIteration()
+	{
+		++_iteration;
+	}
+	
+	/**
+	 * Writes a record for a single message.
+	 * <p>
+	 * May be invoked concurrently from multiple threads.
+	 * <p>
+	 * @param nodeId is the global id of the node that sent the message.
+	 * @param edge is the index of the edge on that node.
+	 * @param change is the change in the message from its previous value.
+	 * @param message is the new value of the message. Only written if {@link #includesMessages()}.
+	 * @since 0.08
+	 */
+	public void record(long nodeId, int edge, double change, double[] message)
+	{
+		if (_closed)
+		{
+			return;
+		}
+
+		final int messageSize = _includeMessages ? 4 + 8 * message.length : 0;
+		final int size = RECORD_SIZE + messageSize;
+		
+		final ByteBuffer[] slot = _slot.get();
+		ByteBuffer buffer = slot[0];
+		if (buffer.remaining() < size)
+		{
+			_full.add(buffer);
+			buffer = size <= BUFFER_SIZE ? takeFreeBuffer() : ByteBuffer.allocateDirect(size);
+			slot[0] = buffer;
+		}
+		
+		buffer.putLong(nodeId).putInt(edge).putInt(_iteration).putDouble(change);
+		if (_includeMessages)
+		{
+			buffer.putInt(message.length);
+			for (double d : message)
+			{
+				buffer.putDouble(d);
+			}
+		}
+	}
+	
+	/**
+	 * Writes all records written so far to the file and waits for them to be written.
+	 * <p>
+	 * This must not be invoked while other threads are writing records. It is invoked by
+	 * {@link BPSolverGraph} at the end of each call to {@link BPSolverGraph#iterate(int)}.
+	 * <p>
+	 * @since 0.08
+	 */
+	public void flush()
+	{
+		if (_closed)
+		{
+			return;
+		}
+		
+		synchronized (_slots)
+		{
+			for (ByteBuffer[] slot : _slots)
+			{
+				if (slot[0].position() > 0)
+				{
+					_full.add(slot[0]);
+					slot[0] = takeFreeBuffer();
+				}
+			}
+		}
+		
+		final CountDownLatch latch = new CountDownLatch(1);
+		_full.add(latch);
+		awaitUninterruptibly(latch);
+	}
+	
+	/**
+	 * {@linkplain #flush() Flushes} remaining records and closes the file.
+	 * <p>
+	 * Records written after this is called will be ignored. Does nothing if already closed.
+	 * <p>
+	 * @since 0.08
+	 */
+	@Override
+	public void close()
+	{
+		if (_closed)
+		{
+			return;
+		}
+		
+		flush();
+		_closed = true;
+		_full.add(_finished);
+		awaitUninterruptibly(_finished);
+		
+		try
+		{
+			_channel.close();
+		}
+		catch (IOException ex)
+		{
+			DimpleEnvironment.logWarning("Cannot close message trace file '%s': %s", _file, ex);
+		}
+	}
+	
+	/**
+	 * True if {@link #close()} has been called.
+	 * @since 0.08
+	 */
+	public boolean isClosed()
+	{
+		return _closed;
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	private ByteBuffer takeFreeBuffer()
+	{
+		// If there are no spare buffers, then wait for the background thread to return one.
+		ByteBuffer buffer = _free.poll();
+		boolean interrupted = false;
+		while (buffer == null)
+		{
+			try
+			{
+				buffer = _free.take();
+			}
+			catch (InterruptedException ex)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+		return buffer;
+	}
+	
+	private static void awaitUninterruptibly(CountDownLatch latch)
+	{
+		boolean interrupted = false;
+		while (latch.getCount() > 0)
+		{
+			try
+			{
+				latch.await();
+			}
+			catch (InterruptedException ex)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Body of background thread.
+	 */
+	private void writeBuffers()
+	{
+		while (true)
+		{
+			Object item;
+			try
+			{
+				item = _full.take();
+			}
+			catch (InterruptedException ex)
+			{
+				continue;
+			}
+			
+			if (item instanceof ByteBuffer)
+			{
+				final ByteBuffer buffer = (ByteBuffer)item;
+				writeBuffer(buffer);
+				if (buffer.capacity() == BUFFER_SIZE)
+				{
+					_free.add(buffer);
+				}
+			}
+			else
+			{
+				final CountDownLatch latch = (CountDownLatch)item;
+				latch.countDown();
+				if (latch == _finished)
+				{
+					return;
+				}
+			}
+		}
+	}
+	
+	private void writeBuffer(ByteBuffer buffer)
+	{
+		buffer.flip();
+		if (!_failed)
+		{
+			try
+			{
+				while (buffer.hasRemaining())
+				{
+					_channel.write(buffer);
+				}
+			}
+			catch (IOException ex)
+			{
+				// Give up on the trace but keep recycling buffers so that writers are not blocked.
+				_failed = true;
+				DimpleEnvironment.logWarning("Cannot write message trace file '%s': %s", _file, ex);
+			}
+		}
+		buffer.clear();
+	}
+}
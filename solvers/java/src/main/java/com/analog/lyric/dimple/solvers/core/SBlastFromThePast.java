@@ -34,16 +34,11 @@ import com.analog.lyric.dimple.solvers.interfaces.SolverNodeMapping;
 public class SBlastFromThePast extends SolverEventSource implements ISolverBlastFromThePastFactor
 {
 	private BlastFromThePastFactor _factor;
-	protected final Port _portForOtherVar;
-	protected final Port _portForBlastVar;
 	protected final ISolverFactorGraph _parent;
 	
 	public SBlastFromThePast(BlastFromThePastFactor f, ISolverFactorGraph parent)
 	{
 		_factor = f;
-		_portForOtherVar = f.getPortForOtherVariable();
-		Variable varConnectedToBlast = f.getVariableConnectedToBlast();
-	    _portForBlastVar = varConnectedToBlast.getPort(varConnectedToBlast.findSibling(getModelObject()));
 	    _parent = parent;
 	}
 	
@@ -121,9 +116,16 @@ public class SBlastFromThePast extends SolverEventSource implements ISolverBlast
 		return _factor;
 	}
 	
-	public @Nullable Port getOtherVariablePort()
+	/**
+	 * The port whose message is taken by {@link #advance()}.
+	 * <p>
+	 * This is looked up from the {@linkplain #getFactor() factor} on each call, since a
+	 * {@link com.analog.lyric.dimple.model.repeated.FactorGraphStream FactorGraphStream} in circular
+	 * buffer mode moves its factors on each advance.
+	 */
+	public Port getOtherVariablePort()
 	{
-		return _portForOtherVar;
+		return _factor.getPortForOtherVariable();
 	}
 	
 	@Override
@@ -238,13 +240,12 @@ public class SBlastFromThePast extends SolverEventSource implements ISolverBlast
 	@Override
 	public void advance()
 	{
-		// FIXME lookup through solver graph
-		EdgeState edgeState = _portForBlastVar.toEdgeState();
-		ISolverFactorGraph sfg = _portForBlastVar.getNode().getParentGraph().getSolver();
-		ISolverEdgeState sedge = sfg.getSolverEdge(edgeState);
+		ISolverEdgeState sedge = getSiblingEdgeState(0);
 		
-		EdgeState edgeState2 = _portForOtherVar.toEdgeState();
-		ISolverFactorGraph sfg2 = _portForOtherVar.getNode().getParentGraph().getSolver();
+		// FIXME lookup through solver graph
+		final Port portForOtherVar = getOtherVariablePort();
+		EdgeState edgeState2 = portForOtherVar.toEdgeState();
+		ISolverFactorGraph sfg2 = portForOtherVar.getNode().getParentGraph().getSolver();
 		ISolverEdgeState sedge2 = sfg2.getSolverEdge(edgeState2);
 		
 		sedge.setFrom(sedge2);
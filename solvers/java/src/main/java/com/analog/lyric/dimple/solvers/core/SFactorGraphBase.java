@@ -41,6 +41,7 @@ import com.analog.lyric.dimple.model.core.Node;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.factors.FactorBase;
 import com.analog.lyric.dimple.model.repeated.BlastFromThePastFactor;
+import com.analog.lyric.dimple.model.repeated.GraphInstances;
 import com.analog.lyric.dimple.model.variables.Variable;
 import com.analog.lyric.dimple.model.variables.VariableBlock;
 import com.analog.lyric.dimple.options.BPOptions;
@@ -99,7 +100,10 @@ public abstract class SFactorGraphBase
 	private @Nullable ISolverFactorGraph _parent;
 	
 	protected int _numIterations = 1;		// Default number of iterations unless otherwise specified
-	private @Nullable MultiThreadingManager _multithreader; // = new MultiThreadingManager();
+	/**
+	 * Created on demand by {@link #multithreader()}.
+	 */
+	private @Nullable MultiThreadingManager _multithreader;
 	protected boolean _useMultithreading = false;
 	
 	/**
@@ -415,6 +419,12 @@ public abstract class SFactorGraphBase
 
 	@Override
 	public void moveMessages(ISolverNode other)
+	{
+		moveMessages(other, true);
+	}
+	
+	@Override
+	public void moveMessages(ISolverNode other, boolean resetOther)
 	{
 		@SuppressWarnings("unchecked")
 		SFactorGraphBase<SFactor,SVariable,SEdge,SBlock> sother =
@@ -429,7 +439,10 @@ public abstract class SFactorGraphBase
 			{
 				SEdge thatEdge = requireNonNull(sother.getSolverEdge(i));
 				thisEdge.setFrom(thatEdge);
-				thatEdge.reset();
+				if (resetOther)
+				{
+					thatEdge.reset();
+				}
 			}
 		}
 		
@@ -446,7 +459,24 @@ public abstract class SFactorGraphBase
 			final int localId = ssubgraph.getModelObject().getLocalId();
 			final FactorGraph subgraph2 = requireNonNull(otherGraph.getGraphByLocalId(localId));
 			ISolverFactorGraph ssubgraph2 = requireNonNull(sother.getSolverSubgraph(subgraph2, true));
-			ssubgraph.moveMessages(ssubgraph2);
+			ssubgraph.moveMessages(ssubgraph2, resetOther);
+		}
+	}
+
+	@Override
+	public void resetMessages()
+	{
+		for (SEdge edge : _edges)
+		{
+			if (edge != null)
+			{
+				edge.reset();
+			}
+		}
+		
+		for (ISolverFactorGraph ssubgraph : getSolverSubgraphs())
+		{
+			ssubgraph.resetMessages();
 		}
 	}
 
@@ -645,17 +675,31 @@ public abstract class SFactorGraphBase
 	@Override
 	public void iterate(int numIters)
 	{
-		final MultiThreadingManager multithreader = _multithreader;
-		if (multithreader == null || ! _useMultithreading)
+		runIterations(numIters);
+	}
+
+	/**
+	 * Runs specified number of iterations of the schedule.
+	 * <p>
+	 * This implements the default behavior of {@link #iterate(int)}, using the {@linkplain #getMultithreadingManager()
+	 * multithreading manager} if multithreading is enabled.
+	 * <p>
+	 * @return false if iteration was stopped early because the solver thread was interrupted.
+	 * @since 0.08
+	 */
+	protected boolean runIterations(int numIters)
+	{
+		final MultiThreadingManager multithreader = _useMultithreading ? multithreader() : null;
+		if (multithreader == null)
 		{
 			// *** Single thread
 			for (int iterNum = 0; iterNum < numIters; iterNum++)
 			{
 				update();
-				
+
 				// Allow interruption (if the solver is run as a thread); currently interruption is allowed only between iterations, not within a single iteration
 				if (Thread.interrupted())
-					return;
+					return false;
 			}
 		}
 		else
@@ -663,6 +707,8 @@ public abstract class SFactorGraphBase
 			// *** Multiple threads
 			multithreader.iterate(numIters);
 		}
+
+		return true;
 	}
 	
 	@Override
@@ -921,7 +967,7 @@ public abstract class SFactorGraphBase
 	@Override
 	public void useMultithreading(boolean use)
 	{
-		if (_multithreader == null)
+		if (!supportsMultithreading())
 			throw new DimpleException("Multithreading is not currently supported by this solver.");
 		else
 			_useMultithreading = use;
@@ -937,7 +983,7 @@ public abstract class SFactorGraphBase
 	@Matlab
 	public MultiThreadingManager getMultithreadingManager()
 	{
-		final MultiThreadingManager multithreader = _multithreader;
+		final MultiThreadingManager multithreader = multithreader();
 		if (multithreader == null)
 			throw new DimpleException("Multithreading is not currently supported by this solver.");
 		else
@@ -948,6 +994,61 @@ public abstract class SFactorGraphBase
 	{
 		_multithreader = manager;
 	}
+	
+	/**
+	 * Creates multithreading manager for this graph on first use.
+	 * <p>
+	 * Invoked when the manager is needed and none has yet been created or set by
+	 * {@link #setMultithreadingManager}. The default implementation returns null, indicating that
+	 * multithreading is not supported. Solvers that support multithreading should override this rather
+	 * than setting the manager in their constructor, so that the manager is only allocated
+	 * for graphs that actually use it, and should also override {@link #supportsMultithreading()}.
+	 * <p>
+	 * @since 0.08
+	 */
+	protected @Nullable MultiThreadingManager createMultithreadingManager()
+	{
+		return null;
+	}
+	
+	/**
+	 * True if this graph can run multithreaded.
+	 * <p>
+	 * Unlike {@link #getMultithreadingManager()}, this does not create the manager. The default
+	 * implementation returns true only if a manager has already been created or set by
+	 * {@link #setMultithreadingManager}. Solvers that override {@link #createMultithreadingManager()}
+	 * should override this to return true.
+	 * <p>
+	 * @since 0.08
+	 */
+	protected boolean supportsMultithreading()
+	{
+		return _multithreader != null;
+	}
+	
+	/**
+	 * Indicates whether this solver implements {@link GraphInstances} factors.
+	 * <p>
+	 * Solver factors for factors with that function are only created by solvers that return true.
+	 * Other solvers would have to build a factor table over the boundary variables of every instance.
+	 * The default implementation returns false.
+	 * <p>
+	 * @since 0.08
+	 */
+	protected boolean supportsGraphInstances()
+	{
+		return false;
+	}
+	
+	private @Nullable MultiThreadingManager multithreader()
+	{
+		MultiThreadingManager multithreader = _multithreader;
+		if (multithreader == null)
+		{
+			_multithreader = multithreader = createMultithreadingManager();
+		}
+		return multithreader;
+	}
 
 	/***********************************************
 	 * 
@@ -1050,6 +1151,16 @@ public abstract class SFactorGraphBase
 		
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The default implementation does nothing.
+	 */
+	@Override
+	public void preSetSolverFactory()
+	{
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * 
@@ -1482,6 +1593,12 @@ public abstract class SFactorGraphBase
 				}
 				else
 				{
+					if (!supportsGraphInstances() &&
+						factor.getFactorFunction().getContainedFactorFunction() instanceof GraphInstances)
+					{
+						throw new DimpleException("Graph instances factor '%s' requires the sum-product or Gibbs solver, but %s does not support it",
+							factor.getLabel(), getClass().getSimpleName());
+					}
 					sfactor = this.createFactor(factor);
 					factors.set(index, sfactor);
 				}
@@ -154,6 +154,16 @@ public abstract class SVariableBase<MVariable extends Variable> extends SNode<MV
 		
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The default implementation does nothing.
+	 */
+	@Override
+	public void notifySiblingsChanged()
+	{
+	}
+	
 	/*-------------------------
 	 * ISolverVariable methods
 	 */
@@ -0,0 +1,37 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core.kbest;
+
+import com.analog.lyric.dimple.model.values.Value;
+
+/**
+ * An {@link IKBestFactor} that can evaluate its factor function directly on {@link Value}s.
+ * <p>
+ * {@link KBestFactorEngine} uses this, when available, to evaluate combinations of input values
+ * on a reused array of values rather than on a newly allocated array of domain elements.
+ * <p>
+ * @since 0.08
+ */
+public interface IKBestValueFactor extends IKBestFactor
+{
+	/**
+	 * Evaluates factor function on given values, using the same representation (weight or energy)
+	 * as {@link #evalFactorFunction(Object[])}.
+	 * @since 0.08
+	 */
+	double evalFactorFunction(Value [] values);
+}
@@ -16,9 +16,17 @@
 
 package com.analog.lyric.dimple.solvers.core.kbest;
 
+import static java.util.Objects.*;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jdt.annotation.Nullable;
+
 import com.analog.lyric.collect.ArrayUtil;
+import com.analog.lyric.collect.ScratchArena;
+import com.analog.lyric.dimple.model.values.Value;
 import com.analog.lyric.dimple.model.variables.Discrete;
-import com.analog.lyric.util.misc.IndexCounter;
 
 /*
  * This class provides an implementation for update and updateEdge that can
@@ -42,34 +50,228 @@ import com.analog.lyric.util.misc.IndexCounter;
  *
  *	Normalize outputmsg (subtract smallest value)
  *
- * There is no optimization for update(all)
+ * update(all) first evaluates the factor over the lattice formed by the k best values of every edge
+ * and reuses those evaluations for every output edge, so that only combinations in which the output
+ * value is outside of its own k best set need to be evaluated separately for each edge.
+ * 
+ * Working storage is kept in a Workspace that is reused by subsequent updates. Updates of different
+ * edges of the same factor may run concurrently, so a workspace is only used by one update at a time;
+ * an update that finds the workspace in use allocates its own. The cache of lattice evaluations is taken
+ * from the thread's ScratchArena when it is small enough to be retained by the arena, and is otherwise
+ * kept in the workspace. If the factor implements
+ * IKBestValueFactor, the factor function is evaluated on a reused Value array rather than on a freshly
+ * allocated array of domain elements.
  */
 public class KBestFactorEngine
 {
+	/*-------
+	 * State
+	 */
+	
+	/**
+	 * Maximum number of factor evaluations that will be cached by {@link #update()}.
+	 */
+	static final int MAX_CACHED_EVALUATIONS = 1 << 18;
+	
 	private int _k;
 	private IKBestFactor _kbestFactor;
-	private double [][] _outPortMsgs = ArrayUtil.EMPTY_DOUBLE_ARRAY_ARRAY;
-	private double [][] _inPortMsgs = ArrayUtil.EMPTY_DOUBLE_ARRAY_ARRAY;
 	
-	private void updateCache()
+	/**
+	 * True if subclass overrides {@link #getFactorFunctionValueForIndices} or if the factor cannot
+	 * evaluate {@link Value}s, in which case that method is used for all evaluations.
+	 */
+	private final boolean _evalForIndices;
+	
+	/**
+	 * True if subclass overrides {@link #updateEdgeInternal(int)}, in which case {@link #update()}
+	 * invokes it for each edge instead of sharing evaluations across edges.
+	 */
+	private final boolean _updateEachEdge;
+	
+	/**
+	 * Workspace available for reuse, or null if in use by an update.
+	 */
+	private final AtomicReference<Workspace> _spareWorkspace = new AtomicReference<>();
+	
+	/**
+	 * Working storage for a single update.
+	 */
+	private static final class Workspace
 	{
+		private double [][] _outPortMsgs = ArrayUtil.EMPTY_DOUBLE_ARRAY_ARRAY;
+		private double [][] _inPortMsgs = ArrayUtil.EMPTY_DOUBLE_ARRAY_ARRAY;
 		
-		_inPortMsgs = _kbestFactor.getInPortMsgs();
-		_outPortMsgs = _kbestFactor.getOutPortMsgs();
-			
+		/**
+		 * For each edge, the indices of its k best values in its first {@link #_kbestLengths} elements.
+		 */
+		private final int[][] _kbestIndices;
+		private final int[] _kbestLengths;
+		
+		/**
+		 * For each edge, maps value index to its position in {@link #_kbestIndices} or -1 if not among the
+		 * k best. Only maintained during {@link KBestFactorEngine#update()}.
+		 */
+		private final int[][] _kbestPositions;
+		
+		/**
+		 * Stride of each edge's position in the cache of factor evaluations used by
+		 * {@link KBestFactorEngine#update()}.
+		 */
+		private final int[] _strides;
+		
+		/**
+		 * Position of each edge within its k best values while iterating over combinations.
+		 */
+		private final int[] _counter;
+		
+		/**
+		 * Domain value indices of current combination.
+		 */
+		private final int[] _inputIndices;
+		
+		/**
+		 * Cache of factor evaluations used by {@link KBestFactorEngine#update()} when it is too large to be
+		 * retained by the {@link ScratchArena}.
+		 */
+		private double[] _evaluations = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+		
+		private @Nullable Value[] _values = null;
+		private @Nullable Object[][] _domains = null;
+		
+		private Workspace(int nPorts)
+		{
+			_kbestIndices = new int[nPorts][];
+			_kbestLengths = new int[nPorts];
+			_kbestPositions = new int[nPorts][];
+			_strides = new int[nPorts];
+			_counter = new int[nPorts];
+			_inputIndices = new int[nPorts];
+		}
 	}
 	
+	/*--------------
+	 * Construction
+	 */
+	
 	public KBestFactorEngine(IKBestFactor f)
 	{
 		_kbestFactor = f;
+		_evalForIndices = !(f instanceof IKBestValueFactor) ||
+			overrides("getFactorFunctionValueForIndices", int[].class, Object[][].class);
+		_updateEachEdge = overrides("updateEdgeInternal", int.class);
+	}
+	
+	/*---------
+	 * Methods
+	 */
+	
+	/**
+	 * Obtains workspace for an update, reusing the spare one if it is available.
+	 * Must be returned using {@link #releaseWorkspace}.
+	 */
+	private Workspace acquireWorkspace()
+	{
+		final double[][] inPortMsgs = _kbestFactor.getInPortMsgs();
+		final int nPorts = inPortMsgs.length;
+		
+		Workspace workspace = _spareWorkspace.getAndSet(null);
+		if (workspace == null || workspace._counter.length != nPorts)
+		{
+			workspace = new Workspace(nPorts);
+		}
+		
+		workspace._inPortMsgs = inPortMsgs;
+		workspace._outPortMsgs = _kbestFactor.getOutPortMsgs();
+		return workspace;
+	}
+	
+	private void releaseWorkspace(Workspace workspace)
+	{
+		_spareWorkspace.set(workspace);
 	}
 	
 	public void update()
 	{
-		updateCache();
-
-		for (int i = 0; i < _outPortMsgs.length; i++)
-			updateEdgeInternal(i);
+		if (_updateEachEdge)
+		{
+			for (int i = 0, n = _kbestFactor.getOutPortMsgs().length; i < n; i++)
+				updateEdgeInternal(i);
+			return;
+		}
+		
+		final Workspace ws = acquireWorkspace();
+		final int nPorts = ws._inPortMsgs.length;
+		
+		long cacheSize = 1;
+		for (int i = 0; i < nPorts; ++i)
+		{
+			selectKBest(ws, i);
+			cacheSize *= ws._kbestLengths[i];
+		}
+		
+		if (nPorts < 2 || cacheSize > MAX_CACHED_EVALUATIONS)
+		{
+			for (int i = 0; i < nPorts; i++)
+				updateEdge(ws, i, null);
+			releaseWorkspace(ws);
+			return;
+		}
+		
+		// The arena would discard larger regions on reset, so keep those in the workspace instead.
+		final ScratchArena scratch = ScratchArena.forCurrentThread();
+		final int scratchMark = scratch.mark();
+		double[] evaluations;
+		if (cacheSize <= ScratchArena.MAX_RETAINED_SIZE)
+		{
+			evaluations = scratch.allocateDoubles((int)cacheSize);
+		}
+		else
+		{
+			evaluations = ws._evaluations;
+			if (evaluations.length < cacheSize)
+			{
+				ws._evaluations = evaluations = new double[(int)cacheSize];
+			}
+		}
+		
+		// Evaluate factor over lattice of k best values, with last edge varying fastest.
+		final int[] strides = ws._strides;
+		for (int i = nPorts, stride = 1; --i >= 0;)
+		{
+			strides[i] = stride;
+			stride *= ws._kbestLengths[i];
+			
+			final int[] positions = ws._kbestPositions[i];
+			Arrays.fill(positions, -1);
+			final int[] indices = ws._kbestIndices[i];
+			for (int j = 0, end = ws._kbestLengths[i]; j < end; ++j)
+			{
+				positions[indices[j]] = j;
+			}
+		}
+		
+		final int[] counter = ws._counter;
+		final int[] inputIndices = ws._inputIndices;
+		Arrays.fill(counter, 0);
+		for (int n = 0; ; ++n)
+		{
+			for (int i = 0; i < nPorts; ++i)
+			{
+				inputIndices[i] = ws._kbestIndices[i][counter[i]];
+			}
+			evaluations[n] = evalFactor(ws);
+			
+			if (!advance(ws, -1))
+			{
+				break;
+			}
+		}
+		
+		for (int i = 0; i < nPorts; i++)
+			updateEdge(ws, i, evaluations);
+		
+		scratch.reset(scratchMark);
+		releaseWorkspace(ws);
 	}
 	
 	public void setK(int k)
@@ -83,103 +285,189 @@ public class KBestFactorEngine
 	 */
 	public void updateEdge(int outPortNum)
 	{
-		updateCache();
 		updateEdgeInternal(outPortNum);
 	}
 	
+	/**
+	 * Computes message for given output edge.
+	 * <p>
+	 * Subclasses that override this will also have {@link #update()} invoke this for each edge, rather
+	 * than sharing factor evaluations across edges.
+	 */
 	protected void updateEdgeInternal(int outPortNum)
 	{
+		final Workspace ws = acquireWorkspace();
 		
-		
-		//Initialize the outputMsg to Infinite potentials.
-		double [] outputMsg = _outPortMsgs[outPortNum];
-		_kbestFactor.initMsg(outputMsg);
-
-		//Cache the input messages.
-		//Cache the domains
-		Object [][] domains = new Object[_inPortMsgs.length][];
-		for (int i = 0; i < _inPortMsgs.length; i++)
-			
-			domains[i] = ((Discrete)_kbestFactor.getFactor().getConnectedNodeFlat(i)).getDiscreteDomain().getElements();
-		
-		//We will store the kbest indices in this array
-		int [][] domainIndices = new int[_inPortMsgs.length][];
-		
-		//We will store the truncated domainlengths here.
-		int [] domainLengths = new int[_inPortMsgs.length];
-		
-		//For each port
-		for (int i = 0; i < _inPortMsgs.length; i++)
+		for (int i = 0, end = ws._inPortMsgs.length; i < end; ++i)
 		{
-			double [] inPortMsg = _inPortMsgs[i];
-
-			//If this is the output port, we only store one value at a time.
-			if (i == outPortNum)
-				domainIndices[i] = new int[]{0};
-			else
+			if (i != outPortNum)
 			{
-				//Here we check to see that k is actually less than the domain length
-				if (_k < inPortMsg.length)
-					domainIndices[i] = _kbestFactor.findKBestForMsg(inPortMsg,_k);
-				else
-				{
-					//If it's not, we just map indices one to one.
-					domainIndices[i] = new int[inPortMsg.length];
-					for (int j = 0; j < domainIndices[i].length; j++)
-						domainIndices[i][j] = j;
-				}
+				selectKBest(ws, i);
 			}
-			
-			domainLengths[i] = domainIndices[i].length;
 		}
 		
-		//cache the factor function.
-		//FactorFunction ff = _kbestFactor.getFactorFunction();
-		
-
-		//Used to iterate all combinations of truncated domains.
-		IndexCounter ic = new IndexCounter(domainLengths);
+		updateEdge(ws, outPortNum, null);
+		releaseWorkspace(ws);
+	}
+	
+	/**
+	 * Computes message for given output edge.
+	 * <p>
+	 * Assumes that the k best values for all of the other edges have already been selected.
+	 * <p>
+	 * @param evaluations if non-null, is the cache of factor evaluations over the k best lattice
+	 * computed by {@link #update()}.
+	 */
+	private void updateEdge(Workspace ws, int outPortNum, @Nullable double[] evaluations)
+	{
+		final IKBestFactor kbestFactor = _kbestFactor;
+		final double[][] inPortMsgs = ws._inPortMsgs;
+		final int nPorts = inPortMsgs.length;
+		final int[][] kbestIndices = ws._kbestIndices;
+		final int[] strides = ws._strides;
+		final int[] counter = ws._counter;
+		final int[] inputIndices = ws._inputIndices;
 
-		int [] inputIndices = new int[_inPortMsgs.length];
+		//Initialize the outputMsg to Infinite potentials.
+		final double [] outputMsg = ws._outPortMsgs[outPortNum];
+		kbestFactor.initMsg(outputMsg);
 		
 		//We fill out a value for every value for the output message (no truncating to k)
 		for (int outputIndex = 0; outputIndex < outputMsg.length; outputIndex++)
 		{
 			//Here we set the output port's index appropriately
-			domainIndices[outPortNum][0] = outputIndex;
-		
-
-			//For all elements of cartesian product
-			for (int [] indices : ic)
+			inputIndices[outPortNum] = outputIndex;
+			
+			final int outputPosition = evaluations != null ? ws._kbestPositions[outPortNum][outputIndex] : -1;
+			
+			//For all combinations of the k best values of the other ports
+			Arrays.fill(counter, 0);
+			do
 			{
 				//initialize the sum
-				double sum = _kbestFactor.initAccumulator();
+				double sum = kbestFactor.initAccumulator();
+				int evaluationIndex = outputPosition * strides[outPortNum];
 				
-				for (int i = 0; i < indices.length; i++)
+				for (int i = 0; i < nPorts; i++)
 				{
 					//Don't count the output port
 					if (i != outPortNum)
-						//i == port index, indices[i] == which of the truncated domain indices to retrieve
-						//domainIndices[i][indices[i]] == the actual index of the input msg.
-						sum = _kbestFactor.accumulate(sum, _inPortMsgs[i][domainIndices[i][indices[i]]]);
-
-					//Here we set the input value for this port
-					inputIndices[i] = domainIndices[i][indices[i]];
-					//ffInput[i] =  domains[i][domainIndices[i][indices[i]]];
+					{
+						final int position = counter[i];
+						final int index = kbestIndices[i][position];
+						sum = kbestFactor.accumulate(sum, inPortMsgs[i][index]);
+						inputIndices[i] = index;
+						evaluationIndex += position * strides[i];
+					}
 				}
 				
 				//Evaluate the factor function and add that potential to the sum.
-				double result = getFactorFunctionValueForIndices(inputIndices,domains);
-				sum = _kbestFactor.accumulate(sum, result);
+				final double result = outputPosition >= 0 ?
+					requireNonNull(evaluations)[evaluationIndex] : evalFactor(ws);
+				sum = kbestFactor.accumulate(sum, result);
+
+				outputMsg[outputIndex] = kbestFactor.combine(outputMsg[outputIndex] , sum);
+			} while (advance(ws, outPortNum));
+		}
 
-				outputMsg[outputIndex] = _kbestFactor.combine(outputMsg[outputIndex] , sum);
+		kbestFactor.normalize(outputMsg);
+	}
+	
+	/**
+	 * Advances workspace counter to next combination of k best positions for all edges
+	 * other than {@code skipPort}, with the last edge varying fastest.
+	 * @return false if there are no more combinations.
+	 */
+	private static boolean advance(Workspace ws, int skipPort)
+	{
+		final int[] counter = ws._counter;
+		final int[] lengths = ws._kbestLengths;
+		for (int i = counter.length; --i >= 0;)
+		{
+			if (i != skipPort)
+			{
+				if (++counter[i] < lengths[i])
+				{
+					return true;
+				}
+				counter[i] = 0;
 			}
 		}
+		return false;
+	}
+	
+	/**
+	 * Selects k best values of input message for given port into workspace.
+	 */
+	private void selectKBest(Workspace ws, int port)
+	{
+		final double[] inPortMsg = ws._inPortMsgs[port];
+		final int size = inPortMsg.length;
+		
+		final int[] positions = ws._kbestPositions[port];
+		if (positions == null || positions.length != size)
+		{
+			ws._kbestPositions[port] = new int[size];
+		}
 
-		_kbestFactor.normalize(outputMsg);
+		//Here we check to see that k is actually less than the domain length
+		if (_k < size)
+		{
+			final int[] kbest = _kbestFactor.findKBestForMsg(inPortMsg, _k);
+			ws._kbestIndices[port] = kbest;
+			ws._kbestLengths[port] = kbest.length;
+		}
+		else
+		{
+			//If it's not, we just map indices one to one.
+			int[] indices = ws._kbestIndices[port];
+			if (indices == null || indices.length != size)
+			{
+				ws._kbestIndices[port] = indices = new int[size];
+				for (int j = 0; j < size; j++)
+					indices[j] = j;
+			}
+			ws._kbestLengths[port] = size;
+		}
+	}
+	
+	/**
+	 * Evaluates factor for the combination of domain value indices in the workspace.
+	 */
+	private double evalFactor(Workspace ws)
+	{
+		final int[] inputIndices = ws._inputIndices;
 		
+		if (_evalForIndices)
+		{
+			Object[][] domains = ws._domains;
+			if (domains == null)
+			{
+				ws._domains = domains = new Object[inputIndices.length][];
+				for (int i = 0; i < domains.length; i++)
+					domains[i] = ((Discrete)_kbestFactor.getFactor().getConnectedNodeFlat(i)).getDiscreteDomain().getElements();
+			}
+			return getFactorFunctionValueForIndices(inputIndices, domains);
+		}
+		
+		Value[] values = ws._values;
+		if (values == null)
+		{
+			ws._values = values = Value.createFromDomains(_kbestFactor.getFactor().getDomainList());
+		}
+		
+		for (int i = 0; i < values.length; i++)
+			values[i].setIndex(inputIndices[i]);
+		return ((IKBestValueFactor)_kbestFactor).evalFactorFunction(values);
 	}
 	
+	/**
+	 * Evaluates factor for given combination of domain value indices, one for each edge.
+	 * <p>
+	 * The engine only invokes this if it is overridden by a subclass or if the factor does not implement
+	 * {@link IKBestValueFactor}. Otherwise it evaluates the factor function on a reused array of
+	 * {@link Value}s.
+	 */
 	protected double getFactorFunctionValueForIndices(int [] inputIndices, Object [][] domains)
 	{
 		Object [] ffInput = new Object[inputIndices.length];
@@ -193,4 +481,23 @@ public class KBestFactorEngine
 		return _kbestFactor;
 	}
 
+	/**
+	 * True if the named method declared by this class is overridden by the runtime class of this object.
+	 */
+	private boolean overrides(String methodName, Class<?> ... parameterTypes)
+	{
+		for (Class<?> c = getClass(); c != KBestFactorEngine.class; c = c.getSuperclass())
+		{
+			try
+			{
+				c.getDeclaredMethod(methodName, parameterTypes);
+				return true;
+			}
+			catch (NoSuchMethodException ex)
+			{
+				// Not declared by this class, try its superclass
+			}
+		}
+		return false;
+	}
 }
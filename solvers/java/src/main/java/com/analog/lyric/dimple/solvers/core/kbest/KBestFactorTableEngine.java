@@ -26,6 +26,7 @@ public class KBestFactorTableEngine extends KBestFactorEngine
 	/*
 	 * retrieves weights from the factor table
 	 */
+	@Override
 	protected double getFactorFunctionValueForIndices(int [] inputIndices, Object [][] domains)
 	{
 
@@ -0,0 +1,373 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core.multithreading;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.core.INode;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.EdgeScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+
+/**
+ * Assigns the variables and factors of a graph to a fixed number of connected regions of
+ * roughly equal work, so that multithreading algorithms can give each worker updates whose
+ * messages are near each other in the graph.
+ * <p>
+ * The partition is computed by slicing a breadth-first ordering of the graph, starting from a
+ * pseudo-peripheral node, into contiguous pieces of equal weight, where the weight of a node is
+ * one plus its number of siblings. The pieces are then refined by a few passes of label
+ * propagation, which moves a node to the region of most of its neighbors when that reduces the
+ * number of cut edges without unbalancing the regions by more than {@link #MAX_IMBALANCE}.
+ * <p>
+ * @since 0.08
+ */
+public final class GraphPartition
+{
+	/*-------
+	 * State
+	 */
+	
+	/**
+	 * Maximum fractional deviation from the mean region weight allowed during refinement.
+	 */
+	public static final double MAX_IMBALANCE = .05;
+	
+	/**
+	 * Number of label propagation passes used to refine the initial partition.
+	 */
+	static final int REFINEMENT_PASSES = 4;
+	
+	private final Map<INode,Integer> _nodeIndices;
+	private final int[] _partitions;
+	private final int _numPartitions;
+	private final int _cutEdgeCount;
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	private GraphPartition(Map<INode,Integer> nodeIndices, int[] partitions, int numPartitions, int cutEdgeCount)
+	{
+		_nodeIndices = nodeIndices;
+		_partitions = partitions;
+		_numPartitions = numPartitions;
+		_cutEdgeCount = cutEdgeCount;
+	}
+	
+	/**
+	 * Partitions the variables and non-graph factors of {@code graph}, including those in nested
+	 * subgraphs, into {@code numPartitions} regions.
+	 */
+	public static GraphPartition create(FactorGraph graph, int numPartitions)
+	{
+		if (numPartitions < 1)
+		{
+			throw new DimpleException("Number of partitions must be positive: %d", numPartitions);
+		}
+		
+		//
+		// Index nodes and build adjacency lists.
+		//
+		
+		final ArrayList<INode> nodes = new ArrayList<INode>();
+		for (Variable variable : graph.getVariables())
+		{
+			nodes.add(variable);
+		}
+		for (Factor factor : graph.getNonGraphFactors())
+		{
+			nodes.add(factor);
+		}
+		
+		final int n = nodes.size();
+		final Map<INode,Integer> nodeIndices = new IdentityHashMap<INode,Integer>(n);
+		for (int i = 0; i < n; ++i)
+		{
+			nodeIndices.put(nodes.get(i), i);
+		}
+
+		final int[] neighborsStart = new int[n + 1];
+		int nNeighbors = 0;
+		for (int i = 0; i < n; ++i)
+		{
+			nNeighbors += nodes.get(i).getSiblingCount();
+			neighborsStart[i + 1] = nNeighbors;
+		}
+		final int[] neighbors = new int[nNeighbors];
+		final int[] weights = new int[n];
+		long totalWeight = 0;
+		for (int i = 0, j = 0; i < n; ++i)
+		{
+			final INode node = nodes.get(i);
+			for (int s = 0, end = node.getSiblingCount(); s < end; ++s)
+			{
+				// Siblings outside of the graph, such as boundary variables owned by a parent graph, are ignored.
+				final Integer neighbor = nodeIndices.get(node.getSibling(s));
+				neighbors[j++] = neighbor != null ? neighbor : -1;
+			}
+			weights[i] = 1 + node.getSiblingCount();
+			totalWeight += weights[i];
+		}
+		
+		//
+		// Slice breadth first ordering into pieces of equal weight.
+		//
+		
+		final int[] order = breadthFirstOrder(neighborsStart, neighbors);
+		final int[] partitions = new int[n];
+		final long[] partitionWeights = new long[numPartitions];
+		long weightSoFar = 0;
+		for (int i : order)
+		{
+			final int partition = (int)Math.min(numPartitions - 1, (2 * weightSoFar + weights[i]) * numPartitions / (2 * totalWeight));
+			partitions[i] = partition;
+			partitionWeights[partition] += weights[i];
+			weightSoFar += weights[i];
+		}
+		
+		//
+		// Refine using label propagation.
+		//
+		
+		if (numPartitions > 1)
+		{
+			final double meanWeight = (double)totalWeight / numPartitions;
+			final double maxWeight = meanWeight * (1 + MAX_IMBALANCE);
+			final double minWeight = meanWeight * (1 - MAX_IMBALANCE);
+			final int[] counts = new int[numPartitions];
+			
+			for (int pass = 0; pass < REFINEMENT_PASSES; ++pass)
+			{
+				boolean changed = false;
+				for (int i : order)
+				{
+					final int current = partitions[i];
+					final int start = neighborsStart[i], end = neighborsStart[i + 1];
+					
+					int best = current;
+					for (int j = start; j < end; ++j)
+					{
+						final int neighbor = neighbors[j];
+						if (neighbor >= 0)
+						{
+							final int partition = partitions[neighbor];
+							if (++counts[partition] > counts[best])
+							{
+								best = partition;
+							}
+						}
+					}
+					
+					if (best != current && counts[best] > counts[current] &&
+						partitionWeights[best] + weights[i] <= maxWeight &&
+						partitionWeights[current] - weights[i] >= minWeight)
+					{
+						partitions[i] = best;
+						partitionWeights[best] += weights[i];
+						partitionWeights[current] -= weights[i];
+						changed = true;
+					}
+					
+					for (int j = start; j < end; ++j)
+					{
+						final int neighbor = neighbors[j];
+						if (neighbor >= 0)
+						{
+							counts[partitions[neighbor]] = 0;
+						}
+					}
+					counts[current] = 0;
+				}
+				
+				if (!changed)
+				{
+					break;
+				}
+			}
+		}
+		
+		int cutEdgeCount = 0;
+		for (int i = 0; i < n; ++i)
+		{
+			for (int j = neighborsStart[i], end = neighborsStart[i + 1]; j < end; ++j)
+			{
+				final int neighbor = neighbors[j];
+				if (neighbor > i && partitions[neighbor] != partitions[i])
+				{
+					++cutEdgeCount;
+				}
+			}
+		}
+		
+		return new GraphPartition(nodeIndices, partitions, numPartitions, cutEdgeCount);
+	}
+	
+	/*---------
+	 * Methods
+	 */
+	
+	/**
+	 * The number of regions in the partition.
+	 */
+	public int getNumPartitions()
+	{
+		return _numPartitions;
+	}
+	
+	/**
+	 * The number of edges between nodes in different regions.
+	 */
+	public int getCutEdgeCount()
+	{
+		return _cutEdgeCount;
+	}
+	
+	/**
+	 * The region containing {@code node}, or -1 if the node was not in the partitioned graph.
+	 */
+	public int getPartition(INode node)
+	{
+		final Integer index = _nodeIndices.get(node);
+		return index != null ? _partitions[index] : -1;
+	}
+	
+	/**
+	 * The region containing the node updated by {@code entry}, or -1 if the entry does not
+	 * update a single node of the partitioned graph.
+	 */
+	public int getPartition(IScheduleEntry entry)
+	{
+		if (entry instanceof NodeScheduleEntry)
+		{
+			return getPartition(((NodeScheduleEntry)entry).getNode());
+		}
+		else if (entry instanceof EdgeScheduleEntry)
+		{
+			return getPartition(((EdgeScheduleEntry)entry).getNode());
+		}
+		return -1;
+	}
+	
+	/**
+	 * Reorders {@code entries} so that entries in the same region are contiguous, in order of region,
+	 * keeping the original relative order of entries within each region. Entries that do not belong
+	 * to any region are placed at the end.
+	 * <p>
+	 * @param starts if non-null, must have length of at least {@link #getNumPartitions()} plus two,
+	 * and will be filled with the offset of the first entry in each region, followed by the offset
+	 * of the first entry without a region and the total number of entries.
+	 */
+	public IScheduleEntry[] sortByPartition(IScheduleEntry[] entries, @Nullable int[] starts)
+	{
+		final int nPartitions = _numPartitions;
+		final int[] offsets = starts != null ? starts : new int[nPartitions + 2];
+		Arrays.fill(offsets, 0);
+		
+		final int[] entryPartitions = new int[entries.length];
+		for (int i = 0; i < entries.length; ++i)
+		{
+			int partition = getPartition(entries[i]);
+			if (partition < 0)
+			{
+				partition = nPartitions;
+			}
+			entryPartitions[i] = partition;
+			++offsets[partition + 1];
+		}
+		for (int i = 1; i < offsets.length; ++i)
+		{
+			offsets[i] += offsets[i - 1];
+		}
+		
+		final IScheduleEntry[] sorted = new IScheduleEntry[entries.length];
+		final int[] next = Arrays.copyOf(offsets, nPartitions + 1);
+		for (int i = 0; i < entries.length; ++i)
+		{
+			sorted[next[entryPartitions[i]]++] = entries[i];
+		}
+		return sorted;
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	/**
+	 * Computes a breadth first ordering of all nodes. Each connected component is started from a
+	 * pseudo-peripheral node, found as the last node reached by a breadth first search.
+	 */
+	private static int[] breadthFirstOrder(int[] neighborsStart, int[] neighbors)
+	{
+		final int n = neighborsStart.length - 1;
+		final int[] order = new int[n];
+		final int[] level = new int[n];
+		Arrays.fill(level, -1);
+		
+		int size = 0;
+		for (int root = 0; root < n; ++root)
+		{
+			if (level[root] < 0)
+			{
+				// Search once to find a far away node and then restart the search from it.
+				final int componentStart = size;
+				int end = breadthFirstSearch(root, componentStart, order, level, neighborsStart, neighbors);
+				final int peripheral = order[end - 1];
+				for (int i = componentStart; i < end; ++i)
+				{
+					level[order[i]] = -1;
+				}
+				size = breadthFirstSearch(peripheral, componentStart, order, level, neighborsStart, neighbors);
+			}
+		}
+		
+		return order;
+	}
+	
+	/**
+	 * Appends nodes reachable from {@code root} to {@code order} starting at {@code size} and returns
+	 * new size.
+	 */
+	private static int breadthFirstSearch(int root, int size, int[] order, int[] level, int[] neighborsStart, int[] neighbors)
+	{
+		level[root] = 0;
+		order[size++] = root;
+		for (int head = size - 1; head < size; ++head)
+		{
+			final int node = order[head];
+			for (int j = neighborsStart[node], end = neighborsStart[node + 1]; j < end; ++j)
+			{
+				final int neighbor = neighbors[j];
+				if (neighbor >= 0 && level[neighbor] < 0)
+				{
+					level[neighbor] = level[node] + 1;
+					order[size++] = neighbor;
+				}
+			}
+		}
+		return size;
+	}
+}
@@ -26,6 +26,7 @@ import org.eclipse.jdt.annotation.Nullable;
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.model.core.FactorGraph;
 import com.analog.lyric.dimple.schedulers.dependencyGraph.StaticDependencyGraph;
+import com.analog.lyric.dimple.solvers.core.multithreading.dataflowalgorithm.DataflowMultithreadingAlgorithm;
 import com.analog.lyric.dimple.solvers.core.multithreading.phasealgorithm.PhaseMultithreadingAlgorithm;
 import com.analog.lyric.dimple.solvers.core.multithreading.singlequeuealgorithm.SingleQueueMutlithreadingAlgorithm;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
@@ -46,6 +47,9 @@ public class MultiThreadingManager
 	private long _cachedVersion = -1;
 	private @Nullable StaticDependencyGraph _cachedDependencyGraph;
 	private MultithreadingMode _whichAlg = MultithreadingMode.Phase;
+	private boolean _useLocalityPartitioning = true;
+	private long _cachedPartitionVersion = -1;
+	private @Nullable GraphPartition _cachedPartition;
 
 	public MultiThreadingManager(ISolverFactorGraph sfg, @Nullable ExecutorService service)
 	{
@@ -54,6 +58,7 @@ public class MultiThreadingManager
 		setNumWorkersToDefault();
 		_mode2alg.put(MultithreadingMode.Phase,new PhaseMultithreadingAlgorithm(this));
 		_mode2alg.put(MultithreadingMode.SingleQueue,new SingleQueueMutlithreadingAlgorithm(this));
+		_mode2alg.put(MultithreadingMode.Dataflow,new DataflowMultithreadingAlgorithm(this));
 	}
 
 	
@@ -123,6 +128,32 @@ public class MultiThreadingManager
 		return _numWorkers;
 	}
 	
+	/**
+	 * Enables or disables locality-aware assignment of schedule entries to workers.
+	 * <p>
+	 * When enabled (the default), algorithms that divide up schedule entries among the workers will
+	 * give each worker the entries from one region of a {@link #getPartition() partition} of the graph,
+	 * so that workers mostly touch messages in their own region. This does not affect the results.
+	 * <p>
+	 * @since 0.08
+	 */
+	@Matlab
+	public void useLocalityPartitioning(boolean use)
+	{
+		_useLocalityPartitioning = use;
+	}
+	
+	/**
+	 * Indicates whether locality-aware assignment of schedule entries to workers is enabled.
+	 * @see #useLocalityPartitioning(boolean)
+	 * @since 0.08
+	 */
+	@Matlab
+	public boolean useLocalityPartitioning()
+	{
+		return _useLocalityPartitioning;
+	}
+	
 	public void iterate(int numIters)
 	{
 		_mode2alg.get(_whichAlg).iterate(numIters);
@@ -144,6 +175,33 @@ public class MultiThreadingManager
 		return Objects.requireNonNull(_cachedDependencyGraph);
 	}
 	
+	/**
+	 * Returns partition of graph into one region per {@linkplain #getNumWorkers() worker}, or null
+	 * if {@linkplain #useLocalityPartitioning(boolean) locality partitioning} is disabled.
+	 * <p>
+	 * The partition is cached until the structure of the graph or the number of workers changes.
+	 * <p>
+	 * @since 0.08
+	 */
+	public @Nullable GraphPartition getPartition()
+	{
+		if (!_useLocalityPartitioning)
+		{
+			return null;
+		}
+		
+		final FactorGraph fg = _sgraph.getModelObject();
+		final long version = fg.structureVersion();
+		GraphPartition partition = _cachedPartition;
+		if (partition == null || version != _cachedPartitionVersion || partition.getNumPartitions() != _numWorkers)
+		{
+			_cachedPartitionVersion = version;
+			_cachedPartition = partition = GraphPartition.create(fg, _numWorkers);
+		}
+		
+		return partition;
+	}
+	
 	
 	
 
@@ -17,12 +17,18 @@
 package com.analog.lyric.dimple.solvers.core.multithreading;
 
 /**
- * Provides two multithreading options.
+ * Provides the available multithreading options.
+ * <ul>
+ * <li>Phase - updates independent schedule entries in phases with a barrier between each phase.
+ * <li>SingleQueue - updates entries from a single shared work queue as their dependencies complete.
+ * <li>Dataflow - updates entries as their dependencies complete on persistent work-stealing workers,
+ * with no barrier between iterations (since 0.08).
+ * </ul>
  * 
  * @author shershey
  *
  */
 public enum MultithreadingMode 
 {
-	Phase, SingleQueue;	
+	Phase, SingleQueue, Dataflow;	
 }
@@ -0,0 +1,150 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core.multithreading;
+
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits the entries of a factor table into contiguous chunks that are processed in parallel.
+ * <p>
+ * Subclasses implement {@link #computeChunk} to process a range of table entries, typically
+ * accumulating a partial result for the chunk that is later combined by the caller. Chunks
+ * are numbered from zero in table order, so the partial results can be reduced in a deterministic
+ * order independent of how the work was scheduled.
+ * <p>
+ * The work is run on the shared {@linkplain ThreadPool#getForkJoinPool() fork/join pool}.
+ * <p>
+ * @since 0.08
+ */
+public abstract class ParallelTableRange
+{
+	/*-------
+	 * State
+	 */
+	
+	private final int _size;
+	private final int _chunkSize;
+	private final int _nChunks;
+	
+	private class ChunkTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int _firstChunk;
+		private final int _endChunk;
+		
+		private ChunkTask(int firstChunk, int endChunk)
+		{
+			_firstChunk = firstChunk;
+			_endChunk = endChunk;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			final int nChunks = _endChunk - _firstChunk;
+			if (nChunks == 1)
+			{
+				final int start = _firstChunk * _chunkSize;
+				computeChunk(_firstChunk, start, Math.min(start + _chunkSize, _size));
+			}
+			else
+			{
+				final int middle = _firstChunk + nChunks / 2;
+				invokeAll(new ChunkTask(_firstChunk, middle), new ChunkTask(middle, _endChunk));
+			}
+		}
+	}
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	/**
+	 * Divides {@code size} table entries into chunks.
+	 * <p>
+	 * There will be a few chunks per thread in the fork/join pool, to allow for uneven progress
+	 * across threads.
+	 * <p>
+	 * @since 0.08
+	 */
+	protected ParallelTableRange(int size)
+	{
+		final int maxChunks = 4 * ThreadPool.getForkJoinPool().getParallelism();
+		_size = size;
+		_chunkSize = Math.max(1, (size + maxChunks - 1) / maxChunks);
+		_nChunks = Math.max(1, (size + _chunkSize - 1) / _chunkSize);
+	}
+	
+	/*---------------------------
+	 * ParallelTableRange methods
+	 */
+	
+	/**
+	 * The number of chunks into which the table has been divided.
+	 * <p>
+	 * {@link #computeChunk} will be invoked exactly once for each chunk number from zero
+	 * up to but not including this value.
+	 * <p>
+	 * @since 0.08
+	 */
+	public final int chunks()
+	{
+		return _nChunks;
+	}
+	
+	/**
+	 * The total number of table entries.
+	 * @since 0.08
+	 */
+	public final int size()
+	{
+		return _size;
+	}
+	
+	/**
+	 * Invokes {@link #computeChunk} on every chunk in parallel and waits for them all to complete.
+	 * <p>
+	 * Any exception thrown by {@link #computeChunk} will be rethrown by this method.
+	 * <p>
+	 * @since 0.08
+	 */
+	public final void run()
+	{
+		final ChunkTask task = new ChunkTask(0, _nChunks);
+		if (ForkJoinTask.inForkJoinPool())
+		{
+			task.invoke();
+		}
+		else
+		{
+			ThreadPool.getForkJoinPool().invoke(task);
+		}
+	}
+
+	/**
+	 * Processes table entries from {@code start} up to but not including {@code end}.
+	 * <p>
+	 * Different chunks may be computed concurrently, so implementations must only write to
+	 * state specific to the given {@code chunk}.
+	 * <p>
+	 * @param chunk is the chunk number in the range [0, {@link #chunks()}).
+	 * @since 0.08
+	 */
+	protected abstract void computeChunk(int chunk, int start, int end);
+}
@@ -18,6 +18,7 @@ package com.analog.lyric.dimple.solvers.core.multithreading;
 
 import java.util.Objects;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -37,6 +38,7 @@ import com.analog.lyric.dimple.exceptions.DimpleException;
 public class ThreadPool
 {
 	private static @Nullable ExecutorService _service;
+	private static volatile @Nullable ForkJoinPool _forkJoinPool;
 	private static int _numThreads;
 	
 	private ThreadPool()
@@ -55,6 +57,40 @@ public class ThreadPool
 		return Objects.requireNonNull(_service);
 	}
 	
+	/**
+	 * Returns a shared fork/join pool with the same {@linkplain #getNumThreads() number of threads}
+	 * as the {@linkplain #getThreadPool() thread pool}.
+	 * <p>
+	 * This is intended for splitting up the work of a single large computation, such as the update of
+	 * a factor with a very large table, rather than running separate schedule entries in parallel.
+	 * <p>
+	 * The pool is created lazily on first use. This may be invoked concurrently from multiple threads,
+	 * which will all see the same pool.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static ForkJoinPool getForkJoinPool()
+	{
+		ForkJoinPool pool = _forkJoinPool;
+		if (pool == null)
+		{
+			synchronized (ThreadPool.class)
+			{
+				pool = _forkJoinPool;
+				if (pool == null)
+				{
+					if (_service == null)
+					{
+						setNumThreadsToDefault();
+					}
+					_forkJoinPool = pool = new ForkJoinPool(_numThreads);
+				}
+			}
+		}
+		
+		return pool;
+	}
+	
 	public static void setNumThreadsToDefault()
 	{
 		int cores = Runtime.getRuntime().availableProcessors();
@@ -62,7 +98,7 @@ public class ThreadPool
 		
 	}
 	
-	public static void setNumThreads(int numThreads)
+	public static synchronized void setNumThreads(int numThreads)
 	{
 		cleanupService();
 		_numThreads = numThreads;
@@ -93,5 +129,12 @@ public class ThreadPool
 			}
 		}
 		
+		final ForkJoinPool forkJoinPool = _forkJoinPool;
+		if (forkJoinPool != null)
+		{
+			_forkJoinPool = null;
+			forkJoinPool.shutdown();
+		}
+		
 	}
 }
@@ -0,0 +1,362 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core.multithreading.dataflowalgorithm;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.schedulers.dependencyGraph.StaticDependencyGraph;
+import com.analog.lyric.dimple.schedulers.dependencyGraph.StaticDependencyGraphNode;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.multithreading.GraphPartition;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultiThreadingManager;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultithreadingAlgorithm;
+import com.analog.lyric.dimple.solvers.core.multithreading.ThreadPool;
+
+/**
+ * Runs schedule entries as soon as the entries they depend on have completed, without any
+ * barrier between phases or iterations.
+ * <p>
+ * The dependencies are taken from a {@link StaticDependencyGraph} unrolled over two iterations,
+ * which yields both the dependencies between entries within an iteration and the dependencies
+ * of each entry on entries in the previous iteration. An entry of iteration k+1 can therefore
+ * start while unrelated entries of iteration k are still running.
+ * <p>
+ * Each entry has an atomic counter of its outstanding dependencies. The thread that completes
+ * the last dependency of an entry takes over that entry, so work normally stays on the thread
+ * that produced its inputs. Ready entries are processed in chunks by {@link DataflowTask}s run
+ * on a fork/join pool, whose persistent worker threads each own a work-stealing deque; chunks are
+ * only split off and forked when they grow large or other workers are idle. When the manager has a
+ * {@linkplain MultiThreadingManager#getPartition() graph partition}, the initial chunks are formed from
+ * the entries of each region.
+ * <p>
+ * If the {@linkplain MultiThreadingManager#getService() service} of the manager is a
+ * {@link ForkJoinPool} it will be used, otherwise the shared
+ * {@linkplain ThreadPool#getForkJoinPool() fork/join pool} is used.
+ * <p>
+ * @since 0.08
+ */
+public class DataflowMultithreadingAlgorithm extends MultithreadingAlgorithm
+{
+	/*-------
+	 * State
+	 */
+	
+	private long _cachedVersion = -1;
+	
+	/**
+	 * Number of schedule entries in a single iteration.
+	 */
+	private int _numEntries;
+	
+	private IScheduleEntry[] _entries = new IScheduleEntry[0];
+	
+	/**
+	 * Dependents of entry i are in {@link #_dependents} from {@code _dependentsStart[i]} up to but
+	 * not including {@code _dependentsStart[i+1]}. A dependent value d less than {@link #_numEntries}
+	 * refers to entry d in the same iteration, otherwise to entry {@code d - _numEntries} in the
+	 * next iteration.
+	 */
+	private int[] _dependentsStart = new int[1];
+	private int[] _dependents = new int[0];
+	
+	/**
+	 * Number of dependencies of each entry in the first iteration.
+	 */
+	private int[] _numInitialDependencies = new int[0];
+	
+	/**
+	 * Number of dependencies of each entry in subsequent iterations.
+	 */
+	private int[] _numDependencies = new int[0];
+	
+	/**
+	 * Entries with no dependencies in the first iteration.
+	 */
+	private int[] _initialEntries = new int[0];
+	
+	/**
+	 * Partition by whose regions {@link #_initialEntries} are currently ordered, and the offsets of
+	 * those regions.
+	 */
+	private @Nullable GraphPartition _initialPartition;
+	private int[] _initialStarts = new int[0];
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	public DataflowMultithreadingAlgorithm(MultiThreadingManager manager)
+	{
+		super(manager);
+	}
+	
+	/*---------------------------------
+	 * MultithreadingAlgorithm methods
+	 */
+
+	@Override
+	public void iterate(int numIters)
+	{
+		updateDependencies();
+		
+		if (numIters <= 0 || _numEntries == 0)
+		{
+			return;
+		}
+		
+		final DataflowRun run = new DataflowRun(getManager().getSolverGraph(), _entries, _dependentsStart,
+			_dependents, _numInitialDependencies, _numDependencies, numIters);
+		
+		final ForkJoinPool pool = getPool();
+		
+		// Divide the initial entries up among the workers, by region of the graph partition if
+		// there is one, otherwise evenly. The run holds a reference for this thread until all of
+		// them have been submitted, so that it cannot finish before then.
+		final GraphPartition partition = getManager().getPartition();
+		final int[] starts = partition != null ? partitionInitialEntries(partition) : null;
+		final int[] initialEntries = _initialEntries;
+		final int nInitial = initialEntries.length;
+		final int nChunks = starts != null ? starts.length - 1 :
+			Math.max(1, Math.min(nInitial, getManager().getNumWorkers()));
+		try
+		{
+			for (int chunk = 0; chunk < nChunks && !run.isAborted(); ++chunk)
+			{
+				final int start = starts != null ? starts[chunk] : chunk * nInitial / nChunks;
+				final int end = starts != null ? starts[chunk + 1] : (chunk + 1) * nInitial / nChunks;
+				if (start == end)
+				{
+					continue;
+				}
+				final DataflowTask task = new DataflowTask(run, end - start);
+				for (int i = start; i < end; ++i)
+				{
+					task.push(initialEntries[i], 0);
+				}
+				run.startTask();
+				try
+				{
+					pool.execute(task);
+				}
+				catch (RuntimeException ex)
+				{
+					run.abort(ex);
+					run.finishTask();
+				}
+			}
+		}
+		finally
+		{
+			run.finishTask();
+		}
+		
+		// Wait until every task has finished, even if interrupted, so that none of them is still
+		// updating the graph after this returns.
+		boolean interrupted = false;
+		while (true)
+		{
+			try
+			{
+				ForkJoinPool.managedBlock(run);
+				break;
+			}
+			catch (InterruptedException ex)
+			{
+				run.abort(ex);
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+		
+		final Throwable error = run.getError();
+		if (error instanceof RuntimeException)
+		{
+			throw (RuntimeException)error;
+		}
+		else if (error instanceof Error)
+		{
+			throw (Error)error;
+		}
+		else if (error != null)
+		{
+			throw new DimpleException((Exception)error);
+		}
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+	
+	private ForkJoinPool getPool()
+	{
+		final ExecutorService service = getManager().getService();
+		return service instanceof ForkJoinPool ? (ForkJoinPool)service : ThreadPool.getForkJoinPool();
+	}
+	
+	/**
+	 * Orders the initial entries by region of {@code partition}.
+	 * <p>
+	 * @return offsets of the initial entries of each region, with entries belonging to no region
+	 * included in the last one, followed by the total number of initial entries.
+	 */
+	private int[] partitionInitialEntries(GraphPartition partition)
+	{
+		if (partition != _initialPartition)
+		{
+			final int[] initialEntries = _initialEntries;
+			final int nInitial = initialEntries.length;
+			final int nPartitions = partition.getNumPartitions();
+			
+			// Counting sort by region, keeping original order within each region.
+			final int[] entryPartitions = new int[nInitial];
+			final int[] starts = new int[nPartitions + 1];
+			for (int i = 0; i < nInitial; ++i)
+			{
+				int region = partition.getPartition(_entries[initialEntries[i]]);
+				if (region < 0)
+				{
+					region = nPartitions - 1;
+				}
+				entryPartitions[i] = region;
+				++starts[region + 1];
+			}
+			for (int i = 1; i <= nPartitions; ++i)
+			{
+				starts[i] += starts[i - 1];
+			}
+			
+			final int[] sorted = new int[nInitial];
+			final int[] next = Arrays.copyOf(starts, nPartitions);
+			for (int i = 0; i < nInitial; ++i)
+			{
+				sorted[next[entryPartitions[i]]++] = initialEntries[i];
+			}
+			
+			_initialEntries = sorted;
+			_initialStarts = starts;
+			_initialPartition = partition;
+		}
+		
+		return _initialStarts;
+	}
+	
+	/**
+	 * Rebuilds the dependency arrays if the graph structure has changed.
+	 */
+	private void updateDependencies()
+	{
+		final long version = getManager().getFactorGraph().structureVersion();
+		if (version == _cachedVersion)
+		{
+			return;
+		}
+		
+		// Unroll two iterations to get the dependencies across iterations.
+		final StaticDependencyGraph dg = new StaticDependencyGraph(getManager().getSolverGraph(), 2);
+		final int nTotal = dg.getNumNodes();
+		final int n = nTotal / 2;
+		
+		// Nodes are numbered consecutively in schedule order, so nodes from the second iteration
+		// have ids offset by the number of entries in a single iteration.
+		final StaticDependencyGraphNode[] nodes = new StaticDependencyGraphNode[nTotal];
+		final ArrayDeque<StaticDependencyGraphNode> queue = new ArrayDeque<StaticDependencyGraphNode>();
+		for (StaticDependencyGraphNode node : dg.getInitialEntries())
+		{
+			nodes[node.getId()] = node;
+			queue.add(node);
+		}
+		while (!queue.isEmpty())
+		{
+			final StaticDependencyGraphNode node = queue.poll();
+			for (int i = 0, end = node.getNumDependents(); i < end; ++i)
+			{
+				final StaticDependencyGraphNode dependent = node.getDependent(i);
+				if (nodes[dependent.getId()] == null)
+				{
+					nodes[dependent.getId()] = dependent;
+					queue.add(dependent);
+				}
+			}
+		}
+		
+		final IScheduleEntry[] entries = new IScheduleEntry[n];
+		final int[] numInitialDependencies = new int[n];
+		final int[] numDependencies = new int[n];
+		final int[] dependentsStart = new int[n + 1];
+		int nInitial = 0, nDependents = 0;
+		for (int i = 0; i < n; ++i)
+		{
+			final StaticDependencyGraphNode node = nodes[i];
+			entries[i] = node.getScheduleEntry();
+			numInitialDependencies[i] = node.getNumDependencies();
+			numDependencies[i] = nodes[i + n].getNumDependencies();
+			if (numInitialDependencies[i] == 0)
+			{
+				++nInitial;
+			}
+			
+			// An entry that does not touch any edges has no dependencies at all, so make it depend on
+			// itself from the previous iteration to keep iterations of the same entry from overlapping.
+			if (numDependencies[i] == 0)
+			{
+				numDependencies[i] = 1;
+				++nDependents;
+			}
+			
+			nDependents += node.getNumDependents();
+			dependentsStart[i + 1] = nDependents;
+		}
+		
+		final int[] dependents = new int[nDependents];
+		final int[] initialEntries = new int[nInitial];
+		for (int i = 0, j = 0, k = 0; i < n; ++i)
+		{
+			final StaticDependencyGraphNode node = nodes[i];
+			for (int d = 0, end = node.getNumDependents(); d < end; ++d)
+			{
+				dependents[j++] = node.getDependent(d).getId();
+			}
+			if (j < dependentsStart[i + 1])
+			{
+				dependents[j++] = i + n;
+			}
+			if (numInitialDependencies[i] == 0)
+			{
+				initialEntries[k++] = i;
+			}
+		}
+		
+		_numEntries = n;
+		_entries = entries;
+		_dependentsStart = dependentsStart;
+		_dependents = dependents;
+		_numInitialDependencies = numInitialDependencies;
+		_numDependencies = numDependencies;
+		_initialEntries = initialEntries;
+		_initialPartition = null;
+		_cachedVersion = version;
+	}
+}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core.multithreading.dataflowalgorithm;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+
+/*
+ * State shared by all of the tasks of a single call to DataflowMultithreadingAlgorithm.iterate.
+ * 
+ * Package protected
+ */
+final class DataflowRun implements ForkJoinPool.ManagedBlocker
+{
+	/*-------
+	 * State
+	 */
+	
+	final ISolverFactorGraph _solverGraph;
+	final IScheduleEntry[] _entries;
+	final int[] _dependentsStart;
+	final int[] _dependents;
+	final int[] _numDependencies;
+	final int _numIters;
+	
+	/**
+	 * Number of outstanding dependencies of the next pending iteration of each entry.
+	 */
+	private final AtomicIntegerArray _pending;
+	
+	/**
+	 * Number of tasks that have been submitted but have not yet finished, plus one for the caller
+	 * of {@link DataflowMultithreadingAlgorithm#iterate} until it has submitted the initial tasks.
+	 * The run is done when this reaches zero, so that no task is still updating the graph when
+	 * the caller returns, even if the run was aborted.
+	 */
+	private final AtomicInteger _activeTasks = new AtomicInteger(1);
+	
+	private final CountDownLatch _done = new CountDownLatch(1);
+	private final AtomicReference<Throwable> _error = new AtomicReference<Throwable>();
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	DataflowRun(ISolverFactorGraph solverGraph, IScheduleEntry[] entries, int[] dependentsStart, int[] dependents,
+		int[] numInitialDependencies, int[] numDependencies, int numIters)
+	{
+		_solverGraph = solverGraph;
+		_entries = entries;
+		_dependentsStart = dependentsStart;
+		_dependents = dependents;
+		_numDependencies = numDependencies;
+		_numIters = numIters;
+		
+		// Entries with no dependencies in the first iteration are run immediately, so their
+		// counters start out waiting for the second iteration.
+		final int n = entries.length;
+		final int[] pending = new int[n];
+		for (int i = 0; i < n; ++i)
+		{
+			pending[i] = numInitialDependencies[i] != 0 ? numInitialDependencies[i] : numDependencies[i];
+		}
+		_pending = new AtomicIntegerArray(pending);
+	}
+	
+	/*----------------------
+	 * ManagedBlocker methods
+	 */
+	
+	@Override
+	public boolean block() throws InterruptedException
+	{
+		_done.await();
+		return true;
+	}
+
+	@Override
+	public boolean isReleasable()
+	{
+		return _done.getCount() == 0;
+	}
+	
+	/*---------
+	 * Methods
+	 */
+
+	/**
+	 * Records a dependency of given entry as completed.
+	 * <p>
+	 * @return true if this was the last outstanding dependency, in which case the caller is
+	 * responsible for running the entry.
+	 */
+	boolean completeDependency(int entry)
+	{
+		if (_pending.decrementAndGet(entry) == 0)
+		{
+			// The next iteration of the entry cannot receive any completions until after this
+			// iteration of the entry has run, so it is safe to reset the counter here.
+			_pending.set(entry, _numDependencies[entry]);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Records that a task is about to be submitted. Must be called by the submitter before it
+	 * submits the task, and matched by a call to {@link #finishTask} when the task is done.
+	 */
+	void startTask()
+	{
+		_activeTasks.incrementAndGet();
+	}
+	
+	/**
+	 * Records that a task has finished. Also used by the caller of
+	 * {@link DataflowMultithreadingAlgorithm#iterate} once it has submitted the initial tasks.
+	 */
+	void finishTask()
+	{
+		if (_activeTasks.decrementAndGet() == 0)
+		{
+			_done.countDown();
+		}
+	}
+	
+	/**
+	 * Stops the run with the given error.
+	 * <p>
+	 * Tasks stop updating entries once they see that the run has been aborted, but the run is
+	 * not done until all of them have finished.
+	 */
+	void abort(Throwable error)
+	{
+		_error.compareAndSet(null, error);
+	}
+	
+	boolean isAborted()
+	{
+		return _error.get() != null;
+	}
+	
+	@Nullable Throwable getError()
+	{
+		return _error.get();
+	}
+}
@@ -0,0 +1,151 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core.multithreading.dataflowalgorithm;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Runs a chunk of ready schedule entries, along with any entries that become ready as a result.
+ * Entries are run from a local stack, so that an entry made ready by this task is usually run
+ * immediately on the same thread. When the stack grows beyond MAX_CHUNK_SIZE, or there are idle
+ * workers, the oldest half of the stack is forked off as a new task that other workers may steal.
+ * 
+ * Package protected
+ */
+final class DataflowTask extends RecursiveAction
+{
+	/*-------
+	 * State
+	 */
+	
+	private static final long serialVersionUID = 1L;
+
+	static final int MAX_CHUNK_SIZE = 32;
+	
+	private final DataflowRun _run;
+	private int[] _entries;
+	private int[] _iterations;
+	private int _size;
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	DataflowTask(DataflowRun run, int capacity)
+	{
+		_run = run;
+		capacity = Math.max(capacity, 4);
+		_entries = new int[capacity];
+		_iterations = new int[capacity];
+	}
+	
+	/*------------------------
+	 * RecursiveAction methods
+	 */
+	
+	@Override
+	protected void compute()
+	{
+		final DataflowRun run = _run;
+		final int[] dependentsStart = run._dependentsStart;
+		final int[] dependents = run._dependents;
+		final int numEntries = run._entries.length;
+		final int lastIteration = run._numIters - 1;
+		
+		try
+		{
+			while (_size > 0 && !run.isAborted())
+			{
+				final int entry = _entries[--_size];
+				final int iteration = _iterations[_size];
+				
+				run._solverGraph.runScheduleEntry(run._entries[entry]);
+				
+				for (int i = dependentsStart[entry], end = dependentsStart[entry + 1]; i < end; ++i)
+				{
+					int dependent = dependents[i];
+					int dependentIteration = iteration;
+					if (dependent >= numEntries)
+					{
+						if (iteration == lastIteration)
+						{
+							continue;
+						}
+						dependent -= numEntries;
+						++dependentIteration;
+					}
+					
+					if (run.completeDependency(dependent))
+					{
+						push(dependent, dependentIteration);
+					}
+				}
+				
+				if (_size > 1 && (_size > MAX_CHUNK_SIZE || getSurplusQueuedTaskCount() <= 0))
+				{
+					final DataflowTask task = split();
+					run.startTask();
+					task.fork();
+				}
+			}
+		}
+		catch (Throwable ex)
+		{
+			run.abort(ex);
+		}
+		
+		run.finishTask();
+	}
+	
+	/*-----------------
+	 * Package methods
+	 */
+
+	void push(int entry, int iteration)
+	{
+		if (_size == _entries.length)
+		{
+			_entries = Arrays.copyOf(_entries, _size * 2);
+			_iterations = Arrays.copyOf(_iterations, _size * 2);
+		}
+		_entries[_size] = entry;
+		_iterations[_size] = iteration;
+		++_size;
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	/**
+	 * Moves the older half of the local stack into a new task.
+	 */
+	private DataflowTask split()
+	{
+		final int half = _size / 2;
+		final DataflowTask task = new DataflowTask(_run, half);
+		System.arraycopy(_entries, 0, task._entries, 0, half);
+		System.arraycopy(_iterations, 0, task._iterations, 0, half);
+		task._size = half;
+		
+		_size -= half;
+		System.arraycopy(_entries, half, _entries, 0, _size);
+		System.arraycopy(_iterations, half, _iterations, 0, _size);
+		return task;
+	}
+}
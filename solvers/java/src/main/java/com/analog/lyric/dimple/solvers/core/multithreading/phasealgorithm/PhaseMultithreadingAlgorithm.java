@@ -17,12 +17,16 @@
 package com.analog.lyric.dimple.solvers.core.multithreading.phasealgorithm;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 
+import org.eclipse.jdt.annotation.Nullable;
+
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.multithreading.GraphPartition;
 import com.analog.lyric.dimple.solvers.core.multithreading.MultiThreadingManager;
 import com.analog.lyric.dimple.solvers.core.multithreading.MultithreadingAlgorithm;
 
@@ -35,6 +39,15 @@ import com.analog.lyric.dimple.solvers.core.multithreading.MultithreadingAlgorit
  */
 public class PhaseMultithreadingAlgorithm extends MultithreadingAlgorithm
 {
+	/*
+	 * Phases with entries grouped by region of the manager's graph partition, and the offset of
+	 * each region within each phase, cached for the dependency graph phases and partition they
+	 * were computed from.
+	 */
+	private @Nullable ArrayList<ArrayList<IScheduleEntry>> _cachedPhases;
+	private @Nullable GraphPartition _cachedPartition;
+	private ArrayList<ArrayList<IScheduleEntry>> _partitionedPhases = new ArrayList<ArrayList<IScheduleEntry>>();
+	private int[][] _partitionStarts = new int[0][];
 
 	public PhaseMultithreadingAlgorithm(MultiThreadingManager manager)
 	{
@@ -53,11 +66,21 @@ public class PhaseMultithreadingAlgorithm extends MultithreadingAlgorithm
 		ExecutorService service = getManager().getService();
 		int numThreads = getManager().getNumWorkers();
 		
+		//If there is a partition, give each thread the entries from its own region of the graph.
+		int [][] starts = null;
+		GraphPartition partition = getManager().getPartition();
+		if (partition != null)
+		{
+			updatePartitionedPhases(phases, partition);
+			phases = _partitionedPhases;
+			starts = _partitionStarts;
+		}
+		
 		for (int i = 0; i < numIters; i++)
 		{
 			for (int j = 0; j < phases.size(); j++)
 			{
-				updateScheduleEntries(service, phases.get(j), numThreads, true);
+				updateScheduleEntries(service, phases.get(j), starts != null ? starts[j] : null, numThreads, true);
 			}
 		}
 
@@ -66,9 +89,23 @@ public class PhaseMultithreadingAlgorithm extends MultithreadingAlgorithm
 	/*
 	 * Update all schedule entries assuming there are no dependencies between them.
 	 */
+	public void updateScheduleEntries(ExecutorService service,
+			ArrayList<IScheduleEntry> scheduleEntries,
+			int numThreads, boolean stealing)
+	{
+		updateScheduleEntries(service, scheduleEntries, null, numThreads, stealing);
+	}
+	
+	/*
+	 * Update all schedule entries assuming there are no dependencies between them.
+	 * If starts is non-null, thread i will start with the entries from starts[i] up to
+	 * starts[i+1] and the last thread with all of the remaining entries. Otherwise the
+	 * entries are divided evenly.
+	 */
 	@SuppressWarnings("unchecked")
 	public void updateScheduleEntries(ExecutorService service,
 			ArrayList<IScheduleEntry> scheduleEntries,
+			@Nullable int [] starts,
 			int numThreads, boolean stealing)
 	{
 		
@@ -84,7 +121,16 @@ public class PhaseMultithreadingAlgorithm extends MultithreadingAlgorithm
 		//Instantiate the Callable object that will do the updates. Each object is responsible
 		//for filling its queue so that building the queues is also multithreaded.
 		for (int i = 0; i < numThreads; i++)
-			ll.add(new WorkerWithStealing(getManager().getSolverGraph(), scheduleEntries, i, deques, stealing));
+		{
+			if (starts != null)
+			{
+				int last = (i == numThreads - 1 ? scheduleEntries.size() : starts[i + 1]) - 1;
+				ll.add(new WorkerWithStealing(getManager().getSolverGraph(), scheduleEntries, i, deques, stealing,
+					starts[i], last));
+			}
+			else
+				ll.add(new WorkerWithStealing(getManager().getSolverGraph(), scheduleEntries, i, deques, stealing));
+		}
 				
 		//Kick off the threads and wait for them to complete.
 		try {
@@ -94,4 +140,29 @@ public class PhaseMultithreadingAlgorithm extends MultithreadingAlgorithm
 		}
 	}
 
+	/*
+	 * Group the entries of each phase by region of the partition.
+	 */
+	private void updatePartitionedPhases(ArrayList<ArrayList<IScheduleEntry>> phases, GraphPartition partition)
+	{
+		if (phases == _cachedPhases && partition == _cachedPartition)
+			return;
+		
+		final int nPhases = phases.size();
+		ArrayList<ArrayList<IScheduleEntry>> partitionedPhases = new ArrayList<ArrayList<IScheduleEntry>>(nPhases);
+		int [][] partitionStarts = new int[nPhases][];
+		for (int j = 0; j < nPhases; j++)
+		{
+			ArrayList<IScheduleEntry> phase = phases.get(j);
+			int [] starts = new int[partition.getNumPartitions() + 2];
+			IScheduleEntry [] sorted = partition.sortByPartition(phase.toArray(new IScheduleEntry[phase.size()]), starts);
+			partitionedPhases.add(new ArrayList<IScheduleEntry>(Arrays.asList(sorted)));
+			partitionStarts[j] = starts;
+		}
+		
+		_partitionedPhases = partitionedPhases;
+		_partitionStarts = partitionStarts;
+		_cachedPhases = phases;
+		_cachedPartition = partition;
+	}
 }
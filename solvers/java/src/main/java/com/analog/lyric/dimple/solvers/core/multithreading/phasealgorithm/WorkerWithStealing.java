@@ -38,18 +38,36 @@ class WorkerWithStealing implements Callable<Object>
 	private final int _which;
 	private final ArrayList<IScheduleEntry> _nodes;
 	private final boolean _stealing;
+	private final int _first;
+	private final int _last;
 	
 	WorkerWithStealing(
 		ISolverFactorGraph solverGraph,
 		ArrayList<IScheduleEntry> nodes,
 		int which, ConcurrentLinkedQueue<IScheduleEntry> [] deques,
 		boolean stealing)
+	{
+		this(solverGraph, nodes, which, deques, stealing, -1, -1);
+	}
+	
+	/*
+	 * Worker that starts with the entries from first to last inclusive instead of an
+	 * even share of the entries.
+	 */
+	WorkerWithStealing(
+		ISolverFactorGraph solverGraph,
+		ArrayList<IScheduleEntry> nodes,
+		int which, ConcurrentLinkedQueue<IScheduleEntry> [] deques,
+		boolean stealing,
+		int first, int last)
 	{
 		_solverGraph = solverGraph;
 		_which = which;
 		_deques = deques;
 		_nodes= nodes;
 		_stealing = stealing;
+		_first = first;
+		_last = last;
 	}
 	
 	
@@ -59,14 +77,20 @@ class WorkerWithStealing implements Callable<Object>
 		//Which thread am I?
 		int which = _which;
 		
-		//Figure out how many nodes I shold pick off.
-		int nodesPerThread = _nodes.size() / _deques.length;
-		int first = _which*nodesPerThread;
-		int last = first + nodesPerThread - 1;
+		int first = _first;
+		int last = _last;
 		
-		//If I'm the last thread, I'm responsible for the last guy.
-		if (which == _deques.length - 1)
-			last = _nodes.size()-1;
+		if (first < 0)
+		{
+			//Figure out how many nodes I shold pick off.
+			int nodesPerThread = _nodes.size() / _deques.length;
+			first = _which*nodesPerThread;
+			last = first + nodesPerThread - 1;
+			
+			//If I'm the last thread, I'm responsible for the last guy.
+			if (which == _deques.length - 1)
+				last = _nodes.size()-1;
+		}
 		
 		//Add the schedule entries to my queue.
 		for (int i = first; i <= last; i++)
@@ -22,7 +22,7 @@ import org.eclipse.jdt.annotation.Nullable;
 
 import com.analog.lyric.dimple.model.domains.Domain;
 import com.analog.lyric.dimple.model.values.Value;
-import com.analog.lyric.math.DimpleRandomGenerator;
+import com.analog.lyric.math.DimpleRandom;
 import com.analog.lyric.options.DoubleOptionKey;
 import com.analog.lyric.options.IOptionHolder;
 import com.analog.lyric.options.Option;
@@ -57,9 +57,9 @@ public class CircularNormalProposalKernel extends NormalProposalKernel
 		new DoubleOptionKey(CircularNormalProposalKernel.class, "upperBound", Math.PI);
 	
 	@Override
-	public Proposal next(Value currentValue, Domain variableDomain)
+	public Proposal next(Value currentValue, Domain variableDomain, DimpleRandom random)
 	{
-		double value = currentValue.getDouble() + _standardDeviation * DimpleRandomGenerator.rand.nextGaussian();
+		double value = currentValue.getDouble() + _standardDeviation * random.nextGaussian();
 		value = ((((value - _min) % _range) + _range) % _range) + _min;		// Wrap from -pi to pi
 		return new Proposal(value);
 	}
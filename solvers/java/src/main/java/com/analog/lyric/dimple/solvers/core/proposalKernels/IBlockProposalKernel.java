@@ -20,10 +20,17 @@ import org.eclipse.jdt.annotation.Nullable;
 
 import com.analog.lyric.dimple.model.domains.Domain;
 import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.math.DimpleRandom;
 
 public interface IBlockProposalKernel
 {
-	public BlockProposal next(Value[] currentValue, Domain[] variableDomain);
+	/**
+	 * Proposes new values for a block of variables given their current ones.
+	 * <p>
+	 * @param random is the generator from which the proposal is drawn.
+	 * @since 0.08
+	 */
+	public BlockProposal next(Value[] currentValue, Domain[] variableDomain, DimpleRandom random);
 	
 	@Deprecated
 	public void setParameters(Object... parameters);
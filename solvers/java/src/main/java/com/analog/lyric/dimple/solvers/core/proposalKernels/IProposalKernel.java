@@ -20,11 +20,18 @@ import org.eclipse.jdt.annotation.Nullable;
 
 import com.analog.lyric.dimple.model.domains.Domain;
 import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.math.DimpleRandom;
 import com.analog.lyric.options.IOptionConfigurable;
 
 public interface IProposalKernel extends IOptionConfigurable
 {
-	public Proposal next(Value currentValue, Domain variableDomain);
+	/**
+	 * Proposes a new value given the current one.
+	 * <p>
+	 * @param random is the generator from which the proposal is drawn.
+	 * @since 0.08
+	 */
+	public Proposal next(Value currentValue, Domain variableDomain, DimpleRandom random);
 	
 	/**
 	 * @deprecated Will be removed in future release. Instead set options on
@@ -23,7 +23,7 @@ import org.eclipse.jdt.annotation.Nullable;
 
 import com.analog.lyric.dimple.model.domains.Domain;
 import com.analog.lyric.dimple.model.values.Value;
-import com.analog.lyric.math.DimpleRandomGenerator;
+import com.analog.lyric.math.DimpleRandom;
 import com.analog.lyric.options.DoubleOptionKey;
 import com.analog.lyric.options.IOptionHolder;
 import com.analog.lyric.options.Option;
@@ -44,9 +44,9 @@ public class NormalProposalKernel implements IProposalKernel
 		new DoubleOptionKey(NormalProposalKernel.class, "standardDeviation", 1.0, 0.0, Double.POSITIVE_INFINITY);
 	
 	@Override
-	public Proposal next(Value currentValue, Domain variableDomain)
+	public Proposal next(Value currentValue, Domain variableDomain, DimpleRandom random)
 	{
-		return new Proposal(currentValue.getDouble() + _standardDeviation * DimpleRandomGenerator.rand.nextGaussian());
+		return new Proposal(currentValue.getDouble() + _standardDeviation * random.nextGaussian());
 	}
 	
 	@Deprecated
@@ -24,7 +24,7 @@ import com.analog.lyric.dimple.model.domains.DiscreteDomain;
 import com.analog.lyric.dimple.model.domains.Domain;
 import com.analog.lyric.dimple.model.values.DiscreteValue;
 import com.analog.lyric.dimple.model.values.Value;
-import com.analog.lyric.math.DimpleRandomGenerator;
+import com.analog.lyric.math.DimpleRandom;
 import com.analog.lyric.options.IOptionHolder;
 import com.analog.lyric.options.Option;
 
@@ -35,12 +35,12 @@ public class UniformDiscreteProposalKernel implements IProposalKernel
 {
 
 	@Override
-	public Proposal next(Value currentValue, Domain variableDomain)
+	public Proposal next(Value currentValue, Domain variableDomain, DimpleRandom random)
 	{
 		// Choose uniformly at random from among all values except the current value
 		DiscreteDomain domain = (DiscreteDomain)variableDomain;
 		int currentIndex = ((DiscreteValue)currentValue).getIndex();
-		int nextIndex = DimpleRandomGenerator.rand.nextInt(domain.size() - 1);
+		int nextIndex = random.nextInt(domain.size() - 1);
 		if (nextIndex >= currentIndex) nextIndex++;
 		Value value = Value.create(domain);
 		value.setIndex(nextIndex);
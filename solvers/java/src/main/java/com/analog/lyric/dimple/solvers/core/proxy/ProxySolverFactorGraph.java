@@ -202,6 +202,18 @@ public abstract class ProxySolverFactorGraph<SFactor extends ISolverFactor, SVar
 		requireDelegate("moveMessages").moveMessages(other);
 	}
 
+	@Override
+	public void moveMessages(ISolverNode other, boolean resetOther)
+	{
+		requireDelegate("moveMessages").moveMessages(other, resetOther);
+	}
+
+	@Override
+	public void resetMessages()
+	{
+		requireDelegate("resetMessages").resetMessages();
+	}
+
 	@Override
 	public void solve()
 	{
@@ -258,6 +270,17 @@ public abstract class ProxySolverFactorGraph<SFactor extends ISolverFactor, SVar
 		}
 	}
 
+	@Override
+	public void preSetSolverFactory()
+	{
+		ISolverFactorGraph sfg = getDelegate();
+		// The delegate may be this graph when no transformation was needed.
+		if (sfg != null && sfg != this)
+		{
+			sfg.preSetSolverFactory();
+		}
+	}
+
 	@Override
 	public void useMultithreading(boolean use)
 	{
@@ -148,6 +148,16 @@ public abstract class ProxySolverVariable<MVariable extends Variable, Delegate e
 		requireDelegate("moveNonEdgeSpecificState").moveNonEdgeSpecificState(other);
 	}
 
+	@Override
+	public void notifySiblingsChanged()
+	{
+		ISolverVariable delegate = getDelegate();
+		if (delegate != null)
+		{
+			delegate.notifySiblingsChanged();
+		}
+	}
+
 	/*-------------------------
 	 * ISolverVariable methods
 	 */
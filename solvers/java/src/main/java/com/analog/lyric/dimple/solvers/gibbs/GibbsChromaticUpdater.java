@@ -0,0 +1,220 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.schedulers.schedule.GibbsChromaticSchedule;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.multithreading.ThreadPool;
+import com.analog.lyric.dimple.solvers.interfaces.SolverNodeMapping;
+import com.analog.lyric.math.DimpleRandom;
+
+/**
+ * Concurrently updates runs of same-colored variables from a {@link GibbsChromaticSchedule}.
+ * <p>
+ * A run is divided into contiguous chunks, one per thread of the {@linkplain ThreadPool#getForkJoinPool()
+ * shared fork/join pool}. Each chunk draws from its own random stream, which is seeded from the
+ * {@linkplain GibbsSolverGraph#getRandom() graph's generator} when first used, and which is given to the
+ * chunk's variables while they are updated. Since the chunks do not depend on which thread happens
+ * to run them, results are reproducible for a given seed and number of threads.
+ * <p>
+ * Variables of the same color do not share any factors, but their factors may still share factor functions
+ * and tables. Colors with a variable that has a factor that is not {@linkplain GibbsSolverGraph#isThreadSafe
+ * thread safe} are left for the graph to update serially.
+ * <p>
+ * @since 0.08
+ */
+final class GibbsChromaticUpdater
+{
+	/*-------
+	 * State
+	 */
+	
+	/**
+	 * Minimum number of variable updates that will be given to a single chunk.
+	 */
+	static final int MIN_CHUNK_SIZE = 16;
+	
+	private final GibbsSolverGraph _sgraph;
+	private final SolverNodeMapping _solverMapping;
+	
+	private DimpleRandom[] _randoms = new DimpleRandom[0];
+	
+	private @Nullable GibbsChromaticSchedule _schedule = null;
+	private long _scheduleVersion = -1;
+	
+	/**
+	 * Solver variables for the colored entries of the schedule, indexed by schedule position.
+	 */
+	private ISolverVariableGibbs[] _nodes = new ISolverVariableGibbs[0];
+	
+	/**
+	 * Indicates which colors of the schedule may be updated concurrently.
+	 */
+	private boolean[] _threadSafeColors = new boolean[0];
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	GibbsChromaticUpdater(GibbsSolverGraph sgraph)
+	{
+		_sgraph = sgraph;
+		_solverMapping = sgraph.getSolverMapping();
+	}
+	
+	/*-----------------
+	 * Package methods
+	 */
+	
+	/**
+	 * Updates the entries of {@code schedule} with positions from {@code start} up to {@code end},
+	 * all of which must have the same color.
+	 * <p>
+	 * Returns false without doing anything if the run is too short to be worth splitting among threads,
+	 * or if its color may not be updated concurrently, in which case the caller should run the entries itself.
+	 */
+	boolean update(GibbsChromaticSchedule schedule, int start, int end)
+	{
+		final ForkJoinPool pool = ThreadPool.getForkJoinPool();
+		final int numChunks = Math.min(pool.getParallelism(), (end - start) / MIN_CHUNK_SIZE);
+		if (numChunks < 2)
+		{
+			return false;
+		}
+		
+		updateNodes(schedule);
+		
+		final int[] colorStarts = schedule.getColorStarts();
+		int color = 0;
+		while (colorStarts[color + 1] <= start)
+		{
+			++color;
+		}
+		if (!_threadSafeColors[color])
+		{
+			return false;
+		}
+		
+		if (_randoms.length < numChunks)
+		{
+			final int prevLength = _randoms.length;
+			_randoms = Arrays.copyOf(_randoms, numChunks);
+			for (int i = prevLength; i < numChunks; ++i)
+			{
+				_randoms[i] = new DimpleRandom(_sgraph.getRandom().nextLong());
+			}
+		}
+		
+		pool.invoke(new ChunkTask(this, start, end, 0, numChunks));
+		return true;
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	private void updateNodes(GibbsChromaticSchedule schedule)
+	{
+		final int[] colorStarts = schedule.getColorStarts();
+		
+		if (schedule != _schedule || schedule.scheduleVersion() != _scheduleVersion)
+		{
+			final int numColors = colorStarts.length - 1;
+			final ISolverVariableGibbs[] nodes = new ISolverVariableGibbs[colorStarts[numColors]];
+			final boolean[] threadSafeColors = new boolean[numColors];
+			for (int color = 0; color < numColors; ++color)
+			{
+				boolean threadSafe = true;
+				for (int i = colorStarts[color], end = colorStarts[color + 1]; i < end; ++i)
+				{
+					final Variable var = (Variable)((NodeScheduleEntry)schedule.get(i)).getNode();
+					nodes[i] = (ISolverVariableGibbs)_solverMapping.getSolverVariable(var);
+					for (int j = 0, nj = var.getSiblingCount(); threadSafe && j < nj; ++j)
+					{
+						threadSafe = GibbsSolverGraph.isThreadSafe(var.getSibling(j));
+					}
+				}
+				threadSafeColors[color] = threadSafe;
+			}
+			_nodes = nodes;
+			_threadSafeColors = threadSafeColors;
+			_schedule = schedule;
+			_scheduleVersion = schedule.scheduleVersion();
+		}
+	}
+	
+	/**
+	 * Runs chunks {@code firstChunk} up to {@code endChunk} of the run, splitting recursively
+	 * until there is only one.
+	 */
+	private static final class ChunkTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final GibbsChromaticUpdater _updater;
+		private final int _start;
+		private final int _end;
+		private final int _firstChunk;
+		private final int _endChunk;
+		
+		private ChunkTask(GibbsChromaticUpdater updater, int start, int end, int firstChunk, int endChunk)
+		{
+			_updater = updater;
+			_start = start;
+			_end = end;
+			_firstChunk = firstChunk;
+			_endChunk = endChunk;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			final int numChunks = _endChunk - _firstChunk;
+			if (numChunks > 1)
+			{
+				final int midChunk = _firstChunk + numChunks / 2;
+				final int mid = _start + (int)((long)(_end - _start) * (midChunk - _firstChunk) / numChunks);
+				invokeAll(new ChunkTask(_updater, _start, mid, _firstChunk, midChunk),
+					new ChunkTask(_updater, mid, _end, midChunk, _endChunk));
+				return;
+			}
+			
+			final ISolverVariableGibbs[] nodes = _updater._nodes;
+			final DimpleRandom random = _updater._randoms[_firstChunk];
+			for (int i = _start; i < _end; ++i)
+			{
+				final ISolverVariableGibbs node = nodes[i];
+				node.setRandom(random);
+				try
+				{
+					node.update();
+				}
+				finally
+				{
+					node.setRandom(null);
+				}
+			}
+		}
+	}
+}
@@ -25,10 +25,10 @@ import java.util.Objects;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 
-import cern.colt.list.IntArrayList;
-
 import com.analog.lyric.collect.ArrayUtil;
+import com.analog.lyric.collect.PrimitiveIterator;
 import com.analog.lyric.collect.ReleasableIterator;
+import com.analog.lyric.collect.ScratchArena;
 import com.analog.lyric.dimple.environment.DimpleEnvironment;
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.model.core.EdgeState;
@@ -50,6 +50,7 @@ import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IGenericSampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IMCMCSampler;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
+import com.analog.lyric.math.DimpleRandom;
 import com.analog.lyric.util.misc.Internal;
 import com.analog.lyric.util.misc.Matlab;
 import com.google.common.primitives.Doubles;
@@ -134,6 +135,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 			}
 			
 			_value.setFrom(value);
+			GibbsSolverGraph.invalidateSampleScore(GibbsDiscrete.this);
 					
 			// If this variable has deterministic dependents, then set their values
 			if (hasDeterministicDependents)
@@ -169,6 +171,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 			}
 
 			_value.setObject(obj);
+			GibbsSolverGraph.invalidateSampleScore(GibbsDiscrete.this);
 			
 			// If this variable has deterministic dependents, then set their values
 			if (hasDeterministicDependents && !_value.valueEquals(requireNonNull(oldValue)))
@@ -189,6 +192,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 			}
 			
 			_value.setIndex(index);
+			GibbsSolverGraph.invalidateSampleScore(GibbsDiscrete.this);
 					
 			// If this variable has deterministic dependents, then set their values
 			if (hasDeterministicDependents)
@@ -211,7 +215,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 	private boolean _repeatedVariable;
 	private @Nullable long[] _beliefHistogram;
 	private DiscreteEnergyMessage _input;
-	private @Nullable IntArrayList _sampleIndexArray;
+	private @Nullable GibbsSampleStore.Column _sampleColumn;
 	private int _bestSampleIndex;
 	private @Nullable DiscreteValue _initialSampleValue = null;
 	private double _beta = 1;
@@ -226,6 +230,11 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 	 * List of neighbors for sample scoring. Instantiated during initialization.
 	 */
 	private @Nullable GibbsNeighbors _neighbors = null;
+	
+	/**
+	 * Overrides random generator of parent graph when not null.
+	 */
+	private @Nullable DimpleRandom _random = null;
 
 	/*--------------
 	 * Construction
@@ -290,12 +299,20 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 			break;
 		}
 
+		// The neighbor messages only give the exact change in score when no factor appears more than once
+		// among the siblings, which is the case if there is no neighbor list or there are deterministic dependents.
+		final GibbsSolverGraph scoreTracker = _neighbors == null || model.isDeterministicInput() ?
+			GibbsSolverGraph.sampleScoreTracker(this) : null;
+		final int oldIndex = _currentSample.getIndex();
+		
 		final int messageLength = _input.size();
 		final int numPorts = model.getSiblingCount();
 		double minEnergy = Double.POSITIVE_INFINITY;
 		
 		// Conditional probability in log domain
-		final double[] conditional = DimpleEnvironment.doubleArrayCache.allocateAtLeast(messageLength);
+		final ScratchArena scratch = ScratchArena.forCurrentThread();
+		final int scratchMark = scratch.mark();
+		final double[] conditional = scratch.allocateDoubles(messageLength);
 
 		final double[] inputEnergy = _input.representation();
 		System.arraycopy(inputEnergy, 0, conditional, 0, messageLength);
@@ -386,7 +403,14 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 			rejected = true;
 		}
 		
-		DimpleEnvironment.doubleArrayCache.release(conditional);
+		if (scoreTracker != null)
+		{
+			// The conditional energies differ from the total score of the graph only by terms that do not
+			// depend on the value of this variable, so their difference is the change in the total score.
+			scoreTracker.adjustSampleScore((conditional[_currentSample.getIndex()] - conditional[oldIndex]) / _beta);
+		}
+		
+		scratch.reset(scratchMark);
 		
 		if (rejected) _rejectCount++;
 		
@@ -619,7 +643,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
     @Override
 	public final void saveAllSamples()
     {
-    	_sampleIndexArray = new IntArrayList();
+    	_sampleColumn = getParentGraph().getSampleStore().addIntColumn();
     	setOption(GibbsOptions.saveAllSamples, true);
     }
     
@@ -630,17 +654,17 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
     @Override
 	public void disableSavingAllSamples()
     {
-    	_sampleIndexArray = null;
+    	_sampleColumn = null;
     	setOption(GibbsOptions.saveAllSamples, false);
     }
     
     @Override
 	public final void saveCurrentSample()
     {
-    	final IntArrayList sampleIndexArray = _sampleIndexArray;
-    	if (sampleIndexArray != null)
+    	final GibbsSampleStore.Column sampleColumn = _sampleColumn;
+    	if (sampleColumn != null)
     	{
-    		sampleIndexArray.add(_currentSample.getIndex());
+    		sampleColumn.add(_currentSample.getIndex());
     	}
     }
     
@@ -727,35 +751,88 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
     	return _bestSampleIndex;
     }
 
+    @Override
+    public DimpleRandom getRandom()
+    {
+    	final DimpleRandom random = _random;
+    	return random != null ? random : getParentGraph().getRandom();
+    }
+    
+    @Override
+    public void setRandom(@Nullable DimpleRandom random)
+    {
+    	_random = random;
+    }
+    
+    @Override
+	public void mergeChainStatistics(ISolverVariableGibbs other, boolean bestSample)
+    {
+    	final GibbsDiscrete ovar = (GibbsDiscrete)other;
+    	
+    	final long[] beliefHistogram = requireNonNull(_beliefHistogram);
+    	final long[] otherHistogram = requireNonNull(ovar._beliefHistogram);
+    	for (int i = beliefHistogram.length; --i>=0;)
+    	{
+    		beliefHistogram[i] += otherHistogram[i];
+    	}
+    	
+    	final GibbsSampleStore.Column sampleColumn = _sampleColumn;
+    	final GibbsSampleStore.Column otherSampleColumn = ovar._sampleColumn;
+    	if (sampleColumn != null && otherSampleColumn != null)
+    	{
+    		sampleColumn.addAll(otherSampleColumn);
+    	}
+    	
+    	if (bestSample)
+    	{
+    		_bestSampleIndex = ovar._bestSampleIndex;
+    	}
+    	
+		_updateCount += ovar._updateCount;
+		_rejectCount += ovar._rejectCount;
+		_scoreCount += ovar._scoreCount;
+    }
+    
     @Matlab
     @Override
 	public final Object[] getAllSamples()
     {
-    	final IntArrayList sampleIndexArray = _sampleIndexArray;
+    	final GibbsSampleStore.Column sampleColumn = _sampleColumn;
     	
-		if (sampleIndexArray == null)
+		if (sampleColumn == null)
 		{
 			return ArrayUtil.EMPTY_OBJECT_ARRAY;
 		}
-		int length = sampleIndexArray.size();
+		int length = sampleColumn.size();
     	DiscreteDomain domain = _model.getDiscreteDomain();
     	Object[] retval = new Object[length];
+    	PrimitiveIterator.OfInt indices = sampleColumn.intIterator();
     	for (int i = 0; i < length; i++)
-    		retval[i] = domain.getElement(sampleIndexArray.get(i));
+    		retval[i] = domain.getElement(indices.nextInt());
     	return retval;
     }
     
     @Matlab
     public final int[] getAllSampleIndices()
     {
-    	final IntArrayList sampleIndexArray = _sampleIndexArray;
+    	final GibbsSampleStore.Column sampleColumn = _sampleColumn;
 
-    	if (sampleIndexArray == null)
+    	if (sampleColumn == null)
     	{
     		return ArrayUtil.EMPTY_INT_ARRAY;
     	}
     	
-    	return Arrays.copyOf(sampleIndexArray.elements(), sampleIndexArray.size());
+    	return sampleColumn.toIntArray();
+    }
+    
+    /**
+     * Returns the column of the {@linkplain GibbsSolverGraph#getSampleStore() sample store} holding the
+     * samples saved for this variable, or null if samples are not being saved.
+     * @since 0.08
+     */
+	public final @Nullable GibbsSampleStore.Column getSampleColumn()
+    {
+    	return _sampleColumn;
     }
     
 	@Override
@@ -934,7 +1011,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 		// Normally zero, but use fixed value if one has been set
 		_currentSample.setIndex(_model.hasFixedValue() ? _model.getFixedValueIndex() : 0);
 
-		if (_sampleIndexArray != null)
+		if (_sampleColumn != null)
 			saveAllSamples();
 
 		_beliefHistogram = new long[_model.getDomain().size()];
@@ -998,7 +1075,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 			}
 		}
 		_currentSample.setFrom(ovar._currentSample);
-		_sampleIndexArray = ovar._sampleIndexArray;
+		_sampleColumn = ovar._sampleColumn;
 		_beliefHistogram = ovar._beliefHistogram;
 		_bestSampleIndex = ovar._bestSampleIndex;
 		_initialSampleValue = ovar._initialSampleValue;
@@ -1021,20 +1098,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 		
 		// Clear out sample state
 		_bestSampleIndex = -1;
-		IntArrayList sampleIndexArray = null;
-		if (saveAllSamples)
-		{
-			sampleIndexArray = _sampleIndexArray;
-			if (sampleIndexArray == null)
-			{
-				sampleIndexArray = new IntArrayList();
-			}
-			else
-			{
-				sampleIndexArray.clear();
-			}
-		}
-		_sampleIndexArray = sampleIndexArray;
+		_sampleColumn = saveAllSamples ? getParentGraph().getSampleStore().addIntColumn() : null;
 		
 		Arrays.fill(_beliefHistogram, 0);
 		
@@ -16,17 +16,24 @@
 
 package com.analog.lyric.dimple.solvers.gibbs;
 
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.options.DimpleOptions;
 import com.analog.lyric.dimple.options.SolverOptions;
 import com.analog.lyric.dimple.schedulers.DefaultScheduler;
 import com.analog.lyric.dimple.schedulers.GibbsDefaultScheduler;
 import com.analog.lyric.dimple.schedulers.validator.ScheduleValidatorOptionKey;
 import com.analog.lyric.dimple.schedulers.validator.VariablesOnlyScheduleValidator;
+import com.analog.lyric.dimple.solvers.core.multithreading.ThreadPool;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.CDFSampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.GenericSamplerOptionKey;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.SliceSampler;
 import com.analog.lyric.options.BooleanOptionKey;
+import com.analog.lyric.options.DoubleListOptionKey;
 import com.analog.lyric.options.DoubleOptionKey;
 import com.analog.lyric.options.IntegerOptionKey;
+import com.analog.lyric.options.LongOptionKey;
+import com.analog.lyric.options.StringOptionKey;
 
 /**
  * Options for Gibbs solver.
@@ -92,6 +99,90 @@ public class GibbsOptions extends SolverOptions
 	public static final IntegerOptionKey numRandomRestarts =
 		new IntegerOptionKey(GibbsOptions.class, "numRandomRestarts", 0, 0, Integer.MAX_VALUE);
 	
+	/**
+	 * Specifies whether random restarts should be run as independent chains in parallel.
+	 * <p>
+	 * When true and {@link #numRandomRestarts} is positive, each restart performed by
+	 * {@linkplain GibbsSolverGraph#solveOneStep() solveOneStep} is run as a separate chain on its own
+	 * copy of the model, and the chains are run concurrently using the shared multithreading
+	 * {@linkplain ThreadPool thread pool}. Each chain draws from its own random number stream, which is
+	 * derived from {@link DimpleOptions#randomSeed} when that is set, so results are reproducible
+	 * regardless of the number of threads. When all of the chains have finished, their belief statistics,
+	 * best samples, saved samples and scores are combined in restart order, and the current sample
+	 * values are taken from the last chain.
+	 * <p>
+	 * The copies of the model share their factor functions, so the chains are only run concurrently if
+	 * every factor function in the model is {@linkplain FactorFunction#isThreadSafe() thread safe}.
+	 * Otherwise they are run one after another, which produces the same results.
+	 * <p>
+	 * Because the chains run on copies of the model, options that affect sampling must be set on
+	 * the model or on the solver graph rather than on individual solver variables or factors. Events
+	 * raised during sampling will have the copies as their source. This option is ignored for graphs
+	 * with {@linkplain FactorGraph#getFactorGraphStreams() factor graph streams}.
+	 * <p>
+	 * Defaults to false.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final BooleanOptionKey enableParallelChains =
+		new BooleanOptionKey(GibbsOptions.class, "enableParallelChains", false);
+	
+	/**
+	 * Specifies whether to use parallel tempering (aka replica exchange) in Gibbs solver.
+	 * <p>
+	 * When true and {@link #temperatureLadder} has more than one temperature, sampling is performed
+	 * concurrently by one replica of the graph for each temperature, using the shared multithreading
+	 * {@linkplain ThreadPool thread pool}. The solver graph itself is the replica with temperature one,
+	 * and the others run on copies of the model, as with {@link #enableParallelChains}. Every
+	 * {@link #temperingSwapInterval} samples, exchanges of the current sample values are proposed
+	 * between each pair of replicas with adjacent temperatures, and are accepted according to the
+	 * Metropolis criterion. Hotter replicas move between modes more easily, and exchanges allow the
+	 * states they find to make their way down to temperature one.
+	 * <p>
+	 * Only the temperature one replica contributes to beliefs, saved samples and scores. Each replica draws
+	 * from its own random number stream, which is derived from {@link DimpleOptions#randomSeed} when that
+	 * is set. As with parallel chains, the replicas are only run concurrently if every factor function in the
+	 * model is thread safe. The swap acceptance rates can be obtained from
+	 * {@link GibbsSolverGraph#getTemperingSwapAcceptanceRates()}.
+	 * <p>
+	 * When enabled, this takes precedence over {@link #enableParallelChains} and {@link #enableAnnealing},
+	 * and random restarts are performed by all of the replicas in turn. This option is ignored for
+	 * graphs with {@linkplain FactorGraph#getFactorGraphStreams() factor graph streams}.
+	 * <p>
+	 * Defaults to false.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final BooleanOptionKey enableParallelTempering =
+		new BooleanOptionKey(GibbsOptions.class, "enableParallelTempering", false);
+	
+	/**
+	 * Specifies the temperatures of the replicas used for {@link #enableParallelTempering parallel tempering}
+	 * in Gibbs solver.
+	 * <p>
+	 * The first temperature must be one, and the temperatures must be increasing.
+	 * <p>
+	 * Defaults to [1, 2, 4, 8].
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final DoubleListOptionKey temperatureLadder =
+		new DoubleListOptionKey(GibbsOptions.class, "temperatureLadder", 1.0, 2.0, 4.0, 8.0);
+	
+	/**
+	 * Specifies the number of samples between proposed exchanges for {@link #enableParallelTempering
+	 * parallel tempering} in Gibbs solver.
+	 * <p>
+	 * Exchanges are also proposed at the same interval during burn-in, where the interval is measured
+	 * in the number of updates that make up a sample.
+	 * <p>
+	 * Must be a positive integer. The default is one.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final IntegerOptionKey temperingSwapInterval =
+		new IntegerOptionKey(GibbsOptions.class, "temperingSwapInterval", 1, 1, Integer.MAX_VALUE);
+	
 	/**
 	 * Specifies whether to save sample values for variables in Gibbs solver.
 	 * <p>
@@ -102,6 +193,40 @@ public class GibbsOptions extends SolverOptions
 	public static final BooleanOptionKey saveAllSamples =
 		new BooleanOptionKey(GibbsOptions.class, "saveAllSamples", false);
 	
+	/**
+	 * Specifies the maximum number of bytes of memory used to hold saved samples before spilling to disk.
+	 * <p>
+	 * When {@link #saveAllSamples} is enabled, samples are written to the {@link GibbsSampleStore} of the
+	 * root graph, which allocates its memory outside of the Java heap. Once this limit is reached, further
+	 * samples are written to a temporary memory-mapped file in {@link #sampleStoreDirectory}.
+	 * <p>
+	 * Off-heap memory is only returned to the system when the store is garbage collected, so the store
+	 * keeps the memory it has allocated, up to this limit, and reuses it each time the graph is solved.
+	 * Stores for {@linkplain #enableParallelChains parallel chains}, which are discarded after each solve,
+	 * are left for the garbage collector.
+	 * <p>
+	 * This option is only looked up on the root graph when the solver graph is initialized. Must be
+	 * non-negative. The default is 256 MiB.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final LongOptionKey sampleStoreMemoryLimit =
+		new LongOptionKey(GibbsOptions.class, "sampleStoreMemoryLimit", 1L << 28, 0, Long.MAX_VALUE);
+	
+	/**
+	 * Specifies the directory in which to create the file used for saved samples that exceed
+	 * {@link #sampleStoreMemoryLimit}.
+	 * <p>
+	 * This option is only looked up on the root graph when the solver graph is initialized. The file is
+	 * deleted when the graph is next initialized.
+	 * <p>
+	 * The default is the empty string, which uses the system's default temporary file directory.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final StringOptionKey sampleStoreDirectory =
+		new StringOptionKey(GibbsOptions.class, "sampleStoreDirectory", "");
+	
 	/**
 	 * Specifies whether to save sample scores in Gibbs solver.
 	 * <p>
@@ -114,7 +239,25 @@ public class GibbsOptions extends SolverOptions
 	 */
 	public static final BooleanOptionKey saveAllScores =
 		new BooleanOptionKey(GibbsOptions.class, "saveAllScores", false);
-	
+
+	/**
+	 * Number of samples between full recomputations of the total sample score in Gibbs solver.
+	 * <p>
+	 * The Gibbs solver needs the total score of the graph after every sample to track the best
+	 * sample and to support {@link #saveAllScores}. Rather than rescoring every factor and variable
+	 * each time, the score is maintained incrementally from the energy change computed by each
+	 * single-variable update. To bound accumulated floating-point error, the score is fully recomputed
+	 * once every this many samples, as well as whenever sample values are changed by some other means,
+	 * such as a block update or random restart.
+	 * <p>
+	 * A value of one recomputes the full score for every sample. Must be a positive integer. The
+	 * default is 100.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final IntegerOptionKey scoreRecomputeInterval =
+		new IntegerOptionKey(GibbsOptions.class, "scoreRecomputeInterval", 100, 1, Integer.MAX_VALUE);
+
 	/**
 	 * Specifies which sampler to use for discrete variables in Gibbs solver.
 	 * <p>
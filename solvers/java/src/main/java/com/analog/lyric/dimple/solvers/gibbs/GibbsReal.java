@@ -19,7 +19,6 @@ package com.analog.lyric.dimple.solvers.gibbs;
 import static com.analog.lyric.dimple.solvers.gibbs.GibbsSolverVariableEvent.*;
 import static java.util.Objects.*;
 
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -60,7 +59,7 @@ import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
 import com.analog.lyric.dimple.solvers.interfaces.SolverNodeMapping;
-import com.analog.lyric.math.DimpleRandomGenerator;
+import com.analog.lyric.math.DimpleRandom;
 import com.analog.lyric.options.IOptionHolder;
 import com.analog.lyric.util.misc.Internal;
 import com.analog.lyric.util.misc.Matlab;
@@ -139,6 +138,7 @@ public class GibbsReal extends SRealVariableBase
 			}
 			
 			_value = value;
+			GibbsSolverGraph.invalidateSampleScore(GibbsReal.this);
 			
 			// If this variable has deterministic dependents, then set their values
 			if (hasDeterministicDependents)
@@ -165,7 +165,7 @@ public class GibbsReal extends SRealVariableBase
 	private @Nullable IMCMCSampler _sampler = null;
 	private @Nullable IRealConjugateSampler _conjugateSampler = null;
 	private boolean _samplerSpecificallySpecified = false;
-	private @Nullable DoubleArrayList _sampleArray;
+	private @Nullable GibbsSampleStore.Column _sampleColumn;
 	private double _sampleSum;
 	private double _sampleSumSquare;
 	private long _sampleCount;
@@ -176,11 +176,26 @@ public class GibbsReal extends SRealVariableBase
 	private long _updateCount;
 	private long _rejectCount;
 	private long _scoreCount;
+	
+	/*
+	 * Unscaled energies of the first and most recent values scored by getCurrentSampleScore() while
+	 * recording during an update. Used to compute the change in the total sample score without rescoring.
+	 */
+	private boolean _recordScores = false;
+	private double _firstScoredValue = Double.NaN;
+	private double _firstScoredEnergy;
+	private double _lastScoredValue = Double.NaN;
+	private double _lastScoredEnergy;
 
 	/**
 	 * List of neighbors for sample scoring. Instantiated during initialization.
 	 */
 	private @Nullable GibbsNeighbors _neighbors = null;
+	
+	/**
+	 * Overrides random generator of parent graph when not null.
+	 */
+	private @Nullable DimpleRandom _random = null;
 
 	/*--------------
 	 * Construction
@@ -246,6 +261,9 @@ public class GibbsReal extends SRealVariableBase
 			break;
 		}
 
+		final GibbsSolverGraph scoreTracker = GibbsSolverGraph.sampleScoreTracker(this);
+		final double oldSample = _currentSample.getDouble();
+
 		// Get the next sample value from the sampler
 		boolean rejected = false;
 		_updateCount++;
@@ -253,12 +271,35 @@ public class GibbsReal extends SRealVariableBase
 		if (conjugateSampler == null)
 		{
 			// Use MCMC sampler
+			if (scoreTracker != null)
+			{
+				// The sampler scores both the current value and the value it chooses, so record
+				// those scores rather than recomputing them.
+				_recordScores = true;
+				_firstScoredValue = _lastScoredValue = Double.NaN;
+			}
 			RealValue nextSample = RealValue.create(_currentSample.getDouble());
 			rejected = !Objects.requireNonNull(_sampler).nextSample(nextSample, this);
 			if (rejected) _rejectCount++;
+			
+			if (scoreTracker != null)
+			{
+				_recordScores = false;
+				final double newSample = _currentSample.getDouble();
+				if (_firstScoredValue == oldSample)
+				{
+					final double newEnergy =
+						newSample == _lastScoredValue ? _lastScoredEnergy :
+						newSample == _firstScoredValue ? _firstScoredEnergy :
+						computeSampleEnergy();
+					scoreTracker.adjustSampleScore(newEnergy - _firstScoredEnergy);
+				}
+			}
 		}
 		else
 		{
+			final double oldEnergy = scoreTracker != null ? computeSampleEnergy() : 0.0;
+			
 			// Use conjugate sampler, first update the messages from all factors
 			// Factor messages represent the current distribution parameters from each factor
 			final int numEdges = model.getSiblingCount();
@@ -276,9 +317,14 @@ public class GibbsReal extends SRealVariableBase
 				sedges[portIndex] =  sedge;
 				factor.updateEdgeMessage(edge, sedge);	// Run updateEdgeMessage for each neighboring factor
 			}
-			double nextSampleValue = conjugateSampler.nextSample(sedges, _input);
+			double nextSampleValue = conjugateSampler.nextSample(sedges, _input, getRandom());
 			if (nextSampleValue != _currentSample.getDouble())	// Would be exactly equal if not changed since last value tested
 				setCurrentSample(nextSampleValue);
+			
+			if (scoreTracker != null)
+			{
+				scoreTracker.adjustSampleScore(computeSampleEnergy() - oldEnergy);
+			}
 		}
 		
 		switch (updateEventFlags)
@@ -330,43 +376,61 @@ public class GibbsReal extends SRealVariableBase
 	@Override
 	public final double getCurrentSampleScore()
 	{
-		double sampleScore = Double.POSITIVE_INFINITY;
 		_scoreCount++;
 		
-		computeScore:
+		final double potential = computeSampleEnergy();
+		
+		if (_recordScores)
 		{
-			if (!_domain.inDomain(_currentSample.getDouble()))
-				break computeScore; // outside the domain
+			final double value = _currentSample.getDouble();
+			if (Double.isNaN(_firstScoredValue))
+			{
+				_firstScoredValue = value;
+				_firstScoredEnergy = potential;
+			}
+			_lastScoredValue = value;
+			_lastScoredEnergy = potential;
+		}
+		
+		return Doubles.isFinite(potential) ? potential * _beta : Double.POSITIVE_INFINITY;	// Incorporate current temperature
+	}
+	
+	/**
+	 * Sum of the input and neighboring potentials for the current sample value without tempering,
+	 * or positive infinity if the value is outside the domain or any term is not finite.
+	 */
+	private double computeSampleEnergy()
+	{
+		if (!_domain.inDomain(_currentSample.getDouble()))
+			return Double.POSITIVE_INFINITY; // outside the domain
 
-			double potential = 0;
+		double potential = 0;
 
-			// Sum up the potentials from the input and all connected factors
-			final FactorFunction input = _input;
-			if (input != null)
+		// Sum up the potentials from the input and all connected factors
+		final FactorFunction input = _input;
+		if (input != null)
+		{
+			potential = input.evalEnergy(_currentSample);
+			if (!Doubles.isFinite(potential))
 			{
-				potential = input.evalEnergy(_currentSample);
-				if (!Doubles.isFinite(potential))
-				{
-					break computeScore;
-				}
+				return Double.POSITIVE_INFINITY;
 			}
+		}
 
-			ReleasableIterator<ISolverNodeGibbs> scoreNodes = getSampleScoreNodes();
-			while (scoreNodes.hasNext())
+		ReleasableIterator<ISolverNodeGibbs> scoreNodes = getSampleScoreNodes();
+		while (scoreNodes.hasNext())
+		{
+			final ISolverNodeGibbs node = scoreNodes.next();
+			potential += node.getPotential();
+			if (!Doubles.isFinite(potential))
 			{
-				final ISolverNodeGibbs node = scoreNodes.next();
-				potential += node.getPotential();
-				if (!Doubles.isFinite(potential))
-				{
-					break computeScore;
-				}
+				potential = Double.POSITIVE_INFINITY;
+				break;
 			}
-			scoreNodes.release();
-
-			sampleScore = potential * _beta;	// Incorporate current temperature
 		}
-		
-		return sampleScore;
+		scoreNodes.release();
+
+		return potential;
 	}
 	
 	@Override
@@ -488,7 +552,7 @@ public class GibbsReal extends SRealVariableBase
 		if (inputConjugateSampler != null)
 		{
 			// Sample from the input if there's an available sampler
-			double sampleValue = inputConjugateSampler.nextSample(new ISolverEdgeState[0], input);
+			double sampleValue = inputConjugateSampler.nextSample(new ISolverEdgeState[0], input, getRandom());
 			
 			// If there are also bounds, clip at the bounds
 			if (sampleValue > hi) sampleValue = hi;
@@ -500,7 +564,7 @@ public class GibbsReal extends SRealVariableBase
 			// No input or no available sampler, so if bounded, sample uniformly from the bounds
 			if (hi < Double.POSITIVE_INFINITY && lo > Double.NEGATIVE_INFINITY)
 			{
-				setCurrentSample(DimpleRandomGenerator.rand.nextDouble() * (hi - lo) + lo);
+				setCurrentSample(getRandom().nextDouble() * (hi - lo) + lo);
 			}
 			else
 			{
@@ -595,7 +659,7 @@ public class GibbsReal extends SRealVariableBase
 	@Override
 	public final void saveAllSamples()
 	{
-		_sampleArray = new DoubleArrayList();
+		_sampleColumn = getParentGraph().getSampleStore().addDoubleColumn(1);
 		setOption(GibbsOptions.saveAllSamples, true);
 	}
 
@@ -606,16 +670,16 @@ public class GibbsReal extends SRealVariableBase
     @Override
 	public void disableSavingAllSamples()
     {
-    	_sampleArray = null;
+    	_sampleColumn = null;
 		setOption(GibbsOptions.saveAllSamples, false);
     }
     
 	@Override
 	public final void saveCurrentSample()
 	{
-		final DoubleArrayList sampleArray = _sampleArray;
-		if (sampleArray != null)
-			sampleArray.add(_currentSample.getDouble());
+		final GibbsSampleStore.Column sampleColumn = _sampleColumn;
+		if (sampleColumn != null)
+			sampleColumn.add(_currentSample.getDouble());
 	}
 
 	@Override
@@ -686,17 +750,66 @@ public class GibbsReal extends SRealVariableBase
 		return _bestSampleValue;
 	}
 
+	@Override
+	public DimpleRandom getRandom()
+	{
+		final DimpleRandom random = _random;
+		return random != null ? random : getParentGraph().getRandom();
+	}
+	
+	@Override
+	public void setRandom(@Nullable DimpleRandom random)
+	{
+		_random = random;
+	}
+	
+	@Override
+	public void mergeChainStatistics(ISolverVariableGibbs other, boolean bestSample)
+	{
+		final GibbsReal ovar = (GibbsReal)other;
+		
+		_sampleSum += ovar._sampleSum;
+		_sampleSumSquare += ovar._sampleSumSquare;
+		_sampleCount += ovar._sampleCount;
+		
+		final GibbsSampleStore.Column sampleColumn = _sampleColumn;
+		final GibbsSampleStore.Column otherSampleColumn = ovar._sampleColumn;
+		if (sampleColumn != null && otherSampleColumn != null)
+		{
+			sampleColumn.addAll(otherSampleColumn);
+		}
+		
+		if (bestSample)
+		{
+			_bestSampleValue = ovar._bestSampleValue;
+		}
+		
+		_updateCount += ovar._updateCount;
+		_rejectCount += ovar._rejectCount;
+		_scoreCount += ovar._scoreCount;
+	}
+
 	@Matlab
 	@Override
 	public final double[] getAllSamples()
 	{
-		final DoubleArrayList sampleArray = _sampleArray;
-		if (sampleArray == null)
+		final GibbsSampleStore.Column sampleColumn = _sampleColumn;
+		if (sampleColumn == null)
 		{
 			return ArrayUtil.EMPTY_DOUBLE_ARRAY;
 		}
 		
-		return Arrays.copyOf(sampleArray.elements(), sampleArray.size());
+		return sampleColumn.toDoubleArray();
+	}
+	
+	/**
+	 * Returns the column of the {@linkplain GibbsSolverGraph#getSampleStore() sample store} holding the
+	 * samples saved for this variable, or null if samples are not being saved.
+	 * @since 0.08
+	 */
+	public final @Nullable GibbsSampleStore.Column getSampleColumn()
+	{
+		return _sampleColumn;
 	}
 	
 	@Override
@@ -731,11 +844,17 @@ public class GibbsReal extends SRealVariableBase
 		return _rejectCount;
 	}
 
+	/**
+	 * @deprecated use {@link #getSampleColumn()} instead. This now returns a newly allocated copy
+	 * of the saved samples rather than the live list.
+	 */
 	// This is meant for internal use, not as a user accessible method
+	@Deprecated
 	@Internal
 	public final @Nullable DoubleArrayList _getSampleArrayUnsafe()
 	{
-		return _sampleArray;
+		final GibbsSampleStore.Column sampleColumn = _sampleColumn;
+		return sampleColumn != null ? new DoubleArrayList(sampleColumn.toDoubleArray()) : null;
 	}
 
 	public final void setAndHoldSampleValue(double value)
@@ -969,20 +1088,7 @@ public class GibbsReal extends SRealVariableBase
 		
 		// Clear out sample state
 		_bestSampleValue = _currentSample.getDouble();
-		DoubleArrayList sampleArray = null;
-		if (saveAllSamples)
-		{
-			sampleArray = _sampleArray;
-			if (sampleArray == null)
-			{
-				sampleArray = new DoubleArrayList();
-			}
-			else
-			{
-				sampleArray.clear();
-			}
-		}
-		_sampleArray = sampleArray;
+		_sampleColumn = saveAllSamples ? getParentGraph().getSampleStore().addDoubleColumn(1) : null;
 		
 		// Clear out the Belief statistics
 		_sampleSum = 0;
@@ -1041,7 +1147,7 @@ public class GibbsReal extends SRealVariableBase
 	{
 		_currentSample.reset();
 	    _bestSampleValue = _currentSample.getDouble();
-	    if (_sampleArray != null)
+	    if (_sampleColumn != null)
 			saveAllSamples();
 	}
 	
@@ -1068,7 +1174,7 @@ public class GibbsReal extends SRealVariableBase
 		_currentSample.setFrom(ovar._currentSample);
 		_initialSampleValue = ovar._initialSampleValue;
 		_initialSampleValueSet = ovar._initialSampleValueSet;
-		_sampleArray = ovar._sampleArray;
+		_sampleColumn = ovar._sampleColumn;
 		_bestSampleValue = ovar._bestSampleValue;
 		_beta = ovar._beta;
 		_holdSampleValue = ovar._holdSampleValue;
@@ -135,7 +135,7 @@ public class GibbsRealFactorBlastFromThePast extends SBlastFromThePast implement
 	@Override
 	public Object getOutputMsg(int portIndex)
 	{
-		final Port port = requireNonNull(_portForOtherVar);
+		final Port port = getOtherVariablePort();
 		final Factor otherFactor = (Factor)port.getNode().getSibling(port.getSiblingNumber());
 		GibbsSolverGraph sgraph = (GibbsSolverGraph) getSolverMapping().getSolverGraph(otherFactor.requireParentGraph());
 		return requireNonNull(sgraph.getSolverEdge(otherFactor.getSiblingEdgeState(portIndex))).factorToVarMsg;
@@ -151,7 +151,7 @@ public class GibbsRealFactorBlastFromThePast extends SBlastFromThePast implement
 	
 	protected ISolverFactorGibbs getOtherFactor()
 	{
-		final Port port = requireNonNull(_portForOtherVar);
+		final Port port = getOtherVariablePort();
 		final Factor otherFactor = (Factor)port.getNode().getSibling(port.getSiblingNumber());
 		return (ISolverFactorGibbs)getSolverMapping().getSolverFactor(otherFactor);
 	}
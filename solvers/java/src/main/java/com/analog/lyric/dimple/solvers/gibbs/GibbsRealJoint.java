@@ -64,7 +64,7 @@ import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
 import com.analog.lyric.dimple.solvers.interfaces.SolverNodeMapping;
-import com.analog.lyric.math.DimpleRandomGenerator;
+import com.analog.lyric.math.DimpleRandom;
 import com.analog.lyric.options.IOptionHolder;
 import com.analog.lyric.util.misc.Internal;
 import com.analog.lyric.util.misc.Matlab;
@@ -134,6 +134,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 			
 			_value[index] = value;
 			_currentSample.setValue(index, value);
+			GibbsSolverGraph.invalidateSampleScore(GibbsRealJoint.this);
 			
 			if (hasDeterministicDependents)
 			{
@@ -155,6 +156,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 			}
 			
 			_value = value.clone();
+			GibbsSolverGraph.invalidateSampleScore(GibbsRealJoint.this);
 			
 			if (hasDeterministicDependents)
 			{
@@ -181,7 +183,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 	private @Nullable IMCMCSampler _sampler = null;
 	private @Nullable IRealJointConjugateSampler _conjugateSampler = null;
 	private boolean _samplerSpecificallySpecified = false;
-	private @Nullable ArrayList<double[]> _sampleArray;
+	private @Nullable GibbsSampleStore.Column _sampleColumn;
 	private @Nullable double[] _sampleSum;
 	private @Nullable double[][] _sampleSumSquare;
 	private long _sampleCount;
@@ -199,6 +201,11 @@ public class GibbsRealJoint extends SRealJointVariableBase
 	 * List of neighbors for sample scoring. Instantiated during initialization.
 	 */
 	private @Nullable GibbsNeighbors _neighbors = null;
+	
+	/**
+	 * Overrides random generator of parent graph when not null.
+	 */
+	private @Nullable DimpleRandom _random = null;
 
 	/*--------------
 	 * Construction
@@ -268,6 +275,10 @@ public class GibbsRealJoint extends SRealJointVariableBase
 			break;
 		}
 
+		// The samplers do not provide the score of both the old and new values, so compute them here
+		final GibbsSolverGraph scoreTracker = GibbsSolverGraph.sampleScoreTracker(this);
+		final double oldEnergy = scoreTracker != null ? computeSampleEnergy() : 0.0;
+
 		// Get the next sample value from the sampler
 		int rejectCount = 0;
 		IRealJointConjugateSampler conjugateSampler = _conjugateSampler;
@@ -307,9 +318,14 @@ public class GibbsRealJoint extends SRealJointVariableBase
 				sedges[portIndex] =  sedge;
 				factor.updateEdgeMessage(edge, sedge);	// Run updateEdgeMessage for each neighboring factor
 			}
-			setCurrentSample(conjugateSampler.nextSample(sedges, _inputJoint));
+			setCurrentSample(conjugateSampler.nextSample(sedges, _inputJoint, getRandom()));
 			_updateCount++;
 		}
+		
+		if (scoreTracker != null)
+		{
+			scoreTracker.adjustSampleScore(computeSampleEnergy() - oldEnergy);
+		}
 
 		switch (updateEventFlags)
 		{
@@ -360,57 +376,62 @@ public class GibbsRealJoint extends SRealJointVariableBase
 	@Override
 	public final double getCurrentSampleScore()
 	{
-		double sampleScore = Double.POSITIVE_INFINITY;
 		_scoreCount++;
 
-		computeScore:
-		{
-			if (!_domain.inDomain(_currentSample.getValue()))
-				break computeScore; // outside the domain
+		final double potential = computeSampleEnergy();
+		return Doubles.isFinite(potential) ? potential * _beta : Double.POSITIVE_INFINITY;	// Incorporate current temperature
+	}
+	
+	/**
+	 * Sum of the input and neighboring potentials for the current sample value without tempering,
+	 * or positive infinity if the value is outside the domain or any term is not finite.
+	 */
+	private double computeSampleEnergy()
+	{
+		if (!_domain.inDomain(_currentSample.getValue()))
+			return Double.POSITIVE_INFINITY; // outside the domain
 
-			double potential = 0;
+		double potential = 0;
 
-			// Sum up the potentials from the input and all connected factors
-			final FactorFunction inputJoint = _inputJoint;
-			if (inputJoint != null)
+		// Sum up the potentials from the input and all connected factors
+		final FactorFunction inputJoint = _inputJoint;
+		if (inputJoint != null)
+		{
+			potential += inputJoint.evalEnergy(_currentSample);
+			if (!Doubles.isFinite(potential))
 			{
-				potential += inputJoint.evalEnergy(_currentSample);
-				if (!Doubles.isFinite(potential))
-				{
-					break computeScore;
-				}
+				return Double.POSITIVE_INFINITY;
 			}
-			else
+		}
+		else
+		{
+			final FactorFunction[] inputArray = _inputArray;
+			if (inputArray != null)
 			{
-				final FactorFunction[] inputArray = _inputArray;
-				if (inputArray != null)
+				for (int i = 0; i < _numRealVars; i++)
 				{
-					for (int i = 0; i < _numRealVars; i++)
+					potential += inputArray[i].evalEnergy(_currentSample.getValue(i));
+					if (!Doubles.isFinite(potential))
 					{
-						potential += inputArray[i].evalEnergy(_currentSample.getValue(i));
-						if (!Doubles.isFinite(potential))
-						{
-							break computeScore;
-						}
+						return Double.POSITIVE_INFINITY;
 					}
 				}
 			}
+		}
 
-			ReleasableIterator<ISolverNodeGibbs> scoreNodes = getSampleScoreNodes();
-			while (scoreNodes.hasNext())
+		ReleasableIterator<ISolverNodeGibbs> scoreNodes = getSampleScoreNodes();
+		while (scoreNodes.hasNext())
+		{
+			potential += scoreNodes.next().getPotential();
+			if (!Doubles.isFinite(potential))
 			{
-				potential += scoreNodes.next().getPotential();
-				if (!Doubles.isFinite(potential))
-				{
-					break computeScore;
-				}
+				potential = Double.POSITIVE_INFINITY;
+				break;
 			}
-			scoreNodes.release();
-
-			sampleScore = potential * _beta;	// Incorporate current temperature
 		}
+		scoreNodes.release();
 
-		return sampleScore;
+		return potential;
 	}
 	
 	@Override
@@ -527,7 +548,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 				RealJointConjugateSamplerRegistry.findCompatibleSampler(inputJoint);
 			if (inputConjugateSampler != null)
 			{
-				double[] sampleValue = inputConjugateSampler.nextSample(new ISolverEdgeState[0], inputJoint);
+				double[] sampleValue = inputConjugateSampler.nextSample(new ISolverEdgeState[0], inputJoint, getRandom());
 				
 				// Clip if necessary
 				for (int i = 0; i < _numRealVars; i++)
@@ -554,7 +575,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 
 					// No available sampler, so if bounded, sample uniformly from the bounds
 					if (hi < Double.POSITIVE_INFINITY && lo > Double.NEGATIVE_INFINITY)
-						setCurrentSample(i, DimpleRandomGenerator.rand.nextDouble() * (hi - lo) + lo);
+						setCurrentSample(i, getRandom().nextDouble() * (hi - lo) + lo);
 					else if (hi < _currentSample.getValue(i))
 						setCurrentSample(i, hi);
 					else if (lo > _currentSample.getValue(i))
@@ -581,7 +602,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 				if (inputConjugateSampler != null)
 				{
 					// Sample from the input if there's an available sampler
-					double sampleValue = inputConjugateSampler.nextSample(new ISolverEdgeState[0], input);
+					double sampleValue = inputConjugateSampler.nextSample(new ISolverEdgeState[0], input, getRandom());
 
 					// If there are also bounds, clip at the bounds
 					if (sampleValue > hi) sampleValue = hi;
@@ -592,7 +613,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 				{
 					// No available sampler, so if bounded, sample uniformly from the bounds
 					if (hi < Double.POSITIVE_INFINITY && lo > Double.NEGATIVE_INFINITY)
-						setCurrentSample(i, DimpleRandomGenerator.rand.nextDouble() * (hi - lo) + lo);
+						setCurrentSample(i, getRandom().nextDouble() * (hi - lo) + lo);
 				}
 			}
 		}
@@ -607,7 +628,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 
 				// If bounded, sample uniformly from the bounds, otherwise leave current sample value
 				if (hi < Double.POSITIVE_INFINITY && lo > Double.NEGATIVE_INFINITY)
-					setCurrentSample(i, DimpleRandomGenerator.rand.nextDouble() * (hi - lo) + lo);
+					setCurrentSample(i, getRandom().nextDouble() * (hi - lo) + lo);
 			}
 		}
 	}
@@ -769,7 +790,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 	@Override
 	public final void saveAllSamples()
 	{
-		_sampleArray = new ArrayList<double[]>();
+		_sampleColumn = getParentGraph().getSampleStore().addDoubleColumn(_numRealVars);
 		setOption(GibbsOptions.saveAllSamples, true);
 	}
 
@@ -780,16 +801,16 @@ public class GibbsRealJoint extends SRealJointVariableBase
     @Override
 	public void disableSavingAllSamples()
     {
-    	_sampleArray = null;
+    	_sampleColumn = null;
 		setOption(GibbsOptions.saveAllSamples, false);
     }
     
 	@Override
 	public final void saveCurrentSample()
 	{
-		final ArrayList<double[]> sampleArray = _sampleArray;
-		if (sampleArray != null)
-			sampleArray.add(_currentSample.getValue().clone());
+		final GibbsSampleStore.Column sampleColumn = _sampleColumn;
+		if (sampleColumn != null)
+			sampleColumn.add(_currentSample.getValue());
 	}
 
 	@Override
@@ -889,20 +910,78 @@ public class GibbsRealJoint extends SRealJointVariableBase
 		return _bestSampleValue;
 	}
 
+	@Override
+	public DimpleRandom getRandom()
+	{
+		final DimpleRandom random = _random;
+		return random != null ? random : getParentGraph().getRandom();
+	}
+	
+	@Override
+	public void setRandom(@Nullable DimpleRandom random)
+	{
+		_random = random;
+	}
+	
+	@Override
+	public void mergeChainStatistics(ISolverVariableGibbs other, boolean bestSample)
+	{
+		final GibbsRealJoint ovar = (GibbsRealJoint)other;
+		
+		final double[] sampleSum = _sampleSum;
+		final double[] otherSampleSum = ovar._sampleSum;
+		if (sampleSum != null && otherSampleSum != null)
+		{
+			final double[][] sampleSumSquare = requireNonNull(_sampleSumSquare);
+			final double[][] otherSampleSumSquare = requireNonNull(ovar._sampleSumSquare);
+			for (int i = 0; i < _numRealVars; i++)
+			{
+				sampleSum[i] += otherSampleSum[i];
+				for (int j = 0; j < _numRealVars; j++)
+				{
+					sampleSumSquare[i][j] += otherSampleSumSquare[i][j];
+				}
+			}
+		}
+		_sampleCount += ovar._sampleCount;
+		
+		final GibbsSampleStore.Column sampleColumn = _sampleColumn;
+		final GibbsSampleStore.Column otherSampleColumn = ovar._sampleColumn;
+		if (sampleColumn != null && otherSampleColumn != null)
+		{
+			sampleColumn.addAll(otherSampleColumn);
+		}
+		
+		if (bestSample)
+		{
+			_bestSampleValue = ovar._bestSampleValue.clone();
+		}
+		
+		_updateCount += ovar._updateCount;
+		_rejectCount += ovar._rejectCount;
+		_scoreCount += ovar._scoreCount;
+	}
+
 	@Matlab
 	@Override
 	public final double[][] getAllSamples()
 	{
-		final ArrayList<double[]> sampleArray = _sampleArray;
-		if (sampleArray == null)
+		final GibbsSampleStore.Column sampleColumn = _sampleColumn;
+		if (sampleColumn == null)
 		{
 			return ArrayUtil.EMPTY_DOUBLE_ARRAY_ARRAY;
 		}
-		int length = sampleArray.size();
-		double[][] retval = new double[length][];
-		for (int i = 0; i < length; i++)
-			retval[i] = sampleArray.get(i);
-		return retval;
+		return sampleColumn.toDoubleArrays();
+	}
+	
+	/**
+	 * Returns the column of the {@linkplain GibbsSolverGraph#getSampleStore() sample store} holding the
+	 * samples saved for this variable, or null if samples are not being saved.
+	 * @since 0.08
+	 */
+	public final @Nullable GibbsSampleStore.Column getSampleColumn()
+	{
+		return _sampleColumn;
 	}
 	
 	@Override
@@ -937,10 +1016,16 @@ public class GibbsRealJoint extends SRealJointVariableBase
 		return _rejectCount;
 	}
 
+	/**
+	 * @deprecated use {@link #getSampleColumn()} instead. This now returns a newly allocated copy
+	 * of the saved samples rather than the live list.
+	 */
 	// This is meant for internal use, not as a user accessible method
+	@Deprecated
 	public final @Nullable List<double[]> _getSampleArrayUnsafe()
 	{
-		return _sampleArray;
+		final GibbsSampleStore.Column sampleColumn = _sampleColumn;
+		return sampleColumn != null ? new ArrayList<>(Arrays.asList(sampleColumn.toDoubleArrays())) : null;
 	}
 
 	public final void setAndHoldSampleValue(double[] value)
@@ -1183,20 +1268,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 		
 		// Clear out sample state
 		_bestSampleValue = _currentSample.getValue();
-		ArrayList<double[]> sampleArray = null;
-		if (saveAllSamples)
-		{
-			sampleArray = _sampleArray;
-			if (sampleArray == null)
-			{
-				sampleArray = new ArrayList<double[]>();
-			}
-			else
-			{
-				sampleArray.clear();
-			}
-		}
-		_sampleArray = sampleArray;
+		_sampleColumn = saveAllSamples ? getParentGraph().getSampleStore().addDoubleColumn(_numRealVars) : null;
 		
 		// Clear out the Belief statistics
 		if (getOptionOrDefault(GibbsOptions.computeRealJointBeliefMoments))
@@ -1269,7 +1341,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 	{
 		resetCurrentSample();
 	    _bestSampleValue = _currentSample.getValue();
-	    if (_sampleArray != null)
+	    if (_sampleColumn != null)
 			saveAllSamples();
 	}
 	
@@ -1296,7 +1368,7 @@ public class GibbsRealJoint extends SRealJointVariableBase
 		_currentSample.setFrom(ovar._currentSample);
 		_initialSampleValue = ovar._initialSampleValue;
 		_initialSampleValueSet = ovar._initialSampleValueSet;
-		_sampleArray = ovar._sampleArray;
+		_sampleColumn = ovar._sampleColumn;
 		_bestSampleValue = ovar._bestSampleValue;
 		_beta = ovar._beta;
 		_holdSampleValue = ovar._holdSampleValue;
@@ -0,0 +1,989 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.collect.PrimitiveIterator;
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+
+/**
+ * Columnar store for samples saved by the Gibbs solver.
+ * <p>
+ * When {@link GibbsOptions#saveAllSamples} is enabled, each saving variable owns a {@link Column} of
+ * the store belonging to its root {@link GibbsSolverGraph}, and each sample of the graph adds one
+ * row across the columns: an int domain index for discrete variables, and one double per dimension
+ * for real and real joint variables.
+ * <p>
+ * Column values are written in chunks, whose size starts small and doubles up to a fixed maximum, so
+ * that reading a value by sample number only requires a little arithmetic. Chunks are carved out of
+ * larger off-heap slabs. Once the slabs allocated in memory reach {@link GibbsOptions#sampleStoreMemoryLimit},
+ * new slabs are instead memory-mapped regions of a temporary file in {@link GibbsOptions#sampleStoreDirectory},
+ * so that long runs are limited by disk space rather than heap size.
+ * <p>
+ * When the graph is next initialized, the store is {@linkplain #reset reset}: its samples and file are discarded,
+ * but the slabs already allocated in memory are kept and reused for new samples. Direct buffers are only
+ * returned to the system when they are garbage collected, so this avoids building up off-heap memory when a
+ * graph is solved repeatedly. Columns obtained before the reset must not be used after it.
+ * <p>
+ * Samples can be read back either for one variable at a time, using the {@link Column} methods, or for
+ * one sample at a time, using {@link #readSample(int, int[], double[])}.
+ * <p>
+ * Columns added while sampling is in progress, such as for new variables in a
+ * {@linkplain com.analog.lyric.dimple.model.repeated.FactorGraphStream stream}, start at the
+ * {@linkplain Column#getFirstSample() sample} in which they were added. Columns of variables that
+ * have since left the stream remain in the store but are no longer written.
+ * <p>
+ * This class is not thread safe.
+ * <p>
+ * @since 0.08
+ */
+public final class GibbsSampleStore
+{
+	/*-----------
+	 * Constants
+	 */
+	
+	/**
+	 * Log2 of the number of samples in the first chunk of each column.
+	 */
+	private static final int MIN_CHUNK_SHIFT = 4;
+	
+	/**
+	 * Number of chunks over which the chunk size doubles before reaching its maximum.
+	 */
+	private static final int GROWING_CHUNKS = 6;
+	
+	private static final int MAX_CHUNK_SHIFT = MIN_CHUNK_SHIFT + GROWING_CHUNKS;
+	
+	/**
+	 * Number of samples held by the chunks that are smaller than the maximum size.
+	 */
+	private static final int GROWING_SAMPLES = ((1 << GROWING_CHUNKS) - 1) << MIN_CHUNK_SHIFT;
+	
+	private static final int MIN_SLAB_SIZE = 1 << 16;
+	private static final int MAX_MEMORY_SLAB_SIZE = 1 << 24;
+	private static final int MAX_MAPPED_SLAB_SIZE = 1 << 28;
+	
+	/*-------
+	 * State
+	 */
+	
+	private long _memoryLimit;
+	private String _directory;
+	
+	private final ArrayList<Column> _columns = new ArrayList<>();
+	private int _intValueCount = 0;
+	private int _doubleValueCount = 0;
+	private int _sampleCount = 0;
+	
+	private @Nullable ByteBuffer _slab = null;
+	
+	/**
+	 * All slabs allocated in memory, in order of allocation. Those before {@link #_nextMemorySlab} are in use.
+	 */
+	private final ArrayList<ByteBuffer> _memorySlabs = new ArrayList<>();
+	private int _nextMemorySlab = 0;
+	private long _memoryBytes = 0;
+	private long _mappedBytes = 0;
+	private @Nullable File _file = null;
+	private @Nullable RandomAccessFile _fileAccess = null;
+	private boolean _closed = false;
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	/**
+	 * Constructs empty store.
+	 * <p>
+	 * @param memoryLimit is the maximum number of bytes of off-heap memory to allocate before spilling
+	 * to a memory-mapped file.
+	 * @param directory is the directory in which to create the file. If empty, the default temporary
+	 * file directory will be used.
+	 * @since 0.08
+	 */
+	public GibbsSampleStore(long memoryLimit, String directory)
+	{
+		_memoryLimit = memoryLimit;
+		_directory = directory;
+	}
+	
+	/*---------
+	 * Columns
+	 */
+	
+	/**
+	 * Values saved for a single variable, starting at sample {@link #getFirstSample()}.
+	 * <p>
+	 * Discrete columns hold one int per sample, and are read using {@link #getInt} or {@link #intIterator()}.
+	 * Other columns hold {@link #getWidth()} doubles per sample, and are read using {@link #getDouble},
+	 * {@link #getDoubles} or {@link #doubleIterator()}.
+	 * <p>
+	 * @since 0.08
+	 */
+	public final class Column
+	{
+		private final int _index;
+		private final boolean _discrete;
+		private final int _width;
+		private final int _valueOffset;
+		private final int _firstSample;
+		
+		/**
+		 * Number of bytes in a single sample.
+		 */
+		private final int _sampleBytes;
+		
+		private final ArrayList<ByteBuffer> _chunks = new ArrayList<>();
+		
+		private int _size = 0;
+		
+		/**
+		 * Byte position for the next value written to last chunk.
+		 */
+		private int _writePosition = 0;
+		
+		private Column(int index, boolean discrete, int width, int valueOffset)
+		{
+			_index = index;
+			_discrete = discrete;
+			_width = width;
+			_valueOffset = valueOffset;
+			_firstSample = _sampleCount;
+			_sampleBytes = width * (discrete ? 4 : 8);
+		}
+		
+		/*----------------
+		 * Column methods
+		 */
+		
+		/**
+		 * The index of the column within its {@linkplain #getStore() store}.
+		 * @since 0.08
+		 */
+		public int getIndex()
+		{
+			return _index;
+		}
+		
+		/**
+		 * The store containing the column.
+		 * @since 0.08
+		 */
+		public GibbsSampleStore getStore()
+		{
+			return GibbsSampleStore.this;
+		}
+		
+		/**
+		 * True if column holds discrete domain indices rather than real values.
+		 * @since 0.08
+		 */
+		public boolean isDiscrete()
+		{
+			return _discrete;
+		}
+		
+		/**
+		 * The number of values saved per sample: one for discrete and real variables, and the
+		 * number of dimensions for real joint variables.
+		 * @since 0.08
+		 */
+		public int getWidth()
+		{
+			return _width;
+		}
+		
+		/**
+		 * The offset of the first value of the column within the int or double values read by
+		 * {@link GibbsSampleStore#readSample(int, int[], double[])}.
+		 * @since 0.08
+		 */
+		public int getValueOffset()
+		{
+			return _valueOffset;
+		}
+		
+		/**
+		 * The number of the first sample saved in the column.
+		 * <p>
+		 * This is the number of samples in the store when the column was added.
+		 * @since 0.08
+		 */
+		public int getFirstSample()
+		{
+			return _firstSample;
+		}
+		
+		/**
+		 * The number of samples saved in the column.
+		 * @since 0.08
+		 */
+		public int size()
+		{
+			return _size;
+		}
+		
+		/**
+		 * True if the column holds a value for given sample number.
+		 * @since 0.08
+		 */
+		public boolean hasSample(int sample)
+		{
+			final int i = sample - _firstSample;
+			return i >= 0 && i < _size;
+		}
+		
+		/**
+		 * Returns discrete domain index saved for given sample number.
+		 * @throws IndexOutOfBoundsException if column does not {@linkplain #hasSample have the sample}.
+		 * @throws DimpleException if column is not {@linkplain #isDiscrete() discrete}.
+		 * @since 0.08
+		 */
+		public int getInt(int sample)
+		{
+			assertDiscrete(true);
+			final int i = checkSample(sample);
+			final int chunk = chunkIndex(i);
+			return _chunks.get(chunk).getInt((i - chunkStart(chunk)) * _sampleBytes);
+		}
+		
+		/**
+		 * Returns real value saved for given sample number.
+		 * <p>
+		 * For real joint columns returns the first component.
+		 * <p>
+		 * @throws IndexOutOfBoundsException if column does not {@linkplain #hasSample have the sample}.
+		 * @throws DimpleException if column is {@linkplain #isDiscrete() discrete}.
+		 * @since 0.08
+		 */
+		public double getDouble(int sample)
+		{
+			return getDouble(sample, 0);
+		}
+		
+		/**
+		 * Returns component of real value saved for given sample number.
+		 * <p>
+		 * @throws IndexOutOfBoundsException if column does not {@linkplain #hasSample have the sample}
+		 * or component is not in range [0, {@link #getWidth()}-1].
+		 * @throws DimpleException if column is {@linkplain #isDiscrete() discrete}.
+		 * @since 0.08
+		 */
+		public double getDouble(int sample, int component)
+		{
+			assertDiscrete(false);
+			if (component < 0 || component >= _width)
+			{
+				throw new IndexOutOfBoundsException(String.format("Component %d out of range [0,%d]",
+					component, _width - 1));
+			}
+			final int i = checkSample(sample);
+			final int chunk = chunkIndex(i);
+			return _chunks.get(chunk).getDouble((i - chunkStart(chunk)) * _sampleBytes + component * 8);
+		}
+		
+		/**
+		 * Copies all components of the real value saved for given sample number into {@code out}.
+		 * <p>
+		 * @param out is the array to write into. If null or its length differs from {@link #getWidth()},
+		 * a new array will be allocated.
+		 * @return the array holding the values.
+		 * @throws IndexOutOfBoundsException if column does not {@linkplain #hasSample have the sample}.
+		 * @throws DimpleException if column is {@linkplain #isDiscrete() discrete}.
+		 * @since 0.08
+		 */
+		public double[] getDoubles(int sample, @Nullable double[] out)
+		{
+			assertDiscrete(false);
+			final int i = checkSample(sample);
+			if (out == null || out.length != _width)
+			{
+				out = new double[_width];
+			}
+			final int chunk = chunkIndex(i);
+			final ByteBuffer buffer = _chunks.get(chunk);
+			int position = (i - chunkStart(chunk)) * _sampleBytes;
+			for (int j = 0; j < _width; ++j, position += 8)
+			{
+				out[j] = buffer.getDouble(position);
+			}
+			return out;
+		}
+		
+		/**
+		 * Iterates over the discrete domain indices saved in the column, in sample order.
+		 * @throws DimpleException if column is not {@linkplain #isDiscrete() discrete}.
+		 * @since 0.08
+		 */
+		public PrimitiveIterator.OfInt intIterator()
+		{
+			assertDiscrete(true);
+			return new IntIterator();
+		}
+		
+		/**
+		 * Iterates over the real values saved in the column, in sample order.
+		 * <p>
+		 * For real joint columns, the components of each sample are visited in order.
+		 * <p>
+		 * @throws DimpleException if column is {@linkplain #isDiscrete() discrete}.
+		 * @since 0.08
+		 */
+		public PrimitiveIterator.OfDouble doubleIterator()
+		{
+			assertDiscrete(false);
+			return new DoubleIterator();
+		}
+		
+		/**
+		 * Returns newly allocated array containing the discrete domain indices saved in the column.
+		 * @throws DimpleException if column is not {@linkplain #isDiscrete() discrete}.
+		 * @since 0.08
+		 */
+		public int[] toIntArray()
+		{
+			final int[] values = new int[_size];
+			final PrimitiveIterator.OfInt iter = intIterator();
+			for (int i = 0; i < values.length; ++i)
+			{
+				values[i] = iter.nextInt();
+			}
+			return values;
+		}
+		
+		/**
+		 * Returns newly allocated array containing the real values saved in the column.
+		 * <p>
+		 * For real joint columns, the components of each sample are stored consecutively.
+		 * <p>
+		 * @throws DimpleException if column is {@linkplain #isDiscrete() discrete}.
+		 * @since 0.08
+		 */
+		public double[] toDoubleArray()
+		{
+			final double[] values = new double[_size * _width];
+			final PrimitiveIterator.OfDouble iter = doubleIterator();
+			for (int i = 0; i < values.length; ++i)
+			{
+				values[i] = iter.nextDouble();
+			}
+			return values;
+		}
+		
+		/**
+		 * Returns newly allocated array containing an array of the real values saved for each sample.
+		 * @throws DimpleException if column is {@linkplain #isDiscrete() discrete}.
+		 * @since 0.08
+		 */
+		public double[][] toDoubleArrays()
+		{
+			final double[][] values = new double[_size][_width];
+			final PrimitiveIterator.OfDouble iter = doubleIterator();
+			for (double[] value : values)
+			{
+				for (int j = 0; j < _width; ++j)
+				{
+					value[j] = iter.nextDouble();
+				}
+			}
+			return values;
+		}
+		
+		/*------------------
+		 * Internal methods
+		 */
+		
+		/**
+		 * Appends discrete domain index for the current sample.
+		 */
+		void add(int value)
+		{
+			writeBuffer().putInt(_writePosition, value);
+			_writePosition += 4;
+			++_size;
+		}
+		
+		/**
+		 * Appends real value for the current sample.
+		 */
+		void add(double value)
+		{
+			writeBuffer().putDouble(_writePosition, value);
+			_writePosition += 8;
+			++_size;
+		}
+		
+		/**
+		 * Appends real joint value for the current sample.
+		 */
+		void add(double[] value)
+		{
+			final ByteBuffer buffer = writeBuffer();
+			int position = _writePosition;
+			for (int j = 0; j < _width; ++j, position += 8)
+			{
+				buffer.putDouble(position, value[j]);
+			}
+			_writePosition = position;
+			++_size;
+		}
+		
+		/**
+		 * Appends all of the values saved in {@code other}, which must have the same type and width.
+		 * <p>
+		 * Used to combine samples from parallel chains, after which {@link GibbsSampleStore#addSamples}
+		 * should be invoked on the store.
+		 */
+		void addAll(Column other)
+		{
+			if (other._discrete != _discrete || other._width != _width)
+			{
+				throw new DimpleException("Cannot combine sample columns with different types");
+			}
+			if (_discrete)
+			{
+				for (PrimitiveIterator.OfInt iter = other.intIterator(); iter.hasNext();)
+				{
+					add(iter.nextInt());
+				}
+			}
+			else
+			{
+				for (PrimitiveIterator.OfDouble iter = other.doubleIterator(); iter.hasNext();)
+				{
+					final ByteBuffer buffer = writeBuffer();
+					int position = _writePosition;
+					for (int j = 0; j < _width; ++j, position += 8)
+					{
+						buffer.putDouble(position, iter.nextDouble());
+					}
+					_writePosition = position;
+					++_size;
+				}
+			}
+		}
+		
+		/**
+		 * Returns the chunk for the next sample to be written, allocating a new one if necessary.
+		 */
+		private ByteBuffer writeBuffer()
+		{
+			final int nChunks = _chunks.size();
+			if (nChunks == 0 || _size == chunkStart(nChunks))
+			{
+				_chunks.add(allocate(chunkSamples(nChunks) * _sampleBytes));
+				_writePosition = 0;
+				return _chunks.get(nChunks);
+			}
+			return _chunks.get(nChunks - 1);
+		}
+		
+		private void assertDiscrete(boolean discrete)
+		{
+			if (_discrete != discrete)
+			{
+				throw new DimpleException("Sample column %d does not hold %s values", _index,
+					discrete ? "discrete" : "real");
+			}
+		}
+		
+		private int checkSample(int sample)
+		{
+			final int i = sample - _firstSample;
+			if (i < 0 || i >= _size)
+			{
+				throw new IndexOutOfBoundsException(String.format("Sample %d not in range [%d,%d] of column %d",
+					sample, _firstSample, _firstSample + _size - 1, _index));
+			}
+			return i;
+		}
+		
+		/**
+		 * Sequentially visits the values of the column, one chunk at a time.
+		 */
+		private abstract class ValueIterator
+		{
+			private final int _valueBytes;
+			private int _remaining;
+			private int _chunk = -1;
+			private int _chunkRemaining = 0;
+			protected @Nullable ByteBuffer _buffer = null;
+			protected int _position = 0;
+			
+			private ValueIterator(int valueBytes)
+			{
+				_valueBytes = valueBytes;
+				_remaining = _size * _width;
+			}
+			
+			public boolean hasNext()
+			{
+				return _remaining > 0;
+			}
+			
+			public void remove()
+			{
+				throw new UnsupportedOperationException("remove");
+			}
+			
+			/**
+			 * Advances to the next value and returns the buffer containing it at {@link #_position}.
+			 */
+			protected ByteBuffer advance()
+			{
+				if (_remaining <= 0)
+				{
+					throw new NoSuchElementException();
+				}
+				--_remaining;
+				ByteBuffer buffer = _buffer;
+				if (buffer == null || _chunkRemaining == 0)
+				{
+					++_chunk;
+					_buffer = buffer = _chunks.get(_chunk);
+					_chunkRemaining = chunkSamples(_chunk) * _width;
+					_position = -_valueBytes;
+				}
+				--_chunkRemaining;
+				_position += _valueBytes;
+				return buffer;
+			}
+		}
+		
+		private final class IntIterator extends ValueIterator implements PrimitiveIterator.OfInt
+		{
+			private IntIterator()
+			{
+				super(4);
+			}
+			
+			@Override
+			public Integer next()
+			{
+				return nextInt();
+			}
+			
+			@Override
+			public int nextInt()
+			{
+				return advance().getInt(_position);
+			}
+		}
+		
+		private final class DoubleIterator extends ValueIterator implements PrimitiveIterator.OfDouble
+		{
+			private DoubleIterator()
+			{
+				super(8);
+			}
+			
+			@Override
+			public Double next()
+			{
+				return nextDouble();
+			}
+			
+			@Override
+			public double nextDouble()
+			{
+				return advance().getDouble(_position);
+			}
+		}
+	}
+	
+	/*-----------------
+	 * Store methods
+	 */
+	
+	/**
+	 * The number of samples in the store.
+	 * @since 0.08
+	 */
+	public int getSampleCount()
+	{
+		return _sampleCount;
+	}
+	
+	/**
+	 * The number of columns in the store.
+	 * @since 0.08
+	 */
+	public int getColumnCount()
+	{
+		return _columns.size();
+	}
+	
+	/**
+	 * Returns column with given {@linkplain Column#getIndex() index}.
+	 * @since 0.08
+	 */
+	public Column getColumn(int index)
+	{
+		return _columns.get(index);
+	}
+	
+	/**
+	 * Unmodifiable list of the columns in the store in index order.
+	 * @since 0.08
+	 */
+	public List<Column> getColumns()
+	{
+		return Collections.unmodifiableList(_columns);
+	}
+	
+	/**
+	 * The total number of values of all {@linkplain Column#isDiscrete() discrete} columns in a single sample.
+	 * <p>
+	 * This is the length of the int array read by {@link #readSample(int, int[], double[])}.
+	 * @since 0.08
+	 */
+	public int getIntValueCount()
+	{
+		return _intValueCount;
+	}
+	
+	/**
+	 * The total number of values of all real columns in a single sample.
+	 * <p>
+	 * This is the length of the double array read by {@link #readSample(int, int[], double[])}.
+	 * @since 0.08
+	 */
+	public int getDoubleValueCount()
+	{
+		return _doubleValueCount;
+	}
+	
+	/**
+	 * Reads the values of all columns for a single sample.
+	 * <p>
+	 * The values for each column are written starting at its {@linkplain Column#getValueOffset() value offset}
+	 * in {@code intValues} if it is discrete, and otherwise in {@code doubleValues}. Columns that do not
+	 * {@linkplain Column#hasSample(int) have the sample} are filled with -1 or NaN respectively.
+	 * <p>
+	 * @param sample is a sample number in the range [0, {@link #getSampleCount()}-1].
+	 * @param intValues must have length at least {@link #getIntValueCount()}.
+	 * @param doubleValues must have length at least {@link #getDoubleValueCount()}.
+	 * @since 0.08
+	 */
+	public void readSample(int sample, int[] intValues, double[] doubleValues)
+	{
+		if (sample < 0 || sample >= _sampleCount)
+		{
+			throw new IndexOutOfBoundsException(String.format("Sample %d not in range [0,%d]", sample, _sampleCount - 1));
+		}
+		
+		for (Column column : _columns)
+		{
+			final int offset = column._valueOffset;
+			final int width = column._width;
+			if (column._discrete)
+			{
+				intValues[offset] = column.hasSample(sample) ? column.getInt(sample) : -1;
+			}
+			else if (column.hasSample(sample))
+			{
+				final int i = sample - column._firstSample;
+				final int chunk = chunkIndex(i);
+				final ByteBuffer buffer = column._chunks.get(chunk);
+				int position = (i - chunkStart(chunk)) * column._sampleBytes;
+				for (int j = 0; j < width; ++j, position += 8)
+				{
+					doubleValues[offset + j] = buffer.getDouble(position);
+				}
+			}
+			else
+			{
+				Arrays.fill(doubleValues, offset, offset + width, Double.NaN);
+			}
+		}
+	}
+	
+	/**
+	 * The number of bytes of off-heap memory allocated by the store.
+	 * @since 0.08
+	 */
+	public long getMemoryBytes()
+	{
+		return _memoryBytes;
+	}
+	
+	/**
+	 * The number of bytes of the store's file that have been mapped into memory.
+	 * <p>
+	 * This is zero unless the store has exceeded its memory limit.
+	 * @since 0.08
+	 */
+	public long getMappedBytes()
+	{
+		return _mappedBytes;
+	}
+	
+	/**
+	 * Releases and deletes the store's file, if any.
+	 * <p>
+	 * Saved samples may still be read, since regions already mapped from the file remain valid, but
+	 * no more may be added. Does nothing if already closed.
+	 * The store's memory is only released once it is garbage collected.
+	 * @since 0.08
+	 */
+	public void close()
+	{
+		if (_closed)
+		{
+			return;
+		}
+		_closed = true;
+		_slab = null;
+		closeFile();
+	}
+	
+	/**
+	 * True if {@link #close()} has been called.
+	 * @since 0.08
+	 */
+	public boolean isClosed()
+	{
+		return _closed;
+	}
+	
+	/*------------------
+	 * Internal methods
+	 */
+	
+	/**
+	 * Discards all columns and samples, and reopens the store if closed, so that it can be reused.
+	 * <p>
+	 * Slabs already allocated in memory are kept for new samples, up to the new {@code memoryLimit}. The
+	 * store's file, if any, is deleted. Columns obtained from the store before this call must not be
+	 * used afterwards.
+	 */
+	void reset(long memoryLimit, String directory)
+	{
+		closeFile();
+		_closed = false;
+		_memoryLimit = memoryLimit;
+		_directory = directory;
+		
+		_columns.clear();
+		_intValueCount = 0;
+		_doubleValueCount = 0;
+		_sampleCount = 0;
+		
+		_slab = null;
+		_mappedBytes = 0;
+		long memoryBytes = 0;
+		int nSlabs = 0;
+		for (ByteBuffer slab : _memorySlabs)
+		{
+			if (memoryBytes + slab.capacity() > memoryLimit)
+			{
+				break;
+			}
+			memoryBytes += slab.capacity();
+			++nSlabs;
+		}
+		_memorySlabs.subList(nSlabs, _memorySlabs.size()).clear();
+		_memoryBytes = memoryBytes;
+		_nextMemorySlab = 0;
+	}
+	
+	private void closeFile()
+	{
+		final RandomAccessFile fileAccess = _fileAccess;
+		final File file = _file;
+		if (fileAccess != null && file != null)
+		{
+			try
+			{
+				fileAccess.close();
+			}
+			catch (IOException ex)
+			{
+				DimpleEnvironment.logWarning("Cannot close Gibbs sample file '%s': %s", file, ex);
+			}
+			// Files are not registered with File.deleteOnExit, since the JVM never trims that list, so
+			// this is the only place they are removed. May fail on some platforms while the file is still
+			// mapped.
+			if (!file.delete() && file.exists())
+			{
+				DimpleEnvironment.logWarning("Cannot delete Gibbs sample file '%s'", file);
+			}
+		}
+		_fileAccess = null;
+		_file = null;
+	}
+	
+	Column addIntColumn()
+	{
+		final Column column = new Column(_columns.size(), true, 1, _intValueCount);
+		_columns.add(column);
+		_intValueCount += 1;
+		return column;
+	}
+	
+	Column addDoubleColumn(int width)
+	{
+		final Column column = new Column(_columns.size(), false, width, _doubleValueCount);
+		_columns.add(column);
+		_doubleValueCount += width;
+		return column;
+	}
+	
+	/**
+	 * Completes the current sample, after each saving variable has added its value.
+	 */
+	void endSample()
+	{
+		++_sampleCount;
+	}
+	
+	/**
+	 * Adds {@code count} samples whose values have been appended to the columns using {@link Column#addAll}.
+	 */
+	void addSamples(int count)
+	{
+		_sampleCount += count;
+	}
+	
+	/**
+	 * Index of chunk containing {@code i}th value of a column.
+	 */
+	static int chunkIndex(int i)
+	{
+		if (i < GROWING_SAMPLES)
+		{
+			return 31 - Integer.numberOfLeadingZeros((i >>> MIN_CHUNK_SHIFT) + 1);
+		}
+		return GROWING_CHUNKS + ((i - GROWING_SAMPLES) >>> MAX_CHUNK_SHIFT);
+	}
+	
+	/**
+	 * Index of first value in given chunk of a column.
+	 */
+	static int chunkStart(int chunk)
+	{
+		if (chunk < GROWING_CHUNKS)
+		{
+			return ((1 << chunk) - 1) << MIN_CHUNK_SHIFT;
+		}
+		return GROWING_SAMPLES + ((chunk - GROWING_CHUNKS) << MAX_CHUNK_SHIFT);
+	}
+	
+	/**
+	 * Number of values in given chunk of a column.
+	 */
+	static int chunkSamples(int chunk)
+	{
+		return 1 << (Math.min(chunk, GROWING_CHUNKS) + MIN_CHUNK_SHIFT);
+	}
+	
+	/**
+	 * Returns a buffer with {@code size} bytes in native byte order, taken from the current slab.
+	 */
+	private ByteBuffer allocate(int size)
+	{
+		if (_closed)
+		{
+			throw new DimpleException("Cannot add samples to closed sample store");
+		}
+		
+		ByteBuffer slab = _slab;
+		if (slab == null || slab.remaining() < size)
+		{
+			_slab = slab = allocateSlab(size);
+		}
+		
+		final int position = slab.position();
+		slab.limit(position + size);
+		final ByteBuffer buffer = slab.slice().order(ByteOrder.nativeOrder());
+		slab.limit(slab.capacity());
+		slab.position(position + size);
+		return buffer;
+	}
+	
+	/**
+	 * Allocates a new slab with at least {@code minSize} bytes.
+	 * <p>
+	 * Slabs grow with the total size of the store, up to a maximum, to limit both wasted space for small
+	 * stores and the number of separate allocations or file mappings for large ones.
+	 */
+	private ByteBuffer allocateSlab(int minSize)
+	{
+		// First reuse slabs kept by reset
+		final ArrayList<ByteBuffer> memorySlabs = _memorySlabs;
+		while (_nextMemorySlab < memorySlabs.size())
+		{
+			final ByteBuffer slab = memorySlabs.get(_nextMemorySlab++);
+			if (slab.capacity() >= minSize)
+			{
+				slab.clear();
+				return slab;
+			}
+		}
+		
+		final long allocated = _memoryBytes + _mappedBytes;
+		
+		int size = (int)Math.min(Math.max(allocated, MIN_SLAB_SIZE), MAX_MEMORY_SLAB_SIZE);
+		size = Math.max(size, minSize);
+		if (_memoryBytes + size <= _memoryLimit)
+		{
+			_memoryBytes += size;
+			final ByteBuffer slab = ByteBuffer.allocateDirect(size);
+			memorySlabs.add(slab);
+			_nextMemorySlab = memorySlabs.size();
+			return slab;
+		}
+		
+		size = (int)Math.min(Math.max(allocated, MIN_SLAB_SIZE), MAX_MAPPED_SLAB_SIZE);
+		size = Math.max(size, minSize);
+		File file = _file;
+		try
+		{
+			RandomAccessFile fileAccess = _fileAccess;
+			if (fileAccess == null)
+			{
+				file = File.createTempFile("dimple-gibbs-samples", ".bin",
+					_directory.isEmpty() ? null : new File(_directory));
+				_file = file;
+				_fileAccess = fileAccess = new RandomAccessFile(file, "rw");
+			}
+			final ByteBuffer slab = fileAccess.getChannel().map(FileChannel.MapMode.READ_WRITE, _mappedBytes, size);
+			_mappedBytes += size;
+			return slab;
+		}
+		catch (IOException ex)
+		{
+			throw new DimpleException(ex, "Cannot write Gibbs samples to file in '%s'",
+				file != null ? file : _directory.isEmpty() ? System.getProperty("java.io.tmpdir") : _directory);
+		}
+	}
+}
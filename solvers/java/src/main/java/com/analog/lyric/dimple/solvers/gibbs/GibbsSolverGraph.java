@@ -24,6 +24,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.eclipse.jdt.annotation.Nullable;
 
@@ -61,6 +64,7 @@ import com.analog.lyric.dimple.model.core.Node;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.repeated.BlastFromThePastFactor;
 import com.analog.lyric.dimple.model.repeated.FactorGraphStream;
+import com.analog.lyric.dimple.model.repeated.GraphInstances;
 import com.analog.lyric.dimple.model.values.IndexedValue;
 import com.analog.lyric.dimple.model.values.Value;
 import com.analog.lyric.dimple.model.variables.Discrete;
@@ -68,12 +72,18 @@ import com.analog.lyric.dimple.model.variables.Real;
 import com.analog.lyric.dimple.model.variables.RealJoint;
 import com.analog.lyric.dimple.model.variables.Variable;
 import com.analog.lyric.dimple.model.variables.VariableBlock;
+import com.analog.lyric.dimple.model.variables.VariableList;
 import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.options.SolverOptions;
+import com.analog.lyric.dimple.schedulers.GibbsChromaticScheduler;
 import com.analog.lyric.dimple.schedulers.SchedulerOptionKey;
+import com.analog.lyric.dimple.schedulers.schedule.GibbsChromaticSchedule;
 import com.analog.lyric.dimple.schedulers.schedule.IGibbsSchedule;
 import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
 import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
 import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultiThreadingManager;
+import com.analog.lyric.dimple.solvers.core.multithreading.ThreadPool;
 import com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomBernoulli;
 import com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomBeta;
 import com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomBinomial;
@@ -84,6 +94,7 @@ import com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomDiscreteTransit
 import com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomDiscreteTransitionUnnormalizedOrEnergyParameters;
 import com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomExchangeableDirichlet;
 import com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomGamma;
+import com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomGraphInstances;
 import com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomLogNormal;
 import com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomMultinomial;
 import com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomMultinomialUnnormalizedOrEnergyParameters;
@@ -93,11 +104,18 @@ import com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomNormal;
 import com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomPoisson;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.block.IBlockInitializer;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverBlastFromThePastFactor;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
 import com.analog.lyric.dimple.solvers.interfaces.SolverNodeMapping;
+import com.analog.lyric.math.DimpleRandom;
 import com.analog.lyric.math.DimpleRandomGenerator;
+import com.analog.lyric.options.IOption;
+import com.analog.lyric.options.Option;
+import com.analog.lyric.util.misc.Internal;
 import com.analog.lyric.util.misc.Matlab;
+import com.google.common.primitives.Doubles;
 
 /**
  * Solver-specific factor graph for Gibbs solver.
@@ -127,6 +145,19 @@ public class GibbsSolverGraph
 	 */
 	
 	private @Nullable Iterator<IScheduleEntry> _scheduleIterator;
+	
+	/**
+	 * Position of the next entry to be run when using a {@link GibbsChromaticSchedule}.
+	 */
+	private int _schedulePosition = 0;
+	
+	/**
+	 * True once every entry of a {@link GibbsChromaticSchedule} has been run at least once since
+	 * initialization, which ensures that any lazily created solver state has been created before
+	 * variables are updated concurrently.
+	 */
+	private boolean _chromaticScanComplete = false;
+	private @Nullable GibbsChromaticUpdater _chromaticUpdater = null;
 	private @Nullable ArrayList<IBlockInitializer> _blockInitializers;
 	private int _numSamples = GibbsOptions.numSamples.defaultIntValue();
 	private int _updatesPerSample = GibbsOptions.scansPerSample.defaultIntValue();
@@ -134,6 +165,12 @@ public class GibbsSolverGraph
 	private int _scansPerSample = 1;
 	private int _burnInScans = GibbsOptions.burnInScans.defaultIntValue();
 	private int _numRandomRestarts = GibbsOptions.numRandomRestarts.defaultIntValue();
+	private boolean _parallelChains = false;
+	private boolean _parallelTempering = false;
+	private double[] _temperatureLadder = new double[] { 1.0 };
+	private int _temperingSwapInterval = 1;
+	private long[] _temperingSwapProposals = new long[0];
+	private long[] _temperingSwapAcceptances = new long[0];
 	private boolean _temper = false;
 	private double _initialTemperature;
 	private double _temperingDecayConstant;
@@ -141,6 +178,22 @@ public class GibbsSolverGraph
 	private double _minPotential = Double.MAX_VALUE;
 	private boolean _firstSample = true;
 	private @Nullable DoubleArrayList _scoreArray;
+	private @Nullable GibbsSampleStore _sampleStore = null;
+	
+	/**
+	 * Random generator used by root graph. This is the global generator except for copies of the
+	 * model that are run concurrently as parallel chains or tempering replicas.
+	 */
+	private DimpleRandom _random = DimpleRandomGenerator.globalRandom();
+	private int _scoreRecomputeInterval = GibbsOptions.scoreRecomputeInterval.defaultIntValue();
+	
+	/**
+	 * Total sample score of the graph maintained incrementally by single-variable updates. Only
+	 * used on the root graph and only meaningful when {@link #_sampleScoreValid} is true.
+	 */
+	private double _sampleScore = 0.0;
+	private boolean _sampleScoreValid = false;
+	private int _samplesSinceScoreRecompute = 0;
 	
 	/**
 	 * Priority queue of deterministic factors whose outputs should be
@@ -180,8 +233,31 @@ public class GibbsSolverGraph
 		return GibbsOptions.scheduler;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Closes the {@linkplain #getSampleStore() sample store}, if any, which deletes its file.
+	 */
+	@Override
+	public void preSetSolverFactory()
+	{
+		super.preSetSolverFactory();
+		
+		final GibbsSampleStore sampleStore = _sampleStore;
+		if (sampleStore != null)
+		{
+			sampleStore.close();
+		}
+	}
+	
 	// TODO - rearrange methods
 	
+	@Override
+	protected boolean supportsGraphInstances()
+	{
+		return true;
+	}
+	
 	@Override
 	public boolean hasEdgeState()
 	{
@@ -243,7 +319,9 @@ public class GibbsSolverGraph
 		FactorFunction factorFunction = factor.getFactorFunction().getContainedFactorFunction();	// In case it's wrapped
 		
 		// First see if any custom factor should be created
-		if (factorFunction instanceof Normal)
+		if (factorFunction instanceof GraphInstances)
+			return new CustomGraphInstances(factor, this);
+		else if (factorFunction instanceof Normal)
 			return new CustomNormal(factor, this);
 		else if (factorFunction instanceof Gamma)
 			return new CustomGamma(factor, this);
@@ -358,12 +436,50 @@ public class GibbsSolverGraph
 	{
 		_numSamples = getOptionOrDefault(GibbsOptions.numSamples);
 		_numRandomRestarts = getOptionOrDefault(GibbsOptions.numRandomRestarts);
+		_parallelChains = getOptionOrDefault(GibbsOptions.enableParallelChains);
 		_scansPerSample = getOptionOrDefault(GibbsOptions.scansPerSample);
 		_burnInScans = getOptionOrDefault(GibbsOptions.burnInScans);
 		final boolean saveAllScores = getOptionOrDefault(GibbsOptions.saveAllScores);
+		_scoreRecomputeInterval = getOptionOrDefault(GibbsOptions.scoreRecomputeInterval);
 		_temper = getOptionOrDefault(GibbsOptions.enableAnnealing);
 		_initialTemperature = getOptionOrDefault(GibbsOptions.initialTemperature);
 		_temperingDecayConstant = 1 - LOG2/getOptionOrDefault(GibbsOptions.annealingHalfLife);
+		_parallelTempering = getOptionOrDefault(GibbsOptions.enableParallelTempering);
+		_temperingSwapInterval = getOptionOrDefault(GibbsOptions.temperingSwapInterval);
+		_temperingSwapProposals = new long[0];
+		_temperingSwapAcceptances = new long[0];
+		if (_parallelTempering)
+		{
+			final double[] temperatures = getOptionOrDefault(GibbsOptions.temperatureLadder).toPrimitiveArray();
+			if (temperatures.length == 0 || temperatures[0] != 1.0)
+			{
+				throw new DimpleException("First temperature in %s must be one", GibbsOptions.temperatureLadder);
+			}
+			for (int i = 1; i < temperatures.length; ++i)
+			{
+				if (!(temperatures[i] > temperatures[i - 1]))
+				{
+					throw new DimpleException("Temperatures in %s must be increasing", GibbsOptions.temperatureLadder);
+				}
+			}
+			_temperatureLadder = temperatures;
+			
+			// Parallel tempering takes precedence over annealing, but only if it will actually run
+			if (runsParallelTempering())
+			{
+				_temper = false;
+			}
+		}
+		_useMultithreading = getOptionOrDefault(SolverOptions.enableMultithreading);
+		
+		// Discard previously saved samples before variables add their columns, but keep the store's
+		// off-heap memory for reuse.
+		final GibbsSampleStore sampleStore = _sampleStore;
+		if (sampleStore != null)
+		{
+			sampleStore.reset(getOptionOrDefault(GibbsOptions.sampleStoreMemoryLimit),
+				getOptionOrDefault(GibbsOptions.sampleStoreDirectory));
+		}
 		
 		Long seed = getOption(DimpleOptions.randomSeed);
 		if (seed != null)
@@ -418,9 +534,18 @@ public class GibbsSolverGraph
 		}
 		processDeferredDeterministicUpdates();
 
+		if (schedule instanceof GibbsChromaticSchedule)
+		{
+			// Color and reorder the schedule now that deterministic variables are known
+			((GibbsChromaticSchedule)schedule).recolor();
+		}
 		_scheduleIterator = schedule.iterator();
+		_schedulePosition = 0;
+		_chromaticScanComplete = false;
+		_chromaticUpdater = null;
 		_minPotential = Double.POSITIVE_INFINITY;
 		_firstSample = true;
+		_sampleScoreValid = false;
 		
 		setUpdatesPerSampleFromScans();
 		setBurnInUpdatesFromScans();
@@ -461,6 +586,11 @@ public class GibbsSolverGraph
 	 * </pre>
 	 * </blockquote>
 	 * </ol>
+	 * If {@link GibbsOptions#enableParallelChains} is true, the restarts will instead be run concurrently
+	 * as independent chains on copies of the model, whose results are then combined.
+	 * <p>
+	 * If {@link GibbsOptions#enableParallelTempering} is true, the sampling is instead done concurrently
+	 * by replicas of the graph at different temperatures, whose states are periodically exchanged.
 	 */
 	@Override
 	public void solveOneStep()
@@ -468,6 +598,19 @@ public class GibbsSolverGraph
 		_minPotential = Double.POSITIVE_INFINITY;
 		_firstSample = true;
 		
+		if (runsParallelTempering())
+		{
+			solveParallelTempering();
+			return;
+		}
+		
+		if (_parallelChains && _numRandomRestarts > 0 && !_model.hasParentGraph() &&
+			_model.getFactorGraphStreams().isEmpty())
+		{
+			solveParallelChains();
+			return;
+		}
+		
 		for (int restartCount = 0; restartCount <= _numRandomRestarts; restartCount++)
 		{
 			burnIn(restartCount);
@@ -476,6 +619,378 @@ public class GibbsSolverGraph
 		}
 	}
 	
+	/**
+	 * Runs each restart as an independent chain on a copy of the model and combines the results.
+	 * 
+	 * @see GibbsOptions#enableParallelChains
+	 */
+	private void solveParallelChains()
+	{
+		final FactorGraph model = _model;
+		final int nChains = _numRandomRestarts + 1;
+		final VariableList variables = model.getVariables();
+
+		// Each chain gets its own random stream with a seed derived from the one for this graph, if any.
+		final Long seed = getOption(DimpleOptions.randomSeed);
+		final DimpleRandom seeds = new DimpleRandom(seed != null ? seed : _random.nextLong());
+		
+		// Copy and initialize the chains on this thread, since model construction is not thread safe.
+		final GibbsSolverGraph[] chains = new GibbsSolverGraph[nChains];
+		final List<Callable<Object>> tasks = new ArrayList<>(nChains);
+		for (int chain = 0; chain < nChains; ++chain)
+		{
+			final FactorGraph chainModel = model.copyRoot();
+			final GibbsSolverGraph chainGraph = chains[chain] = chainModel.createSolver(new GibbsSolver());
+			for (IOption<?> option : getLocalOptions())
+			{
+				Option.setOptions(chainGraph, option);
+			}
+			chainGraph.setOption(GibbsOptions.numRandomRestarts, 0);
+			chainGraph.setOption(GibbsOptions.enableParallelChains, false);
+			
+			final long chainSeed = seeds.nextLong();
+			chainGraph.setOption(DimpleOptions.randomSeed, chainSeed);
+			chainGraph._random = new DimpleRandom(chainSeed);
+			chainModel.initialize();
+			
+			tasks.add(new Callable<Object>() {
+				@Override
+				public Object call()
+				{
+					chainGraph.solveOneStep();
+					return chainGraph;
+				}
+			});
+		}
+		
+		runTasks(tasks, canSampleConcurrently(chains));
+
+		// Combine the results in the same order in which sequential restarts would have produced them.
+		int bestChain = 0;
+		for (int chain = 1; chain < nChains; ++chain)
+		{
+			if (chains[chain]._minPotential < chains[bestChain]._minPotential)
+			{
+				bestChain = chain;
+			}
+		}
+		_minPotential = chains[bestChain]._minPotential;
+		_firstSample = chains[bestChain]._firstSample;
+		
+		final DoubleArrayList scoreArray = _scoreArray;
+		final GibbsSampleStore sampleStore = _sampleStore;
+		final int nVariables = variables.size();
+		VariableList chainVariables = variables;
+		for (int chain = 0; chain < nChains; ++chain)
+		{
+			final GibbsSolverGraph chainGraph = chains[chain];
+			chainVariables = chainGraph._model.getVariables();
+			if (chainVariables.size() != nVariables)
+			{
+				throw new DimpleException("Copy of model for Gibbs sampling chain does not match original");
+			}
+			
+			int i = 0;
+			for (Variable chainVariable : chainVariables)
+			{
+				getSolverVariable(variables.getByIndex(i++))
+					.mergeChainStatistics(chainGraph.getSolverVariable(chainVariable), chain == bestChain);
+			}
+			
+			final DoubleArrayList chainScoreArray = chainGraph._scoreArray;
+			if (scoreArray != null && chainScoreArray != null)
+			{
+				scoreArray.addAllOf(chainScoreArray);
+			}
+			
+			final GibbsSampleStore chainSampleStore = chainGraph._sampleStore;
+			if (chainSampleStore != null)
+			{
+				if (sampleStore != null)
+				{
+					sampleStore.addSamples(chainSampleStore.getSampleCount());
+				}
+				chainSampleStore.close();
+			}
+		}
+		
+		// Leave the graph in the final state of the last chain
+		final GibbsSolverGraph lastChain = chains[nChains - 1];
+		deferDeterministicUpdates();
+		int i = 0;
+		for (Variable chainVariable : chainVariables)
+		{
+			final Variable variable = variables.getByIndex(i++);
+			if (!variable.hasFixedValue())
+			{
+				getSolverVariable(variable).setCurrentSample(
+					lastChain.getSolverVariable(chainVariable).getCurrentSampleValue());
+			}
+		}
+		processDeferredDeterministicUpdates();
+		if (_temper) setTemperature(lastChain._temperature);
+	}
+	
+	/**
+	 * True if the given copies of the model may be sampled concurrently.
+	 * <p>
+	 * The copies share their factor functions and tables, so each of their factors must be {@link #isThreadSafe}.
+	 * This must be invoked after the copies have been initialized, which computes their factor tables.
+	 */
+	private static boolean canSampleConcurrently(GibbsSolverGraph[] graphs)
+	{
+		for (GibbsSolverGraph graph : graphs)
+		{
+			for (Factor factor : graph._model.getFactors())
+			{
+				if (!isThreadSafe(factor))
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * True if the solver for {@code factor} may be used concurrently with solvers for other factors,
+	 * including copies of the factor, that share its factor function and table.
+	 * 
+	 * @see GibbsTableFactor#isThreadSafe()
+	 */
+	static boolean isThreadSafe(Factor factor)
+	{
+		final ISolverFactor sfactor = factor.getSolver();
+		if (sfactor instanceof GibbsTableFactor)
+		{
+			return ((GibbsTableFactor)sfactor).isThreadSafe();
+		}
+		return factor.getFactorFunction().isThreadSafe();
+	}
+	
+	/**
+	 * True if {@link #solveOneStep()} will use parallel tempering, which requires that it be enabled with
+	 * more than one temperature on a root graph without streams.
+	 */
+	private boolean runsParallelTempering()
+	{
+		return _parallelTempering && _temperatureLadder.length > 1 && !_model.hasParentGraph() &&
+			_model.getFactorGraphStreams().isEmpty();
+	}
+	
+	/**
+	 * Runs parallel tempering with one replica for each temperature in {@link #_temperatureLadder}.
+	 * <p>
+	 * This graph is the replica with temperature one, and is the only one that saves samples.
+	 * 
+	 * @see GibbsOptions#enableParallelTempering
+	 */
+	private void solveParallelTempering()
+	{
+		final FactorGraph model = _model;
+		final double[] temperatures = _temperatureLadder;
+		final int nReplicas = temperatures.length;
+		
+		// Each replica gets its own random stream with a seed derived from the one for this graph, if any.
+		final Long seed = getOption(DimpleOptions.randomSeed);
+		final DimpleRandom seeds = new DimpleRandom(seed != null ? seed : _random.nextLong());
+		final DimpleRandom swapRandom = new DimpleRandom(seeds.nextLong());
+		
+		final GibbsSolverGraph[] replicas = new GibbsSolverGraph[nReplicas];
+		replicas[0] = this;
+		setTemperature(temperatures[0]);
+		
+		// Copy and initialize the other replicas on this thread, since model construction is not thread safe.
+		for (int replica = 1; replica < nReplicas; ++replica)
+		{
+			final FactorGraph replicaModel = model.copyRoot();
+			final GibbsSolverGraph replicaGraph = replicas[replica] = replicaModel.createSolver(new GibbsSolver());
+			for (IOption<?> option : getLocalOptions())
+			{
+				Option.setOptions(replicaGraph, option);
+			}
+			replicaGraph.setOption(GibbsOptions.enableParallelTempering, false);
+			replicaGraph.setOption(GibbsOptions.enableParallelChains, false);
+			replicaGraph.setOption(GibbsOptions.enableAnnealing, false);
+			replicaGraph.setOption(GibbsOptions.saveAllSamples, false);
+			replicaGraph.setOption(GibbsOptions.saveAllScores, false);
+			
+			final long replicaSeed = seeds.nextLong();
+			replicaGraph.setOption(DimpleOptions.randomSeed, replicaSeed);
+			replicaGraph._random = new DimpleRandom(replicaSeed);
+			replicaModel.initialize();
+			if (replicaGraph._model.getVariableCount() != model.getVariableCount())
+			{
+				throw new DimpleException("Copy of model for parallel tempering replica does not match original");
+			}
+			replicaGraph.setTemperature(temperatures[replica]);
+		}
+		
+		// Replicas share factor functions and tables with this graph
+		final boolean concurrently = canSampleConcurrently(replicas);
+		
+		_temperingSwapProposals = new long[nReplicas - 1];
+		_temperingSwapAcceptances = new long[nReplicas - 1];
+		
+		final int updatesPerSwap = _updatesPerSample * _temperingSwapInterval;
+		for (int restartCount = 0; restartCount <= _numRandomRestarts; restartCount++)
+		{
+			// Burn in, including the random restart
+			int updates = Math.min(updatesPerSwap, _burnInUpdates);
+			runReplicas(replicas, concurrently, restartCount, updates, 0);
+			for (int done = updates; done < _burnInUpdates; done += updates)
+			{
+				swapReplicas(replicas, swapRandom);
+				updates = Math.min(updatesPerSwap, _burnInUpdates - done);
+				runReplicas(replicas, concurrently, -1, updates, 0);
+			}
+			
+			if (GibbsSolverGraphEvent.raiseBurnInEvent(this))
+			{
+				raiseEvent(new GibbsBurnInEvent(this, restartCount, Double.NaN));
+			}
+			
+			for (int sample = 0; sample < _numSamples; sample += _temperingSwapInterval)
+			{
+				swapReplicas(replicas, swapRandom);
+				runReplicas(replicas, concurrently, -1, 0, Math.min(_temperingSwapInterval, _numSamples - sample));
+			}
+		}
+	}
+	
+	/**
+	 * Runs each of the parallel tempering {@code replicas}, {@code concurrently} if so specified.
+	 * <p>
+	 * If {@code restartCount} is non-negative, each replica is first randomly restarted, then performs
+	 * {@code numUpdates} updates. The replica with temperature one then generates {@code numSamples} samples,
+	 * while the others perform the equivalent number of updates without saving anything.
+	 */
+	private void runReplicas(GibbsSolverGraph[] replicas, boolean concurrently, final int restartCount,
+		final int numUpdates, final int numSamples)
+	{
+		final List<Callable<Object>> tasks = new ArrayList<>(replicas.length);
+		for (int i = 0; i < replicas.length; ++i)
+		{
+			final GibbsSolverGraph replica = replicas[i];
+			
+			tasks.add(new Callable<Object>() {
+				@Override
+				public Object call()
+				{
+					if (restartCount >= 0)
+					{
+						replica.randomRestart(restartCount);
+					}
+					replica.iterate(numUpdates);
+					if (replica == GibbsSolverGraph.this)
+					{
+						replica.sample(numSamples);
+					}
+					else
+					{
+						replica.iterate(numSamples * replica._updatesPerSample);
+					}
+					return replica;
+				}
+			});
+		}
+		
+		runTasks(tasks, concurrently);
+	}
+	
+	/**
+	 * Proposes an exchange of current sample values between each pair of replicas with adjacent
+	 * temperatures, starting with the coldest pair.
+	 * <p>
+	 * An exchange between replicas with inverse temperatures b1 and b2 and sample scores (i.e. energies)
+	 * e1 and e2 is accepted with probability min(1, exp((b1 - b2) * (e1 - e2))), which leaves the
+	 * joint distribution of all of the replicas unchanged.
+	 */
+	private void swapReplicas(GibbsSolverGraph[] replicas, DimpleRandom swapRandom)
+	{
+		for (int i = 0; i + 1 < replicas.length; ++i)
+		{
+			final GibbsSolverGraph cold = replicas[i], hot = replicas[i + 1];
+			final double logAcceptance = (1 / cold._temperature - 1 / hot._temperature) *
+				(cold.currentSampleScore() - hot.currentSampleScore());
+			
+			++_temperingSwapProposals[i];
+			if (logAcceptance >= 0 || swapRandom.nextDouble() < Math.exp(logAcceptance))
+			{
+				++_temperingSwapAcceptances[i];
+				
+				final VariableList coldVariables = cold._model.getVariables();
+				final VariableList hotVariables = hot._model.getVariables();
+				cold.deferDeterministicUpdates();
+				hot.deferDeterministicUpdates();
+				for (int j = 0, n = coldVariables.size(); j < n; ++j)
+				{
+					final Variable coldVariable = coldVariables.getByIndex(j);
+					if (!coldVariable.hasFixedValue())
+					{
+						final ISolverVariableGibbs coldSample = cold.getSolverVariable(coldVariable);
+						final ISolverVariableGibbs hotSample = hot.getSolverVariable(hotVariables.getByIndex(j));
+						final Value coldValue = coldSample.getCurrentSampleValue().clone();
+						coldSample.setCurrentSample(hotSample.getCurrentSampleValue());
+						hotSample.setCurrentSample(coldValue);
+					}
+				}
+				cold.processDeferredDeterministicUpdates();
+				hot.processDeferredDeterministicUpdates();
+			}
+		}
+	}
+	
+	/**
+	 * Runs {@code tasks} and waits for them to complete, rethrowing the first failure.
+	 * <p>
+	 * If {@code concurrently} is true, the tasks are run on the shared {@linkplain ThreadPool#getThreadPool()
+	 * thread pool}, and otherwise they are run in order on the calling thread. Since each task works on its
+	 * own copy of the model and draws from its own random generator, the results are the same either way.
+	 */
+	private static void runTasks(List<Callable<Object>> tasks, boolean concurrently)
+	{
+		try
+		{
+			if (concurrently)
+			{
+				for (Future<Object> future : ThreadPool.getThreadPool().invokeAll(tasks))
+				{
+					future.get();
+				}
+			}
+			else
+			{
+				for (Callable<Object> task : tasks)
+				{
+					task.call();
+				}
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new DimpleException(ex);
+		}
+		catch (ExecutionException ex)
+		{
+			final Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException)cause;
+			}
+			throw new DimpleException(cause, "Concurrent Gibbs sampling failed");
+		}
+		catch (RuntimeException ex)
+		{
+			throw ex;
+		}
+		catch (Exception ex)
+		{
+			throw new DimpleException(ex);
+		}
+	}
+	
 	/**
 	 * Perform initial burn in.
 	 * <p>
@@ -544,7 +1059,11 @@ public class GibbsSolverGraph
 	 * specified number of single-variable updates, regardless of other parameter settings.
 	 * The iterate() method behaves differently than for other solvers due to the fact that the
 	 * {@link #update()} method for Gibbs-specific schedules will update only a single variable.
-	 * Also, multithreaded operation for Gibbs is not supported
+	 * <p>
+	 * Multithreaded operation is only supported when using the {@link GibbsChromaticScheduler}, in which case
+	 * variables of the same color will be updated concurrently when {@linkplain #useMultithreading()
+	 * multithreading} is enabled. This does not happen during the first scan after initialization, or when
+	 * there is an event listener.
 	 */
 	@Override
 	public void iterate(int numUpdates)
@@ -552,15 +1071,22 @@ public class GibbsSolverGraph
 		Iterator<IScheduleEntry> scheduleIterator = Objects.requireNonNull(_scheduleIterator);
 		final ISchedule schedule = getSchedule();
 		
-		for (int iterNum = 0; iterNum < numUpdates; iterNum++)
+		if (schedule instanceof GibbsChromaticSchedule)
+		{
+			iterateChromatic((GibbsChromaticSchedule)schedule, numUpdates);
+		}
+		else
 		{
-			if (!scheduleIterator.hasNext())
+			for (int iterNum = 0; iterNum < numUpdates; iterNum++)
 			{
-				// Wrap-around the schedule if reached the end
-				scheduleIterator = _scheduleIterator = schedule.iterator();
-			}
+				if (!scheduleIterator.hasNext())
+				{
+					// Wrap-around the schedule if reached the end
+					scheduleIterator = _scheduleIterator = schedule.iterator();
+				}
 
-			runScheduleEntry(scheduleIterator.next());
+				runScheduleEntry(scheduleIterator.next());
+			}
 		}
 		
 		// Allow interruption (if the solver is run as a thread); currently interruption is allowed only between
@@ -572,6 +1098,70 @@ public class GibbsSolverGraph
 	}
 
 	
+	/**
+	 * Implements {@link #iterate(int)} for a {@link GibbsChromaticSchedule}, running each run of
+	 * same-colored entries concurrently when possible.
+	 */
+	private void iterateChromatic(GibbsChromaticSchedule schedule, int numUpdates)
+	{
+		final int[] colorStarts = schedule.getColorStarts();
+		final int serialStart = colorStarts[colorStarts.length - 1];
+		final int size = schedule.size();
+		if (size == 0)
+		{
+			return;
+		}
+		
+		final boolean concurrent = _useMultithreading && getEventListener() == null;
+		int position = _schedulePosition;
+		
+		for (int remaining = numUpdates; remaining > 0; )
+		{
+			if (position >= size)
+			{
+				// Wrap-around the schedule if reached the end
+				position = 0;
+				_chromaticScanComplete = true;
+			}
+			
+			if (concurrent && _chromaticScanComplete && position < serialStart)
+			{
+				// Find the end of the current color
+				int end = serialStart;
+				for (int color = 1; color < colorStarts.length; ++color)
+				{
+					if (colorStarts[color] > position)
+					{
+						end = colorStarts[color];
+						break;
+					}
+				}
+				end = Math.min(end, position + remaining);
+				
+				GibbsChromaticUpdater updater = _chromaticUpdater;
+				if (updater == null)
+				{
+					_chromaticUpdater = updater = new GibbsChromaticUpdater(this);
+				}
+				
+				// The incremental sample score cannot be maintained by concurrent updates
+				_sampleScoreValid = false;
+				
+				if (updater.update(schedule, position, end))
+				{
+					remaining -= end - position;
+					position = end;
+					continue;
+				}
+			}
+			
+			runScheduleEntry(schedule.get(position++));
+			--remaining;
+		}
+		
+		_schedulePosition = position;
+	}
+	
 	@SuppressWarnings("null")
 	protected void oneSample()
 	{
@@ -582,9 +1172,14 @@ public class GibbsSolverGraph
 			vs.updateBelief();
 			vs.saveCurrentSample();		// Note that the first sample saved is one full sample after burn in, not immediately after burn in (in case the burn in is zero)
 		}
+		final GibbsSampleStore sampleStore = _sampleStore;
+		if (sampleStore != null)
+		{
+			sampleStore.endSample();
+		}
 		
 		// Save the best sample value seen so far
-		final double totalPotential = getSampleScore();
+		final double totalPotential = currentSampleScore();
 		final boolean wasMininum = totalPotential < _minPotential || _firstSample;
 		if (wasMininum)
 		{
@@ -617,10 +1212,23 @@ public class GibbsSolverGraph
 	}
 	
 	
+	/**
+	 * Not supported: Gibbs factors and blocks cache their sibling variables when initialized, so
+	 * nested graphs cannot be recycled in place.
+	 */
+	@Override
+	public void resetMessages()
+	{
+		throw DimpleException.unsupportedMethod(getClass(), "resetMessages",
+			"rolled-up graphs in circular buffer mode require a belief propagation solver");
+	}
+	
 	@SuppressWarnings("null")
 	@Override
 	public void postAdvance()
 	{
+		_sampleScoreValid = false;
+		
 		//In the case of rolled up graphs, we make sure we randomly restart
 		//the variables that are added to the end of the chain.
 		for (FactorGraphStream fgs : getModel().getFactorGraphStreams())
@@ -681,6 +1289,96 @@ public class GibbsSolverGraph
 		return totalPotential;
 	}
 	
+	/**
+	 * Returns the total sample score for the current sample, using the incrementally maintained
+	 * value when it is valid and a full recompute is not yet due.
+	 */
+	private double currentSampleScore()
+	{
+		if (_model.hasParentGraph())
+		{
+			// Only the root graph maintains the score incrementally.
+			return getSampleScore();
+		}
+		
+		if (!_sampleScoreValid || ++_samplesSinceScoreRecompute >= _scoreRecomputeInterval)
+		{
+			final double score = getSampleScore();
+			_sampleScore = score;
+			_sampleScoreValid = Doubles.isFinite(score);
+			_samplesSinceScoreRecompute = 0;
+			return score;
+		}
+		
+		return _sampleScore;
+	}
+	
+	/**
+	 * Returns the root Gibbs solver graph containing {@code node} if it is currently maintaining a valid
+	 * incremental sample score, otherwise null.
+	 * <p>
+	 * A variable update that can compute the change in the total score caused by its new sample value
+	 * should obtain this before changing the value and then pass the change to
+	 * {@link #adjustSampleScore(double)}.
+	 */
+	static @Nullable GibbsSolverGraph sampleScoreTracker(ISolverNode node)
+	{
+		final ISolverFactorGraph root = node.getRootSolverGraph();
+		if (root instanceof GibbsSolverGraph)
+		{
+			final GibbsSolverGraph sroot = (GibbsSolverGraph)root;
+			if (sroot._sampleScoreValid)
+			{
+				return sroot;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Marks the incrementally maintained score of the root graph containing {@code node} as stale, so
+	 * that it will be fully recomputed for the next sample.
+	 * <p>
+	 * Invoked whenever the sample value of a variable changes, and by solver factors that hold sample
+	 * values of their own when those change.
+	 */
+	@Internal
+	public static void invalidateSampleScore(ISolverNode node)
+	{
+		final ISolverFactorGraph root = node.getRootSolverGraph();
+		if (root instanceof GibbsSolverGraph)
+		{
+			((GibbsSolverGraph)root)._sampleScoreValid = false;
+		}
+	}
+	
+	/**
+	 * Adds {@code delta} to the incrementally maintained score and marks it as valid.
+	 * <p>
+	 * If the result is not finite, the score is instead marked as stale.
+	 */
+	void adjustSampleScore(double delta)
+	{
+		final double score = _sampleScore + delta;
+		_sampleScore = score;
+		_sampleScoreValid = Doubles.isFinite(score);
+	}
+	
+	/**
+	 * Enables or disables multithreading.
+	 * <p>
+	 * The Gibbs solver does not use a {@link MultiThreadingManager}. Multithreading is only supported
+	 * by the {@link GibbsChromaticScheduler} and has no effect with other schedulers.
+	 * <p>
+	 * @see #iterate(int)
+	 */
+	@Override
+	public void useMultithreading(boolean use)
+	{
+		_useMultithreading = use;
+		setOption(SolverOptions.enableMultithreading, use);
+	}
+	
 	/**
 	 * Returns the lowest value of {@link #getSampleScore()} discovered since initialization.
 	 * <p>
@@ -732,6 +1430,32 @@ public class GibbsSolverGraph
 		setOption(GibbsOptions.saveAllScores, false);
 	}
 	
+	/**
+	 * Returns the store holding the samples saved for variables in the root graph.
+	 * <p>
+	 * Samples are only saved for variables for which {@link GibbsOptions#saveAllSamples} is enabled.
+	 * The store's contents are discarded when the root graph is initialized, but its memory is reused.
+	 * If this is not the root graph, this returns the root graph's store.
+	 * <p>
+	 * @since 0.08
+	 */
+	public GibbsSampleStore getSampleStore()
+	{
+		final ISolverFactorGraph root = getRootSolverGraph();
+		if (root != this && root instanceof GibbsSolverGraph)
+		{
+			return ((GibbsSolverGraph)root).getSampleStore();
+		}
+		
+		GibbsSampleStore sampleStore = _sampleStore;
+		if (sampleStore == null)
+		{
+			_sampleStore = sampleStore = new GibbsSampleStore(getOptionOrDefault(GibbsOptions.sampleStoreMemoryLimit),
+				getOptionOrDefault(GibbsOptions.sampleStoreDirectory));
+		}
+		return sampleStore;
+	}
+	
 	/**
 	 * If the score had been saved, return the array of score values, otherwise null.
 	 */
@@ -747,6 +1471,27 @@ public class GibbsSolverGraph
 			return null;
 	}
 	
+	/**
+	 * Returns the fraction of proposed exchanges between adjacent temperatures that were accepted during the
+	 * most recent {@linkplain GibbsOptions#enableParallelTempering parallel tempering} solve.
+	 * <p>
+	 * Element {@code i} of the result is the acceptance rate for exchanges between the replicas with the
+	 * {@code i}th and {@code i+1}th temperatures in {@link GibbsOptions#temperatureLadder}, or NaN if
+	 * no exchanges were proposed. Returns an empty array if parallel tempering has not been used.
+	 * <p>
+	 * @since 0.08
+	 */
+	public double[] getTemperingSwapAcceptanceRates()
+	{
+		final long[] proposals = _temperingSwapProposals;
+		final double[] rates = new double[proposals.length];
+		for (int i = 0; i < rates.length; ++i)
+		{
+			rates[i] = proposals[i] > 0 ? (double)_temperingSwapAcceptances[i] / proposals[i] : Double.NaN;
+		}
+		return rates;
+	}
+	
 	/**
 	 * Get the rejection rate of the sampler for variables and block entries for which it applies
 	 * @return rejection rate
@@ -812,7 +1557,21 @@ public class GibbsSolverGraph
 	// Sets the random seed for the Gibbs solver.  This allows runs of the solver to be repeatable.
 	public void setSeed(long seed)
 	{
-		DimpleRandomGenerator.setSeed(seed);
+		getRandom().setSeed(seed);
+	}
+	
+	/**
+	 * Returns the random generator from which samples for this graph are drawn.
+	 * <p>
+	 * This is the generator of the root graph, which is the {@linkplain DimpleRandomGenerator#globalRandom()
+	 * global generator} unless the graph is a copy of the model that is being run concurrently with others,
+	 * such as one of several {@linkplain GibbsOptions#enableParallelChains parallel chains}.
+	 * @since 0.08
+	 */
+	public DimpleRandom getRandom()
+	{
+		final ISolverFactorGraph root = getRootSolverGraph();
+		return root instanceof GibbsSolverGraph ? ((GibbsSolverGraph)root)._random : _random;
 	}
 	
 	/**
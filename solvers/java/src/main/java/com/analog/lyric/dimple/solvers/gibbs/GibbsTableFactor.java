@@ -24,6 +24,7 @@ import org.eclipse.jdt.annotation.Nullable;
 
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
 import com.analog.lyric.dimple.factorfunctions.core.FactorTableRepresentation;
 import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
 import com.analog.lyric.dimple.model.core.EdgeState;
@@ -280,6 +281,27 @@ public class GibbsTableFactor extends STableFactorBase implements ISolverFactorG
 		}
 	}
 
+	/*--------------------------
+	 * GibbsTableFactor methods
+	 */
+	
+	/**
+	 * True if copies of this factor that share its factor function and table may be sampled concurrently.
+	 * <p>
+	 * This is the case if the factor function is {@linkplain FactorFunction#isThreadSafe() thread safe}, or if the
+	 * factor's {@link FactorTable} has already been computed and the factor is not deterministic directed.
+	 * Sampling only looks up table entries by value, which never changes the representation that was set
+	 * when the table was computed. Deterministic directed factors still evaluate the function to compute
+	 * their outputs.
+	 * 
+	 * @since 0.08
+	 */
+	boolean isThreadSafe()
+	{
+		return _model.getFactorFunction().isThreadSafe() ||
+			(!_isDeterministicDirected && getFactorTableIfComputed() instanceof FactorTable);
+	}
+
 	@Override
 	public boolean setVisited(boolean visited)
 	{
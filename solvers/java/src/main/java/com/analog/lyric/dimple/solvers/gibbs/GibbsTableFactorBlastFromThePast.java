@@ -24,6 +24,7 @@ import org.eclipse.jdt.annotation.Nullable;
 
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.model.core.EdgeState;
+import com.analog.lyric.dimple.model.core.Port;
 import com.analog.lyric.dimple.model.repeated.BlastFromThePastFactor;
 import com.analog.lyric.dimple.model.values.DiscreteValue;
 import com.analog.lyric.dimple.model.values.IndexedValue;
@@ -67,7 +68,7 @@ public class GibbsTableFactorBlastFromThePast extends SBlastFromThePast implemen
 	public Value getInputMsg(int portIndex)
 	{
 		final GibbsSolverGraph sgraph = requireNonNull(getParentGraph());
-		final GibbsDiscrete svar = sgraph.getDiscrete((Discrete)_portForOtherVar.getNode());
+		final GibbsDiscrete svar = sgraph.getDiscrete((Discrete)getOtherVariablePort().getNode());
 		return svar.getPrevSampleValue();
 	}
 	
@@ -76,9 +77,10 @@ public class GibbsTableFactorBlastFromThePast extends SBlastFromThePast implemen
 	public double getPotential()
 	{
 		final GibbsSolverGraph sgraph = getParentGraph();
-		final GibbsDiscrete svar = (GibbsDiscrete)sgraph.getSolverVariable((Variable)_portForOtherVar.getNode());
+		final Port port = getOtherVariablePort();
+		final GibbsDiscrete svar = (GibbsDiscrete)sgraph.getSolverVariable((Variable)port.getNode());
 		final DiscreteValue inputMsg = svar.getPrevSampleValue();
-		final GibbsDiscreteEdge sedge = svar.getDiscreteEdge(_portForOtherVar.getSiblingNumber());
+		final GibbsDiscreteEdge sedge = svar.getDiscreteEdge(port.getSiblingNumber());
 		return sedge.factorToVarMsg.getEnergy(inputMsg.getIndex());
 	}
 	
@@ -33,6 +33,7 @@ import com.analog.lyric.dimple.solvers.core.SChild;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverVariableBlock;
 import com.analog.lyric.dimple.solvers.interfaces.SolverNodeMapping;
+import com.analog.lyric.math.DimpleRandom;
 
 /**
  * Solver variable block state for Gibbs solver.
@@ -208,6 +209,17 @@ public class GibbsVariableBlock extends SChild<VariableBlock> implements ISolver
 		return _domains;
 	}
 
+	/**
+	 * Random generator from which updates for the block should be drawn.
+	 * <p>
+	 * This is the {@linkplain GibbsSolverGraph#getRandom() generator of the root graph}.
+	 * @since 0.08
+	 */
+	public DimpleRandom getRandom()
+	{
+		return _root.getRandom();
+	}
+
 	/**
 	 * The count of rejections since the last reset.
 	 * <p>
@@ -24,6 +24,7 @@ import com.analog.lyric.dimple.model.values.Value;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.ISampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.ISamplerClient;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
+import com.analog.lyric.math.DimpleRandom;
 import com.analog.lyric.util.misc.Internal;
 import com.analog.lyric.util.misc.Matlab;
 
@@ -118,4 +119,30 @@ public interface ISolverVariableGibbs extends ISolverNodeGibbs, ISolverVariable,
 	public long getUpdateCount();
 	@Internal
 	public long getRejectionCount();
+	
+	/**
+	 * Combines sample statistics from the corresponding variable of an independent sampling chain.
+	 * <p>
+	 * Adds the belief and rejection statistics of {@code other} to those of this variable and
+	 * appends its saved samples, if any. If {@code bestSample} is true, this variable's best sample
+	 * will be replaced by that of {@code other}.
+	 * <p>
+	 * @param other is the solver variable for a copy of this variable's model in another graph.
+	 * @since 0.08
+	 * @see GibbsOptions#enableParallelChains
+	 */
+	@Internal
+	public void mergeChainStatistics(ISolverVariableGibbs other, boolean bestSample);
+	
+	/**
+	 * Overrides the random generator returned by {@link #getRandom()}.
+	 * <p>
+	 * Used to give variables that are updated concurrently within the same graph separate random streams.
+	 * <p>
+	 * @param random is the generator to use, or null to use that of the {@linkplain GibbsSolverGraph#getRandom()
+	 * parent graph}.
+	 * @since 0.08
+	 */
+	@Internal
+	public void setRandom(@Nullable DimpleRandom random);
 }
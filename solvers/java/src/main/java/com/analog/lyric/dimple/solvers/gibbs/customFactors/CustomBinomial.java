@@ -36,7 +36,6 @@ import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.block.IBlockInitializer;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.conjugate.BetaSampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.conjugate.IRealConjugateSamplerFactory;
-import com.analog.lyric.math.DimpleRandomGenerator;
 
 public class CustomBinomial extends GibbsRealFactor implements IRealConjugateFactor
 {
@@ -209,7 +208,7 @@ public class CustomBinomial extends GibbsRealFactor implements IRealConjugateFac
 				int N = _hasConstantNParameter ? _constantNParameterValue : _NParameterVariable.getCurrentSampleIndex();
 				int nextIndex;
 				if (N > 0)
-					nextIndex = DimpleRandomGenerator.rand.nextInt(N + 1);
+					nextIndex = _outputVariable.getRandom().nextInt(N + 1);
 				else
 					nextIndex = 0;
 				
@@ -36,7 +36,6 @@ import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.block.IBlockInitializer;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.conjugate.DirichletSampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.conjugate.IRealJointConjugateSamplerFactory;
-import com.analog.lyric.math.DimpleRandomGenerator;
 
 public class CustomDirichlet extends GibbsRealFactor implements IRealJointConjugateFactor
 {
@@ -182,11 +181,13 @@ public class CustomDirichlet extends GibbsRealFactor implements IRealJointConjug
 				double[] value = new double[_dimension];
 				for (int edge = _numParameterEdges; edge < nEdges; edge++)
 				{
+					GibbsRealJoint svar = (GibbsRealJoint)getSibling(edge);
+					
 					// Sample uniformly from the simplex
 					double sum = 0;
 					for (int i = 0; i < _dimension; i++)
 					{
-						double v = -Math.log(DimpleRandomGenerator.rand.nextDouble());	// Sample from an exponential distribution
+						double v = -Math.log(svar.getRandom().nextDouble());	// Sample from an exponential distribution
 						value[i] = v;
 						sum += v;
 					}
@@ -194,7 +195,6 @@ public class CustomDirichlet extends GibbsRealFactor implements IRealJointConjug
 						value[i] /= sum;												// Normalize
 
 					// Set the output variable value
-					GibbsRealJoint svar = (GibbsRealJoint)getSibling(edge);
 					svar.setCurrentSample(value);
 				}
 			}
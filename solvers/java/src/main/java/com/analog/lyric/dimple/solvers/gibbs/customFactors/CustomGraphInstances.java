@@ -0,0 +1,503 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs.customFactors;
+
+import static java.util.Objects.*;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.core.EdgeState;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.repeated.GraphInstances;
+import com.analog.lyric.dimple.model.repeated.GraphTemplate;
+import com.analog.lyric.dimple.model.values.IndexedValue;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.model.variables.VariableBlock;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.BlockScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IBlockUpdater;
+import com.analog.lyric.dimple.solvers.core.SFactorBase;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteMessage;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverEdge;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsVariableBlock;
+import com.analog.lyric.dimple.solvers.gibbs.ISolverFactorGibbs;
+import com.analog.lyric.dimple.solvers.gibbs.ISolverVariableGibbs;
+import com.analog.lyric.dimple.solvers.gibbs.samplers.block.IBlockInitializer;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverVariableBlock;
+import com.analog.lyric.math.DimpleRandom;
+
+/**
+ * Gibbs implementation of a {@link GraphInstances} factor.
+ * <p>
+ * The sample values of the internal variables of every instance are held in a single dense array
+ * with one block of {@link GraphTemplate#getVariableCount()} domain indices per instance. The
+ * conditional energy sent to a boundary variable is the energy of the template factors adjacent to
+ * it given the current samples of its instance.
+ * <p>
+ * On initialization this adds a block schedule entry over the boundary variables that first
+ * updates each of them in turn and then resamples the internal variables, one template variable
+ * at a time across all instances.
+ * <p>
+ * @since 0.08
+ */
+public class CustomGraphInstances extends SFactorBase implements ISolverFactorGibbs
+{
+	/*-------
+	 * State
+	 */
+
+	private final GraphTemplate _template;
+	private final int _instanceCount;
+	private final int _boundaryCount;
+	private final int _variableCount;
+
+	/**
+	 * Domain index of each template variable for each instance. Entries for boundary variables are
+	 * copied from {@link #_currentSamples} before use.
+	 */
+	private int[] _values = new int[0];
+	private Value[] _currentSamples = new Value[0];
+	private double[] _conditional = new double[0];
+
+	private boolean _visited = false;
+	private int _topologicalOrder = 0;
+
+	private final IBlockInitializer _initializer = new IBlockInitializer() {
+		@Override
+		public void initialize()
+		{
+			randomizeInternalVariables();
+		}
+	};
+
+	/*--------------
+	 * Construction
+	 */
+
+	public CustomGraphInstances(Factor factor, GibbsSolverGraph parent)
+	{
+		super(factor, parent);
+
+		final GraphInstances function = (GraphInstances)factor.getFactorFunction().getContainedFactorFunction();
+		_template = function.getTemplate();
+		_instanceCount = function.getInstanceCount();
+		_boundaryCount = _template.getBoundaryVariableCount();
+		_variableCount = _template.getVariableCount();
+	}
+
+	/*---------------------
+	 * ISolverNode methods
+	 */
+
+	@Override
+	public void initialize()
+	{
+		super.initialize();
+
+		final GraphTemplate template = _template;
+		final int size = _variableCount * _instanceCount;
+		if (_values.length != size)
+		{
+			_values = new int[size];
+		}
+
+		final int nSiblings = getSiblingCount();
+		if (_currentSamples.length != nSiblings)
+		{
+			_currentSamples = new Value[nSiblings];
+		}
+		for (int i = 0; i < nSiblings; ++i)
+		{
+			_currentSamples[i] = getSibling(i).getCurrentSampleValue();
+		}
+
+		int maxDomainSize = 0;
+		for (int v = 0; v < _variableCount; ++v)
+		{
+			maxDomainSize = Math.max(maxDomainSize, template.getDomainSize(v));
+		}
+		_conditional = new double[maxDomainSize];
+
+		// Create a block schedule entry that updates the boundary variables followed by the internal ones
+		final LinkedHashSet<Variable> boundaryVariables = new LinkedHashSet<>();
+		for (int i = 0; i < nSiblings; ++i)
+		{
+			boundaryVariables.add(_model.getSibling(i));
+		}
+		final GibbsSolverGraph parent = getParentGraph();
+		final VariableBlock block = parent.getModel().addVariableBlock(boundaryVariables);
+		requireNonNull(parent.getSolverVariableBlock(block, true));
+		final BlockScheduleEntry blockScheduleEntry = new BlockScheduleEntry(new InstanceUpdater(_model), block);
+
+		// Add the block updater to the schedule
+		final GibbsSolverGraph rootGraph = (GibbsSolverGraph)requireNonNull(parent.getRootSolverGraph());
+		rootGraph.getSchedule().addBlockScheduleEntry(blockScheduleEntry);
+
+		// Initialize internal variables after the boundary variables have been, and on random restarts
+		rootGraph.addBlockInitializer(_initializer);
+	}
+
+	/*---------------
+	 * SNode methods
+	 */
+
+	@Override
+	public void doUpdateEdge(int outPortNum)
+	{
+		// The Gibbs solver doesn't directly update factors, but the equivalent is instead done calls from variables
+		// This is ignored and doesn't throw an error so that a custom schedule that updates factors won't cause a problem
+	}
+
+	@Override
+	protected void doUpdate()
+	{
+		// The Gibbs solver doesn't directly update factors, but the equivalent is instead done calls from variables
+		// This is ignored and doesn't throw an error so that a custom schedule that updates factors won't cause a problem
+	}
+
+	/*----------------------------
+	 * ISolverFactorGibbs methods
+	 */
+
+	@Override
+	public @Nullable GibbsSolverEdge<?> createEdge(EdgeState edge)
+	{
+		return null;
+	}
+
+	@Deprecated
+	@Override
+	public Value getInputMsg(int portIndex)
+	{
+		return _currentSamples[portIndex];
+	}
+
+	@Override
+	public GibbsSolverGraph getParentGraph()
+	{
+		return (GibbsSolverGraph)_parent;
+	}
+
+	@Override
+	public ISolverVariableGibbs getSibling(int edge)
+	{
+		return (ISolverVariableGibbs)super.getSibling(edge);
+	}
+
+	@Override
+	public double getPotential()
+	{
+		final GraphTemplate template = _template;
+		final int[] values = _values;
+		if (values.length == 0)
+		{
+			// Probably because initalize() not yet called.
+			return Double.POSITIVE_INFINITY;
+		}
+
+		loadBoundaryValues();
+
+		double potential = 0;
+		for (int base = 0, end = values.length; base < end; base += _variableCount)
+		{
+			for (int v = _boundaryCount; v < _variableCount; ++v)
+			{
+				potential += template.getInputEnergiesUnsafe(v)[values[base + v]];
+			}
+			for (int f = template.getFactorCount(); --f>=0;)
+			{
+				potential += template.getFactorEnergy(f, values, base);
+			}
+		}
+
+		return potential == potential ? potential : Double.POSITIVE_INFINITY;
+	}
+
+	@Override
+	public final int getTopologicalOrder()
+	{
+		return _topologicalOrder;
+	}
+
+	@Override
+	public final void setTopologicalOrder(int order)
+	{
+		_topologicalOrder = order;
+	}
+
+	@Override
+	public void updateNeighborVariableValue(int variableIndex, Value oldValue)
+	{
+		throw DimpleException.unsupportedMethod(getClass(), "updateNeighborVariableValue");
+	}
+
+	@Override
+	public void updateNeighborVariableValuesNow(@Nullable Collection<IndexedValue> oldValues)
+	{
+		throw DimpleException.unsupportedMethod(getClass(), "updateNeighborVariableValuesNow");
+	}
+
+	@Override
+	public void updateEdgeMessage(EdgeState modelEdge, GibbsSolverEdge<?> solverEdge)
+	{
+		final GraphTemplate template = _template;
+		final int edge = modelEdge.getFactorToVariableEdgeNumber();
+		final int instance = edge / _boundaryCount;
+		final int variable = edge % _boundaryCount;
+		final int base = instance * _variableCount;
+		final int[] values = _values;
+
+		loadBoundaryValues(instance);
+
+		final double[] outputMsg = ((DiscreteMessage)solverEdge.factorToVarMsg).representation();
+		final int[] factors = template.getVariableFactorsUnsafe(variable);
+		final int savedIndex = values[base + variable];
+		for (int i = outputMsg.length; --i>=0;)
+		{
+			values[base + variable] = i;
+			double energy = 0;
+			for (int f : factors)
+			{
+				energy += template.getFactorEnergy(f, values, base);
+			}
+			outputMsg[i] = energy;	// Messages to discrete variables are energy values
+		}
+		values[base + variable] = savedIndex;
+	}
+
+	@Override
+	public boolean setVisited(boolean visited)
+	{
+		boolean changed = _visited ^ visited;
+		_visited = visited;
+		return changed;
+	}
+
+	/*-------------------------------
+	 * CustomGraphInstances methods
+	 */
+
+	public GraphTemplate getTemplate()
+	{
+		return _template;
+	}
+
+	public int getInstanceCount()
+	{
+		return _instanceCount;
+	}
+
+	/**
+	 * Returns the domain index of the current sample of template variable with given index in
+	 * the specified instance.
+	 * <p>
+	 * @see GraphTemplate#indexOf
+	 */
+	public int getInstanceSampleIndex(int instance, int variable)
+	{
+		if (variable < _boundaryCount)
+		{
+			return _currentSamples[instance * _boundaryCount + variable].getIndex();
+		}
+		return _values[instance * _variableCount + variable];
+	}
+
+	/**
+	 * Resamples all of the internal variables of every instance from their conditional distributions given
+	 * the current samples of the boundary variables.
+	 * <p>
+	 * This visits the internal template variables in order and samples each one for all instances before
+	 * moving on to the next.
+	 */
+	public void sampleInternalVariables()
+	{
+		final GraphTemplate template = _template;
+		final int[] values = _values;
+		final int end = values.length;
+		final double[] conditional = _conditional;
+		final DimpleRandom random = getParentGraph().getRandom();
+
+		// The temperature is zero unless tempering is used or one has been set explicitly.
+		final double temperature = ((GibbsSolverGraph)requireNonNull(getRootSolverGraph())).getTemperature();
+		final double beta = temperature > 0 ? 1 / temperature : 1;
+
+		loadBoundaryValues();
+
+		for (int v = _boundaryCount; v < _variableCount; ++v)
+		{
+			final int size = template.getDomainSize(v);
+			final double[] inputEnergies = template.getInputEnergiesUnsafe(v);
+			final int[] factors = template.getVariableFactorsUnsafe(v);
+
+			for (int base = 0; base < end; base += _variableCount)
+			{
+				final int index = base + v;
+				final int savedIndex = values[index];
+				double minEnergy = Double.POSITIVE_INFINITY;
+				for (int i = 0; i < size; ++i)
+				{
+					values[index] = i;
+					double energy = inputEnergies[i];
+					for (int f : factors)
+					{
+						energy += template.getFactorEnergy(f, values, base);
+					}
+					energy *= beta;
+					conditional[i] = energy;
+					minEnergy = Math.min(minEnergy, energy);
+				}
+
+				if (minEnergy == Double.POSITIVE_INFINITY)
+				{
+					// No valid value given the current neighbors, so keep the current one.
+					values[index] = savedIndex;
+					continue;
+				}
+
+				double sum = 0;
+				for (int i = 0; i < size; ++i)
+				{
+					sum += conditional[i] = Math.exp(minEnergy - conditional[i]);
+				}
+				double threshold = random.nextDouble() * sum;
+				int sample = size - 1;
+				for (int i = 0; i < size; ++i)
+				{
+					threshold -= conditional[i];
+					if (threshold < 0)
+					{
+						sample = i;
+						break;
+					}
+				}
+				values[index] = sample;
+			}
+		}
+
+		GibbsSolverGraph.invalidateSampleScore(this);
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	/**
+	 * Draws internal variables of each instance from their inputs and then resamples them from their
+	 * conditional distributions.
+	 */
+	private void randomizeInternalVariables()
+	{
+		final GraphTemplate template = _template;
+		final int[] values = _values;
+		final DimpleRandom random = getParentGraph().getRandom();
+
+		for (int v = _boundaryCount; v < _variableCount; ++v)
+		{
+			final double[] weights = template.getInputWeightsUnsafe(v);
+			for (int index = v, end = values.length; index < end; index += _variableCount)
+			{
+				double threshold = random.nextDouble();
+				int sample = weights.length - 1;
+				for (int i = 0; i < weights.length; ++i)
+				{
+					threshold -= weights[i];
+					if (threshold < 0)
+					{
+						sample = i;
+						break;
+					}
+				}
+				values[index] = sample;
+			}
+		}
+
+		sampleInternalVariables();
+	}
+
+	private void loadBoundaryValues()
+	{
+		final int[] values = _values;
+		final Value[] samples = _currentSamples;
+		for (int base = 0, i = 0, end = values.length; base < end; base += _variableCount)
+		{
+			for (int j = 0; j < _boundaryCount; ++j, ++i)
+			{
+				values[base + j] = samples[i].getIndex();
+			}
+		}
+	}
+
+	private void loadBoundaryValues(int instance)
+	{
+		final int base = instance * _variableCount;
+		final int offset = instance * _boundaryCount;
+		for (int j = 0; j < _boundaryCount; ++j)
+		{
+			_values[base + j] = _currentSamples[offset + j].getIndex();
+		}
+	}
+
+	/**
+	 * Block updater that updates the boundary variables of a {@link CustomGraphInstances} factor one at a time
+	 * and then resamples its internal variables.
+	 */
+	private static class InstanceUpdater implements IBlockUpdater
+	{
+		private final Factor _factor;
+
+		private InstanceUpdater(Factor factor)
+		{
+			_factor = factor;
+		}
+
+		@Override
+		public boolean update(ISolverVariableBlock sblock)
+		{
+			if (!(sblock instanceof GibbsVariableBlock))
+			{
+				return false;
+			}
+
+			final ISolverFactor sfactor = sblock.getSolverMapping().getSolverFactor(_factor);
+			if (!(sfactor instanceof CustomGraphInstances))
+			{
+				return false;
+			}
+
+			for (ISolverVariableGibbs svar : ((GibbsVariableBlock)sblock).getSolverVariables())
+			{
+				svar.update();
+			}
+			((CustomGraphInstances)sfactor).sampleInternalVariables();
+			return true;
+		}
+
+		@Override
+		public IBlockUpdater copy(Map<Object, Object> old2newobjs)
+		{
+			final Factor factor = (Factor)old2newobjs.get(_factor);
+			return new InstanceUpdater(factor != null ? factor : _factor);
+		}
+	}
+}
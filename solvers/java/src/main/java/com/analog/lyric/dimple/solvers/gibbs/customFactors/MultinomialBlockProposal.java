@@ -26,7 +26,7 @@ import com.analog.lyric.dimple.model.domains.Domain;
 import com.analog.lyric.dimple.model.values.Value;
 import com.analog.lyric.dimple.solvers.core.proposalKernels.BlockProposal;
 import com.analog.lyric.dimple.solvers.core.proposalKernels.IBlockProposalKernel;
-import com.analog.lyric.math.DimpleRandomGenerator;
+import com.analog.lyric.math.DimpleRandom;
 
 /**
  * 
@@ -55,7 +55,7 @@ public class MultinomialBlockProposal implements IBlockProposalKernel
 	
 	// Make proposal
 	@Override
-	public BlockProposal next(Value[] currentValue, Domain[] variableDomain)
+	public BlockProposal next(Value[] currentValue, Domain[] variableDomain, DimpleRandom random)
 	{
 		double proposalForwardEnergy = 0;
 		double proposalReverseEnergy = 0;
@@ -102,7 +102,7 @@ public class MultinomialBlockProposal implements IBlockProposalKernel
 			// If N is variable, sample N uniformly
 			int previousN = currentValue[argumentIndex].getIndex();
 			int NDomainSize = requireNonNull(variableDomain[0].asDiscrete()).size();
-			nextN = DimpleRandomGenerator.rand.nextInt(NDomainSize);
+			nextN = random.nextInt(NDomainSize);
 			newValue[argumentIndex].setIndex(nextN);
 			argumentIndex++;
 			
@@ -126,7 +126,7 @@ public class MultinomialBlockProposal implements IBlockProposalKernel
 			int previousX = currentValue[argumentIndex].getIndex();
 			int nextX;
 			if (argumentIndex < argumentLength - 1)
-				nextX = DimpleRandomGenerator.randomBinomial(remainingN, alphai/alphaSum);
+				nextX = random.nextBinomial(remainingN, alphai/alphaSum);
 			else	// Last value
 				nextX = remainingN;
 			newValue[argumentIndex].setIndex(nextX);
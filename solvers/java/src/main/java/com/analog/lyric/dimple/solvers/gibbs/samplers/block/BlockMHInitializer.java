@@ -60,7 +60,7 @@ public class BlockMHInitializer extends BlockMHSampler implements IBlockInitiali
 
 		final Value[] sampleValue = _block.updateStart();
 		
-		final BlockProposal proposal = proposalKernel.next(sampleValue, _block.getDomains());
+		final BlockProposal proposal = proposalKernel.next(sampleValue, _block.getDomains(), _block.getRandom());
 		final Value[] proposalValue = proposal.value;
 
 		_block.updateFinish(proposalValue);
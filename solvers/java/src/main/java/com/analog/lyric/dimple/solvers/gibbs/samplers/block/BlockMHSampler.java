@@ -27,7 +27,7 @@ import com.analog.lyric.dimple.solvers.core.proposalKernels.BlockProposalKernelR
 import com.analog.lyric.dimple.solvers.core.proposalKernels.IBlockProposalKernel;
 import com.analog.lyric.dimple.solvers.gibbs.GibbsVariableBlock;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverVariableBlock;
-import com.analog.lyric.math.DimpleRandomGenerator;
+import com.analog.lyric.math.DimpleRandom;
 
 /**
  * Metropolis-Hastings block initializer for {@link GibbsVariableBlock}s.
@@ -88,7 +88,8 @@ public class BlockMHSampler implements IBlockMCMCSampler
 
 		final Value[] sampleValue = block.updateStart();
 		
-		final BlockProposal proposal = proposalKernel.next(sampleValue, block.getDomains());
+		final DimpleRandom random = block.getRandom();
+		final BlockProposal proposal = proposalKernel.next(sampleValue, block.getDomains(), random);
 		final Value[] proposalValue = proposal.value;
 
 		// Get the potential for the current sample value
@@ -107,7 +108,7 @@ public class BlockMHSampler implements IBlockMCMCSampler
 			else
 				rejectionThreshold = 0;
 		}
-		if (DimpleRandomGenerator.rand.nextDouble() < rejectionThreshold)
+		if (random.nextDouble() < rejectionThreshold)
 		{
 			block.updateFinish(proposalValue);
 		}
@@ -26,7 +26,7 @@ import com.analog.lyric.dimple.model.domains.RealDomain;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.BetaParameters;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.IParameterizedMessage;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
-import com.analog.lyric.math.DimpleRandomGenerator;
+import com.analog.lyric.math.DimpleRandom;
 
 
 public class BetaSampler implements IRealConjugateSampler
@@ -34,10 +34,10 @@ public class BetaSampler implements IRealConjugateSampler
 	private final BetaParameters _parameters = new BetaParameters();
 
 	@Override
-	public final double nextSample(ISolverEdgeState[] edges, @Nullable FactorFunction input)
+	public final double nextSample(ISolverEdgeState[] edges, @Nullable FactorFunction input, DimpleRandom random)
 	{
 		aggregateParameters(_parameters, edges, input);
-		return nextSample(_parameters);
+		return nextSample(_parameters, random);
 	}
 	
 	@Override
@@ -68,11 +68,11 @@ public class BetaSampler implements IRealConjugateSampler
 		parameters.setBetaMinusOne(betaMinusOne);
 	}
 
-	public final double nextSample(BetaParameters parameters)
+	public final double nextSample(BetaParameters parameters, DimpleRandom random)
 	{
 		double alphaMinusOne = parameters.getAlphaMinusOne();
 		double betaMinusOne = parameters.getBetaMinusOne();
-		return DimpleRandomGenerator.randBeta.nextDouble(alphaMinusOne + 1, betaMinusOne + 1);
+		return random.nextBeta(alphaMinusOne + 1, betaMinusOne + 1);
 	}
 	
 	@Override
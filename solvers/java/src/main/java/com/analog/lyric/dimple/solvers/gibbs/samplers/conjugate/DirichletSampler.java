@@ -29,7 +29,7 @@ import com.analog.lyric.dimple.model.domains.RealJointDomain;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DirichletParameters;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.IParameterizedMessage;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
-import com.analog.lyric.math.DimpleRandomGenerator;
+import com.analog.lyric.math.DimpleRandom;
 
 
 public class DirichletSampler implements IRealJointConjugateSampler
@@ -38,10 +38,10 @@ public class DirichletSampler implements IRealJointConjugateSampler
 	private int _dimension = -1;
 	
 	@Override
-	public final double[] nextSample(ISolverEdgeState[] edges, @Nullable FactorFunction input)
+	public final double[] nextSample(ISolverEdgeState[] edges, @Nullable FactorFunction input, DimpleRandom random)
 	{
 		aggregateParameters(_parameters, edges, input);
-		return nextSample(_parameters);
+		return nextSample(_parameters, random);
 	}
 	
 	@Override
@@ -87,7 +87,7 @@ public class DirichletSampler implements IRealJointConjugateSampler
 		}
 	}
 	
-	public final double[] nextSample(DirichletParameters parameters)
+	public final double[] nextSample(DirichletParameters parameters, DimpleRandom random)
 	{
 		// Sample from a series of Gamma distributions, then normalize to sum to 1
 		int dimension = parameters.getSize();
@@ -96,7 +96,7 @@ public class DirichletSampler implements IRealJointConjugateSampler
 		int numZeros = 0;
 		for (int i = 0; i < dimension; i++)
 		{
-			double nextSample = DimpleRandomGenerator.randGamma.nextDouble(parameters.getAlphaMinusOne(i) + 1, 1);
+			double nextSample = random.nextGamma(parameters.getAlphaMinusOne(i) + 1, 1);
 			sample[i] = nextSample;
 			sum += nextSample;
 			if (nextSample == 0)
@@ -124,7 +124,7 @@ public class DirichletSampler implements IRealJointConjugateSampler
 		{
 			// Corner case where all samples were zero
 			// Choose one sample value at random, make that (nearly) one, and the others (nearly) zero
-			int randomChoice = (int)(DimpleRandomGenerator.rand.nextDouble() * dimension);
+			int randomChoice = (int)(random.nextDouble() * dimension);
 			if (randomChoice > dimension - 1) randomChoice = dimension - 1;
 			for (int i = 0; i < dimension; i++)
 				if (i != randomChoice)
@@ -26,7 +26,7 @@ import com.analog.lyric.dimple.model.domains.RealDomain;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.GammaParameters;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.IParameterizedMessage;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
-import com.analog.lyric.math.DimpleRandomGenerator;
+import com.analog.lyric.math.DimpleRandom;
 
 
 public class GammaSampler implements IRealConjugateSampler
@@ -34,10 +34,10 @@ public class GammaSampler implements IRealConjugateSampler
 	private final GammaParameters _parameters = new GammaParameters();
 
 	@Override
-	public final double nextSample(ISolverEdgeState[] edges, @Nullable FactorFunction input)
+	public final double nextSample(ISolverEdgeState[] edges, @Nullable FactorFunction input, DimpleRandom random)
 	{
 		aggregateParameters(_parameters, edges, input);
-		return nextSample(_parameters);
+		return nextSample(_parameters, random);
 	}
 	
 	@Override
@@ -68,11 +68,11 @@ public class GammaSampler implements IRealConjugateSampler
 		parameters.setBeta(beta);
 	}
 
-	public final double nextSample(GammaParameters parameters)
+	public final double nextSample(GammaParameters parameters, DimpleRandom random)
 	{
 		double alphaMinusOne = parameters.getAlphaMinusOne();
 		double beta = parameters.getBeta();
-		return DimpleRandomGenerator.randGamma.nextDouble(alphaMinusOne + 1, beta);
+		return random.nextGamma(alphaMinusOne + 1, beta);
 	}
 	
 	@Override
@@ -22,6 +22,7 @@ import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.IParameterizedMessage;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.ISampler;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
+import com.analog.lyric.math.DimpleRandom;
 import com.analog.lyric.util.misc.Internal;
 
 @Internal
@@ -29,9 +30,11 @@ public interface IRealConjugateSampler extends ISampler
 {
 	/**
 	 * Note: previous version of this method had Ports instead of edges.
+	 * <p>
+	 * @param random is the generator from which the sample is drawn.
 	 * @since 0.08
 	 */
-	public double nextSample(ISolverEdgeState[] edges, @Nullable FactorFunction input);
+	public double nextSample(ISolverEdgeState[] edges, @Nullable FactorFunction input, DimpleRandom random);
 	
 	public IParameterizedMessage createParameterMessage();
 	
@@ -26,7 +26,7 @@ import com.analog.lyric.dimple.model.domains.RealDomain;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.IParameterizedMessage;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.NormalParameters;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
-import com.analog.lyric.math.DimpleRandomGenerator;
+import com.analog.lyric.math.DimpleRandom;
 
 public class NormalSampler implements IRealConjugateSampler
 {
@@ -34,10 +34,10 @@ public class NormalSampler implements IRealConjugateSampler
 	private final NormalParameters _parameters = new NormalParameters();
 	
 	@Override
-	public final double nextSample(ISolverEdgeState[] edges, @Nullable FactorFunction input)
+	public final double nextSample(ISolverEdgeState[] edges, @Nullable FactorFunction input, DimpleRandom random)
 	{
 		aggregateParameters(_parameters, edges, input);
-		return nextSample(_parameters);
+		return nextSample(_parameters, random);
 	}
 	
 	@Override
@@ -76,14 +76,14 @@ public class NormalSampler implements IRealConjugateSampler
 		parameters.setPrecision(totalPrecision);
 	}
 	
-	public final double nextSample(NormalParameters parameters)
+	public final double nextSample(NormalParameters parameters, DimpleRandom random)
 	{
 		double mean = parameters.getMean();
 		double precision = parameters.getPrecision();
 		if (precision > 0)
-			return mean + DimpleRandomGenerator.rand.nextGaussian() / Math.sqrt(precision);
+			return mean + random.nextGaussian() / Math.sqrt(precision);
 		else
-			return mean + DimpleRandomGenerator.rand.nextGaussian() * MAX_SIGMA;
+			return mean + random.nextGaussian() * MAX_SIGMA;
 	}
 
 	@Override
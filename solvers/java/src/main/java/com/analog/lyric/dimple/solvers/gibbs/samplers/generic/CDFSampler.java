@@ -23,7 +23,6 @@ import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.model.domains.DiscreteDomain;
 import com.analog.lyric.dimple.model.domains.Domain;
 import com.analog.lyric.dimple.model.values.DiscreteValue;
-import com.analog.lyric.math.DimpleRandomGenerator;
 import com.analog.lyric.math.Utilities;
 
 public class CDFSampler extends AbstractGenericSampler implements IDiscreteDirectSampler
@@ -44,7 +43,7 @@ public class CDFSampler extends AbstractGenericSampler implements IDiscreteDirec
 	@Override
 	public void nextSample(DiscreteValue sampleValue, double[] energy, double minEnergy, IDiscreteSamplerClient samplerClient)
 	{
-		final RandomGenerator rand = DimpleRandomGenerator.rand;
+		final RandomGenerator rand = samplerClient.getRandom();
 		final int length = sampleValue.getDomain().size(); //energy may be longer than domain size
 		int sampleIndex;
 
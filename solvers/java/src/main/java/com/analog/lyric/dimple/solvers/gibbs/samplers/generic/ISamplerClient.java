@@ -18,6 +18,7 @@ package com.analog.lyric.dimple.solvers.gibbs.samplers.generic;
 
 import com.analog.lyric.dimple.model.domains.Domain;
 import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.math.DimpleRandom;
 
 public interface ISamplerClient
 {
@@ -25,4 +26,10 @@ public interface ISamplerClient
 	public double getCurrentSampleScore();
 	public void setNextSampleValue(Value sampleValue);
 	public Domain getDomain();
+	
+	/**
+	 * Random generator from which samples for this client should be drawn.
+	 * @since 0.08
+	 */
+	public DimpleRandom getRandom();
 }
@@ -28,7 +28,7 @@ import com.analog.lyric.dimple.solvers.core.proposalKernels.NormalProposalKernel
 import com.analog.lyric.dimple.solvers.core.proposalKernels.Proposal;
 import com.analog.lyric.dimple.solvers.core.proposalKernels.ProposalKernelOptionKey;
 import com.analog.lyric.dimple.solvers.core.proposalKernels.UniformDiscreteProposalKernel;
-import com.analog.lyric.math.DimpleRandomGenerator;
+import com.analog.lyric.math.DimpleRandom;
 import com.analog.lyric.options.IOptionHolder;
 
 /**
@@ -86,7 +86,8 @@ public class MHSampler extends AbstractGenericSampler implements IMCMCSampler
 	@Override
 	public boolean nextSample(Value sampleValue, ISamplerClient samplerClient)
 	{
-		final Proposal proposal = requireNonNull(_proposalKernel).next(sampleValue, samplerClient.getDomain());
+		final DimpleRandom random = samplerClient.getRandom();
+		final Proposal proposal = requireNonNull(_proposalKernel).next(sampleValue, samplerClient.getDomain(), random);
 		final Value proposalValue = proposal.value;
 
 		// Get the potential for the current sample value
@@ -105,7 +106,7 @@ public class MHSampler extends AbstractGenericSampler implements IMCMCSampler
 			else
 				rejectionThreshold = 0;
 		}
-		if (DimpleRandomGenerator.rand.nextDouble() < rejectionThreshold)
+		if (random.nextDouble() < rejectionThreshold)
 		{
 			samplerClient.setNextSampleValue(proposalValue);		// Accept
 			return true;
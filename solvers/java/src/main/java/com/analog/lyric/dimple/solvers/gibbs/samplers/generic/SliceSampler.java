@@ -23,7 +23,7 @@ import org.eclipse.jdt.annotation.Nullable;
 
 import com.analog.lyric.dimple.model.domains.Domain;
 import com.analog.lyric.dimple.model.values.Value;
-import com.analog.lyric.math.DimpleRandomGenerator;
+import com.analog.lyric.math.DimpleRandom;
 import com.analog.lyric.options.DoubleOptionKey;
 import com.analog.lyric.options.IOptionHolder;
 import com.analog.lyric.options.IntegerOptionKey;
@@ -95,14 +95,16 @@ public class SliceSampler extends AbstractGenericSampler implements IMCMCSampler
 	public double sampleVerticalSlice(ISamplerClient samplerClient)
 	{
 		final double yValue = samplerClient.getCurrentSampleScore();
-		return yValue - Math.log(DimpleRandomGenerator.rand.nextDouble());
+		return yValue - Math.log(samplerClient.getRandom().nextDouble());
 	}
 
 	// Sample horizontal slice using doubling method
 	public double sampleHorizontalSlice(double x, double y, IRealSamplerClient samplerClient)
 	{
+		final DimpleRandom random = samplerClient.getRandom();
+		
 		// First finding slice using doubling method
-		double L = x - _initialSliceWidth * DimpleRandomGenerator.rand.nextDouble();
+		double L = x - _initialSliceWidth * random.nextDouble();
 		double R = L + _initialSliceWidth;
 		double fL = samplerClient.getSampleScore(L);
 		double fR = samplerClient.getSampleScore(R);
@@ -110,7 +112,7 @@ public class SliceSampler extends AbstractGenericSampler implements IMCMCSampler
 		{
 			if (y <= fL && y <= fR)
 				break;
-			if (DimpleRandomGenerator.rand.nextBoolean())	// Flip a coin
+			if (random.nextBoolean())	// Flip a coin
 			{
 				L -= (R - L);
 				fL = samplerClient.getSampleScore(L);
@@ -128,7 +130,7 @@ public class SliceSampler extends AbstractGenericSampler implements IMCMCSampler
 		double Rs = R;
 		while (true)
 		{
-			xSample = Ls + (Rs - Ls) * DimpleRandomGenerator.rand.nextDouble();
+			xSample = Ls + (Rs - Ls) * random.nextDouble();
 			double fSample = samplerClient.getSampleScore(xSample);
 			
 			if (y >= fSample && accept(xSample, x, y, L, R, samplerClient))
@@ -22,7 +22,6 @@ import com.analog.lyric.collect.ArrayUtil;
 import com.analog.lyric.dimple.model.domains.DiscreteDomain;
 import com.analog.lyric.dimple.model.domains.Domain;
 import com.analog.lyric.dimple.model.values.DiscreteValue;
-import com.analog.lyric.math.DimpleRandomGenerator;
 import com.analog.lyric.math.Utilities;
 
 public class SuwaTodoSampler extends AbstractGenericSampler implements IDiscreteDirectSampler
@@ -43,7 +42,7 @@ public class SuwaTodoSampler extends AbstractGenericSampler implements IDiscrete
 	@Override
 	public void nextSample(DiscreteValue sampleValue, double[] energy, double minEnergy, IDiscreteSamplerClient samplerClient)
 	{
-		RandomGenerator rand = DimpleRandomGenerator.rand;
+		RandomGenerator rand = samplerClient.getRandom();
 		final int length = sampleValue.getDomain().size(); // energy may be longer than domain size
 		int sampleIndex;
 
@@ -324,9 +324,43 @@ public interface ISolverFactorGraph	extends ISolverNode
 	public void estimateParameters(IFactorTable [] tables,int numRestarts,int numSteps, double stepScaleFactor);
 	public void baumWelch(IFactorTable[] tables,int numRestarts,int numSteps);
 	public void moveMessages(ISolverNode other);
+	
+	/**
+	 * Moves messages and state from {@code other} into this graph.
+	 * <p>
+	 * Same as {@link #moveMessages(ISolverNode)} when {@code resetOther} is true. When false, the
+	 * edge messages of {@code other} are left as is rather than being reset. This avoids
+	 * redundant work when shifting messages along a chain of graphs in which {@code other} will
+	 * itself be overwritten next, as is done when advancing a rolled-up graph.
+	 * <p>
+	 * @since 0.08
+	 */
+	public void moveMessages(ISolverNode other, boolean resetOther);
+	
+	/**
+	 * Resets the edge messages of this graph and its subgraphs to their initial state.
+	 * <p>
+	 * This is what {@link #moveMessages(ISolverNode, boolean)} does to {@code other} when
+	 * {@code resetOther} is true. It is used to recycle a nested graph when advancing a
+	 * rolled-up graph in circular buffer mode.
+	 * <p>
+	 * @since 0.08
+	 */
+	public void resetMessages();
 	public void postAdvance();
 	public void postAddFactor(Factor f);
 	public void postSetSolverFactory();
+	
+	/**
+	 * Invoked by {@link FactorGraph#setSolverFactory} on the model's current solver graph before it is
+	 * replaced or cleared.
+	 * <p>
+	 * Implementations should release any resources, such as open files or background threads, that
+	 * would otherwise only be released when the graph is next initialized.
+	 * <p>
+	 * @since 0.08
+	 */
+	public void preSetSolverFactory();
 
 	/**
 	 * Returns the name of a solver-specific MATLAB wrapper function that should be invoked from
@@ -94,5 +94,16 @@ public interface ISolverVariable extends ISolverNode
     
     //Move global state from other node to this one
     public void moveNonEdgeSpecificState(ISolverNode other);
+    
+    /**
+     * Invoked when edges have been added to or removed from the model variable without the solver
+     * graph being reinitialized, so that any state cached for its siblings can be rebuilt.
+     * <p>
+     * Existing edges keep their solver edge state and messages. This is used when advancing a
+     * rolled-up graph in circular buffer mode.
+     * <p>
+     * @since 0.08
+     */
+    public void notifySiblingsChanged();
 
 }
@@ -37,8 +37,8 @@ public class JunctionTreeOptions extends BPOptions
 {
 	/**
 	 * If true, then the transformation will condition out any variables that have a fixed value.
-	 * This will produce a more efficient graph but will prevent it from being reused if the fixed
-	 * value changes.
+	 * This will produce a more efficient graph. If only the fixed values change, the transformation
+	 * can be updated in place, but it must be recomputed if a different set of variables has fixed values.
 	 * <p>
 	 * False by default.
 	 * <p>
@@ -67,6 +67,22 @@ public class JunctionTreeOptions extends BPOptions
 		new IntegerOptionKey(JunctionTreeOptions.class, "maxTransformationAttempts",
 			JunctionTreeTransform.DEFAULT_MAX_TRANSFORMATION_ATTEMPTS, 1, Integer.MAX_VALUE);
 	
+	/**
+	 * Specifies the maximum number of {@link #maxTransformationAttempts transformation attempts} to run
+	 * concurrently.
+	 * <p>
+	 * When greater than one, attempts are run as a parallel portfolio on the shared Dimple thread pool
+	 * and stop early as soon as a good enough ordering has been found. For a given random seed, the
+	 * resulting transformation does not depend on the number of threads.
+	 * <p>
+	 * Default value is one, which runs the attempts sequentially.
+	 * <p>
+	 * @see JunctionTreeTransform#variableEliminatorThreads()
+	 * @since 0.08
+	 */
+	public static final IntegerOptionKey variableEliminatorThreads =
+		new IntegerOptionKey(JunctionTreeOptions.class, "variableEliminatorThreads", 1, 1, Integer.MAX_VALUE);
+	
 	/**
 	 * Specifies which cost functions the variable elimination algorithm should use when
 	 * attempting to optimize the junction tree transformation. An empty list indicates that
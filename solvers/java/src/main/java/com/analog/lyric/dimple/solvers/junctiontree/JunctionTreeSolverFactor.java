@@ -60,6 +60,13 @@ public class JunctionTreeSolverFactor extends SFactorBase
 	private @Nullable JointDomainReindexer _reindexer;
 	private boolean _reindexerComputed = false;
 	
+	/**
+	 * The transform map and its {@link JunctionTreeTransformMap#conditionedValuesVersion()} for which
+	 * {@link #_delegate} and {@link #_reindexer} were computed.
+	 */
+	private @Nullable JunctionTreeTransformMap _cachedTransformMap;
+	private int _cachedConditionedValuesVersion;
+	
 	/*--------------
 	 * Construction
 	 */
@@ -165,8 +172,32 @@ public class JunctionTreeSolverFactor extends SFactorBase
 	 * Private methods
 	 */
 	
+	/**
+	 * Discards cached delegate state if the transformation has been recomputed or its
+	 * conditioned values have changed since it was computed.
+	 */
+	private void validateCache()
+	{
+		final JunctionTreeTransformMap transformMap = requireNonNull(_root.getTransformMap());
+		if (transformMap != _cachedTransformMap)
+		{
+			_cachedTransformMap = transformMap;
+			_cachedConditionedValuesVersion = transformMap.conditionedValuesVersion();
+			_delegate = null;
+			_reindexer = null;
+			_reindexerComputed = false;
+		}
+		else if (transformMap.conditionedValuesVersion() != _cachedConditionedValuesVersion)
+		{
+			_cachedConditionedValuesVersion = transformMap.conditionedValuesVersion();
+			_reindexer = null;
+			_reindexerComputed = false;
+		}
+	}
+	
 	private @Nullable ISolverFactor getDelegate()
 	{
+		validateCache();
 		final ISolverFactor delegate = _delegate;
 		if (delegate != null)
 		{
@@ -182,6 +213,7 @@ public class JunctionTreeSolverFactor extends SFactorBase
 
 	private @Nullable JointDomainReindexer getDelegateReindexer()
 	{
+		validateCache();
 		if (!_reindexerComputed)
 		{
 			_reindexerComputed = true;
@@ -253,6 +253,7 @@ public abstract class JunctionTreeSolverGraphBase<Delegate extends ISolverFactor
 		// Configure settings from options.
 		_transformer.useConditioning(getOptionOrDefault(JunctionTreeOptions.useConditioning));
 		_transformer.maxTransformationAttempts(getOptionOrDefault(JunctionTreeOptions.maxTransformationAttempts));
+		_transformer.variableEliminatorThreads(getOptionOrDefault(JunctionTreeOptions.variableEliminatorThreads));
 		OptionVariableEliminatorCostList costFunctions =
 			getOptionOrDefault(JunctionTreeOptions.variableEliminatorCostFunctions);
 		_transformer.variableEliminatorCostFunctions(costFunctions.toArray(new CostFunction[costFunctions.size()]));
@@ -276,7 +277,7 @@ public abstract class JunctionTreeSolverGraphBase<Delegate extends ISolverFactor
 					final Variable targetVar = entry.getValue();
 					if (sourceVar.hasFixedValue())
 					{
-						targetVar.setFixedValueObject(sourceVar.getFixedValueObject());
+						targetVar.setFixedValueFromObject(sourceVar.getFixedValueAsObject());
 					}
 					else
 					{
@@ -351,8 +352,9 @@ public abstract class JunctionTreeSolverGraphBase<Delegate extends ISolverFactor
 	
 	/**
 	 * If true, then the transformation will condition out any variables that have a fixed value.
-	 * This will produce a more efficient graph but will prevent it from being reused if the fixed
-	 * value changes.
+	 * This will produce a more efficient graph. If only the fixed values change, the transformation
+	 * will be reused and only the tables of the affected factors will be recomputed, but it will
+	 * be recomputed if a different set of variables has fixed values.
 	 * <p>
 	 * False by default.
 	 * @see #useConditioning(boolean)
@@ -453,6 +455,30 @@ public abstract class JunctionTreeSolverGraphBase<Delegate extends ISolverFactor
 		setOption(JunctionTreeOptions.maxTransformationAttempts, iterations);
 		return this;
 	}
+	
+	/**
+	 * Specifies the maximum number of transformation attempts to run concurrently.
+	 * <p>
+	 * @see JunctionTreeOptions#variableEliminatorThreads
+	 * @see #variableEliminatorThreads(int)
+	 * @since 0.08
+	 */
+	public int variableEliminatorThreads()
+	{
+		return _transformer.variableEliminatorThreads();
+	}
+	
+	/**
+	 * Sets {@link #variableEliminatorThreads()} to the specified value.
+	 * @return this
+	 * @since 0.08
+	 */
+	public JunctionTreeSolverGraphBase<Delegate> variableEliminatorThreads(int nThreads)
+	{
+		_transformer.variableEliminatorThreads(nThreads);
+		setOption(JunctionTreeOptions.variableEliminatorThreads, nThreads);
+		return this;
+	}
 
 	/*-----------------
 	 * Package methods
@@ -475,7 +501,9 @@ public abstract class JunctionTreeSolverGraphBase<Delegate extends ISolverFactor
 	private boolean isTransformValid()
 	{
 		final JunctionTreeTransformMap transformMap = _transformMap;
-		return transformMap != null && transformMap.isValid();
+		// If only the values of conditioned variables have changed, update the existing
+		// transformation instead of recomputing it.
+		return transformMap != null && (transformMap.isValid() || transformMap.updateConditionedValues());
 	}
 	
 	private @Nullable ISolverFactorGraph updateDelegate()
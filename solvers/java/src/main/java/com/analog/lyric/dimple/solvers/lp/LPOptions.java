@@ -17,6 +17,8 @@
 package com.analog.lyric.dimple.solvers.lp;
 
 import com.analog.lyric.dimple.options.SolverOptions;
+import com.analog.lyric.options.DoubleOptionKey;
+import com.analog.lyric.options.IntegerOptionKey;
 import com.analog.lyric.options.StringOptionKey;
 
 /**
@@ -39,6 +41,10 @@ public class LPOptions extends SolverOptions
 	 * <dt>"matlab"</dt>
 	 * <dd>Only works when using Dimple from MATLAB front-end. This solver uses the LP solver configured
 	 * in MATLAB, which is described by the {@link #MatlabLPSolver} option.</dd>
+	 * <dt>"MPLP"</dt>
+	 * <dd>Uses the built-in {@link MPLPSolver}, which solves the dual of the linear program using
+	 * message passing and does not require any external library. It is configured by the
+	 * {@link #MPLPMaxIterations} and {@link #MPLPTolerance} options.</dd>
 	 * <dt>"CPLEX"</dt>
 	 * <dt>"GLPK"</dt>
 	 * <dt>"Gurobi"</dt>
@@ -48,7 +54,7 @@ public class LPOptions extends SolverOptions
 	 * <dt>"SAT4J"</dt>
 	 * </dl>
 	 * 
-	 * The chosen solver must be separately installed and configured for use in Java.
+	 * Other than "MPLP", the chosen solver must be separately installed and configured for use in Java.
 	 * <p>
 	 * @see <a href="http://javailp.sourceforge.net/">Java ILP - Java Interface to ILP Solvers</a>
 	 */
@@ -74,4 +80,26 @@ public class LPOptions extends SolverOptions
 	 */
 	public static final StringOptionKey MatlabLPSolver =
 		new StringOptionKey(LPOptions.class, "MatlabLPSolver");
+	
+	/**
+	 * Maximum number of sweeps over the factors made by the built-in solver when "MPLP" is the
+	 * {@link LPSolver} value.
+	 * <p>
+	 * Default value is {@link MPLPSolver#DEFAULT_MAX_ITERATIONS}.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final IntegerOptionKey MPLPMaxIterations =
+		new IntegerOptionKey(LPOptions.class, "MPLPMaxIterations", MPLPSolver.DEFAULT_MAX_ITERATIONS, 1, Integer.MAX_VALUE);
+	
+	/**
+	 * Relative convergence tolerance for the built-in solver when "MPLP" is the {@link LPSolver} value.
+	 * <p>
+	 * Default value is {@link MPLPSolver#DEFAULT_TOLERANCE}.
+	 * <p>
+	 * @see MPLPSolver#tolerance()
+	 * @since 0.08
+	 */
+	public static final DoubleOptionKey MPLPTolerance =
+		new DoubleOptionKey(LPOptions.class, "MPLPTolerance", MPLPSolver.DEFAULT_TOLERANCE, 0.0, Double.POSITIVE_INFINITY);
 }
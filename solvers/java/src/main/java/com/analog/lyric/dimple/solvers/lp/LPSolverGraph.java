@@ -110,6 +110,9 @@ public class LPSolverGraph extends SFactorGraphBase<LPTableFactor, LPDiscrete, N
 	private String _lpSolverName = "";
 	private String _lpMatlabSolver = ""; // TODO: merge lpSolverName and lpSolver.
 	
+	private int _mplpMaxIterations = MPLPSolver.DEFAULT_MAX_ITERATIONS;
+	private double _mplpTolerance = MPLPSolver.DEFAULT_TOLERANCE;
+	
 	
 	/*--------------
 	 * Construction
@@ -132,6 +135,8 @@ public class LPSolverGraph extends SFactorGraphBase<LPTableFactor, LPDiscrete, N
 		super.initialize();
 		_lpSolverName = getOptionOrDefault(LPOptions.LPSolver);
 		_lpMatlabSolver = getOptionOrDefault(LPOptions.MatlabLPSolver);
+		_mplpMaxIterations = getOptionOrDefault(LPOptions.MPLPMaxIterations);
+		_mplpTolerance = getOptionOrDefault(LPOptions.MPLPTolerance);
 	}
 
 	/**
@@ -280,6 +285,11 @@ public class LPSolverGraph extends SFactorGraphBase<LPTableFactor, LPDiscrete, N
 		return _lpSolverName.isEmpty() || _lpSolverName.equalsIgnoreCase("matlab");
 	}
 	
+	private boolean useMPLPSolver()
+	{
+		return _lpSolverName.equalsIgnoreCase("MPLP");
+	}
+	
 	@Override
 	public void iterate(int numIters)
 	{
@@ -288,6 +298,16 @@ public class LPSolverGraph extends SFactorGraphBase<LPTableFactor, LPDiscrete, N
 			throw new DimpleException("Java solve() not supported for LP solver using 'MATLAB' as underlying solver");
 		}
 		
+		if (useMPLPSolver())
+		{
+			buildLPState();
+			
+			MPLPSolver mplp = new MPLPSolver(requireNonNull(getObjectiveFunction()), requireNonNull(getConstraints()));
+			mplp.maxIterations(_mplpMaxIterations).tolerance(_mplpTolerance);
+			setSolution(mplp.solve());
+			return;
+		}
+		
 		net.sf.javailp.Solver solver = null;
 		
 		try
@@ -372,6 +392,12 @@ public class LPSolverGraph extends SFactorGraphBase<LPTableFactor, LPDiscrete, N
 		throw unsupported("moveMessages");
 	}
 
+	@Override
+	public void moveMessages(ISolverNode other, boolean resetOther)
+	{
+		throw unsupported("moveMessages");
+	}
+
 	@Override
 	protected String getSolverName()
 	{
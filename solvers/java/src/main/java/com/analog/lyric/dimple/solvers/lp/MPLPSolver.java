@@ -0,0 +1,717 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.lp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import cern.colt.list.IntArrayList;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+
+/**
+ * Built-in Java solver for the linear program produced by {@link LPSolverGraph#buildLPState()}.
+ * <p>
+ * Rather than solving the linear program directly, this implements the max-product linear
+ * programming (MPLP) algorithm, which performs block coordinate descent on the dual of the same
+ * local polytope relaxation. Each update of a factor is linear in the size of its table, so this
+ * scales to very large models without requiring an external LP library.
+ * <p>
+ * The structure of the problem is recovered from the objective function and constraint equations:
+ * {@link LPVariableConstraint}s identify the LP variables for the values of each model variable and
+ * {@link LPFactorMarginalConstraint}s identify which variable value each factor table entry agrees with.
+ * <p>
+ * After each sweep over the factors, the assignment that maximizes each variable's dual belief is
+ * decoded, and the best such assignment is kept. The solver stops when the dual bound is within the
+ * {@linkplain #tolerance() tolerance} of the best assignment (in which case the relaxation is tight
+ * and the assignment is the exact MAP solution), when the dual bound stops decreasing, or after
+ * {@linkplain #maxIterations() max iterations}. The {@linkplain #solve() solution} is the indicator vector
+ * of the best assignment.
+ * <p>
+ * <h2>References</h2>
+ * <ul>
+ * <li>Amir Globerson & Tommi Jaakkola.
+ * Fixing max-product: Convergent message passing algorithms for MAP LP-relaxations.
+ * <em>Advances in Neural Information Processing Systems 20</em>, 2007.
+ * </ul>
+ * <p>
+ * @since 0.08
+ * @see LPOptions#LPSolver
+ */
+@NotThreadSafe
+public final class MPLPSolver
+{
+	/*-------
+	 * State
+	 */
+	
+	/**
+	 * Default value of {@link #maxIterations()}.
+	 */
+	public static final int DEFAULT_MAX_ITERATIONS = 1000;
+	
+	/**
+	 * Default value of {@link #tolerance()}.
+	 */
+	public static final double DEFAULT_TOLERANCE = 1e-6;
+
+	private final int _nLPVars;
+	
+	private final LPDiscrete[] _svariables;
+	
+	/**
+	 * Index of first LP variable for each variable. The LP variables for a variable's values
+	 * are contiguous.
+	 */
+	private final int[] _varLPStart;
+	
+	/**
+	 * Offset of each variable's values in {@link #_varTheta}, {@link #_varValid} and {@link #_beliefs}.
+	 * Has one extra entry holding the total number of variable values.
+	 */
+	private final int[] _varOffset;
+	private final double[] _varTheta;
+	private final boolean[] _varValid;
+	
+	/**
+	 * Dual beliefs for each variable value: the variable's objective plus the messages
+	 * from all of its factors.
+	 */
+	private final double[] _beliefs;
+
+	/**
+	 * Index of the first LP variable for each factor. The LP variables for a factor's table entries
+	 * are contiguous.
+	 */
+	private final int[] _factorLPStart;
+	private final int[] _factorEntries;
+	
+	/**
+	 * Offset of each factor's entries in {@link #_entryTheta} and {@link #_entryValid}.
+	 */
+	private final int[] _factorEntryOffset;
+	private final double[] _entryTheta;
+	private final boolean[] _entryValid;
+	
+	/**
+	 * Offset of each factor's slots in {@link #_slotVar} and {@link #_slotMessageOffset}. A factor has one
+	 * slot for each distinct variable with LP variables. Has one extra entry.
+	 */
+	private final int[] _factorSlotOffset;
+	private final int[] _slotVar;
+	
+	/**
+	 * Offset of the factor-to-variable message for each slot in {@link #_messages}. Has one extra entry.
+	 */
+	private final int[] _slotMessageOffset;
+	private final double[] _messages;
+	
+	/**
+	 * Offset of each factor's entry values in {@link #_entryValues}. The value for entry {@code e} in slot
+	 * {@code s} of factor {@code f} is at {@code _factorValueOffset[f] + e * nSlots + s}.
+	 */
+	private final int[] _factorValueOffset;
+	private final int[] _entryValues;
+	
+	private int _maxIterations = DEFAULT_MAX_ITERATIONS;
+	private double _tolerance = DEFAULT_TOLERANCE;
+	
+	private int _iterations = 0;
+	private double _dualBound = Double.POSITIVE_INFINITY;
+	private double _primalValue = Double.NEGATIVE_INFINITY;
+	
+	/*--------------
+	 * Construction
+	 */
+	
+	/**
+	 * Constructs solver for linear program with given objective function and constraints, as
+	 * produced by {@link LPSolverGraph#getObjectiveFunction()} and {@link LPSolverGraph#getConstraints()}.
+	 * 
+	 * @throws DimpleException if the constraints show that the problem has no feasible solution.
+	 */
+	public MPLPSolver(double[] objective, List<IntegerEquation> constraints)
+	{
+		_nLPVars = objective.length;
+		
+		final int[] lpVarOwner = new int[_nLPVars];
+		final int[] lpVarValue = new int[_nLPVars];
+		Arrays.fill(lpVarOwner, -1);
+		
+		final List<LPDiscrete> svariables = new ArrayList<LPDiscrete>();
+		final IntArrayList varLPStart = new IntArrayList();
+		final IntArrayList varOffset = new IntArrayList();
+		
+		final Map<LPTableFactor, Integer> factorIndices = new IdentityHashMap<LPTableFactor, Integer>();
+		final List<LPTableFactor> sfactors = new ArrayList<LPTableFactor>();
+		final List<LPFactorMarginalConstraint> factorConstraints = new ArrayList<LPFactorMarginalConstraint>();
+		
+		int nValues = 0;
+		for (IntegerEquation constraint : constraints)
+		{
+			final LPVariableConstraint variableConstraint = constraint.asVariableConstraint();
+			if (variableConstraint != null)
+			{
+				final int var = svariables.size();
+				final int[] lpVars = variableConstraint.getVariables();
+				svariables.add(variableConstraint.getSolverVariable());
+				varLPStart.add(lpVars[0]);
+				varOffset.add(nValues);
+				for (int i = 0; i < lpVars.length; ++i)
+				{
+					lpVarOwner[lpVars[i]] = var;
+					lpVarValue[lpVars[i]] = i;
+				}
+				nValues += lpVars.length;
+				continue;
+			}
+			
+			final LPFactorMarginalConstraint factorConstraint = constraint.asFactorConstraint();
+			if (factorConstraint != null)
+			{
+				final LPTableFactor sfactor = factorConstraint.getSolverFactor();
+				if (!factorIndices.containsKey(sfactor))
+				{
+					factorIndices.put(sfactor, sfactors.size());
+					sfactors.add(sfactor);
+				}
+				factorConstraints.add(factorConstraint);
+			}
+		}
+		varOffset.add(nValues);
+		
+		final int nVars = svariables.size();
+		_svariables = svariables.toArray(new LPDiscrete[nVars]);
+		_varLPStart = Arrays.copyOf(varLPStart.elements(), nVars);
+		_varOffset = Arrays.copyOf(varOffset.elements(), nVars + 1);
+		_varTheta = new double[nValues];
+		_varValid = new boolean[nValues];
+		_beliefs = new double[nValues];
+		for (int var = 0; var < nVars; ++var)
+		{
+			for (int i = _varOffset[var], lpVar = _varLPStart[var]; i < _varOffset[var + 1]; ++i, ++lpVar)
+			{
+				_varTheta[i] = objective[lpVar];
+				_varValid[i] = true;
+			}
+		}
+		
+		// Determine which variables are attached to each factor.
+		final int nFactors = sfactors.size();
+		final IntArrayList[] factorVars = new IntArrayList[nFactors];
+		for (int f = 0; f < nFactors; ++f)
+		{
+			factorVars[f] = new IntArrayList();
+		}
+		for (LPFactorMarginalConstraint constraint : factorConstraints)
+		{
+			final int f = factorIndices.get(constraint.getSolverFactor());
+			final int var = lpVarOwner[constraint.getVariables()[0]];
+			if (!factorVars[f].contains(var))
+			{
+				factorVars[f].add(var);
+			}
+		}
+		
+		_factorLPStart = new int[nFactors];
+		_factorEntries = new int[nFactors];
+		_factorEntryOffset = new int[nFactors + 1];
+		_factorSlotOffset = new int[nFactors + 1];
+		_factorValueOffset = new int[nFactors];
+		int nEntries = 0, nSlots = 0, nEntryValues = 0, nMessages = 0;
+		for (int f = 0; f < nFactors; ++f)
+		{
+			final LPTableFactor sfactor = sfactors.get(f);
+			_factorLPStart[f] = sfactor.getLPVarIndex();
+			_factorEntries[f] = sfactor.getNumberOfValidAssignments();
+			_factorEntryOffset[f] = nEntries;
+			_factorSlotOffset[f] = nSlots;
+			_factorValueOffset[f] = nEntryValues;
+			nEntries += _factorEntries[f];
+			nSlots += factorVars[f].size();
+			nEntryValues += _factorEntries[f] * factorVars[f].size();
+			for (int s = 0, end = factorVars[f].size(); s < end; ++s)
+			{
+				final int var = factorVars[f].get(s);
+				nMessages += _varOffset[var + 1] - _varOffset[var];
+			}
+		}
+		_factorEntryOffset[nFactors] = nEntries;
+		_factorSlotOffset[nFactors] = nSlots;
+		
+		_entryTheta = new double[nEntries];
+		_entryValid = new boolean[nEntries];
+		_slotVar = new int[nSlots];
+		_slotMessageOffset = new int[nSlots + 1];
+		_slotMessageOffset[nSlots] = nMessages;
+		_messages = new double[nMessages];
+		_entryValues = new int[nEntryValues];
+		Arrays.fill(_entryValues, -1);
+		
+		for (int f = 0, messageOffset = 0; f < nFactors; ++f)
+		{
+			for (int s = _factorSlotOffset[f], i = 0; s < _factorSlotOffset[f + 1]; ++s, ++i)
+			{
+				final int var = factorVars[f].get(i);
+				_slotVar[s] = var;
+				_slotMessageOffset[s] = messageOffset;
+				messageOffset += _varOffset[var + 1] - _varOffset[var];
+			}
+			for (int e = 0; e < _factorEntries[f]; ++e)
+			{
+				_entryTheta[_factorEntryOffset[f] + e] = objective[_factorLPStart[f] + e];
+				_entryValid[_factorEntryOffset[f] + e] = true;
+			}
+		}
+		
+		// Record the value of each variable for each factor entry.
+		for (LPFactorMarginalConstraint constraint : factorConstraints)
+		{
+			final int f = factorIndices.get(constraint.getSolverFactor());
+			final int[] lpVars = constraint.getVariables();
+			final int var = lpVarOwner[lpVars[0]];
+			final int value = lpVarValue[lpVars[0]];
+			final int nFactorSlots = _factorSlotOffset[f + 1] - _factorSlotOffset[f];
+			final int slot = factorVars[f].indexOf(var);
+			for (int i = 1; i < lpVars.length; ++i)
+			{
+				final int e = lpVars[i] - _factorLPStart[f];
+				final int index = _factorValueOffset[f] + e * nFactorSlots + slot;
+				final int prevValue = _entryValues[index];
+				if (prevValue >= 0 && prevValue != value)
+				{
+					// Same variable appears more than once in factor with different values.
+					_entryValid[_factorEntryOffset[f] + e] = false;
+				}
+				_entryValues[index] = value;
+			}
+		}
+		
+		enforceConsistency();
+	}
+	
+	/*---------
+	 * Options
+	 */
+	
+	/**
+	 * The maximum number of sweeps over all of the factors.
+	 * <p>
+	 * Defaults to {@link #DEFAULT_MAX_ITERATIONS}.
+	 * @see #maxIterations(int)
+	 */
+	public int maxIterations()
+	{
+		return _maxIterations;
+	}
+	
+	/**
+	 * Sets {@link #maxIterations()}.
+	 * @return this
+	 */
+	public MPLPSolver maxIterations(int iterations)
+	{
+		_maxIterations = iterations;
+		return this;
+	}
+	
+	/**
+	 * Relative tolerance used to determine convergence.
+	 * <p>
+	 * The solver stops when the difference between the dual bound and the value of the best
+	 * assignment or the decrease in the dual bound over a sweep is no more than this value times
+	 * one plus the absolute value of the dual bound.
+	 * <p>
+	 * Defaults to {@link #DEFAULT_TOLERANCE}.
+	 * @see #tolerance(double)
+	 */
+	public double tolerance()
+	{
+		return _tolerance;
+	}
+	
+	/**
+	 * Sets {@link #tolerance()}.
+	 * @return this
+	 */
+	public MPLPSolver tolerance(double tolerance)
+	{
+		_tolerance = tolerance;
+		return this;
+	}
+	
+	/*----------------
+	 * Solver methods
+	 */
+	
+	/**
+	 * Runs the solver and returns the indicator vector of the best assignment found, with one
+	 * entry for each LP variable.
+	 */
+	public double[] solve()
+	{
+		final int nVars = _svariables.length;
+		
+		System.arraycopy(_varTheta, 0, _beliefs, 0, _beliefs.length);
+		Arrays.fill(_messages, 0.0);
+		
+		final int[] assignment = new int[nVars];
+		int[] bestAssignment = new int[nVars];
+		
+		_iterations = 0;
+		_dualBound = Double.POSITIVE_INFINITY;
+		_primalValue = Double.NEGATIVE_INFINITY;
+		
+		// Scratch array big enough for the messages of any factor
+		int maxFactorMessages = 0;
+		for (int f = 0, nFactors = _factorEntries.length; f < nFactors; ++f)
+		{
+			final int size = _slotMessageOffset[_factorSlotOffset[f + 1]] - _slotMessageOffset[_factorSlotOffset[f]];
+			maxFactorMessages = Math.max(maxFactorMessages, size);
+		}
+		final double[] scratch = new double[2 * maxFactorMessages];
+		
+		boolean first = true;
+		while (_iterations < _maxIterations)
+		{
+			++_iterations;
+			
+			for (int f = 0, nFactors = _factorEntries.length; f < nFactors; ++f)
+			{
+				updateFactor(f, scratch);
+			}
+			
+			// Since each factor update leaves the maximum of that factor's reparameterized table
+			// at zero, the dual bound is simply the sum of the maximum variable beliefs.
+			double dualBound = 0.0;
+			for (int var = 0; var < nVars; ++var)
+			{
+				int best = -1;
+				double bestBelief = Double.NEGATIVE_INFINITY;
+				for (int i = _varOffset[var], end = _varOffset[var + 1]; i < end; ++i)
+				{
+					if (_varValid[i] && (best < 0 || _beliefs[i] > bestBelief))
+					{
+						best = i - _varOffset[var];
+						bestBelief = _beliefs[i];
+					}
+				}
+				assignment[var] = best;
+				dualBound += bestBelief;
+			}
+			
+			final double primalValue = evaluate(assignment);
+			if (first || primalValue > _primalValue)
+			{
+				first = false;
+				_primalValue = primalValue;
+				System.arraycopy(assignment, 0, bestAssignment, 0, nVars);
+			}
+			
+			final double prevDualBound = _dualBound;
+			_dualBound = Math.min(dualBound, prevDualBound);
+			
+			final double threshold = _tolerance * (1.0 + Math.abs(_dualBound));
+			if (_dualBound - _primalValue <= threshold || prevDualBound - dualBound <= threshold)
+			{
+				break;
+			}
+		}
+		
+		return buildSolution(bestAssignment);
+	}
+	
+	/**
+	 * The dual upper bound on the objective value computed by the last {@link #solve()}.
+	 */
+	public double getDualBound()
+	{
+		return _dualBound;
+	}
+	
+	/**
+	 * The number of sweeps performed by the last {@link #solve()}.
+	 */
+	public int getIterations()
+	{
+		return _iterations;
+	}
+	
+	/**
+	 * The objective value of the best assignment found by the last {@link #solve()}. This is
+	 * negative infinity if no feasible assignment was found.
+	 */
+	public double getPrimalValue()
+	{
+		return _primalValue;
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	/**
+	 * Removes variable values that are not supported by some valid entry of every attached
+	 * factor, and factor entries that include removed values, until nothing changes.
+	 */
+	private void enforceConsistency()
+	{
+		final int nFactors = _factorEntries.length;
+		final boolean[] supported = new boolean[_varValid.length];
+		
+		boolean changed = true;
+		while (changed)
+		{
+			changed = false;
+			
+			for (int f = 0; f < nFactors; ++f)
+			{
+				final int slotStart = _factorSlotOffset[f], nSlots = _factorSlotOffset[f + 1] - slotStart;
+				if (nSlots == 0)
+				{
+					continue;
+				}
+				
+				for (int s = 0; s < nSlots; ++s)
+				{
+					final int var = _slotVar[slotStart + s];
+					Arrays.fill(supported, _varOffset[var], _varOffset[var + 1], false);
+				}
+				
+				for (int e = 0, nEntries = _factorEntries[f]; e < nEntries; ++e)
+				{
+					final int entry = _factorEntryOffset[f] + e;
+					if (!_entryValid[entry])
+					{
+						continue;
+					}
+					
+					final int valueStart = _factorValueOffset[f] + e * nSlots;
+					for (int s = 0; s < nSlots; ++s)
+					{
+						final int value = _entryValues[valueStart + s];
+						if (value < 0 || !_varValid[_varOffset[_slotVar[slotStart + s]] + value])
+						{
+							_entryValid[entry] = false;
+							break;
+						}
+					}
+					
+					if (_entryValid[entry])
+					{
+						for (int s = 0; s < nSlots; ++s)
+						{
+							supported[_varOffset[_slotVar[slotStart + s]] + _entryValues[valueStart + s]] = true;
+						}
+					}
+				}
+				
+				for (int s = 0; s < nSlots; ++s)
+				{
+					final int var = _slotVar[slotStart + s];
+					boolean anyValid = false;
+					for (int i = _varOffset[var], end = _varOffset[var + 1]; i < end; ++i)
+					{
+						if (_varValid[i] && !supported[i])
+						{
+							_varValid[i] = false;
+							changed = true;
+						}
+						anyValid |= _varValid[i];
+					}
+					
+					if (!anyValid)
+					{
+						throw new DimpleException("LP problem has no feasible solution: no valid value for variable '%s'",
+							_svariables[var].getModelObject().getName());
+					}
+				}
+			}
+		}
+		
+		for (int i = 0, end = _varValid.length; i < end; ++i)
+		{
+			if (!_varValid[i])
+			{
+				_varTheta[i] = Double.NEGATIVE_INFINITY;
+			}
+		}
+	}
+	
+	/**
+	 * Performs MPLP update of messages from factor {@code f} to its variables.
+	 * <p>
+	 * For each variable <i>i</i> of the factor, this computes the belief excluding the factor's message
+	 * <blockquote>
+	 * &lambda;<sub>i</sub><sup>-f</sup>(x<sub>i</sub>) = b<sub>i</sub>(x<sub>i</sub>) - m<sub>f&rarr;i</sub>(x<sub>i</sub>)
+	 * </blockquote>
+	 * and then sets the new message to
+	 * <blockquote>
+	 * m<sub>f&rarr;i</sub>(x<sub>i</sub>) = -&lambda;<sub>i</sub><sup>-f</sup>(x<sub>i</sub>) + (1/|f|)
+	 * max<sub>x<sub>f\i</sub></sub> [&theta;<sub>f</sub>(x<sub>f</sub>) + &Sigma;<sub>j&isin;f</sub>
+	 * &lambda;<sub>j</sub><sup>-f</sup>(x<sub>j</sub>)]
+	 * </blockquote>
+	 */
+	private void updateFactor(int f, double[] scratch)
+	{
+		final int slotStart = _factorSlotOffset[f], nSlots = _factorSlotOffset[f + 1] - slotStart;
+		if (nSlots == 0)
+		{
+			return;
+		}
+		
+		final int messageStart = _slotMessageOffset[slotStart];
+		final int nMessages = _slotMessageOffset[slotStart + nSlots] - messageStart;
+		
+		// scratch[0..nMessages) holds the beliefs excluding this factor and
+		// scratch[nMessages..2*nMessages) the max-marginals.
+		for (int s = 0; s < nSlots; ++s)
+		{
+			final int var = _slotVar[slotStart + s];
+			final int varOffset = _varOffset[var];
+			final int slotOffset = _slotMessageOffset[slotStart + s] - messageStart;
+			for (int i = 0, size = _varOffset[var + 1] - varOffset; i < size; ++i)
+			{
+				scratch[slotOffset + i] = _beliefs[varOffset + i] - _messages[messageStart + slotOffset + i];
+			}
+		}
+		Arrays.fill(scratch, nMessages, 2 * nMessages, Double.NEGATIVE_INFINITY);
+		
+		for (int e = 0, nEntries = _factorEntries[f]; e < nEntries; ++e)
+		{
+			final int entry = _factorEntryOffset[f] + e;
+			if (!_entryValid[entry])
+			{
+				continue;
+			}
+			
+			final int valueStart = _factorValueOffset[f] + e * nSlots;
+			double value = _entryTheta[entry];
+			for (int s = 0; s < nSlots; ++s)
+			{
+				value += scratch[_slotMessageOffset[slotStart + s] - messageStart + _entryValues[valueStart + s]];
+			}
+			
+			for (int s = 0; s < nSlots; ++s)
+			{
+				final int index = nMessages + _slotMessageOffset[slotStart + s] - messageStart + _entryValues[valueStart + s];
+				if (value > scratch[index])
+				{
+					scratch[index] = value;
+				}
+			}
+		}
+		
+		final double scale = 1.0 / nSlots;
+		for (int s = 0; s < nSlots; ++s)
+		{
+			final int var = _slotVar[slotStart + s];
+			final int varOffset = _varOffset[var];
+			final int slotOffset = _slotMessageOffset[slotStart + s] - messageStart;
+			for (int i = 0, size = _varOffset[var + 1] - varOffset; i < size; ++i)
+			{
+				if (_varValid[varOffset + i])
+				{
+					final double belief = scratch[nMessages + slotOffset + i] * scale;
+					_messages[messageStart + slotOffset + i] = belief - scratch[slotOffset + i];
+					_beliefs[varOffset + i] = belief;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes the value of the objective for the given assignment of variable values, or
+	 * negative infinity if the assignment does not correspond to a valid entry in some factor.
+	 */
+	private double evaluate(int[] assignment)
+	{
+		double value = 0.0;
+		for (int var = 0, nVars = assignment.length; var < nVars; ++var)
+		{
+			value += _varTheta[_varOffset[var] + assignment[var]];
+		}
+		
+		for (int f = 0, nFactors = _factorEntries.length; f < nFactors; ++f)
+		{
+			final int entry = findEntry(f, assignment);
+			if (entry < 0)
+			{
+				return Double.NEGATIVE_INFINITY;
+			}
+			value += _entryTheta[_factorEntryOffset[f] + entry];
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * Returns index of valid entry of factor {@code f} matching {@code assignment} or -1.
+	 */
+	private int findEntry(int f, int[] assignment)
+	{
+		final int slotStart = _factorSlotOffset[f], nSlots = _factorSlotOffset[f + 1] - slotStart;
+		
+		nextEntry:
+		for (int e = 0, nEntries = _factorEntries[f]; e < nEntries; ++e)
+		{
+			if (!_entryValid[_factorEntryOffset[f] + e])
+			{
+				continue;
+			}
+			
+			final int valueStart = _factorValueOffset[f] + e * nSlots;
+			for (int s = 0; s < nSlots; ++s)
+			{
+				if (_entryValues[valueStart + s] != assignment[_slotVar[slotStart + s]])
+				{
+					continue nextEntry;
+				}
+			}
+			
+			return e;
+		}
+		
+		return -1;
+	}
+	
+	private double[] buildSolution(int[] assignment)
+	{
+		final double[] solution = new double[_nLPVars];
+		
+		for (int var = 0, nVars = assignment.length; var < nVars; ++var)
+		{
+			solution[_varLPStart[var] + assignment[var]] = 1.0;
+		}
+		
+		for (int f = 0, nFactors = _factorEntries.length; f < nFactors; ++f)
+		{
+			final int entry = findEntry(f, assignment);
+			if (entry >= 0)
+			{
+				solution[_factorLPStart[f] + entry] = 1.0;
+			}
+		}
+		
+		return solution;
+	}
+}
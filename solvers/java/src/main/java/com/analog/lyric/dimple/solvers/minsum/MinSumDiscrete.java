@@ -19,10 +19,11 @@ package com.analog.lyric.dimple.solvers.minsum;
 import org.eclipse.jdt.annotation.Nullable;
 
 import com.analog.lyric.collect.ArrayUtil;
-import com.analog.lyric.collect.DoubleArrayCache;
+import com.analog.lyric.collect.ScratchArena;
 import com.analog.lyric.dimple.environment.DimpleEnvironment;
 import com.analog.lyric.dimple.model.variables.Discrete;
 import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.solvers.core.MessageResidualMonitor;
 import com.analog.lyric.dimple.solvers.core.SDiscreteVariableDoubleArray;
 
 /**
@@ -39,6 +40,7 @@ public class MinSumDiscrete extends SDiscreteVariableDoubleArray
 	protected @Nullable double[] _dampingParams = null;
 	protected double[][] _inMsgs = ArrayUtil.EMPTY_DOUBLE_ARRAY_ARRAY;
 	protected double[][] _outMsgs = ArrayUtil.EMPTY_DOUBLE_ARRAY_ARRAY;
+	private @Nullable MessageResidualMonitor _residualMonitor = null;
 
 	/*--------------
 	 * Construction
@@ -58,6 +60,27 @@ public class MinSumDiscrete extends SDiscreteVariableDoubleArray
 	{
 		super.initialize();
 
+		cacheSiblingMessages();
+		configureDampingFromOptions();
+		
+		_residualMonitor = MessageResidualMonitor.forNode(this);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Recaches the sibling edge messages and per-edge damping parameters.
+	 */
+	@Override
+	public void notifySiblingsChanged()
+	{
+		cacheSiblingMessages();
+		configureDampingFromOptions();
+		_residualMonitor = MessageResidualMonitor.forNode(this);
+	}
+	
+	private void cacheSiblingMessages()
+	{
 		final int nEdges = _model.getSiblingCount();
 		if (nEdges != _inMsgs.length)
 		{
@@ -70,8 +93,44 @@ public class MinSumDiscrete extends SDiscreteVariableDoubleArray
 			_inMsgs[i] = edge.factorToVarMsg.representation();
 			_outMsgs[i] = edge.varToFactorMsg.representation();
 		}
-		
-		configureDampingFromOptions();
+	}
+
+	@Override
+	public void update()
+	{
+		final MessageResidualMonitor monitor = _residualMonitor;
+		if (monitor != null && monitor.isActive())
+		{
+			final ScratchArena scratch = ScratchArena.forCurrentThread();
+			final int scratchMark = scratch.mark();
+			final double[] saved = monitor.saveMessages(scratch, _outMsgs);
+			super.update();
+			monitor.recordChanges(this, saved, _outMsgs);
+			scratch.reset(scratchMark);
+		}
+		else
+		{
+			super.update();
+		}
+	}
+	
+	@Override
+	public void updateEdge(int edge)
+	{
+		final MessageResidualMonitor monitor = _residualMonitor;
+		if (monitor != null && monitor.isActive())
+		{
+			final ScratchArena scratch = ScratchArena.forCurrentThread();
+			final int scratchMark = scratch.mark();
+			final double[] saved = monitor.saveMessage(scratch, _outMsgs[edge]);
+			super.updateEdge(edge);
+			monitor.recordChange(this, edge, saved, _outMsgs[edge]);
+			scratch.reset(scratchMark);
+		}
+		else
+		{
+			super.updateEdge(edge);
+		}
 	}
 
 	/*---------------
@@ -93,7 +152,9 @@ public class MinSumDiscrete extends SDiscreteVariableDoubleArray
 		if (damping != 0.0)
 		{
 	        // Save previous output for damping
-			final double[] savedOutMsgArray = DimpleEnvironment.doubleArrayCache.allocateAtLeast(numValue);
+			final ScratchArena scratch = ScratchArena.forCurrentThread();
+			final int scratchMark = scratch.mark();
+			final double[] savedOutMsgArray = scratch.allocateDoubles(numValue);
 			System.arraycopy(outMsgs, 0, savedOutMsgArray, 0, numValue);
 
 			System.arraycopy(priors, 0, outMsgs, 0, numValue);
@@ -123,7 +184,7 @@ public class MinSumDiscrete extends SDiscreteVariableDoubleArray
 			}
 			
 			// Release temp array
-			DimpleEnvironment.doubleArrayCache.release(savedOutMsgArray);
+			scratch.reset(scratchMark);
 		}
 		else
 		{
@@ -174,8 +235,9 @@ public class MinSumDiscrete extends SDiscreteVariableDoubleArray
 		int numValue = priors.length;
 
 		// Compute the sum of all messages
-		final DoubleArrayCache cache = DimpleEnvironment.doubleArrayCache;
-		final double[] beliefs = cache.allocateAtLeast(numValue);
+		final ScratchArena scratch = ScratchArena.forCurrentThread();
+		final int scratchMark = scratch.mark();
+		final double[] beliefs = scratch.allocateDoubles(numValue);
 		System.arraycopy(priors, 0, beliefs, 0, numValue);
 
 		for (int port = numPorts; --port>=0;)
@@ -191,7 +253,7 @@ public class MinSumDiscrete extends SDiscreteVariableDoubleArray
 		
 		if (dampingParams != null)
 		{
-	        final double[] savedOutMsgArray = cache.allocateAtLeast(numValue);
+	        final double[] savedOutMsgArray = scratch.allocateDoubles(numValue);
 	        
 			for (int port = numPorts; --port>=0; )
 			{
@@ -229,10 +291,6 @@ public class MinSumDiscrete extends SDiscreteVariableDoubleArray
 						outMsgs[i] -= minPotential;
 				}
 			}
-	        
-	        
-	        // Release temp array
-	    	cache.release(savedOutMsgArray);
 		}
 		else
 		{
@@ -258,7 +316,7 @@ public class MinSumDiscrete extends SDiscreteVariableDoubleArray
 			}
 		}
 		
-		cache.release(beliefs);
+		scratch.reset(scratchMark);
 	}
 
 	/*-------------------------
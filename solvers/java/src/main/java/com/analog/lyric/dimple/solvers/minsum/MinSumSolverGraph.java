@@ -68,7 +68,18 @@ public class MinSumSolverGraph extends BPSolverGraph<ISolverFactor,ISolverVariab
 	public MinSumSolverGraph(FactorGraph factorGraph, @Nullable ISolverFactorGraph parent)
 	{
 		super(factorGraph, parent);
-		setMultithreadingManager(new MultiThreadingManager(this));
+	}
+
+	@Override
+	protected MultiThreadingManager createMultithreadingManager()
+	{
+		return new MultiThreadingManager(this);
+	}
+	
+	@Override
+	protected boolean supportsMultithreading()
+	{
+		return true;
 	}
 	
 	@Override
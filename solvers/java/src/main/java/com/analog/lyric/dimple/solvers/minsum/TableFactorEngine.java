@@ -19,10 +19,11 @@ package com.analog.lyric.dimple.solvers.minsum;
 import java.util.Arrays;
 
 import com.analog.lyric.collect.ArrayUtil;
-import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.collect.ScratchArena;
 import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
 import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
 import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.solvers.core.multithreading.ParallelTableRange;
 
 /*
  * Provides the update and updateEdge logic for minsum
@@ -40,14 +41,16 @@ public class TableFactorEngine
 	
 	public void updateEdge(int outPortNum)
 	{
-	    final int[][] table = _tableFactor.getFactorTable().getIndicesSparseUnsafe();
-	    final double[] values = _tableFactor.getFactorTable().getEnergiesSparseUnsafe();
-	    final int tableLength = table.length;
-	    final int numPorts = _factor.getSiblingCount();
+	    final IFactorTable table = _tableFactor.getFactorTable();
+	    final int[] tableIndices = table.getIndicesSparseColumnMajorUnsafe();
+	    final double[] values = table.getEnergiesSparseUnsafe();
+	    final int tableLength = values.length;
 
 
         final double[] outputMsgs = _tableFactor.getOutPortMsg(outPortNum);
         final int outputMsgLength = outputMsgs.length;
+        final ScratchArena scratch = ScratchArena.forCurrentThread();
+        final int scratchMark = scratch.mark();
 		double[] saved = ArrayUtil.EMPTY_DOUBLE_ARRAY;
         
         if (_tableFactor._dampingInUse)
@@ -55,7 +58,7 @@ public class TableFactorEngine
         	double damping = _tableFactor._dampingParams[outPortNum];
         	if (damping != 0)
         	{
-				saved = DimpleEnvironment.doubleArrayCache.allocateAtLeast(outputMsgLength);
+				saved = scratch.allocateDoubles(outputMsgLength);
 				System.arraycopy(outputMsgs, 0, saved, 0, outputMsgLength);
         	}
         }
@@ -64,21 +67,16 @@ public class TableFactorEngine
 
         final double [][] inPortMsgs = _tableFactor.getInPortMsgs();
         
-	    // Run through each row of the function table
-        for (int tableIndex = tableLength; --tableIndex>=0;)
+        if (tableLength >= _tableFactor._parallelUpdateThreshold)
+        {
+        	final ParallelMinimization parallel =
+        		new ParallelMinimization(outPortNum, inPortMsgs, outputMsgLength, tableIndices, values);
+        	parallel.run();
+        	parallel.reduce(outputMsgs, outPortNum);
+        }
+        else
         {
-        	double L = values[tableIndex];
-        	final int[] tableRow = table[tableIndex];
-        	final int outputIndex = tableRow[outPortNum];
-
-        	int inPortNum = numPorts;
-        	while (--inPortNum > outPortNum)
-        		L += inPortMsgs[inPortNum][tableRow[inPortNum]];
-        	while (--inPortNum >= 0)
-        		L += inPortMsgs[inPortNum][tableRow[inPortNum]];
-        	
-        	if (L < outputMsgs[outputIndex])
-        		outputMsgs[outputIndex] = L;				// Use the minimum value
+        	minimize(outPortNum, _tableFactor.getOutPortMsgs(), inPortMsgs, tableIndices, values, 0, tableLength);
         }
 
         // Damping
@@ -95,10 +93,7 @@ public class TableFactorEngine
         	}
         }
         
-		if (saved.length > 0)
-		{
-			DimpleEnvironment.doubleArrayCache.release(saved);
-		}
+		scratch.reset(scratchMark);
 
 	    // Normalize the outputs
         double minPotential = outputMsgs[0];
@@ -122,19 +117,21 @@ public class TableFactorEngine
 	{
 		final IFactorTable table = _tableFactor.getFactorTable();
 		final JointDomainIndexer indexer = table.getDomainIndexer();
-	    final int[][] tableIndices = table.getIndicesSparseUnsafe();
+	    final int[] tableIndices = table.getIndicesSparseColumnMajorUnsafe();
 	    final double[] values = table.getEnergiesSparseUnsafe();
-	    final int tableLength = tableIndices.length;
+	    final int tableLength = values.length;
 	    final int numPorts = _factor.getSiblingCount();
 	    double [][] outPortMsgs = _tableFactor.getOutPortMsgs();
 
 	    final boolean useDamping = _tableFactor._dampingInUse;
 	    
+	    final ScratchArena scratch = ScratchArena.forCurrentThread();
+	    final int scratchMark = scratch.mark();
 	    double[] saved = ArrayUtil.EMPTY_DOUBLE_ARRAY;
 	    	
 	    if (useDamping)
 	    {
-	    	saved = DimpleEnvironment.doubleArrayCache.allocateAtLeast(indexer.getSumOfDomainSizes());
+	    	saved = scratch.allocateDoubles(indexer.getSumOfDomainSizes());
 	    	for (int port = 0, savedOffset = 0; port < numPorts; port++)
 	    	{
 	    		final double[] outputMsgs = outPortMsgs[port];
@@ -164,25 +161,19 @@ public class TableFactorEngine
 	    final double [][] inPortMsgs = _tableFactor.getInPortMsgs();
 
 	    
-	    // Run through each row of the function table
-	    for (int tableIndex = tableLength; --tableIndex>=0;)
+	    if (tableLength >= _tableFactor._parallelUpdateThreshold)
 	    {
-	    	final int[] tableRow = tableIndices[tableIndex];
-	    	
-	    	// Sum up the function value plus the messages on all ports
-	    	double L = values[tableIndex];
+	    	final ParallelMinimization parallel = new ParallelMinimization(-1, inPortMsgs, 0, tableIndices, values);
+	    	parallel.run();
 	    	for (int port = numPorts; --port>=0;)
-	    		L += inPortMsgs[port][tableRow[port]];
-
-			// Run through each output port
-	    	for (int outPortNum = numPorts; --outPortNum>=0;)
 	    	{
-	    		final double[] outputMsgs = outPortMsgs[outPortNum];
-	    		final int outputIndex = tableRow[outPortNum];											// Index for the output value
-	    		final double LThisPort = L - inPortMsgs[outPortNum][outputIndex];			// Subtract out the message from this output port
-	    		outputMsgs[outputIndex] = Math.min(outputMsgs[outputIndex], LThisPort);
+	    		parallel.reduce(outPortMsgs[port], port);
 	    	}
 	    }
+	    else
+	    {
+	    	minimize(-1, outPortMsgs, inPortMsgs, tableIndices, values, 0, tableLength);
+	    }
 	   
 	    // Damping
 	    if (useDamping)
@@ -204,9 +195,9 @@ public class TableFactorEngine
 	    		
 	    		savedOffset += outputMsgLength;
 	    	}
-	    	
-	    	DimpleEnvironment.doubleArrayCache.release(saved);
 	    }
+	    
+	    scratch.reset(scratchMark);
     	
 	    
     	
@@ -227,4 +218,173 @@ public class TableFactorEngine
 	    	}
 	    }
 	}
+
+	/**
+	 * Minimizes over table entries in the range [{@code start}, {@code end}) into the message for
+	 * {@code outPortNum}, or into the messages for all ports if it is negative.
+	 * <p>
+	 * The entries are processed in pieces of no more than {@link ScratchArena#MAX_RETAINED_SIZE}, so that
+	 * the scratch space for their sums is reused across updates.
+	 * 
+	 * @see #minimizeEdge
+	 * @see #minimizeAllEdges
+	 */
+	private static void minimize(int outPortNum, double[][] outPortMsgs, double[][] inPortMsgs, int[] tableIndices,
+		double[] values, int start, int end)
+	{
+		final int pieceSize = Math.min(end - start, ScratchArena.MAX_RETAINED_SIZE);
+		final ScratchArena scratch = ScratchArena.forCurrentThread();
+		final int scratchMark = scratch.mark();
+		final double[] sums = scratch.allocateDoubles(pieceSize);
+		for (int pieceStart = start; pieceStart < end; pieceStart += pieceSize)
+		{
+			final int pieceEnd = Math.min(end, pieceStart + pieceSize);
+			if (outPortNum < 0)
+			{
+				minimizeAllEdges(outPortMsgs, inPortMsgs, tableIndices, values, pieceStart, pieceEnd, sums);
+			}
+			else
+			{
+				minimizeEdge(outPortNum, outPortMsgs[outPortNum], inPortMsgs, tableIndices, values,
+					pieceStart, pieceEnd, sums);
+			}
+		}
+		scratch.reset(scratchMark);
+	}
+	
+	/**
+	 * Minimizes the function value plus the input messages other than {@code outPortNum} over table entries
+	 * in the range [{@code start}, {@code end}) into {@code outputMsgs}, using {@code sums} as scratch space.
+	 * <p>
+	 * This streams through the factor table one dimension at a time using its
+	 * {@linkplain IFactorTable#getIndicesSparseColumnMajorUnsafe() column-major indices}.
+	 */
+	private static void minimizeEdge(int outPortNum, double[] outputMsgs, double[][] inPortMsgs, int[] tableIndices,
+		double[] values, int start, int end, double[] sums)
+	{
+		final int tableLength = values.length;
+		final int length = end - start;
+		
+		// Sum the function values and input messages one column of the table at a time
+		System.arraycopy(values, start, sums, 0, length);
+		for (int inPortNum = inPortMsgs.length; --inPortNum>=0;)
+		{
+			if (inPortNum != outPortNum)
+			{
+				final double[] inPortMsg = inPortMsgs[inPortNum];
+				final int offset = inPortNum * tableLength + start;
+				for (int i = length; --i>=0;)
+					sums[i] += inPortMsg[tableIndices[offset + i]];
+			}
+		}
+
+		final int outOffset = outPortNum * tableLength + start;
+		for (int i = length; --i>=0;)
+		{
+			final int outputIndex = tableIndices[outOffset + i];
+			final double L = sums[i];
+			if (L < outputMsgs[outputIndex])
+				outputMsgs[outputIndex] = L;				// Use the minimum value
+		}
+	}
+	
+	/**
+	 * Like {@link #minimizeEdge} but computes the messages for all ports at once.
+	 */
+	private static void minimizeAllEdges(double[][] outPortMsgs, double[][] inPortMsgs, int[] tableIndices,
+		double[] values, int start, int end, double[] sums)
+	{
+		final int tableLength = values.length;
+		final int length = end - start;
+		final int numPorts = inPortMsgs.length;
+		
+		// Sum up the function value plus the messages on all ports, one column of the table at a time
+		System.arraycopy(values, start, sums, 0, length);
+		for (int port = numPorts; --port>=0;)
+		{
+			final double[] inPortMsg = inPortMsgs[port];
+			final int offset = port * tableLength + start;
+			for (int i = length; --i>=0;)
+				sums[i] += inPortMsg[tableIndices[offset + i]];
+		}
+
+		// Run through each output port
+		for (int outPortNum = numPorts; --outPortNum>=0;)
+		{
+			final double[] outputMsgs = outPortMsgs[outPortNum];
+			final double[] inPortMsg = inPortMsgs[outPortNum];
+			final int offset = outPortNum * tableLength + start;
+			for (int i = length; --i>=0;)
+			{
+				final int outputIndex = tableIndices[offset + i];							// Index for the output value
+				final double LThisPort = sums[i] - inPortMsg[outputIndex];			// Subtract out the message from this output port
+				outputMsgs[outputIndex] = Math.min(outputMsgs[outputIndex], LThisPort);
+			}
+		}
+	}
+	
+	/**
+	 * Computes partial output messages for separate chunks of a large factor table in parallel.
+	 * <p>
+	 * Computes the message for a single port if constructed with a non-negative port number, and
+	 * for all ports otherwise.
+	 */
+	private static final class ParallelMinimization extends ParallelTableRange
+	{
+		private final int _outPortNum;
+		private final double[][] _inPortMsgs;
+		private final int[] _tableIndices;
+		private final double[] _values;
+		
+		/**
+		 * Partial messages indexed by chunk and port.
+		 */
+		private final double[][][] _partialMsgs;
+		
+		private ParallelMinimization(int outPortNum, double[][] inPortMsgs, int outputMsgLength, int[] tableIndices,
+			double[] values)
+		{
+			super(values.length);
+			_outPortNum = outPortNum;
+			_inPortMsgs = inPortMsgs;
+			_tableIndices = tableIndices;
+			_values = values;
+			
+			final int numPorts = inPortMsgs.length;
+			_partialMsgs = new double[chunks()][numPorts][];
+			for (double[][] chunkMsgs : _partialMsgs)
+			{
+				for (int port = numPorts; --port>=0;)
+				{
+					if (outPortNum < 0 || port == outPortNum)
+					{
+						final double[] msg = chunkMsgs[port] =
+							new double[outPortNum < 0 ? inPortMsgs[port].length : outputMsgLength];
+						Arrays.fill(msg, Double.POSITIVE_INFINITY);
+					}
+				}
+			}
+		}
+		
+		@Override
+		protected void computeChunk(int chunk, int start, int end)
+		{
+			minimize(_outPortNum, _partialMsgs[chunk], _inPortMsgs, _tableIndices, _values, start, end);
+		}
+		
+		/**
+		 * Minimizes the partial messages for {@code port} into {@code outputMsgs}.
+		 */
+		private void reduce(double[] outputMsgs, int port)
+		{
+			for (double[][] chunkMsgs : _partialMsgs)
+			{
+				final double[] partialMsg = chunkMsgs[port];
+				for (int i = outputMsgs.length; --i>=0;)
+				{
+					outputMsgs[i] = Math.min(outputMsgs[i], partialMsg[i]);
+				}
+			}
+		}
+	}
 }
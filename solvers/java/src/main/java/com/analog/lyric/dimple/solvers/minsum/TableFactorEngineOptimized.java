@@ -12,8 +12,8 @@ package com.analog.lyric.dimple.solvers.minsum;
 import java.util.Arrays;
 
 import com.analog.lyric.collect.ArrayUtil;
+import com.analog.lyric.collect.ScratchArena;
 import com.analog.lyric.collect.Tuple2;
-import com.analog.lyric.dimple.environment.DimpleEnvironment;
 import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
 import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
 import com.analog.lyric.dimple.solvers.optimizedupdate.CostEstimationTableWrapper;
@@ -226,8 +226,10 @@ public class TableFactorEngineOptimized extends TableFactorEngine
 
 			final double damping = tableFactor.getDamping(_outPortNum);
 			final boolean useDamping = tableFactor.isDampingInUse() && damping != 0;
+			final ScratchArena scratch = ScratchArena.forCurrentThread();
+			final int scratchMark = scratch.mark();
 			final double[] saved =
-				useDamping ? DimpleEnvironment.doubleArrayCache.allocateAtLeast(outputMsgLength) :
+				useDamping ? scratch.allocateDoubles(outputMsgLength) :
 					ArrayUtil.EMPTY_DOUBLE_ARRAY;
 			
 			if (useDamping)
@@ -253,7 +255,7 @@ public class TableFactorEngineOptimized extends TableFactorEngine
 					outputMsg[i] = (1 - damping) * outputMsg[i] + damping * saved[i];
 				}
 				
-				DimpleEnvironment.doubleArrayCache.release(saved);
+				scratch.reset(scratchMark);
 			}
 
 			for (int i = 0; i < outputMsgLength; i++)
@@ -281,12 +283,14 @@ public class TableFactorEngineOptimized extends TableFactorEngine
 			final double[] outputMsg = tableFactor.getOutPortMsg(_outPortNum);
 
 			final double damping = tableFactor.getDamping(_outPortNum);
+			final ScratchArena scratch = ScratchArena.forCurrentThread();
+			final int scratchMark = scratch.mark();
 			double[] saved = ArrayUtil.EMPTY_DOUBLE_ARRAY;
 			if (tableFactor.isDampingInUse())
 			{
 				if (damping != 0)
 				{
-					saved = DimpleEnvironment.doubleArrayCache.allocateAtLeast(outputMsg.length);
+					saved = scratch.allocateDoubles(outputMsg.length);
 					System.arraycopy(outputMsg, 0, saved, 0, outputMsg.length);
 				}
 			}
@@ -313,10 +317,7 @@ public class TableFactorEngineOptimized extends TableFactorEngine
 				}
 			}
 			
-			if (saved.length > 0)
-			{
-				DimpleEnvironment.doubleArrayCache.release(saved);
-			}
+			scratch.reset(scratchMark);
 
 			if (minPotential != 0.0)
 			{
@@ -17,7 +17,7 @@
 package com.analog.lyric.dimple.solvers.minsum.customFactors;
 
 import com.analog.lyric.collect.ArrayUtil;
-import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.collect.ScratchArena;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunctionUtilities;
 import com.analog.lyric.dimple.model.factors.Factor;
@@ -86,8 +86,9 @@ public class CustomXor extends com.analog.lyric.dimple.solvers.minsum.STableFact
 	{
 		final boolean useDamping = _dampingInUse;
 		final int numPorts = _numPorts;
-		double[] savedLLR =
-			useDamping ? DimpleEnvironment.doubleArrayCache.allocateAtLeast(numPorts) : ArrayUtil.EMPTY_DOUBLE_ARRAY;
+		final ScratchArena scratch = ScratchArena.forCurrentThread();
+		final int scratchMark = scratch.mark();
+		double[] savedLLR = useDamping ? scratch.allocateDoubles(numPorts) : ArrayUtil.EMPTY_DOUBLE_ARRAY;
 		
 			
 	    if (useDamping)
@@ -153,7 +154,7 @@ public class CustomXor extends com.analog.lyric.dimple.solvers.minsum.STableFact
 				}
 			}
 			
-			DimpleEnvironment.doubleArrayCache.release(savedLLR);
+			scratch.reset(scratchMark);
 		}
 
 	}
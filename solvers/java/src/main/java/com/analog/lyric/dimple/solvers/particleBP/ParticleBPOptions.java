@@ -65,6 +65,24 @@ public class ParticleBPOptions extends BPOptions
 	public static final IntegerOptionKey resamplingUpdatesPerParticle =
 		new IntegerOptionKey(ParticleBPOptions.class, "resamplingUpdatesPerParticle", 1, 1, Integer.MAX_VALUE);
 	
+	/**
+	 * Maximum number of factor function evaluations cached by a particle BP factor.
+	 * <p>
+	 * Affects particle BP {@linkplain ParticleBPRealFactor solver factor} objects.
+	 * <p>
+	 * Each factor caches the value of its factor function for every combination of its
+	 * variables' particles, so that the evaluations can be shared by all of its outgoing messages and
+	 * reused across iterations until the particles are resampled. Factors with more combinations than
+	 * this will instead evaluate the function over all combinations once per update. Setting
+	 * this to zero disables the cache.
+	 * <p>
+	 * Defaults to 2^20.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final IntegerOptionKey maxCachedFactorEvaluations =
+		new IntegerOptionKey(ParticleBPOptions.class, "maxCachedFactorEvaluations", 1 << 20, 0, Integer.MAX_VALUE);
+	
 	/**
 	 * Specifies proposal kernel for real variables in particle BP solver.
 	 * <p>
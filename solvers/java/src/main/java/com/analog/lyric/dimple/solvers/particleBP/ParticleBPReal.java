@@ -23,6 +23,7 @@ import java.util.Objects;
 
 import org.eclipse.jdt.annotation.Nullable;
 
+import com.analog.lyric.collect.ScratchArena;
 import com.analog.lyric.dimple.environment.DimpleEnvironment;
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
@@ -208,8 +209,10 @@ public class ParticleBPReal extends SRealVariableBase implements IParticleBPVari
 		final FactorFunction input = _input;
 		
 		//Compute alphas
-        final double[] logInPortMsgs = DimpleEnvironment.doubleArrayCache.allocateAtLeast(M*D);
-        final double[] alphas = DimpleEnvironment.doubleArrayCache.allocateAtLeast(M);
+        final ScratchArena scratch = ScratchArena.forCurrentThread();
+        final int scratchMark = scratch.mark();
+        final double[] logInPortMsgs = scratch.allocateDoubles(M*D);
+        final double[] alphas = scratch.allocateDoubles(M);
 		for (int m = 0; m < M; m++)
 		{
 			double prior = 1;
@@ -265,8 +268,7 @@ public class ParticleBPReal extends SRealVariableBase implements IParticleBPVari
 
 		}
 
-		DimpleEnvironment.doubleArrayCache.release(logInPortMsgs);
-	    DimpleEnvironment.doubleArrayCache.release(alphas);
+		scratch.reset(scratchMark);
 	}
 
 	public void resample()
@@ -309,7 +311,7 @@ public class ParticleBPReal extends SRealVariableBase implements IParticleBPVari
 			// Now repeat resampling this sample
 			for (int update = 0; update < _resamplingUpdatesPerSample; update++)
 			{
-				Proposal proposal = kernel.next(sampleValue, varDomain);
+				Proposal proposal = kernel.next(sampleValue, varDomain, DimpleRandomGenerator.globalRandom());
 				double proposalValue = proposal.value.getDouble();
 
 				// If outside the bounds, then reject
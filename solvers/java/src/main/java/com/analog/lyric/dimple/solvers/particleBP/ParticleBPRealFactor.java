@@ -17,12 +17,17 @@
 package com.analog.lyric.dimple.solvers.particleBP;
 
 
+import org.eclipse.jdt.annotation.Nullable;
+
 import com.analog.lyric.collect.CombinatoricIterator;
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.values.RealValue;
+import com.analog.lyric.dimple.options.DimpleOptions;
 import com.analog.lyric.dimple.solvers.core.SDiscreteWeightEdge;
 import com.analog.lyric.dimple.solvers.core.SFactorBase;
+import com.analog.lyric.dimple.solvers.core.multithreading.ParallelTableRange;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteMessage;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.dimple.solvers.sumproduct.SumProductDiscreteEdge;
@@ -34,8 +39,28 @@ import com.analog.lyric.dimple.solvers.sumproduct.SumProductDiscreteEdge;
  */
 public class ParticleBPRealFactor extends SFactorBase
 {
+	/*-------
+	 * State
+	 */
+	
 	protected double _beta = 1;
 	
+	/**
+	 * Value of {@link ParticleBPOptions#maxCachedFactorEvaluations} as of last initialization.
+	 */
+	private int _maxCachedEvaluations = ParticleBPOptions.maxCachedFactorEvaluations.defaultValue();
+	
+	/**
+	 * Cached factor function values for every combination of sibling particles, in
+	 * {@link CombinatoricIterator} order, or null if not yet computed.
+	 */
+	private @Nullable double[] _evaluations = null;
+	
+	/**
+	 * Particle locations for each sibling at the time {@link #_evaluations} was computed.
+	 */
+	private double[][] _evaluationParticles = new double[0][];
+	
 	ParticleBPRealFactor(Factor factor, ISolverFactorGraph parent)
 	{
 		super(factor, parent);
@@ -83,73 +108,93 @@ public class ParticleBPRealFactor extends SFactorBase
 	@Override
 	public void doUpdateEdge(int outPortNum)
 	{
-		final int nEdges = getSiblingCount();
-		FactorFunction factorFunction = _model.getFactorFunction();
-
-		final DiscreteMessage outputMsg = getSiblingEdgeState(outPortNum).factorToVarMsg;
-		outputMsg.setWeightsToZero();
-        final double[] outputWeights = outputMsg.representation();
-        
-        final CombinatoricIterator<RealValue> iter = getCombinatoricIterator();
-        final int[] variableIndices = iter.indices();
-        while (iter.hasNext())
-        {
-        	RealValue[] values = iter.next();
-        	double prob = factorFunction.eval(values);
-			
-			if (_beta != 1) prob = Math.pow(prob, _beta);
-
-        	for (int inPortNum = 0; inPortNum < nEdges; inPortNum++)
-        	{
-        		if (inPortNum != outPortNum)
-        		{
-        			prob *= getSiblingEdgeState(inPortNum).varToFactorMsg.getWeight(variableIndices[inPortNum]);
-        		}
-        	}
-
-        	outputWeights[variableIndices[outPortNum]] += prob;
-        }
-        
-        outputMsg.normalize();
+		updateMessages(outPortNum);
 	}
 	
-	
 	@Override
 	protected void doUpdate()
 	{
-		FactorFunction factorFunction = _model.getFactorFunction();
+		updateMessages(-1);
+	}
+	
+	/**
+	 * Computes outgoing message for {@code outPortNum}, or for all edges if negative, from a
+	 * single pass over all combinations of particles.
+	 */
+	private void updateMessages(int outPortNum)
+	{
+		final int nEdges = getSiblingCount();
+		final double beta = _beta;
 
-        final CombinatoricIterator<RealValue> iter = getCombinatoricIterator();
-        final int[] variableIndices = iter.indices();
-        
-		for (int outPortNum = 0, n = getSiblingCount(); outPortNum < n; outPortNum++)
+		final double[][] inputWeights = new double[nEdges][];
+		final double[][] outputWeights = new double[nEdges][];
+		final int[] limits = new int[nEdges];
+		long size = 1;
+		for (int i = 0; i < nEdges; ++i)
 		{
-			final DiscreteMessage outputMsg = getSiblingEdgeState(outPortNum).factorToVarMsg;
-			outputMsg.setWeightsToZero();
-			
-			final double[] outputWeights = outputMsg.representation();
-
-			iter.reset();
-			while (iter.hasNext())
+			final SDiscreteWeightEdge edge = getSiblingEdgeState(i);
+			inputWeights[i] = edge.varToFactorMsg.representation();
+			if (outPortNum < 0 || outPortNum == i)
 			{
-				RealValue[] variableValues = iter.next();
-				double prob = 1;
-				prob = factorFunction.eval(variableValues);
-				if (_beta != 1) prob = Math.pow(prob, _beta);
+				edge.factorToVarMsg.setWeightsToZero();
+				outputWeights[i] = edge.factorToVarMsg.representation();
+			}
+			limits[i] = getSibling(i).getParticleValueObjects().length;
+			size = size * limits[i];
+		}
+		
+		final double[] evaluations = cachedEvaluations();
+		final CombinatoricIterator<RealValue> iter = evaluations == null ? getCombinatoricIterator() : null;
+		
+		final int[] indices = new int[nEdges];
+		final double[] partials = new double[nEdges];
+		for (int joint = 0; joint < size; ++joint)
+		{
+			double prob;
+			if (iter != null)
+			{
+				prob = _model.getFactorFunction().eval(iter.next());
+			}
+			else
+			{
+				prob = evaluations[joint];
+			}
+			if (beta != 1) prob = Math.pow(prob, beta);
 
-				for (int inPortNum = 0; inPortNum < outPortNum; inPortNum++)
+			if (prob != 0)
+			{
+				// Accumulate product of all inputs before each edge in partials,
+				// then multiply in the product of all inputs after it on the way back.
+				for (int i = 0; i < nEdges; ++i)
 				{
-					prob *= getSiblingEdgeState(inPortNum).varToFactorMsg.getWeight(variableIndices[inPortNum]);
+					partials[i] = prob;
+					prob *= inputWeights[i][indices[i]];
 				}
-				for (int inPortNum = outPortNum + 1; inPortNum < n; inPortNum++)
+				prob = 1;
+				for (int i = nEdges; --i >= 0; )
 				{
-					prob *= getSiblingEdgeState(inPortNum).varToFactorMsg.getWeight(variableIndices[inPortNum]);
+					final double[] output = outputWeights[i];
+					if (output != null)
+					{
+						output[indices[i]] += partials[i] * prob;
+					}
+					prob *= inputWeights[i][indices[i]];
 				}
-
-				outputWeights[variableIndices[outPortNum]] += prob;
 			}
-
-			outputMsg.normalize();
+			
+			// Advance indices in the same order as CombinatoricIterator
+			for (int i = 0; i < nEdges && ++indices[i] == limits[i]; ++i)
+			{
+				indices[i] = 0;
+			}
+		}
+		
+		for (int i = 0; i < nEdges; ++i)
+		{
+			if (outputWeights[i] != null)
+			{
+				getSiblingEdgeState(i).factorToVarMsg.normalize();
+			}
 		}
 	}
 	
@@ -163,6 +208,9 @@ public class ParticleBPRealFactor extends SFactorBase
 	{
 		super.initialize();
 
+		_maxCachedEvaluations = getOptionOrDefault(ParticleBPOptions.maxCachedFactorEvaluations);
+		_evaluations = null;
+		_evaluationParticles = new double[0][];
 	}
 
     @Deprecated
@@ -238,4 +286,117 @@ public class ParticleBPRealFactor extends SFactorBase
 		}
 		return new CombinatoricIterator<>(RealValue.class, particlesPerVar);
 	}
+	
+	/**
+	 * Returns factor function values for every combination of sibling particles, in
+	 * {@link CombinatoricIterator} order, or null if there are too many combinations to cache.
+	 * <p>
+	 * The values are only recomputed if the location of any particle has changed since they
+	 * were last computed, which typically only happens when variables are
+	 * {@linkplain ParticleBPReal#resample() resampled}. The values do not include the
+	 * {@linkplain #setBeta beta} exponent, so they remain valid while annealing.
+	 */
+	private @Nullable double[] cachedEvaluations()
+	{
+		final int nEdges = getSiblingCount();
+		final RealValue[][] particlesPerVar = new RealValue[nEdges][];
+		long size = 1;
+		for (int i = 0; i < nEdges; ++i)
+		{
+			particlesPerVar[i] = getSibling(i).getParticleValueObjects();
+			size *= particlesPerVar[i].length;
+			if (size > _maxCachedEvaluations)
+			{
+				_evaluations = null;
+				return null;
+			}
+		}
+		
+		double[] evaluations = _evaluations;
+		boolean valid = evaluations != null && _evaluationParticles.length == nEdges;
+		if (!valid)
+		{
+			_evaluationParticles = new double[nEdges][];
+		}
+		for (int i = 0; i < nEdges; ++i)
+		{
+			final RealValue[] particles = particlesPerVar[i];
+			double[] locations = _evaluationParticles[i];
+			if (locations == null || locations.length != particles.length)
+			{
+				locations = _evaluationParticles[i] = new double[particles.length];
+				valid = false;
+			}
+			for (int j = 0; j < particles.length; ++j)
+			{
+				final double location = particles[j].getDouble();
+				if (location != locations[j])
+				{
+					locations[j] = location;
+					valid = false;
+				}
+			}
+		}
+		
+		if (!valid)
+		{
+			final int n = (int)size;
+			final double[] values = evaluations = _evaluations = new double[n];
+			final FactorFunction function = _model.getFactorFunction();
+			
+			if (function.isThreadSafe() &&
+				n >= DimpleEnvironment.active().getOptionOrDefault(DimpleOptions.parallelTablePopulationThreshold))
+			{
+				new ParallelTableRange(n) {
+					@Override
+					protected void computeChunk(int chunk, int start, int end)
+					{
+						evaluate(function, particlesPerVar, values, start, end);
+					}
+				}.run();
+			}
+			else
+			{
+				evaluate(function, particlesPerVar, values, 0, n);
+			}
+		}
+		
+		return evaluations;
+	}
+	
+	/**
+	 * Evaluates {@code function} for combinations of particles from {@code start} up to
+	 * but not including {@code end} in {@link CombinatoricIterator} order.
+	 */
+	private static void evaluate(FactorFunction function, RealValue[][] particlesPerVar, double[] evaluations,
+		int start, int end)
+	{
+		final int nEdges = particlesPerVar.length;
+		final int[] indices = new int[nEdges];
+		final RealValue[] values = new RealValue[nEdges];
+		for (int i = 0, joint = start; i < nEdges; ++i)
+		{
+			final int limit = particlesPerVar[i].length;
+			indices[i] = joint % limit;
+			joint /= limit;
+			values[i] = particlesPerVar[i][indices[i]];
+		}
+		
+		for (int joint = start; joint < end; ++joint)
+		{
+			evaluations[joint] = function.eval(values);
+			
+			for (int i = 0; i < nEdges; ++i)
+			{
+				final RealValue[] particles = particlesPerVar[i];
+				if (++indices[i] < particles.length)
+				{
+					values[i] = particles[indices[i]];
+					break;
+				}
+				indices[i] = 0;
+				values[i] = particles[0];
+			}
+		}
+	}
 }
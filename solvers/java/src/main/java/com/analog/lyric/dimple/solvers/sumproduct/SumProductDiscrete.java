@@ -25,12 +25,14 @@ import java.util.Objects;
 import org.eclipse.jdt.annotation.Nullable;
 
 import com.analog.lyric.collect.ArrayUtil;
+import com.analog.lyric.collect.ScratchArena;
 import com.analog.lyric.dimple.environment.DimpleEnvironment;
 import com.analog.lyric.dimple.model.core.EdgeState;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.variables.Discrete;
 import com.analog.lyric.dimple.model.variables.Variable;
 import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.solvers.core.MessageResidualMonitor;
 import com.analog.lyric.dimple.solvers.core.SDiscreteVariableDoubleArray;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteMessage;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
@@ -52,6 +54,19 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 	protected @Nullable double[] _dampingParams = null;
 	protected double[][] _inMsgs = ArrayUtil.EMPTY_DOUBLE_ARRAY_ARRAY;
 	protected double[][] _outMsgs = ArrayUtil.EMPTY_DOUBLE_ARRAY_ARRAY;
+	private @Nullable MessageResidualMonitor _residualMonitor = null;
+	
+	/**
+	 * If true, compute outgoing messages in the product domain.
+	 * @see SumProductOptions#productDomainVariableUpdate
+	 */
+	private boolean _productDomainUpdate = false;
+	
+	/**
+	 * Running products whose largest element falls below this value are rescaled so that
+	 * it is one.
+	 */
+	private static final double PRODUCT_RESCALE_THRESHOLD = 1e-100;
 	
     /*--------------
      * Construction
@@ -67,6 +82,28 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 	{
 		super.initialize();
 
+		cacheSiblingMessages();
+		configureDampingFromOptions();
+		_productDomainUpdate = getOptionOrDefault(SumProductOptions.productDomainVariableUpdate);
+		
+		_residualMonitor = MessageResidualMonitor.forNode(this);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Recaches the sibling edge messages and per-edge damping parameters.
+	 */
+	@Override
+	public void notifySiblingsChanged()
+	{
+		cacheSiblingMessages();
+		configureDampingFromOptions();
+		_residualMonitor = MessageResidualMonitor.forNode(this);
+	}
+	
+	private void cacheSiblingMessages()
+	{
 		final int nEdges = _model.getSiblingCount();
 		if (nEdges != _inMsgs.length)
 		{
@@ -79,8 +116,48 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 			_inMsgs[i] = edge.factorToVarMsg.representation();
 			_outMsgs[i] = edge.varToFactorMsg.representation();
 		}
-		
-		configureDampingFromOptions();
+	}
+
+	/*---------------------
+	 * ISolverNode methods
+	 */
+	
+	@Override
+	public void update()
+	{
+		final MessageResidualMonitor monitor = _residualMonitor;
+		if (monitor != null && monitor.isActive())
+		{
+			final ScratchArena scratch = ScratchArena.forCurrentThread();
+			final int scratchMark = scratch.mark();
+			final double[] saved = monitor.saveMessages(scratch, _outMsgs);
+			super.update();
+			monitor.recordChanges(this, saved, _outMsgs);
+			scratch.reset(scratchMark);
+		}
+		else
+		{
+			super.update();
+		}
+	}
+	
+	@Override
+	public void updateEdge(int edge)
+	{
+		final MessageResidualMonitor monitor = _residualMonitor;
+		if (monitor != null && monitor.isActive())
+		{
+			final ScratchArena scratch = ScratchArena.forCurrentThread();
+			final int scratchMark = scratch.mark();
+			final double[] saved = monitor.saveMessage(scratch, _outMsgs[edge]);
+			super.updateEdge(edge);
+			monitor.recordChange(this, edge, saved, _outMsgs[edge]);
+			scratch.reset(scratchMark);
+		}
+		else
+		{
+			super.updateEdge(edge);
+		}
 	}
 
 	public Variable getVariable()
@@ -131,6 +208,14 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
     @Override
 	protected void doUpdateEdge(int outPortNum)
     {
+		if (_productDomainUpdate && doProductDomainUpdateEdge(outPortNum))
+		{
+			if (_calculateDerivative)
+			{
+				updateDerivative(outPortNum);
+			}
+			return;
+		}
     	
         final double minLog = -100; // FIXME
         double[] priors = _input;
@@ -146,7 +231,9 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 		if (damping != 0.0)
 		{
 			// Save previous output for damping
-			final double[] savedOutMsgArray = DimpleEnvironment.doubleArrayCache.allocateAtLeast(M);
+			final ScratchArena scratch = ScratchArena.forCurrentThread();
+			final int scratchMark = scratch.mark();
+			final double[] savedOutMsgArray = scratch.allocateDoubles(M);
 			System.arraycopy(outMsgs,  0, savedOutMsgArray, 0, M);
  
 			// We do not assume that the prior is normalized
@@ -195,7 +282,7 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
     			outMsgs[m] = outMsgs[m]*inverseDamping + savedOutMsgArray[m]*damping;
     		
     		// Release temp array
-    		DimpleEnvironment.doubleArrayCache.release(savedOutMsgArray);
+    		scratch.reset(scratchMark);
 		}
 		else
 		{
@@ -257,6 +344,16 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
     @Override
 	protected void doUpdate()
     {
+		if (_productDomainUpdate && doProductDomainUpdate())
+		{
+			if (_calculateDerivative)
+			{
+				for (int i = 0, n = getSiblingCount(); i < n; i++)
+					updateDerivative(i);
+			}
+			return;
+		}
+		
         final double minLog = -100; // FIXME
         final double[] priors = _input;
         final int M = priors.length;
@@ -264,8 +361,10 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
         
         //Compute alphas
         final double[][] inMsgs = _inMsgs;
-        final double[] logInPortMsgs = DimpleEnvironment.doubleArrayCache.allocateAtLeast(M*D);
-        final double[] alphas = DimpleEnvironment.doubleArrayCache.allocateAtLeast(M);
+        final ScratchArena scratch = ScratchArena.forCurrentThread();
+        final int scratchMark = scratch.mark();
+        final double[] logInPortMsgs = scratch.allocateDoubles(M*D);
+        final double[] alphas = scratch.allocateDoubles(M);
         
 		// We do not assume that the prior is normalized
 		double priorSum = 0.0;
@@ -291,7 +390,7 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 		
 		if (dampingParams != null)
 		{
-			final double[] savedOutMsgArray = DimpleEnvironment.doubleArrayCache.allocateAtLeast(M);
+			final double[] savedOutMsgArray = scratch.allocateDoubles(M);
 			
 			for (int out_d = 0, dm = 0; out_d < D; out_d++, dm += M )
 			{
@@ -340,8 +439,6 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 				}
 
 			}
-
-			DimpleEnvironment.doubleArrayCache.release(savedOutMsgArray);
 		}
 		else // no damping
 		{
@@ -391,8 +488,7 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 			}
 		}
 		
-	    DimpleEnvironment.doubleArrayCache.release(logInPortMsgs);
-	    DimpleEnvironment.doubleArrayCache.release(alphas);
+	    scratch.reset(scratchMark);
 	   
 	    if (_calculateDerivative)
 	    {
@@ -402,7 +498,235 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 	    
     }
     
-        
+
+	/**
+	 * Product domain version of {@link #doUpdateEdge(int)}.
+	 * <p>
+	 * @return false without modifying any message if every element of the outgoing message would be zero,
+	 * in which case the caller should fall back on the log domain computation.
+	 * @see SumProductOptions#productDomainVariableUpdate
+	 */
+	private boolean doProductDomainUpdateEdge(int outPortNum)
+	{
+		final double[] priors = _input;
+		final int M = priors.length;
+		final int D = _model.getSiblingCount();
+		final double[][] inMsgs = _inMsgs;
+		final double[] outMsgs = _outMsgs[outPortNum];
+		final double[] dampingParams = _dampingParams;
+		final double damping = dampingParams != null ? dampingParams[outPortNum] : 0.0;
+		
+		final ScratchArena scratch = ScratchArena.forCurrentThread();
+		final int scratchMark = scratch.mark();
+		final double[] product = scratch.allocateDoubles(M);
+		System.arraycopy(priors, 0, product, 0, M);
+		
+		// Log of factor by which product has been scaled down.
+		double logScale = 0.0;
+		for (int d = D; --d > outPortNum;)
+		{
+			logScale += multiplyAndRescale(product, 0, product, 0, inMsgs[d], M);
+		}
+		for (int d = outPortNum; --d >= 0;)
+		{
+			logScale += multiplyAndRescale(product, 0, product, 0, inMsgs[d], M);
+		}
+		
+		double sum = 0.0;
+		for (int m = M; --m>=0;)
+		{
+			sum += product[m];
+		}
+		
+		if (sum == 0.0)
+		{
+			scratch.reset(scratchMark);
+			return false;
+		}
+		
+		if (damping != 0.0)
+		{
+			final double inverseDamping = 1.0 - damping;
+			for (int m = M; --m>=0;)
+			{
+				outMsgs[m] = product[m] / sum * inverseDamping + outMsgs[m] * damping;
+			}
+		}
+		else
+		{
+			// Same normalization energy as log domain computation, which does not assume
+			// that the prior is normalized in this case.
+			double normalizationEnergy = -logScale;
+			for (int d = D; -- d> outPortNum;)
+				normalizationEnergy += getSiblingEdgeState(d).factorToVarMsg.getNormalizationEnergy();
+			for (int d = outPortNum; --d >=0;)
+				normalizationEnergy += getSiblingEdgeState(d).factorToVarMsg.getNormalizationEnergy();
+			
+			System.arraycopy(product, 0, outMsgs, 0, M);
+			final DiscreteMessage outMsg = getSiblingEdgeState(outPortNum).varToFactorMsg;
+			outMsg.setNormalizationEnergy(normalizationEnergy);
+			outMsg.normalize();
+		}
+		
+		scratch.reset(scratchMark);
+		return true;
+	}
+	
+	/**
+	 * Product domain version of {@link #doUpdate()}.
+	 * <p>
+	 * The outgoing message for edge d is the product of the normalized prior, the incoming messages on
+	 * edges before d (the prefix) and those on edges after d (the suffix). All of the prefix products
+	 * are computed in one forward pass, and the suffix products are accumulated in a backward pass that
+	 * also forms the outgoing messages, so the whole update takes O(D*M) multiplications.
+	 * <p>
+	 * @return false without modifying any message if every element of some outgoing message would be zero,
+	 * in which case the caller should fall back on the log domain computation.
+	 * @see SumProductOptions#productDomainVariableUpdate
+	 */
+	private boolean doProductDomainUpdate()
+	{
+		final double[] priors = _input;
+		final int M = priors.length;
+		final int D = _model.getSiblingCount();
+		final double[][] inMsgs = _inMsgs;
+		
+		if (D == 0)
+		{
+			return true;
+		}
+		
+		final ScratchArena scratch = ScratchArena.forCurrentThread();
+		final int scratchMark = scratch.mark();
+		
+		// prefixes[d*M + m] holds product of prior and incoming messages on edges [0,d) scaled down
+		// by exp(logScales[d]). Later reused to hold the unnormalized outgoing messages.
+		final double[] prefixes = scratch.allocateDoubles(M*D);
+		final double[] logScales = scratch.allocateDoubles(D);
+		final double[] sums = scratch.allocateDoubles(D);
+		final double[] suffix = scratch.allocateDoubles(M);
+
+		// We do not assume that the prior is normalized
+		double priorSum = 0.0;
+		for (double p : priors)
+			priorSum += p;
+		for (int m = M; --m>=0;)
+			prefixes[m] = priors[m] / priorSum;
+		logScales[0] = 0.0;
+		
+		for (int d = 1, dm = M; d < D; ++d, dm += M)
+		{
+			logScales[d] = logScales[d - 1] + multiplyAndRescale(prefixes, dm, prefixes, dm - M, inMsgs[d - 1], M);
+		}
+		
+		Arrays.fill(suffix, 0, M, 1.0);
+		double suffixLogScale = 0.0;
+		
+		for (int d = D, dm = M*D; --d >= 0;)
+		{
+			dm -= M;
+			
+			double sum = 0.0;
+			for (int m = M; --m>=0;)
+			{
+				final double out = prefixes[dm + m] * suffix[m];
+				prefixes[dm + m] = out;
+				sum += out;
+			}
+			
+			if (sum == 0.0)
+			{
+				scratch.reset(scratchMark);
+				return false;
+			}
+			
+			sums[d] = sum;
+			logScales[d] += suffixLogScale;
+			
+			if (d > 0)
+			{
+				suffixLogScale += multiplyAndRescale(suffix, 0, suffix, 0, inMsgs[d], M);
+			}
+		}
+		
+		final double[] dampingParams = _dampingParams;
+		
+		if (dampingParams != null)
+		{
+			for (int d = 0, dm = 0; d < D; ++d, dm += M)
+			{
+				final double[] outMsgs = _outMsgs[d];
+				final double damping = dampingParams[d];
+				final double inverseDamping = 1.0 - damping;
+				final double sum = sums[d];
+				
+				for (int m = M; --m>=0;)
+				{
+					final double out = prefixes[dm + m] / sum;
+					outMsgs[m] = damping != 0 ? out * inverseDamping + outMsgs[m] * damping : out;
+				}
+			}
+		}
+		else
+		{
+	        double incomingNormalizationEnergy = 0.0;
+	        for (int d = 0; d < D; ++d)
+	        {
+	        	incomingNormalizationEnergy += getSiblingEdgeState(d).factorToVarMsg.getNormalizationEnergy();
+	        }
+
+			for (int d = 0, dm = 0; d < D; ++d, dm += M)
+			{
+				final double[] outMsgs = _outMsgs[d];
+				final double sum = sums[d];
+				
+				for (int m = M; --m>=0;)
+				{
+					outMsgs[m] = prefixes[dm + m] / sum;
+				}
+				
+				final SumProductDiscreteEdge outEdge = getSiblingEdgeState(d);
+				final double normalizationEnergy =
+					weightToEnergy(sum) - logScales[d] + incomingNormalizationEnergy - outEdge.factorToVarMsg.getNormalizationEnergy();
+				outEdge.varToFactorMsg.setNormalizationEnergy(normalizationEnergy);
+			}
+		}
+		
+		scratch.reset(scratchMark);
+		return true;
+	}
+	
+	/**
+	 * Sets {@code out[outOffset+m]} to {@code a[aOffset+m] * b[m]} for {@code m} in [0,M).
+	 * <p>
+	 * If the largest of the products is positive but less than {@link #PRODUCT_RESCALE_THRESHOLD}, the
+	 * products are divided by it to avoid underflow in subsequent multiplications.
+	 * <p>
+	 * @return the log of the factor by which the products were divided, or zero if not rescaled.
+	 */
+	private static double multiplyAndRescale(double[] out, int outOffset, double[] a, int aOffset, double[] b, int M)
+	{
+		double max = 0.0;
+		for (int m = M; --m>=0;)
+		{
+			final double product = a[aOffset + m] * b[m];
+			out[outOffset + m] = product;
+			max = Math.max(max, product);
+		}
+		
+		if (max < PRODUCT_RESCALE_THRESHOLD && max > 0.0)
+		{
+			final double scale = 1.0 / max;
+			for (int m = M; --m>=0;)
+			{
+				out[outOffset + m] *= scale;
+			}
+			return Math.log(max);
+		}
+		
+		return 0.0;
+	}
+	
     @Override
 	public double[] getBelief()
     {
@@ -17,15 +17,34 @@
 package com.analog.lyric.dimple.solvers.sumproduct;
 
 import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.options.BooleanOptionKey;
 
 /**
  * Options for sum-product solver.
  * <p>
- * There are currently no options specific to the SumProduct solver. See {@link BPOptions} instead.
+ * See also the options in {@link BPOptions}, which apply to the SumProduct solver.
  * <p>
  * @since 0.07
  * @author Christopher Barber
  */
 public class SumProductOptions extends BPOptions
 {
+	/**
+	 * Specifies whether discrete variables compute their outgoing messages in the product domain.
+	 * <p>
+	 * When false (the default), {@linkplain SumProductDiscrete discrete sum-product variables} compute
+	 * outgoing messages by converting incoming messages to the log domain, summing them, and converting back,
+	 * which requires a logarithm and an exponential per edge and domain element. When true, messages are
+	 * instead multiplied directly, with periodic rescaling to avoid underflow, and when all of a variable's
+	 * edges are updated at once, the message for each edge is formed from products of the incoming messages
+	 * on the edges before and after it. The results agree with the log domain computation except that
+	 * zero weights in incoming messages are preserved exactly rather than being clamped to a very small
+	 * value. If every element of an outgoing message would be zero, the log domain computation is used instead.
+	 * <p>
+	 * This option is read when the solver variable is initialized.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final BooleanOptionKey productDomainVariableUpdate =
+		new BooleanOptionKey(SumProductOptions.class, "productDomainVariableUpdate", false);
 }
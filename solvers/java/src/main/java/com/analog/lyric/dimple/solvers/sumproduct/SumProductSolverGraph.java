@@ -46,6 +46,7 @@ import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
 import com.analog.lyric.dimple.model.core.EdgeState;
 import com.analog.lyric.dimple.model.core.FactorGraph;
 import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.repeated.GraphInstances;
 import com.analog.lyric.dimple.model.variables.Discrete;
 import com.analog.lyric.dimple.model.variables.FiniteFieldVariable;
 import com.analog.lyric.dimple.model.variables.Real;
@@ -89,6 +90,7 @@ import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomGaussianNe
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomGaussianProduct;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomGaussianSubtract;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomGaussianSum;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomGraphInstances;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomMultiplexer;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomMultivariateGaussianNegate;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomMultivariateGaussianProduct;
@@ -123,12 +125,34 @@ public class SumProductSolverGraph extends BPSolverGraph<ISolverFactor,ISolverVa
 	public SumProductSolverGraph(FactorGraph factorGraph, @Nullable ISolverFactorGraph parent)
 	{
 		super(factorGraph, parent);
-		setMultithreadingManager(new MultiThreadingManager(this));
 		
-		// Set default Gibbs options for sampled factors.
-		setOption(GibbsOptions.numSamples, SampledFactor.DEFAULT_SAMPLES_PER_UPDATE);
-		setOption(GibbsOptions.burnInScans, SampledFactor.DEFAULT_BURN_IN_SCANS_PER_UPDATE);
-		setOption(GibbsOptions.scansPerSample, SampledFactor.DEFAULT_SCANS_PER_SAMPLE);
+		// Set default Gibbs options for sampled factors. Subgraphs of a sum-product graph inherit
+		// these from their parent, which avoids allocating a local option map for every instance
+		// of a template subgraph.
+		if (!(parent instanceof SumProductSolverGraph))
+		{
+			setOption(GibbsOptions.numSamples, SampledFactor.DEFAULT_SAMPLES_PER_UPDATE);
+			setOption(GibbsOptions.burnInScans, SampledFactor.DEFAULT_BURN_IN_SCANS_PER_UPDATE);
+			setOption(GibbsOptions.scansPerSample, SampledFactor.DEFAULT_SCANS_PER_SAMPLE);
+		}
+	}
+
+	@Override
+	protected MultiThreadingManager createMultithreadingManager()
+	{
+		return new MultiThreadingManager(this);
+	}
+	
+	@Override
+	protected boolean supportsMultithreading()
+	{
+		return true;
+	}
+	
+	@Override
+	protected boolean supportsGraphInstances()
+	{
+		return true;
 	}
 
 	/*----------------------
@@ -203,6 +227,9 @@ public class SumProductSolverGraph extends BPSolverGraph<ISolverFactor,ISolverVa
 		boolean noFF = factorFunction instanceof CustomFactorFunctionWrapper;
 		boolean hasConstants = factor.getFactorFunction().hasConstants();
 		
+		if (factorFunction instanceof GraphInstances)
+			return new CustomGraphInstances(factor, this);
+		
 		if (factor.isDiscrete())	// Factor contains only discrete variables
 		{
 			// First see if any custom factor should be created
@@ -25,6 +25,7 @@ import java.util.Objects;
 import org.eclipse.jdt.annotation.Nullable;
 
 import com.analog.lyric.collect.ArrayUtil;
+import com.analog.lyric.collect.ScratchArena;
 import com.analog.lyric.collect.Selection;
 import com.analog.lyric.dimple.environment.DimpleEnvironment;
 import com.analog.lyric.dimple.exceptions.DimpleException;
@@ -34,10 +35,12 @@ import com.analog.lyric.dimple.factorfunctions.core.FactorTableRepresentation;
 import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
 import com.analog.lyric.dimple.model.core.EdgeState;
 import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.values.Value;
 import com.analog.lyric.dimple.model.variables.Variable;
 import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.solvers.core.MessageResidualMonitor;
 import com.analog.lyric.dimple.solvers.core.STableFactorDoubleArray;
-import com.analog.lyric.dimple.solvers.core.kbest.IKBestFactor;
+import com.analog.lyric.dimple.solvers.core.kbest.IKBestValueFactor;
 import com.analog.lyric.dimple.solvers.core.kbest.KBestFactorEngine;
 import com.analog.lyric.dimple.solvers.core.kbest.KBestFactorTableEngine;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteMessage;
@@ -54,7 +57,7 @@ import com.analog.lyric.util.misc.Internal;
  * @since 0.07
  */
 public class SumProductTableFactor extends STableFactorDoubleArray
-	implements IKBestFactor, ISTableFactorSupportingOptimizedUpdate
+	implements IKBestValueFactor, ISTableFactorSupportingOptimizedUpdate
 {
 	/*
 	 * We cache all of the double arrays we use during the update.  This saves
@@ -71,6 +74,8 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 	protected boolean _kIsSmallerThanDomain = false;
 	protected boolean _updateDerivative = false;
 	protected boolean _dampingInUse = false;
+	protected int _parallelUpdateThreshold = Integer.MAX_VALUE;
+	private @Nullable MessageResidualMonitor _residualMonitor = null;
 	
 	/*--------------
 	 * Construction
@@ -98,6 +103,7 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 		
 		configureDampingFromOptions();
 		updateK(getOptionOrDefault(BPOptions.maxMessageSize));
+		_parallelUpdateThreshold = getOptionOrDefault(BPOptions.parallelUpdateThreshold);
 
 		final int nSiblings = getSiblingCount();
 		if (nSiblings != _inputMessages.length)
@@ -112,6 +118,46 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 			_inputMessages[i] = edge.varToFactorMsg.representation();
 			_outputMessages[i] = edge.factorToVarMsg.representation();
 		}
+		
+		_residualMonitor = MessageResidualMonitor.forNode(this);
+	}
+	
+	@Override
+	public void update()
+	{
+		final MessageResidualMonitor monitor = _residualMonitor;
+		if (monitor != null && monitor.isActive())
+		{
+			final ScratchArena scratch = ScratchArena.forCurrentThread();
+			final int scratchMark = scratch.mark();
+			final double[] saved = monitor.saveMessages(scratch, _outputMessages);
+			super.update();
+			monitor.recordChanges(this, saved, _outputMessages);
+			scratch.reset(scratchMark);
+		}
+		else
+		{
+			super.update();
+		}
+	}
+	
+	@Override
+	public void updateEdge(int edge)
+	{
+		final MessageResidualMonitor monitor = _residualMonitor;
+		if (monitor != null && monitor.isActive())
+		{
+			final ScratchArena scratch = ScratchArena.forCurrentThread();
+			final int scratchMark = scratch.mark();
+			final double[] saved = monitor.saveMessage(scratch, _outputMessages[edge]);
+			super.updateEdge(edge);
+			monitor.recordChange(this, edge, saved, _outputMessages[edge]);
+			scratch.reset(scratchMark);
+		}
+		else
+		{
+			super.updateEdge(edge);
+		}
 	}
 	
 	@Internal
@@ -465,6 +511,12 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 		return getFactor().getFactorFunction().eval(inputs);
 	}
 
+	@Override
+	public double evalFactorFunction(Value[] values)
+	{
+		return getFactor().getFactorFunction().eval(values);
+	}
+
 	@Override
 	public void initMsg(double[] msg)
 	{
@@ -18,11 +18,13 @@ package com.analog.lyric.dimple.solvers.sumproduct;
 
 import java.util.Arrays;
 
-import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.collect.ScratchArena;
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.exceptions.NormalizationException;
 import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
 import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.solvers.core.multithreading.ParallelTableRange;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteMessage;
 
 /*
@@ -42,9 +44,9 @@ public class TableFactorEngine
 	public void updateEdge(int outPortNum)
 	{
 		final SumProductTableFactor tableFactor = _tableFactor;
-	    final int[][] table = tableFactor.getFactorTable().getIndicesSparseUnsafe();
-	    final double[] values = tableFactor.getFactorTable().getWeightsSparseUnsafe();
-	    final int tableLength = table.length;
+		final IFactorTable table = tableFactor.getFactorTable();
+	    final int[] tableIndices = table.getIndicesSparseColumnMajorUnsafe();
+	    final double[] values = table.getWeightsSparseUnsafe();
 	    final int numPorts = _factor.getSiblingCount();
 	    
         final double[] outputMsgs = tableFactor.getOutPortMsg(outPortNum);
@@ -56,26 +58,17 @@ public class TableFactorEngine
 
     	if (damping != 0.0)
     	{
-    		final double[] saved = DimpleEnvironment.doubleArrayCache.allocateAtLeast(outputMsgLength);
+    		final ScratchArena scratch = ScratchArena.forCurrentThread();
+    		final int scratchMark = scratch.mark();
+    		final double[] saved = scratch.allocateDoubles(outputMsgLength);
     		System.arraycopy(outputMsgs, 0, saved, 0, outputMsgLength);
         
+    		computeOutputMessage(outPortNum, outputMsgs, inputMsgs, numPorts, tableIndices, values);
+    		
     		double sum = 0.0;
-    		Arrays.fill(outputMsgs, 0);
-
-    		for (int tableIndex = tableLength; --tableIndex>=0;)
+    		for (int i = outputMsgLength; --i>=0;)
     		{
-    			double prob = values[tableIndex];
-    			final int[] tableRow = table[tableIndex];
-    			final int outputIndex = tableRow[outPortNum];
-
-    			int inPortNum = numPorts;
-    			while (--inPortNum > outPortNum)
-    				prob *= inputMsgs[inPortNum][tableRow[inPortNum]];
-    			while (--inPortNum >= 0)
-    				prob *= inputMsgs[inPortNum][tableRow[inPortNum]];
-
-    			outputMsgs[outputIndex] += prob;
-    			sum += prob;
+    			sum += outputMsgs[i];
     		}
         
     		if (sum == 0)
@@ -95,7 +88,7 @@ public class TableFactorEngine
     			outputMsgs[i] = inverseDamping*outputMsgs[i] + damping*saved[i];
     		}
 
-    		DimpleEnvironment.doubleArrayCache.release(saved);
+    		scratch.reset(scratchMark);
     	}
     	else
     	{
@@ -118,22 +111,7 @@ public class TableFactorEngine
         		outMsg.setNormalizationEnergy(normalizationEnergy);
         	}
         	
-    		Arrays.fill(outputMsgs, 0);
-
-    		for (int tableIndex = tableLength; --tableIndex>=0;)
-    		{
-    			double prob = values[tableIndex];
-    			final int[] tableRow = table[tableIndex];
-    			final int outputIndex = tableRow[outPortNum];
-
-    			int inPortNum = numPorts;
-    			while (--inPortNum > outPortNum)
-    				prob *= inputMsgs[inPortNum][tableRow[inPortNum]];
-    			while (--inPortNum >= 0)
-    				prob *= inputMsgs[inPortNum][tableRow[inPortNum]];
-
-    			outputMsgs[outputIndex] += prob;
-    		}
+    		computeOutputMessage(outPortNum, outputMsgs, inputMsgs, numPorts, tableIndices, values);
         
     		try
     		{
@@ -153,17 +131,17 @@ public class TableFactorEngine
 	{
 		final SumProductTableFactor tableFactor = _tableFactor;
 		final IFactorTable table = tableFactor.getFactorTable();
-	    final int[][] tableIndices = table.getIndicesSparseUnsafe();
+	    final int[] tableIndices = table.getIndicesSparseColumnMajorUnsafe();
 	    final double[] values = table.getWeightsSparseUnsafe();
-	    final int tableLength = tableIndices.length;
 	    final int numPorts = _factor.getSiblingCount();
 	    
 	    final double [][] inMsgs = tableFactor.getInPortMsgs();
 
 	    if (tableFactor._dampingInUse)
 	    {
-	    	final double[] saved =
-	    		DimpleEnvironment.doubleArrayCache.allocateAtLeast(table.getDomainIndexer().getSumOfDomainSizes());
+	    	final ScratchArena scratch = ScratchArena.forCurrentThread();
+	    	final int scratchMark = scratch.mark();
+	    	final double[] saved = scratch.allocateDoubles(table.getDomainIndexer().getSumOfDomainSizes());
 	    
 	    	for (int outPortNum = 0, savedOffset = 0; outPortNum < numPorts; outPortNum++)
 	    	{
@@ -176,21 +154,7 @@ public class TableFactorEngine
 	    			System.arraycopy(outputMsgs, 0, saved, savedOffset, outputMsgLength);
 	    		}
 
-	    		Arrays.fill(outputMsgs, 0);
-
-	    		for (int tableIndex = tableLength; --tableIndex>=0;)
-	    		{
-	    			double prob = values[tableIndex];
-	    			final int[] tableRow = tableIndices[tableIndex];
-	    			int outputIndex = tableRow[outPortNum];
-
-	    			int inPortNum = numPorts;
-	    			while (--inPortNum > outPortNum)
-	    				prob *= inMsgs[inPortNum][tableRow[inPortNum]];
-	    			while (--inPortNum >= 0)
-	    				prob *= inMsgs[inPortNum][tableRow[inPortNum]];
-	    			outputMsgs[outputIndex] += prob;
-	    		}
+	    		computeOutputMessage(outPortNum, outputMsgs, inMsgs, numPorts, tableIndices, values);
 
 	    		double sum = 0;
 	    		for (int i = outputMsgLength; --i>=0;)
@@ -220,7 +184,7 @@ public class TableFactorEngine
 	    		savedOffset += outputMsgLength;
 	    	}
 
-	    	DimpleEnvironment.doubleArrayCache.release(saved);
+	    	scratch.reset(scratchMark);
 	    }
 	    else // no damping
 	    {
@@ -229,21 +193,7 @@ public class TableFactorEngine
 	    		final double[] outputMsgs = tableFactor.getOutPortMsg(outPortNum);
 	    		final int outputMsgLength = outputMsgs.length;
 
-	    		Arrays.fill(outputMsgs, 0);
-
-	    		for (int tableIndex = tableLength; --tableIndex>=0;)
-	    		{
-	    			double prob = values[tableIndex];
-	    			final int[] tableRow = tableIndices[tableIndex];
-	    			int outputIndex = tableRow[outPortNum];
-
-	    			int inPortNum = numPorts;
-	    			while (--inPortNum > outPortNum)
-	    				prob *= inMsgs[inPortNum][tableRow[inPortNum]];
-	    			while (--inPortNum >= 0)
-	    				prob *= inMsgs[inPortNum][tableRow[inPortNum]];
-	    			outputMsgs[outputIndex] += prob;
-	    		}
+	    		computeOutputMessage(outPortNum, outputMsgs, inMsgs, numPorts, tableIndices, values);
 
 	    		double sum = 0;
 	    		for (int i = outputMsgLength; --i>=0;)
@@ -264,4 +214,133 @@ public class TableFactorEngine
 	    	}
 	    }
 	}
+
+	/**
+	 * Computes the unnormalized output message for {@code outPortNum} into {@code outputMsgs}.
+	 * <p>
+	 * This streams through the factor table one dimension at a time using its
+	 * {@linkplain IFactorTable#getIndicesSparseColumnMajorUnsafe() column-major indices}, accumulating
+	 * the product of the table weights and input messages for each entry in a temporary array.
+	 * <p>
+	 * Tables with at least {@link BPOptions#parallelUpdateThreshold} entries are split into chunks
+	 * that are computed in parallel.
+	 */
+	private void computeOutputMessage(int outPortNum, double[] outputMsgs, double[][] inputMsgs,
+		int numPorts, int[] tableIndices, double[] values)
+	{
+		final int tableLength = values.length;
+		
+		if (tableLength >= _tableFactor._parallelUpdateThreshold)
+		{
+			final ParallelOutputMessage parallel =
+				new ParallelOutputMessage(outPortNum, outputMsgs.length, inputMsgs, numPorts, tableIndices, values);
+			parallel.run();
+			parallel.reduce(outputMsgs);
+			return;
+		}
+		
+		Arrays.fill(outputMsgs, 0);
+		computeOutputMessage(outPortNum, outputMsgs, inputMsgs, numPorts, tableIndices, values, tableLength,
+			0, tableLength);
+	}
+
+	/**
+	 * Adds the contribution of table entries in the range [{@code start}, {@code end}) to the output message
+	 * for {@code outPortNum}.
+	 * <p>
+	 * The entries are processed in pieces of no more than {@link ScratchArena#MAX_RETAINED_SIZE}, so that
+	 * the scratch space for their products is reused across updates.
+	 */
+	private static void computeOutputMessage(int outPortNum, double[] outputMsgs, double[][] inputMsgs,
+		int numPorts, int[] tableIndices, double[] values, int tableLength, int start, int end)
+	{
+		final int pieceSize = Math.min(end - start, ScratchArena.MAX_RETAINED_SIZE);
+		final ScratchArena scratch = ScratchArena.forCurrentThread();
+		final int scratchMark = scratch.mark();
+		final double[] products = scratch.allocateDoubles(pieceSize);
+		for (int pieceStart = start; pieceStart < end; pieceStart += pieceSize)
+		{
+			computeOutputMessage(outPortNum, outputMsgs, inputMsgs, numPorts, tableIndices, values, tableLength,
+				pieceStart, Math.min(end, pieceStart + pieceSize), products);
+		}
+		scratch.reset(scratchMark);
+	}
+	
+	/**
+	 * Adds the contribution of table entries in the range [{@code start}, {@code end}) to the output message
+	 * for {@code outPortNum} using {@code products} as scratch space.
+	 */
+	private static void computeOutputMessage(int outPortNum, double[] outputMsgs, double[][] inputMsgs,
+		int numPorts, int[] tableIndices, double[] values, int tableLength, int start, int end, double[] products)
+	{
+		final int length = end - start;
+		System.arraycopy(values, start, products, 0, length);
+
+		for (int inPortNum = numPorts; --inPortNum>=0;)
+		{
+			if (inPortNum != outPortNum)
+			{
+				final double[] inputMsg = inputMsgs[inPortNum];
+				final int offset = inPortNum * tableLength + start;
+				for (int i = length; --i>=0;)
+				{
+					products[i] *= inputMsg[tableIndices[offset + i]];
+				}
+			}
+		}
+
+		final int offset = outPortNum * tableLength + start;
+		for (int i = length; --i>=0;)
+		{
+			outputMsgs[tableIndices[offset + i]] += products[i];
+		}
+	}
+	
+	/**
+	 * Computes partial output messages for separate chunks of a large factor table in parallel.
+	 */
+	private static final class ParallelOutputMessage extends ParallelTableRange
+	{
+		private final int _outPortNum;
+		private final double[][] _inputMsgs;
+		private final int _numPorts;
+		private final int[] _tableIndices;
+		private final double[] _values;
+		private final double[][] _partialMsgs;
+		
+		private ParallelOutputMessage(int outPortNum, int outputMsgLength, double[][] inputMsgs, int numPorts,
+			int[] tableIndices, double[] values)
+		{
+			super(values.length);
+			_outPortNum = outPortNum;
+			_inputMsgs = inputMsgs;
+			_numPorts = numPorts;
+			_tableIndices = tableIndices;
+			_values = values;
+			_partialMsgs = new double[chunks()][outputMsgLength];
+		}
+		
+		@Override
+		protected void computeChunk(int chunk, int start, int end)
+		{
+			computeOutputMessage(_outPortNum, _partialMsgs[chunk], _inputMsgs, _numPorts, _tableIndices, _values,
+				size(), start, end);
+		}
+		
+		/**
+		 * Sets {@code outputMsgs} to the sum of the partial messages, combined in chunk order.
+		 */
+		private void reduce(double[] outputMsgs)
+		{
+			System.arraycopy(_partialMsgs[0], 0, outputMsgs, 0, outputMsgs.length);
+			for (int chunk = 1, n = _partialMsgs.length; chunk < n; ++chunk)
+			{
+				final double[] partialMsg = _partialMsgs[chunk];
+				for (int i = outputMsgs.length; --i>=0;)
+				{
+					outputMsgs[i] += partialMsg[i];
+				}
+			}
+		}
+	}
 }
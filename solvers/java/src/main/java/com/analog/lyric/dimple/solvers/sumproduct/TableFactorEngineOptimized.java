@@ -12,8 +12,8 @@ package com.analog.lyric.dimple.solvers.sumproduct;
 import java.util.Arrays;
 
 import com.analog.lyric.collect.ArrayUtil;
+import com.analog.lyric.collect.ScratchArena;
 import com.analog.lyric.collect.Tuple2;
-import com.analog.lyric.dimple.environment.DimpleEnvironment;
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
 import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
@@ -209,8 +209,10 @@ public class TableFactorEngineOptimized extends TableFactorEngine
 
 			final double damping = tableFactor.getDamping(_outPortNum);
 			final boolean useDamping = damping != 0;
+			final ScratchArena scratch = ScratchArena.forCurrentThread();
+			final int scratchMark = scratch.mark();
 			final double[] saved =
-				useDamping? DimpleEnvironment.doubleArrayCache.allocateAtLeast(outputMsgLength) :
+				useDamping? scratch.allocateDoubles(outputMsgLength) :
 					ArrayUtil.EMPTY_DOUBLE_ARRAY;
 			
 			if (useDamping)
@@ -246,7 +248,7 @@ public class TableFactorEngineOptimized extends TableFactorEngine
 					outputMsg[i] = (1 - damping) * outputMsg[i] + damping * saved[i];
 				}
 				
-				DimpleEnvironment.doubleArrayCache.release(saved);
+				scratch.reset(scratchMark);
 			}
 		}
 	}
@@ -278,8 +280,10 @@ public class TableFactorEngineOptimized extends TableFactorEngine
 			final double damping = tableFactor.getDamping(_outPortNum);
 			final int outputMsgLength = outputMsg.length;
 			final boolean useDamping = damping != 0;
+			final ScratchArena scratch = ScratchArena.forCurrentThread();
+			final int scratchMark = scratch.mark();
 			final double[] saved = useDamping ?
-				DimpleEnvironment.doubleArrayCache.allocateAtLeast(outputMsgLength) : ArrayUtil.EMPTY_DOUBLE_ARRAY;
+				scratch.allocateDoubles(outputMsgLength) : ArrayUtil.EMPTY_DOUBLE_ARRAY;
 				
 			if (useDamping)
 			{
@@ -316,7 +320,7 @@ public class TableFactorEngineOptimized extends TableFactorEngine
 					outputMsg[i] = (1 - damping) * outputMsg[i] + damping * saved[i];
 				}
 				
-				DimpleEnvironment.doubleArrayCache.release(saved);
+				scratch.reset(scratchMark);
 			}
 		}
 	}
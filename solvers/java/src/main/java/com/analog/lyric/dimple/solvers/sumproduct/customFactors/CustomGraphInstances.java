@@ -0,0 +1,343 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.sumproduct.customFactors;
+
+import java.util.Arrays;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.repeated.GraphInstances;
+import com.analog.lyric.dimple.model.repeated.GraphTemplate;
+import com.analog.lyric.dimple.solvers.core.STableFactorDoubleArray;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolverGraph;
+
+/**
+ * Sum-product implementation of a {@link GraphInstances} factor.
+ * <p>
+ * Runs belief propagation over the internal variables and factors of every instance of the
+ * template using the template's shared schedule. The only per-instance state is the pair of
+ * messages on each internal edge, which are held in two dense arrays with one block of
+ * {@link GraphTemplate#getMessageLength()} values per instance. Each step of the schedule is
+ * applied to all instances before moving on to the next one.
+ * <p>
+ * The input to a boundary variable of an instance is the message from the corresponding sibling
+ * variable, and the output message to that sibling is the product of the messages to the boundary
+ * variable from the template factors. For a template that is a {@linkplain GraphTemplate#isTree() tree},
+ * each update computes exact outputs given the current inputs; otherwise each update performs one
+ * flooding iteration of the internal messages. Damping is not applied to internal messages.
+ * <p>
+ * @since 0.08
+ */
+public class CustomGraphInstances extends STableFactorDoubleArray
+{
+	/*-------
+	 * State
+	 */
+
+	private final GraphTemplate _template;
+	private final int _instanceCount;
+	private final int _boundaryCount;
+
+	/**
+	 * Per-instance variable-to-factor and factor-to-variable messages on the internal edges of each instance.
+	 */
+	private double[] _varToFactor = new double[0];
+	private double[] _factorToVar = new double[0];
+
+	/**
+	 * Messages on the edges of this factor, indexed by sibling.
+	 */
+	private double[][] _inputMsgs = new double[0][];
+	private double[][] _outputMsgs = new double[0][];
+
+	/*--------------
+	 * Construction
+	 */
+
+	public CustomGraphInstances(Factor factor, SumProductSolverGraph parent)
+	{
+		super(factor, parent);
+
+		final GraphInstances function = (GraphInstances)factor.getFactorFunction().getContainedFactorFunction();
+		_template = function.getTemplate();
+		_instanceCount = function.getInstanceCount();
+		_boundaryCount = _template.getBoundaryVariableCount();
+	}
+
+	/*---------------------
+	 * ISolverNode methods
+	 */
+
+	@Override
+	public void initialize()
+	{
+		super.initialize();
+
+		final GraphTemplate template = _template;
+		final int length = template.getMessageLength();
+		final int size = length * _instanceCount;
+		if (_varToFactor.length != size)
+		{
+			_varToFactor = new double[size];
+			_factorToVar = new double[size];
+		}
+
+		for (int edge = 0, nEdges = template.getEdgeCount(); edge < nEdges; ++edge)
+		{
+			final int domainSize = template.getDomainSize(template.getEdgeVariable(edge));
+			final double uniform = 1.0 / domainSize;
+			for (int base = template.getEdgeOffset(edge); base < size; base += length)
+			{
+				Arrays.fill(_varToFactor, base, base + domainSize, uniform);
+				Arrays.fill(_factorToVar, base, base + domainSize, uniform);
+			}
+		}
+
+		final int nSiblings = getSiblingCount();
+		if (_inputMsgs.length != nSiblings)
+		{
+			_inputMsgs = new double[nSiblings][];
+			_outputMsgs = new double[nSiblings][];
+		}
+		for (int i = 0; i < nSiblings; ++i)
+		{
+			_inputMsgs[i] = getSiblingEdgeState(i).varToFactorMsg.representation();
+			_outputMsgs[i] = getSiblingEdgeState(i).factorToVarMsg.representation();
+		}
+	}
+
+	/*---------------
+	 * SNode methods
+	 */
+
+	@Override
+	protected void doUpdate()
+	{
+		final int length = _template.getMessageLength();
+		final int end = length * _instanceCount;
+
+		for (int step : _template.getScheduleUnsafe())
+		{
+			final int edge = step >>> 1;
+			if ((step & 1) == 0)
+			{
+				for (int instance = 0, base = 0; base < end; ++instance, base += length)
+				{
+					updateVarToFactor(instance, base, edge);
+				}
+			}
+			else
+			{
+				for (int base = 0; base < end; base += length)
+				{
+					updateFactorToVar(base, edge);
+				}
+			}
+		}
+
+		for (int instance = 0, i = 0; instance < _instanceCount; ++instance)
+		{
+			for (int j = 0; j < _boundaryCount; ++j, ++i)
+			{
+				updateOutput(instance, j, _outputMsgs[i]);
+			}
+		}
+	}
+
+	@Override
+	public void doUpdateEdge(int outPortNum)
+	{
+		final int instance = outPortNum / _boundaryCount;
+		final int base = instance * _template.getMessageLength();
+
+		for (int step : _template.getScheduleUnsafe())
+		{
+			if ((step & 1) == 0)
+			{
+				updateVarToFactor(instance, base, step >>> 1);
+			}
+			else
+			{
+				updateFactorToVar(base, step >>> 1);
+			}
+		}
+
+		updateOutput(instance, outPortNum % _boundaryCount, _outputMsgs[outPortNum]);
+	}
+
+	/*--------------------------
+	 * STableFactorBase methods
+	 */
+
+	@Override
+	protected boolean createFactorTableOnInit()
+	{
+		return false;
+	}
+
+	@Override
+	protected void setTableRepresentation(IFactorTable table)
+	{
+	}
+
+	/*-------------------------------
+	 * CustomGraphInstances methods
+	 */
+
+	public GraphTemplate getTemplate()
+	{
+		return _template;
+	}
+
+	public int getInstanceCount()
+	{
+		return _instanceCount;
+	}
+
+	/**
+	 * Returns the belief of template variable with given index in the specified instance.
+	 * <p>
+	 * For boundary variables this is the belief of the corresponding model variable.
+	 * <p>
+	 * @see GraphTemplate#indexOf
+	 */
+	public double[] getInstanceBelief(int instance, int variable)
+	{
+		final GraphTemplate template = _template;
+		final int size = template.getDomainSize(variable);
+		final double[] belief = new double[size];
+
+		if (variable < _boundaryCount)
+		{
+			System.arraycopy((double[])getSibling(instance * _boundaryCount + variable).getBelief(), 0, belief, 0, size);
+			return belief;
+		}
+
+		System.arraycopy(template.getInputWeightsUnsafe(variable), 0, belief, 0, size);
+		final int base = instance * template.getMessageLength();
+		for (int edge : template.getVariableEdgesUnsafe(variable))
+		{
+			final int in = base + template.getEdgeOffset(edge);
+			for (int i = 0; i < size; ++i)
+			{
+				belief[i] *= _factorToVar[in + i];
+			}
+		}
+		normalize(belief, 0, size, instance);
+		return belief;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private void updateVarToFactor(int instance, int base, int edge)
+	{
+		final GraphTemplate template = _template;
+		final int variable = template.getEdgeVariable(edge);
+		final int size = template.getDomainSize(variable);
+		final double[] input = variable < _boundaryCount ?
+			_inputMsgs[instance * _boundaryCount + variable] : template.getInputWeightsUnsafe(variable);
+		final double[] varToFactor = _varToFactor;
+		final double[] factorToVar = _factorToVar;
+
+		final int out = base + template.getEdgeOffset(edge);
+		System.arraycopy(input, 0, varToFactor, out, size);
+		for (int other : template.getVariableEdgesUnsafe(variable))
+		{
+			if (other != edge)
+			{
+				final int in = base + template.getEdgeOffset(other);
+				for (int i = 0; i < size; ++i)
+				{
+					varToFactor[out + i] *= factorToVar[in + i];
+				}
+			}
+		}
+		normalize(varToFactor, out, size, instance);
+	}
+
+	private void updateFactorToVar(int base, int edge)
+	{
+		final GraphTemplate template = _template;
+		final int factor = template.getEdgeFactor(edge);
+		final int[] edges = template.getFactorEdgesUnsafe(factor);
+		final int nDims = edges.length;
+		final int dim = edge - edges[0];
+		final int[] indices = template.getFactorSparseIndicesUnsafe(factor);
+		final double[] weights = template.getFactorSparseWeightsUnsafe(factor);
+		final double[] varToFactor = _varToFactor;
+		final double[] factorToVar = _factorToVar;
+
+		final int out = base + template.getEdgeOffset(edge);
+		final int size = template.getDomainSize(template.getEdgeVariable(edge));
+		Arrays.fill(factorToVar, out, out + size, 0.0);
+
+		for (int si = 0, row = 0, nEntries = weights.length; si < nEntries; ++si, row += nDims)
+		{
+			double weight = weights[si];
+			for (int d = 0; d < nDims; ++d)
+			{
+				if (d != dim)
+				{
+					weight *= varToFactor[base + template.getEdgeOffset(edges[d]) + indices[row + d]];
+				}
+			}
+			factorToVar[out + indices[row + dim]] += weight;
+		}
+		normalize(factorToVar, out, size, base / template.getMessageLength());
+	}
+
+	private void updateOutput(int instance, int variable, double[] outputMsg)
+	{
+		final GraphTemplate template = _template;
+		final int size = outputMsg.length;
+		final int base = instance * template.getMessageLength();
+
+		Arrays.fill(outputMsg, 1.0);
+		for (int edge : template.getVariableEdgesUnsafe(variable))
+		{
+			final int in = base + template.getEdgeOffset(edge);
+			for (int i = 0; i < size; ++i)
+			{
+				outputMsg[i] *= _factorToVar[in + i];
+			}
+		}
+		normalize(outputMsg, 0, size, instance);
+	}
+
+	private void normalize(double[] values, int offset, int size, int instance)
+	{
+		double sum = 0;
+		for (int i = offset, end = offset + size; i < end; ++i)
+		{
+			sum += values[i];
+		}
+
+		if (sum == 0)
+		{
+			throw new DimpleException("Update failed in SumProduct Solver.  All probabilities were zero when calculating message for instance %d of factor %s",
+				instance, _model.getLabel());
+		}
+
+		for (int i = offset, end = offset + size; i < end; ++i)
+		{
+			values[i] /= sum;
+		}
+	}
+}
@@ -16,13 +16,14 @@
 
 package com.analog.lyric.dimple.solvers.sumproduct.sampledfactor;
 
-import java.util.List;
+import static java.util.Objects.*;
 
 import com.analog.lyric.dimple.factorfunctions.MultivariateNormal;
 import com.analog.lyric.dimple.model.variables.RealJoint;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.MultivariateNormalParameters;
 import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
 import com.analog.lyric.dimple.solvers.gibbs.GibbsRealJoint;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSampleStore;
 import com.analog.lyric.dimple.solvers.sumproduct.SumProductMultivariateNormalEdge;
 import com.analog.lyric.util.misc.Internal;
 
@@ -74,18 +75,18 @@ class SumProductSampledMultivariateNormalEdge extends SumProductMultivariateNorm
 	@Override
 	public void setFactorToVarMsgFromSamples()
 	{
-		// Get the raw sample array to avoid making a copy; this is unsafe, so be careful not to modify it
-		@SuppressWarnings("null")
-		List<double[]> sampleValues = _svar._getSampleArrayUnsafe();
-		@SuppressWarnings("null")
-		int numSamples = sampleValues.size();
-		int dimension = sampleValues.get(0).length;
+		// Read the samples directly from the sample store to avoid making a copy
+		final GibbsSampleStore.Column sampleColumn = requireNonNull(_svar.getSampleColumn());
+		final int firstSample = sampleColumn.getFirstSample();
+		int numSamples = sampleColumn.size();
+		int dimension = sampleColumn.getWidth();
+		double[] tmp = new double[dimension];
 
 		// For all sample values, compute the mean
 		double[] mean = new double[dimension];
 		for (int sample = 0; sample < numSamples; sample++)
 		{
-			double[] tmp = sampleValues.get(sample);
+			sampleColumn.getDoubles(firstSample + sample, tmp);
 			for (int i = 0; i < dimension; i++)
 				mean[i] += tmp[i];
 		}
@@ -97,7 +98,7 @@ class SumProductSampledMultivariateNormalEdge extends SumProductMultivariateNorm
 		double[][] covariance = new double[dimension][dimension];
 		for (int sample = 0; sample < numSamples; sample++)
 		{
-			double[] tmp = sampleValues.get(sample);
+			sampleColumn.getDoubles(firstSample + sample, tmp);
 			for (int i = 0; i < dimension; i++)
 				diff[i] = tmp[i] - mean[i];
 			for (int row = 0; row < dimension; row++)
@@ -16,13 +16,15 @@
 
 package com.analog.lyric.dimple.solvers.sumproduct.sampledfactor;
 
-import cern.colt.list.DoubleArrayList;
+import static java.util.Objects.*;
 
+import com.analog.lyric.collect.PrimitiveIterator;
 import com.analog.lyric.dimple.factorfunctions.Normal;
 import com.analog.lyric.dimple.model.variables.Real;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.NormalParameters;
 import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
 import com.analog.lyric.dimple.solvers.gibbs.GibbsReal;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSampleStore;
 import com.analog.lyric.dimple.solvers.sumproduct.SumProductNormalEdge;
 import com.analog.lyric.util.misc.Internal;
 
@@ -76,18 +78,17 @@ class SumProductSampledNormalEdge extends SumProductNormalEdge
 	{
 		final NormalParameters outputMessage = factorToVarMsg;
 		
-		// Get the raw sample array to avoid making a copy; this is unsafe, so be careful not to modify it
-		@SuppressWarnings("null")
-		DoubleArrayList sampleValues = _svar._getSampleArrayUnsafe();
-		@SuppressWarnings("null")
-		int numSamples = sampleValues.size();
+		// Read the samples directly from the sample store to avoid making a copy
+		final GibbsSampleStore.Column sampleColumn = requireNonNull(_svar.getSampleColumn());
+		final PrimitiveIterator.OfDouble sampleValues = sampleColumn.doubleIterator();
+		int numSamples = sampleColumn.size();
 
 		// For all sample values, compute the output message
 		double sum = 0;
 		double sumsq = 0;
 		for (int i = 0; i < numSamples; i++)
 		{
-			double tmp = sampleValues.get(i);
+			double tmp = sampleValues.nextDouble();
 			if (Double.isInfinite(tmp) || Double.isNaN(tmp))
 			{
 				outputMessage.setNull();
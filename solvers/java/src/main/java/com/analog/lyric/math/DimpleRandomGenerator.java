@@ -17,6 +17,7 @@
 package com.analog.lyric.math;
 
 import org.apache.commons.math3.random.RandomGenerator;
+import org.eclipse.jdt.annotation.NonNullByDefault;
 
 import cern.jet.random.engine.RandomEngine;
 
@@ -31,6 +32,7 @@ public class DimpleRandomGenerator
 	public static cern.jet.random.Beta randBeta = new cern.jet.random.Beta(1, 1, randEngine);
 	public static cern.jet.random.Binomial randBinomial = new cern.jet.random.Binomial(1, 0.5, randEngine);
 	
+	private static final DimpleRandom globalRandom = new GlobalRandom();
 	
 	public static void setSeed(long seed)
 	{
@@ -43,6 +45,19 @@ public class DimpleRandomGenerator
 		randBinomial = new cern.jet.random.Binomial(1, 0.5, randEngine);
 	}
 	
+	/**
+	 * Returns a {@link DimpleRandom} that draws from the global generators in this class.
+	 * <p>
+	 * Draws from the returned object are the same as those made directly from {@link #rand},
+	 * {@link #randGamma}, {@link #randBeta} and {@link #randBinomial}, and setting its seed
+	 * is the same as invoking {@link #setSeed(long)}. Like the global generators themselves,
+	 * it must not be used concurrently from more than one thread.
+	 * @since 0.08
+	 */
+	public static DimpleRandom globalRandom()
+	{
+		return globalRandom;
+	}
 	
 	// randBinomial doesn't accept zero N value or 1 or 0 p value
 	public static final int randomBinomial(int N, double p)
@@ -57,4 +72,116 @@ public class DimpleRandomGenerator
 			return randBinomial.nextInt(N, p);
 	}
 
+	/**
+	 * Implementation of {@link #globalRandom()}.
+	 * <p>
+	 * Looks up the static generators on every draw, since {@link #setSeed(long)} replaces them.
+	 */
+	private static final class GlobalRandom extends DimpleRandom
+	{
+		private static final long serialVersionUID = 1L;
+		
+		// False while the superclass constructor runs, so that it does not reseed the global generators.
+		private final boolean _constructed;
+		
+		private GlobalRandom()
+		{
+			super(rand, 0);
+			_constructed = true;
+		}
+		
+		@Override
+		public void setSeed(long seed)
+		{
+			if (_constructed)
+				DimpleRandomGenerator.setSeed(seed);
+			else
+				super.setSeed(seed);
+		}
+		
+		@NonNullByDefault(false)
+		@Override
+		public void nextBytes(byte[] bytes)
+		{
+			rand.nextBytes(bytes);
+		}
+		
+		@Override
+		public int nextInt()
+		{
+			return rand.nextInt();
+		}
+		
+		@Override
+		public int nextInt(int n)
+		{
+			return rand.nextInt(n);
+		}
+		
+		@Override
+		public long nextLong()
+		{
+			return rand.nextLong();
+		}
+		
+		@Override
+		public boolean nextBoolean()
+		{
+			return rand.nextBoolean();
+		}
+		
+		@Override
+		public float nextFloat()
+		{
+			return rand.nextFloat();
+		}
+		
+		@Override
+		public double nextDouble()
+		{
+			return rand.nextDouble();
+		}
+		
+		@Override
+		public double nextGaussian()
+		{
+			return rand.nextGaussian();
+		}
+		
+		@Override
+		public double nextBeta()
+		{
+			return randBeta.nextDouble();
+		}
+		
+		@Override
+		public double nextBeta(double alpha, double beta)
+		{
+			return randBeta.nextDouble(alpha, beta);
+		}
+		
+		@Override
+		public int nextBernoulli()
+		{
+			return randBinomial.nextInt();
+		}
+		
+		@Override
+		public int nextBinomial(int n, double p)
+		{
+			return randomBinomial(n, p);
+		}
+		
+		@Override
+		public double nextGamma()
+		{
+			return randGamma.nextDouble();
+		}
+		
+		@Override
+		public double nextGamma(double alpha, double beta)
+		{
+			return randGamma.nextDouble(alpha, beta);
+		}
+	}
 }
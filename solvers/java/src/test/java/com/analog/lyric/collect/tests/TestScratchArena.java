@@ -0,0 +1,126 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.collect.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.analog.lyric.collect.ArrayUtil;
+import com.analog.lyric.collect.DoubleArrayCache;
+import com.analog.lyric.collect.ScratchArena;
+
+/**
+ * Tests for {@link ScratchArena}
+ * @since 0.08
+ */
+public class TestScratchArena
+{
+	@Test
+	public void test() throws InterruptedException
+	{
+		final ScratchArena scratch = ScratchArena.forCurrentThread();
+		assertSame(scratch, ScratchArena.forCurrentThread());
+
+		assertSame(ArrayUtil.EMPTY_DOUBLE_ARRAY, scratch.allocateDoubles(0));
+		assertSame(ArrayUtil.EMPTY_INT_ARRAY, scratch.allocateInts(-1));
+		
+		final int mark = scratch.mark();
+		
+		final double[] d1 = scratch.allocateDoubles(3);
+		assertTrue(d1.length >= 3);
+		final int[] i1 = scratch.allocateInts(5);
+		assertTrue(i1.length >= 5);
+		assertEquals(mark + 2, scratch.mark());
+		
+		// Nested use releases only its own arrays
+		final int innerMark = scratch.mark();
+		final double[] d2 = scratch.allocateDoubles(1);
+		assertEquals(1, d2.length);
+		scratch.reset(innerMark);
+		assertSame(d2, scratch.allocateDoubles(1));
+		scratch.reset(mark);
+		
+		ScratchArena.resetCounts();
+		assertEquals(0, ScratchArena.hitCount());
+		assertEquals(0, ScratchArena.missCount());
+		
+		// Same sequence of allocations reuses the same arrays
+		assertSame(d1, scratch.allocateDoubles(4));
+		assertSame(i1, scratch.allocateInts(2));
+		assertEquals(2, ScratchArena.hitCount());
+		assertEquals(0, ScratchArena.missCount());
+		scratch.reset(mark);
+		
+		// Larger or different type must be reallocated
+		final double[] d3 = scratch.allocateDoubles(5);
+		assertNotSame(d1, d3);
+		assertTrue(d3.length >= 5);
+		final double[] d4 = scratch.allocateDoubles(2);
+		assertNotSame(i1, d4);
+		assertEquals(2, ScratchArena.hitCount());
+		assertEquals(2, ScratchArena.missCount());
+		scratch.reset(mark);
+		
+		// Beyond max depth arrays are simply allocated.
+		for (int i = scratch.mark(); i < ScratchArena.MAX_DEPTH; ++i)
+		{
+			scratch.allocateDoubles(1);
+		}
+		assertEquals(ScratchArena.MAX_DEPTH, scratch.mark());
+		final double[] d5 = scratch.allocateDoubles(7);
+		assertEquals(7, d5.length);
+		assertNotSame(d5, scratch.allocateDoubles(7));
+		assertEquals(ScratchArena.MAX_DEPTH, scratch.mark());
+		scratch.reset(mark);
+		
+		// Oversized regions are not kept once released
+		final double[] big = scratch.allocateDoubles(ScratchArena.MAX_RETAINED_SIZE + 1);
+		final int[] small = scratch.allocateInts(ScratchArena.MAX_RETAINED_SIZE);
+		scratch.reset(mark);
+		assertNotSame(big, scratch.allocateDoubles(ScratchArena.MAX_RETAINED_SIZE + 1));
+		assertSame(small, scratch.allocateInts(ScratchArena.MAX_RETAINED_SIZE));
+		scratch.reset(mark);
+		
+		// Each thread has its own arena
+		final AtomicReference<ScratchArena> otherArena = new AtomicReference<>();
+		final AtomicReference<double[]> otherArray = new AtomicReference<>();
+		Thread thread = new Thread() {
+			@Override
+			public void run()
+			{
+				final ScratchArena arena = ScratchArena.forCurrentThread();
+				otherArena.set(arena);
+				otherArray.set(arena.allocateDoubles(4));
+			}
+		};
+		thread.start();
+		thread.join();
+		assertNotSame(scratch, otherArena.get());
+		assertNotSame(d1, otherArray.get());
+		
+		// Counts include other threads
+		final long misses = ScratchArena.missCount();
+		assertTrue(misses >= 1);
+		ScratchArena.resetCounts();
+		assertEquals(0, ScratchArena.missCount());
+		
+		assertEquals(0, new DoubleArrayCache().contentionCount());
+	}
+}
@@ -22,6 +22,9 @@ import static java.util.Objects.*;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -30,6 +33,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Ignore;
 import org.junit.Test;
@@ -40,7 +44,13 @@ import com.analog.lyric.collect.ArrayUtil;
 import com.analog.lyric.collect.BitSetUtil;
 import com.analog.lyric.collect.Comparators;
 import com.analog.lyric.collect.Tuple2;
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
 import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.Product;
+import com.analog.lyric.dimple.factorfunctions.Sum;
+import com.analog.lyric.dimple.factorfunctions.Xor;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunctionWithConstants;
 import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
 import com.analog.lyric.dimple.factorfunctions.core.FactorTableEntry;
 import com.analog.lyric.dimple.factorfunctions.core.FactorTableRepresentation;
@@ -53,6 +63,7 @@ import com.analog.lyric.dimple.model.domains.JointDiscreteDomain;
 import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
 import com.analog.lyric.dimple.model.domains.JointDomainReindexer;
 import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.options.DimpleOptions;
 import com.analog.lyric.dimple.test.DimpleTestBase;
 import com.analog.lyric.util.test.SerializationTester;
 import com.google.common.base.Stopwatch;
@@ -720,6 +731,112 @@ public class TestFactorTable extends DimpleTestBase
 		}
 	}
 	
+	/**
+	 * Test for parallel evaluation and persistent caching in {@link IFactorTable#populateFromFunction}.
+	 */
+	@Test
+	public void testPopulateFromFunction() throws IOException
+	{
+		final DiscreteDomain domain40 = DiscreteDomain.range(0,39);
+		final DiscreteDomain domain20 = DiscreteDomain.range(0,19);
+		
+		final JointDomainIndexer directed = JointDomainIndexer.create(new int[] { 0 },
+			new DiscreteDomain[] { domain40, domain20, domain20 });
+		final JointDomainIndexer undirected = JointDomainIndexer.create(domain40, domain20, domain20);
+		
+		// Deterministic outputs
+		testPopulateFromFunction(new Sum(), directed);
+		// Sparse energies
+		testPopulateFromFunction(new Sum(), undirected);
+		// Dense energies
+		testPopulateFromFunction(new Sum(1.0), directed);
+		
+		final File cacheDir = Files.createTempDirectory("dimple-tables").toFile();
+		try
+		{
+			DimpleEnvironment.active().setOption(DimpleOptions.factorTableCacheDirectory, cacheDir.getPath());
+			
+			final CountingSum countingSum = new CountingSum();
+			final IFactorTable sum = FactorTable.create(countingSum, undirected);
+			assertEquals(undirected.getCardinality(), countingSum.count.get());
+			assertEquals(1, cacheDir.listFiles().length);
+			
+			// Second table for equivalent function must be loaded from the cache without evaluating it.
+			final CountingSum countingSum2 = new CountingSum();
+			final IFactorTable cachedSum = FactorTable.create(countingSum2, undirected);
+			assertEquals(0, countingSum2.count.get());
+			assertEqual(sum, cachedSum);
+			
+			// A different function must not share the entry.
+			final IFactorTable smoothedSum = FactorTable.create(new Sum(1.0), undirected);
+			assertEquals(2, cacheDir.listFiles().length);
+			assertTrue(smoothedSum.hasDenseRepresentation());
+			
+			final JointDomainIndexer productDomains = JointDomainIndexer.create(new int[] { 0 },
+				new DiscreteDomain[] { DiscreteDomain.range(0,399), domain20, domain20 });
+			final IFactorTable product = FactorTable.create(new Product(), productDomains);
+			final IFactorTable cachedProduct = FactorTable.create(new Product(), productDomains);
+			assertEquals(3, cacheDir.listFiles().length);
+			assertTrue(cachedProduct.isDeterministicDirected());
+			assertEqual(product, cachedProduct);
+			
+			// Constants are part of the key
+			final FactorFunctionWithConstants plusOne =
+				new FactorFunctionWithConstants(new Sum(), new Object[] { 1 }, new int[] { 1 });
+			final FactorFunctionWithConstants plusTwo =
+				new FactorFunctionWithConstants(new Sum(), new Object[] { 2 }, new int[] { 1 });
+			assertNotEquals(plusOne.getTableCacheKey(), plusTwo.getTableCacheKey());
+			assertNull(new FactorFunctionWithConstants(new Sum(), new Object[] { new Object() }, new int[] { 1 })
+				.getTableCacheKey());
+			
+			// Functions without a key are not cached.
+			FactorTable.create(new Xor(), JointDomainIndexer.create(domain2, domain2, domain2));
+			assertEquals(3, cacheDir.listFiles().length);
+		}
+		finally
+		{
+			for (File file : cacheDir.listFiles())
+			{
+				file.delete();
+			}
+			cacheDir.delete();
+		}
+	}
+	
+	private void testPopulateFromFunction(FactorFunction function, JointDomainIndexer domains)
+	{
+		final DimpleEnvironment env = DimpleEnvironment.active();
+		
+		env.setOption(DimpleOptions.parallelTablePopulationThreshold, Integer.MAX_VALUE);
+		final IFactorTable sequential = FactorTable.create(function, domains);
+		
+		env.setOption(DimpleOptions.parallelTablePopulationThreshold, 1);
+		final IFactorTable parallel = FactorTable.create(function, domains);
+		
+		assertEqual(sequential, parallel);
+		
+		env.unsetOption(DimpleOptions.parallelTablePopulationThreshold);
+	}
+	
+	private static class CountingSum extends FactorFunction
+	{
+		private final Sum _sum = new Sum();
+		final AtomicInteger count = new AtomicInteger();
+		
+		@Override
+		public double evalEnergy(Value[] values)
+		{
+			count.incrementAndGet();
+			return _sum.evalEnergy(values);
+		}
+		
+		@Override
+		public String getTableCacheKey()
+		{
+			return CountingSum.class.getName();
+		}
+	}
+	
 	@Test
 	@Ignore
 	public void performanceComparison()
@@ -1343,6 +1460,23 @@ public class TestFactorTable extends DimpleTestBase
 				assertEquals(table.getWeightForSparseIndex(si), sparseWeights[si], 0.0);
 			}
 		}
+		if (table.hasSparseIndices())
+		{
+			final int[][] sparseIndices = table.getIndicesSparseUnsafe();
+			final int[] columnIndices = table.getIndicesSparseColumnMajorUnsafe();
+			final int nDims = table.getDimensions();
+			final int size = sparseIndices.length;
+			assertEquals(size * nDims, columnIndices.length);
+			for (int si = size; --si>=0;)
+			{
+				for (int dim = nDims; --dim>=0;)
+				{
+					assertEquals(sparseIndices[si][dim], columnIndices[dim * size + si]);
+				}
+			}
+			assertSame(columnIndices, table.getIndicesSparseColumnMajorUnsafe());
+			assertEquals(representation, table.getRepresentation());
+		}
 		
 		JointDomainReindexer nullConverter =
 			JointDomainReindexer.createPermuter(table.getDomainIndexer(), table.getDomainIndexer());
@@ -24,6 +24,7 @@ import com.analog.lyric.dimple.model.domains.Domain;
 import com.analog.lyric.dimple.model.values.Value;
 import com.analog.lyric.dimple.solvers.core.proposalKernels.IProposalKernel;
 import com.analog.lyric.dimple.solvers.core.proposalKernels.Proposal;
+import com.analog.lyric.math.DimpleRandom;
 import com.analog.lyric.options.IOptionHolder;
 import com.analog.lyric.options.Option;
 
@@ -40,7 +41,7 @@ public class BrokenProposalKernel implements IProposalKernel
 	}
 
 	@Override
-	public Proposal next(Value currentValue, Domain variableDomain)
+	public Proposal next(Value currentValue, Domain variableDomain, DimpleRandom random)
 	{
 		return new Proposal(currentValue);
 	}
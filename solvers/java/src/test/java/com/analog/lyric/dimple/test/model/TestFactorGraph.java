@@ -17,15 +17,25 @@
 package com.analog.lyric.dimple.test.model;
 
 import static com.analog.lyric.util.test.ExceptionTester.*;
+import static java.util.Objects.*;
 import static org.junit.Assert.*;
 
+import java.util.BitSet;
+
 import org.junit.Test;
 
 import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.factorfunctions.Sum;
+import com.analog.lyric.dimple.factorfunctions.Xor;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunctionWithConstants;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
 import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Discrete;
 import com.analog.lyric.dimple.model.variables.Variable;
 import com.analog.lyric.dimple.model.variables.VariableList;
 import com.analog.lyric.dimple.test.DimpleTestBase;
@@ -106,6 +116,150 @@ public class TestFactorGraph extends DimpleTestBase
 		expectThrow(IllegalArgumentException.class, fg, "getNode", fg.getClass());
 	}
 	
+	@Test
+	public void testFactorsWithConstants()
+	{
+		FactorGraph fg = new FactorGraph();
+		DiscreteDomain domain = DiscreteDomain.range(0, 9);
+		DiscreteDomain sumDomain = DiscreteDomain.range(0, 20);
+		Discrete[] x = new Discrete[3];
+		Discrete[] y = new Discrete[3];
+		for (int i = 0; i < x.length; ++i)
+		{
+			x[i] = new Discrete(sumDomain);
+			y[i] = new Discrete(domain);
+		}
+		
+		// Factors with the same function and equal constants share function and table
+		Sum sum = new Sum();
+		Factor f0 = fg.addFactor(sum, x[0], y[0], 3);
+		Factor f1 = fg.addFactor(sum, x[1], y[1], 3);
+		assertTrue(f0.getFactorFunction() instanceof FactorFunctionWithConstants);
+		assertSame(f0.getFactorFunction(), f1.getFactorFunction());
+		assertEquals(((FactorFunctionWithConstants)f0.getFactorFunction()).getKey(),
+			new FactorFunctionWithConstants.Key(sum, new Object[] { 3 }, new int[] { 2 }));
+		assertSame(f0.getFactorTable(), f1.getFactorTable());
+		
+		// but not if the constants, their positions or the function differ
+		Factor f2 = fg.addFactor(sum, x[2], y[2], 4);
+		assertNotSame(f0.getFactorFunction(), f2.getFactorFunction());
+		Factor f3 = fg.addFactor(sum, x[2], 3, y[2]);
+		assertNotSame(f0.getFactorFunction(), f3.getFactorFunction());
+		Factor f4 = fg.addFactor(new Sum(), x[2], y[2], 3);
+		assertNotSame(f0.getFactorFunction(), f4.getFactorFunction());
+		assertArrayEquals(f0.getFactorTable().getEnergiesSparseUnsafe(), f4.getFactorTable().getEnergiesSparseUnsafe(),
+			0.0);
+		
+		// Redirecting one of the factors gives it its own function and table, without changing the table
+		// shared by the others.
+		Xor xor = new Xor();
+		Bit[] bits = new Bit[4];
+		for (int i = 0; i < bits.length; ++i)
+		{
+			bits[i] = new Bit();
+		}
+		Factor f6 = fg.addFactor(xor, bits[0], bits[1], 1);
+		Factor f7 = fg.addFactor(xor, bits[2], bits[3], 1);
+		IFactorTable sharedTable = f6.getFactorTable();
+		assertSame(sharedTable, f7.getFactorTable());
+		BitSet sharedOutputs = requireNonNull(sharedTable.getOutputSet()).get(0, 2);
+		double[] sharedEnergies = sharedTable.getEnergiesSparseUnsafe().clone();
+		f7.setDirectedTo(bits[3]);
+		assertNotSame(f6.getFactorFunction(), f7.getFactorFunction());
+		assertSame(sharedTable, f6.getFactorTable());
+		assertEquals(sharedOutputs, sharedTable.getOutputSet());
+		assertArrayEquals(sharedEnergies, sharedTable.getEnergiesSparseUnsafe(), 0.0);
+		assertNotSame(sharedTable, f7.getFactorTable());
+		assertTrue(requireNonNull(f7.getFactorTable().getOutputSet()).get(1));
+
+		// Likewise making one of them undirected.
+		Factor f8 = fg.addFactor(xor, new Bit(), new Bit(), 1);
+		assertSame(f6.getFactorFunction(), f8.getFactorFunction());
+		f6.setUndirected();
+		assertNotSame(f6.getFactorFunction(), f8.getFactorFunction());
+		assertSame(sharedTable, f8.getFactorTable());
+		assertEquals(sharedOutputs, sharedTable.getOutputSet());
+		assertArrayEquals(sharedEnergies, sharedTable.getEnergiesSparseUnsafe(), 0.0);
+		assertNotSame(sharedTable, f6.getFactorTable());
+		assertNull(f6.getFactorTable().getOutputSet());
+
+		// Boxed primitives and strings are compared by value, other objects including arrays by identity.
+		FactorFunction function = new Sum();
+		Object obj = new Object();
+		double[] array = new double[] { 1, 2 };
+		assertEquals(new FactorFunctionWithConstants.Key(function, new Object[] { "a", 2 }, new int[] { 0, 1 }),
+			new FactorFunctionWithConstants.Key(function, new Object[] { "a", 2 }, new int[] { 0, 1 }));
+		assertEquals(new FactorFunctionWithConstants.Key(function, new Object[] { array }, new int[] { 0 }),
+			new FactorFunctionWithConstants.Key(function, new Object[] { array }, new int[] { 0 }));
+		assertNotEquals(new FactorFunctionWithConstants.Key(function, new Object[] { array }, new int[] { 0 }),
+			new FactorFunctionWithConstants.Key(function, new Object[] { array.clone() }, new int[] { 0 }));
+		assertEquals(new FactorFunctionWithConstants.Key(function, new Object[] { obj }, new int[] { 0 }),
+			new FactorFunctionWithConstants.Key(function, new Object[] { obj }, new int[] { 0 }));
+		assertNotEquals(new FactorFunctionWithConstants.Key(function, new Object[] { 1 }, new int[] { 0 }),
+			new FactorFunctionWithConstants.Key(function, new Object[] { 1.0 }, new int[] { 0 }));
+		assertNotEquals(new FactorFunctionWithConstants.Key(function, new Object[] { new Object() }, new int[] { 0 }),
+			new FactorFunctionWithConstants.Key(function, new Object[] { new Object() }, new int[] { 0 }));
+		
+		// Sharing applies across the graph tree.
+		FactorGraph template = new FactorGraph();
+		Discrete a = new Discrete(sumDomain), b = new Discrete(domain);
+		template.addBoundaryVariables(a, b);
+		template.addFactor(sum, a, b, 3);
+		FactorGraph subgraph = fg.addGraph(template, x[0], y[1]);
+		Factor f5 = subgraph.addFactor(sum, new Discrete(sumDomain), new Discrete(domain), 3);
+		assertSame(f0.getFactorFunction(), f5.getFactorFunction());
+	}
+	
+	@Test
+	public void testBulkUpdate()
+	{
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new com.analog.lyric.dimple.solvers.sumproduct.Solver());
+		assertFalse(fg.isBulkUpdate());
+		expectThrow(DimpleException.class, fg, "endBulkUpdate");
+		
+		final int n = 20;
+		Bit[] bits = new Bit[n];
+		for (int i = 0; i < n; ++i)
+		{
+			bits[i] = new Bit();
+		}
+		
+		long version = fg.structureVersion();
+		fg.beginBulkUpdate(n, n - 1, 2 * (n - 1));
+		assertTrue(fg.isBulkUpdate());
+		long bulkVersion = fg.structureVersion();
+		assertTrue(bulkVersion > version);
+		fg.addVariables(bits);
+		fg.beginBulkUpdate();
+		for (int i = 1; i < n; ++i)
+		{
+			fg.addFactor(new Xor(), bits[i - 1], bits[i]);
+		}
+		fg.endBulkUpdate();
+		assertTrue(fg.isBulkUpdate());
+		assertEquals(bulkVersion, fg.structureVersion());
+		assertEquals(n, fg.getVariableCount());
+		assertEquals(n - 1, fg.getFactorCount());
+		fg.endBulkUpdate();
+		assertFalse(fg.isBulkUpdate());
+		assertTrue(fg.structureVersion() > bulkVersion);
+		assertFactorGraphInvariants(fg);
+		
+		for (Variable var : fg.getVariables())
+		{
+			assertTrue(var.getSolver() instanceof com.analog.lyric.dimple.solvers.sumproduct.SumProductDiscrete);
+		}
+		for (Factor factor : fg.getFactors())
+		{
+			assertTrue(factor.getSolver() instanceof com.analog.lyric.dimple.solvers.sumproduct.SumProductTableFactor);
+		}
+		
+		bits[0].setInput(0.8);
+		fg.solve();
+		assertEquals(0.8, bits[n - 1].getP1(), 1e-12);
+	}
+	
 	public static void assertFactorGraphInvariants(FactorGraph fg)
 	{
 		assertSame(fg, fg.asFactorGraph());
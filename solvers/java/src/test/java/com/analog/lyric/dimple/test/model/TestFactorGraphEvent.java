@@ -159,6 +159,24 @@ public class TestFactorGraphEvent extends DimpleTestBase
 		
 		// FIXME: no BoundaryVariableRemoveEvent yet - see BUG 84
 		
+		// Add events are deferred until the end of bulk update, and are omitted for removed nodes
+		Real d = new Real();
+		d.setName("d");
+		Real e = new Real();
+		e.setName("e");
+		root.beginBulkUpdate();
+		root.addVariables(d, e);
+		Factor f4 = root.addFactor(new Normal(0.0, 1.0), d, e);
+		Factor f5 = root.addFactor(new Normal(0.0, 1.0), d);
+		root.remove(f5);
+		handler.assertEvent(FactorRemoveEvent.class, root, f5);
+		handler.assertNoEvents();
+		root.endBulkUpdate();
+		handler.assertEvent(VariableAddEvent.class, root, d);
+		handler.assertEvent(VariableAddEvent.class, root, e);
+		handler.assertEvent(FactorAddEvent.class, root, f4);
+		handler.assertNoEvents();
+		
 		//
 		// Test individual listener flags
 		//
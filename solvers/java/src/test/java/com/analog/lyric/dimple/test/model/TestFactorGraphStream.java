@@ -0,0 +1,325 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.model;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.repeated.BitStream;
+import com.analog.lyric.dimple.model.repeated.FactorGraphStream;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteMessage;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link FactorGraphStream}
+ * @since 0.08
+ */
+public class TestFactorGraphStream extends DimpleTestBase
+{
+	@Test
+	public void testAdvance()
+	{
+		final int bufferSize = 4;
+		
+		FactorGraph sg = new FactorGraph();
+		Bit a = new Bit(), b = new Bit();
+		sg.addBoundaryVariables(a, b);
+		sg.addFactor(new int[][] { {0,0}, {0,1}, {1,0}, {1,1} }, new double[] { .9, .1, .2, .8 }, a, b);
+		
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new SumProductSolver());
+		BitStream s = new BitStream();
+		FactorGraphStream stream = fg.addRepeatedFactor(sg, s, s.getSlice(1));
+		stream.setBufferSize(bufferSize);
+		
+		for (int i = 0; i <= bufferSize; ++i)
+		{
+			s.get(i).setInput(.1 + .2 * i);
+		}
+		
+		fg.initialize();
+		fg.solveOneStep();
+		
+		final List<List<DiscreteMessage>> before = new ArrayList<>();
+		for (FactorGraph ng : stream.getNestedGraphs())
+		{
+			before.add(messages(ng));
+		}
+		
+		fg.advance();
+		
+		final List<FactorGraph> nestedGraphs = stream.getNestedGraphs();
+		assertEquals(bufferSize, nestedGraphs.size());
+		
+		// Messages are shifted from each graph to the previous one...
+		for (int j = 0; j < bufferSize - 1; ++j)
+		{
+			List<DiscreteMessage> expected = before.get(j + 1);
+			List<DiscreteMessage> actual = messages(nestedGraphs.get(j));
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); ++i)
+			{
+				assertTrue(expected.get(i).objectEquals(actual.get(i)));
+			}
+		}
+		
+		// ...and the newest graph starts over with uniform messages
+		for (DiscreteMessage msg : messages(nestedGraphs.get(bufferSize - 1)))
+		{
+			final double[] values = msg.representation();
+			for (double value : values)
+			{
+				assertEquals(values[0], value, 0.0);
+			}
+		}
+	}
+	
+	@Test
+	public void testCircularBuffer()
+	{
+		final int bufferSize = 3;
+		
+		FactorGraph fg1 = new FactorGraph(), fg2 = new FactorGraph();
+		BitStream s1 = new BitStream(), s2 = new BitStream();
+		Bit p1 = new Bit(), p2 = new Bit();
+		FactorGraphStream stream1 = addCircularTestStream(fg1, s1, p1, bufferSize);
+		FactorGraphStream stream2 = addCircularTestStream(fg2, s2, p2, bufferSize);
+		assertFalse(stream1.isCircularBuffer());
+		stream2.setCircularBuffer(true);
+		assertTrue(stream2.isCircularBuffer());
+		
+		final int nVars = s1.size();
+		assertEquals(nVars, s2.size());
+		for (int i = 0; i < nVars; ++i)
+		{
+			s1.get(i).setInput(.1 + .1 * i);
+			s2.get(i).setInput(.1 + .1 * i);
+		}
+		
+		fg1.initialize();
+		fg2.initialize();
+		fg1.solveOneStep();
+		fg2.solveOneStep();
+		assertBeliefsEqual(s1, p1, s2, p2);
+		
+		for (int step = 1; step <= 2 * bufferSize + 1; ++step)
+		{
+			final List<FactorGraph> before = new ArrayList<>(stream2.getNestedGraphs());
+			final Bit oldest = s2.get(0);
+			
+			fg1.advance();
+			fg2.advance();
+			
+			// The oldest graph and variable are reused as the newest ones.
+			final List<FactorGraph> after = stream2.getNestedGraphs();
+			assertSame(before.get(0), after.get(bufferSize - 1));
+			assertSame(before.get(1), after.get(0));
+			assertSame(oldest, s2.get(nVars - 1));
+			
+			final double input = .9 - .05 * step;
+			s1.get(nVars - 1).setInput(input);
+			s2.get(nVars - 1).setInput(input);
+			
+			fg1.solveOneStep();
+			fg2.solveOneStep();
+			assertBeliefsEqual(s1, p1, s2, p2);
+		}
+		
+		stream2.setCircularBuffer(false);
+		fg1.advance();
+		fg2.advance();
+		fg1.solveOneStep();
+		fg2.solveOneStep();
+		assertBeliefsEqual(s1, p1, s2, p2);
+	}
+	
+	/**
+	 * Tree-structured stream, whose tree schedule names stream variables by port, so that running it on
+	 * the wrong nodes after the stream advances gives wrong beliefs after one iteration.
+	 */
+	@Test
+	public void testCircularBufferSchedule()
+	{
+		final int bufferSize = 4;
+		
+		for (boolean multithreaded : new boolean[] { false, true })
+		{
+			FactorGraph fg1 = new FactorGraph(), fg2 = new FactorGraph();
+			BitStream s1 = new BitStream(), s2 = new BitStream();
+			addTreeTestStream(fg1, s1, bufferSize);
+			FactorGraphStream stream2 = addTreeTestStream(fg2, s2, bufferSize);
+			stream2.setCircularBuffer(true);
+			final ISolverFactorGraph sgraph2 = requireNonNull(fg2.getSolver());
+			sgraph2.useMultithreading(multithreaded);
+			
+			final int nVars = s1.size();
+			for (int i = 0; i < nVars; ++i)
+			{
+				s1.get(i).setInput(.1 + .15 * i);
+				s2.get(i).setInput(.1 + .15 * i);
+			}
+			
+			fg1.initialize();
+			fg2.initialize();
+			fg1.solveOneStep();
+			fg2.solveOneStep();
+			assertBeliefsEqual(s1, s2);
+			
+			final long structureVersion = fg2.structureVersion();
+			final ISchedule schedule = sgraph2.getSchedule();
+			
+			for (int step = 1; step <= 2 * bufferSize + 1; ++step)
+			{
+				fg1.advance();
+				fg2.advance();
+				
+				// The schedule is kept rather than being rebuilt for the new positions.
+				assertEquals(structureVersion, fg2.structureVersion());
+				assertSame(schedule, sgraph2.getSchedule());
+				
+				final double input = .95 - .1 * step;
+				s1.get(nVars - 1).setInput(input);
+				s2.get(nVars - 1).setInput(input);
+				
+				fg1.solveOneStep();
+				fg2.solveOneStep();
+				assertBeliefsEqual(s1, s2);
+			}
+		}
+	}
+	
+	@Test
+	public void testCircularBufferUnsupported()
+	{
+		FactorGraph sg = new FactorGraph();
+		Bit a = new Bit(), b = new Bit();
+		sg.addBoundaryVariables(a, b);
+		sg.addFactor(new int[][] { {0,0}, {0,1}, {1,0}, {1,1} }, new double[] { .9, .1, .2, .8 }, a, b);
+		
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new GibbsSolver());
+		BitStream s = new BitStream();
+		FactorGraphStream stream = fg.addRepeatedFactor(sg, s, s.getSlice(1));
+		
+		try
+		{
+			stream.setCircularBuffer(true);
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+			assertTrue(ex.getMessage().contains("belief propagation"));
+		}
+		assertFalse(stream.isCircularBuffer());
+		
+		// Changing to an unsupported solver after enabling the mode is caught when advancing.
+		fg.setSolverFactory(new SumProductSolver());
+		stream.setCircularBuffer(true);
+		fg.setSolverFactory(new GibbsSolver());
+		fg.initialize();
+		try
+		{
+			fg.advance();
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+			assertTrue(ex.getMessage().contains("belief propagation"));
+		}
+	}
+	
+	private static FactorGraphStream addTreeTestStream(FactorGraph fg, BitStream s, int bufferSize)
+	{
+		FactorGraph sg = new FactorGraph();
+		Bit a = new Bit(), b = new Bit(), h = new Bit();
+		sg.addBoundaryVariables(a, b);
+		h.setInput(.7);
+		sg.addVariables(h);
+		sg.addFactor(new int[][] { {0,0}, {0,1}, {1,0}, {1,1} }, new double[] { .9, .1, .2, .8 }, a, b);
+		sg.addFactor(new int[][] { {0,0}, {0,1}, {1,0}, {1,1} }, new double[] { .6, .4, .3, .7 }, b, h);
+		
+		fg.setSolverFactory(new SumProductSolver());
+		fg.setOption(BPOptions.iterations, 1);
+		FactorGraphStream stream = fg.addRepeatedFactor(sg, s, s.getSlice(1));
+		stream.setBufferSize(bufferSize);
+		return stream;
+	}
+	
+	private static void assertBeliefsEqual(BitStream s1, BitStream s2)
+	{
+		for (int i = 0, n = s1.size(); i < n; ++i)
+		{
+			assertArrayEquals(s1.get(i).getBelief(), s2.get(i).getBelief(), 1e-10);
+		}
+	}
+	
+	private static FactorGraphStream addCircularTestStream(FactorGraph fg, BitStream s, Bit p, int bufferSize)
+	{
+		FactorGraph sg = new FactorGraph();
+		Bit a = new Bit(), b = new Bit(), c = new Bit(), q = new Bit();
+		sg.addBoundaryVariables(a, b, c, q);
+		sg.addFactor(new int[][] { {0,0}, {0,1}, {1,0}, {1,1} }, new double[] { .9, .1, .2, .8 }, a, b);
+		sg.addFactor(new int[][] { {0,0}, {0,1}, {1,0}, {1,1} }, new double[] { .6, .4, .3, .7 }, a, c);
+		sg.addFactor(new int[][] { {0,0}, {0,1}, {1,0}, {1,1} }, new double[] { .8, .2, .4, .6 }, c, q);
+		
+		fg.setSolverFactory(new SumProductSolver());
+		fg.setOption(BPOptions.iterations, 3);
+		p.setInput(.3);
+		FactorGraphStream stream = fg.addRepeatedFactor(sg, s, s.getSlice(1), s.getSlice(2), p);
+		stream.setBufferSize(bufferSize);
+		return stream;
+	}
+	
+	private static void assertBeliefsEqual(BitStream s1, Bit p1, BitStream s2, Bit p2)
+	{
+		for (int i = 0, n = s1.size(); i < n; ++i)
+		{
+			assertArrayEquals(s1.get(i).getBelief(), s2.get(i).getBelief(), 1e-10);
+		}
+		assertArrayEquals(p1.getBelief(), p2.getBelief(), 1e-10);
+	}
+	
+	private static List<DiscreteMessage> messages(FactorGraph graph)
+	{
+		final ISolverFactorGraph sgraph = requireNonNull(graph.getSolver());
+		final List<DiscreteMessage> messages = new ArrayList<>();
+		for (int i = 0, end = graph.getGraphEdgeStateMaxIndex(); i <= end; ++i)
+		{
+			ISolverEdgeState sedge = sgraph.getSolverEdge(i);
+			if (sedge != null)
+			{
+				messages.add(((DiscreteMessage)requireNonNull(sedge.getFactorToVarMsg())).clone());
+				messages.add(((DiscreteMessage)requireNonNull(sedge.getVarToFactorMsg())).clone());
+			}
+		}
+		return messages;
+	}
+}
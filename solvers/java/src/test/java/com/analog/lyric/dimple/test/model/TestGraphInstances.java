@@ -0,0 +1,341 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.model;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.repeated.GraphInstances;
+import com.analog.lyric.dimple.model.repeated.GraphTemplate;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsDiscrete;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
+import com.analog.lyric.dimple.solvers.junctiontree.JunctionTreeSolver;
+import com.analog.lyric.dimple.solvers.lp.LPSolver;
+import com.analog.lyric.dimple.solvers.minsum.MinSumSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomGraphInstances;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link FactorGraph#addGraphInstances} and {@link GraphTemplate}.
+ * @since 0.08
+ */
+public class TestGraphInstances extends DimpleTestBase
+{
+	private static final DiscreteDomain STATES = DiscreteDomain.range(0, 2);
+	private static final double[] HIDDEN_INPUT = new double[] { .3, .7 };
+
+	@Test
+	public void testTemplate()
+	{
+		GraphTemplate tree = new GraphTemplate(buildTemplate(false));
+		assertTrue(tree.isTree());
+		assertEquals(3, tree.getBoundaryVariableCount());
+		assertEquals(4, tree.getVariableCount());
+		assertEquals(3, tree.getFactorCount());
+		assertEquals(6, tree.getEdgeCount());
+		assertEquals(2 * tree.getEdgeCount(), tree.getScheduleUnsafe().length);
+		assertEquals(3 + 3 + 3 + 2 + 2 + 2, tree.getMessageLength());
+
+		GraphTemplate loopy = new GraphTemplate(buildTemplate(true));
+		assertFalse(loopy.isTree());
+		assertEquals(4, loopy.getFactorCount());
+
+		// The energy of an instance has the internal variable summed out.
+		GraphInstances function = new GraphInstances(tree, 1);
+		for (int a = 0; a < 3; ++a)
+			for (int b = 0; b < 3; ++b)
+				for (int o = 0; o < 2; ++o)
+				{
+					double expected = 0;
+					for (int h = 0; h < 2; ++h)
+					{
+						expected += HIDDEN_INPUT[h] * weight(0, a, b) * weight(1, b, h) * weight(2, h, o);
+					}
+					Value[] values = new Value[] { Value.create(STATES, a), Value.create(STATES, b), Value.create(DiscreteDomain.bit(), o) };
+					assertEquals(-Math.log(expected), function.evalEnergy(values), 1e-12);
+				}
+
+		FactorGraph fg = new FactorGraph();
+		Discrete x = new Discrete(STATES), y = new Discrete(STATES);
+		Bit o = new Bit();
+		try
+		{
+			fg.addGraphInstances(tree, new Variable[][] { { x, x, o } });
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+			assertTrue(ex.getMessage().contains("more than once"));
+		}
+		try
+		{
+			fg.addGraphInstances(tree, new Variable[][] { { x, o, y } });
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+			assertTrue(ex.getMessage().contains("same domain"));
+		}
+	}
+
+	@Test
+	public void testSumProduct()
+	{
+		testSumProduct(false, 6, 20, 1e-10);
+		testSumProduct(true, 6, 200, 1e-8);
+	}
+
+	private void testSumProduct(boolean loopy, int nInstances, int iterations, double tolerance)
+	{
+		final FactorGraph template = buildTemplate(loopy);
+		Variable hidden = null;
+		for (Variable var : template.getOwnedVariables())
+		{
+			if (!template.isBoundaryVariable(var))
+			{
+				hidden = var;
+			}
+		}
+
+		Chain copies = new Chain(nInstances);
+		FactorGraph[] subgraphs = new FactorGraph[nInstances];
+		for (int k = 0; k < nInstances; ++k)
+		{
+			subgraphs[k] = copies.fg.addGraph(template, copies.boundary(k));
+		}
+
+		Chain instances = new Chain(nInstances);
+		Variable[][] boundaryVariables = new Variable[nInstances][];
+		for (int k = 0; k < nInstances; ++k)
+		{
+			boundaryVariables[k] = instances.boundary(k);
+		}
+		Factor factor = instances.fg.addGraphInstances(template, boundaryVariables);
+		assertEquals(1, instances.fg.getFactorCount());
+		assertEquals(nInstances * 3, factor.getSiblingCount());
+
+		for (Chain chain : new Chain[] { copies, instances })
+		{
+			chain.fg.setSolverFactory(new SumProductSolver());
+			chain.fg.setOption(BPOptions.iterations, iterations);
+			chain.fg.solve();
+		}
+
+		CustomGraphInstances sfactor = (CustomGraphInstances)requireNonNull(factor.getSolver());
+		GraphTemplate graphTemplate = sfactor.getTemplate();
+		final int h = graphTemplate.indexOf(requireNonNull(hidden));
+		assertEquals(3, h);
+
+		for (int k = 0; k <= nInstances; ++k)
+		{
+			assertArrayEquals(copies.states[k].getBelief(), instances.states[k].getBelief(), tolerance);
+		}
+		for (int k = 0; k < nInstances; ++k)
+		{
+			assertArrayEquals(copies.observations[k].getBelief(), instances.observations[k].getBelief(), tolerance);
+
+			Discrete hiddenCopy = null;
+			for (Variable var : subgraphs[k].getOwnedVariables())
+			{
+				if (!subgraphs[k].isBoundaryVariable(var))
+				{
+					hiddenCopy = (Discrete)var;
+				}
+			}
+			assertArrayEquals(requireNonNull(hiddenCopy).getBelief(), sfactor.getInstanceBelief(k, h), tolerance);
+			assertArrayEquals(instances.states[k].getBelief(), sfactor.getInstanceBelief(k, 0), 0.0);
+		}
+	}
+
+	@Test
+	public void testGibbs()
+	{
+		final int nInstances = 3;
+		final FactorGraph template = buildTemplate(false);
+
+		Chain exact = new Chain(nInstances);
+		Chain sampled = new Chain(nInstances);
+		for (Chain chain : new Chain[] { exact, sampled })
+		{
+			Variable[][] boundaryVariables = new Variable[nInstances][];
+			for (int k = 0; k < nInstances; ++k)
+			{
+				boundaryVariables[k] = chain.boundary(k);
+			}
+			chain.fg.addGraphInstances(template, boundaryVariables);
+		}
+
+		exact.fg.setSolverFactory(new SumProductSolver());
+		exact.fg.setOption(BPOptions.iterations, 20);
+		exact.fg.solve();
+
+		sampled.fg.setSolverFactory(new GibbsSolver());
+		sampled.fg.setOption(GibbsOptions.numSamples, 20000);
+		sampled.fg.setOption(GibbsOptions.burnInScans, 100);
+		sampled.fg.setOption(DimpleOptions.randomSeed, 42L);
+		sampled.fg.solve();
+
+		for (int k = 0; k <= nInstances; ++k)
+		{
+			assertArrayEquals(exact.states[k].getBelief(), sampled.states[k].getBelief(), .02);
+		}
+		for (int k = 0; k < nInstances; ++k)
+		{
+			assertArrayEquals(exact.observations[k].getBelief(), sampled.observations[k].getBelief(), .02);
+		}
+
+		com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomGraphInstances sfactor =
+			(com.analog.lyric.dimple.solvers.gibbs.customFactors.CustomGraphInstances)
+			requireNonNull(sampled.fg.getFactors().iterator().next().getSolver());
+		assertEquals(nInstances, sfactor.getInstanceCount());
+		for (int k = 0; k < nInstances; ++k)
+		{
+			int sample = sfactor.getInstanceSampleIndex(k, 3);
+			assertTrue(sample == 0 || sample == 1);
+			assertEquals(((GibbsDiscrete)requireNonNull(sampled.states[k].getSolver())).getCurrentSampleIndex(),
+				sfactor.getInstanceSampleIndex(k, 0));
+		}
+
+		double potential = sfactor.getPotential();
+		assertTrue(potential > 0 && potential < Double.POSITIVE_INFINITY);
+	}
+
+	@Test
+	public void testUnsupportedSolvers()
+	{
+		final int nInstances = 3;
+		for (IFactorGraphFactory<?> solver : new IFactorGraphFactory<?>[] {
+			new MinSumSolver(), new LPSolver(), new JunctionTreeSolver() })
+		{
+			Chain chain = new Chain(nInstances);
+			Variable[][] boundaryVariables = new Variable[nInstances][];
+			for (int k = 0; k < nInstances; ++k)
+			{
+				boundaryVariables[k] = chain.boundary(k);
+			}
+			chain.fg.addGraphInstances(buildTemplate(false), boundaryVariables);
+			
+			try
+			{
+				chain.fg.setSolverFactory(solver);
+				chain.fg.solve();
+				fail("expected DimpleException");
+			}
+			catch (DimpleException ex)
+			{
+				assertTrue(ex.getMessage(), ex.getMessage().contains("requires the sum-product or Gibbs solver"));
+			}
+		}
+	}
+	
+	/*---------
+	 * Helpers
+	 */
+
+	/**
+	 * HMM-like step with boundary variables (a, b, o), where a and b are consecutive states and o is an
+	 * observation, and one internal variable h between b and o. If {@code loopy}, h is also connected to a.
+	 */
+	private static FactorGraph buildTemplate(boolean loopy)
+	{
+		FactorGraph template = new FactorGraph();
+		Discrete a = new Discrete(STATES), b = new Discrete(STATES);
+		Bit o = new Bit();
+		template.addBoundaryVariables(a, b, o);
+		Discrete h = new Discrete(DiscreteDomain.range(0, 1));
+		h.setInput(HIDDEN_INPUT);
+		template.addVariables(h);
+		addTableFactor(template, 0, a, b);
+		addTableFactor(template, 1, b, h);
+		addTableFactor(template, 2, h, o);
+		if (loopy)
+		{
+			addTableFactor(template, 3, a, h);
+		}
+		return template;
+	}
+
+	private static double weight(int factor, int i, int j)
+	{
+		// Leave out one entry of the first table to exercise sparse tables.
+		return factor == 0 && i == 2 && j == 0 ? 0 : 1 + ((factor * 31 + i * 7 + j * 3) % 5) / 4.0;
+	}
+
+	private static void addTableFactor(FactorGraph fg, int factor, Discrete x, Discrete y)
+	{
+		final int nx = x.getDomain().size(), ny = y.getDomain().size();
+		int n = 0;
+		for (int i = 0; i < nx; ++i)
+			for (int j = 0; j < ny; ++j)
+				if (weight(factor, i, j) != 0)
+					++n;
+		int[][] indices = new int[n][];
+		double[] weights = new double[n];
+		n = 0;
+		for (int i = 0; i < nx; ++i)
+			for (int j = 0; j < ny; ++j)
+				if (weight(factor, i, j) != 0)
+				{
+					indices[n] = new int[] { i, j };
+					weights[n++] = weight(factor, i, j);
+				}
+		fg.addFactor(indices, weights, x, y);
+	}
+
+	private static class Chain
+	{
+		final FactorGraph fg = new FactorGraph();
+		final Discrete[] states;
+		final Bit[] observations;
+
+		Chain(int nInstances)
+		{
+			states = new Discrete[nInstances + 1];
+			observations = new Bit[nInstances];
+			for (int k = 0; k <= nInstances; ++k)
+			{
+				states[k] = new Discrete(STATES);
+			}
+			states[0].setInput(.5, .3, .2);
+			for (int k = 0; k < nInstances; ++k)
+			{
+				observations[k] = new Bit();
+				observations[k].setInput(.2 + .6 * k / nInstances);
+			}
+		}
+
+		Variable[] boundary(int k)
+		{
+			return new Variable[] { states[k], states[k + 1], observations[k] };
+		}
+	}
+}
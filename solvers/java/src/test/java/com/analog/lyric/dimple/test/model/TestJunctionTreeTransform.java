@@ -258,13 +258,14 @@ public class TestJunctionTreeTransform extends DimpleTestBase
 		// Try with conditioning
 		model.setSolverFactory(null);
 		VariableList variables = model.getVariables();
+		Discrete conditioned = null;
 		for (int i = 0; i < 100000; ++i)
 		{
 			Variable variable = variables.getByIndex(rand.nextInt(variables.size()));
 			if (variable instanceof Discrete)
 			{
-				Discrete discrete = (Discrete)variable;
-				discrete.setFixedValueIndex(rand.nextInt(discrete.getDomain().size()));
+				conditioned = (Discrete)variable;
+				conditioned.setFixedValueIndex(rand.nextInt(conditioned.getDomain().size()));
 				break;
 			}
 		}
@@ -278,6 +279,23 @@ public class TestJunctionTreeTransform extends DimpleTestBase
 		}
 		assertTrue(transformMap.target().isForest());
 		assertModelsEquivalent(transformMap);
+		
+		if (conditioned != null && conditioned.getDomain().size() > 1)
+		{
+			// Changing the fixed value only requires the conditioned tables to be updated.
+			model.setSolverFactory(null);
+			final int valueIndex = conditioned.getFixedValueIndex();
+			conditioned.setFixedValueIndex((valueIndex + 1) % conditioned.getDomain().size());
+			assertFalse(transformMap.isValid());
+			assertTrue(transformMap.updateConditionedValues());
+			assertTrue(transformMap.isValid());
+			assertModelsEquivalent(transformMap);
+			
+			// Removing the fixed value requires a new transformation.
+			conditioned.setInputObject(null);
+			assertFalse(transformMap.isValid());
+			assertFalse(transformMap.updateConditionedValues());
+		}
 	}
 	
 }
@@ -20,6 +20,8 @@ import static com.analog.lyric.util.test.ExceptionTester.*;
 import static java.util.Objects.*;
 import static org.junit.Assert.*;
 
+import java.util.Random;
+
 import org.junit.Test;
 
 import com.analog.lyric.dimple.exceptions.DimpleException;
@@ -588,10 +590,53 @@ public class TestVariableEliminator extends DimpleTestBase
 			requireNonNull(holder.getOption(key)).toArray());
 	}
 	
+	@Test
+	public void testGenerateParallel()
+	{
+		final RandomGraphGenerator generator = new RandomGraphGenerator(new Random(42));
+		
+		for (FactorGraph model : new FactorGraph[] { generator.buildGrid(6), generator.buildRandomGraph(40) })
+		{
+			// Threshold that cannot be met, so that all attempts are run
+			Stats threshold = new Stats().maxCliqueCardinality(0);
+			Ordering ordering = testGenerateParallel(model, threshold, 12);
+			
+			// Threshold that can be met partway through
+			threshold = new Stats().maxCliqueCardinality(ordering.stats.maxCliqueCardinality() * 4);
+			testGenerateParallel(model, threshold, 12);
+		}
+	}
+	
 	/*----------------
 	 * Helper methods
 	 */
 	
+	private Ordering testGenerateParallel(FactorGraph model, Stats threshold, int nAttempts)
+	{
+		final long seed = 1234;
+		
+		Ordering expected = null;
+		for (int nThreads : new int[] { 1, 2, 4 })
+		{
+			VariableEliminator eliminator = new VariableEliminator(model, false, new Random(seed));
+			Ordering ordering =
+				VariableEliminator.generateParallel(eliminator, nAttempts, threshold, nThreads, VariableCost.values());
+			assertEquals(model.getVariableCount(), ordering.variables.size());
+			
+			if (expected == null)
+			{
+				expected = ordering;
+			}
+			else
+			{
+				assertEquals(expected.variables, ordering.variables);
+				assertStats(expected.stats, ordering.stats);
+			}
+		}
+		
+		return requireNonNull(expected);
+	}
+	
 	private void addClique(FactorGraph model, Variable ... variables)
 	{
 		model.addFactor(factorFunction, variables);
@@ -0,0 +1,162 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.schedulers;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.schedulers.FloodingScheduler;
+import com.analog.lyric.dimple.schedulers.ResidualBPScheduler;
+import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
+import com.analog.lyric.dimple.schedulers.schedule.ResidualBPSchedule;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.BPSolverGraph;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+import com.analog.lyric.math.DimpleRandom;
+
+/**
+ * Tests for {@link ResidualBPScheduler} and {@link ResidualBPSchedule}.
+ * @since 0.08
+ */
+public class TestResidualBPScheduler extends DimpleTestBase
+{
+	@Test
+	public void testTree()
+	{
+		// Chain a - b - c
+		FactorGraph fg = new FactorGraph();
+		Bit a = new Bit(), b = new Bit(), c = new Bit();
+		a.setInput(.8);
+		c.setInput(.3);
+		final int[][] indices = new int[][] { {0,0}, {0,1}, {1,0}, {1,1} };
+		fg.addFactor(indices, new double[] { 2, 1, 1, 2 }, a, b);
+		fg.addFactor(indices, new double[] { 1, 3, 3, 1 }, b, c);
+		
+		fg.setSolverFactory(new SumProductSolver());
+		fg.setScheduler(new FloodingScheduler());
+		fg.setOption(BPOptions.iterations, 5);
+		fg.solve();
+		final double[][] expectedBeliefs = new double[][] { a.getBelief(), b.getBelief(), c.getBelief() };
+
+		BPOptions.scheduler.set(fg, "ResidualBPScheduler");
+		fg.setOption(BPOptions.iterations, 3);
+		BPSolverGraph<?,?,?> sfg = requireNonNull((BPSolverGraph<?,?,?>)fg.getSolver());
+		ISchedule schedule = sfg.getSchedule();
+		assertTrue(schedule instanceof ResidualBPSchedule);
+		ResidualBPSchedule rschedule = (ResidualBPSchedule)schedule;
+		assertSame(ResidualBPScheduler.class, requireNonNull(rschedule.getScheduler()).getClass());
+		
+		// Every directed edge is queued before the first iteration.
+		fg.initialize();
+		assertEquals(8, rschedule.queueSize());
+		
+		sfg.iterate(1);
+		sfg.iterate(2);
+		
+		// Messages on a tree stop changing, so the queue should drain.
+		assertEquals(0, rschedule.queueSize());
+		assertArrayEquals(expectedBeliefs[0], a.getBelief(), 1e-12);
+		assertArrayEquals(expectedBeliefs[1], b.getBelief(), 1e-12);
+		assertArrayEquals(expectedBeliefs[2], c.getBelief(), 1e-12);
+		
+		// Initialization requeues everything
+		fg.initialize();
+		assertEquals(8, rschedule.queueSize());
+		
+		// Iterating when nothing is left to do produces no entries
+		fg.solve();
+		assertEquals(0, rschedule.queueSize());
+		assertFalse(rschedule.updateIterator().hasNext());
+	}
+	
+	@Test
+	public void testLoopy()
+	{
+		final int size = 5;
+		final double tolerance = 1e-8;
+		final DimpleRandom rand = new DimpleRandom(42);
+		
+		FactorGraph fg = new FactorGraph();
+		Bit[][] bits = new Bit[size][size];
+		for (int i = 0; i < size; ++i)
+		{
+			for (int j = 0; j < size; ++j)
+			{
+				Bit bit = bits[i][j] = new Bit();
+				bit.setInput(.2 + .6 * rand.nextDouble());
+				fg.addVariables(bit);
+			}
+		}
+		final int[][] indices = new int[][] { {0,0}, {0,1}, {1,0}, {1,1} };
+		for (int i = 0; i < size; ++i)
+		{
+			for (int j = 0; j < size; ++j)
+			{
+				if (i + 1 < size)
+					fg.addFactor(indices, randomCoupling(rand), bits[i][j], bits[i+1][j]);
+				if (j + 1 < size)
+					fg.addFactor(indices, randomCoupling(rand), bits[i][j], bits[i][j+1]);
+			}
+		}
+		
+		BPSolverGraph<?,?,?> sfg = (BPSolverGraph<?,?,?>)fg.setSolverFactory(new SumProductSolver());
+		fg.setOption(BPOptions.iterations, 200);
+		fg.setOption(BPOptions.convergenceTolerance, tolerance);
+		fg.setScheduler(new FloodingScheduler());
+		fg.solve();
+		assertTrue(sfg.hasConverged());
+		final int floodingIterations = sfg.getLastIterationCount();
+		
+		double[][] expectedBeliefs = new double[size*size][];
+		for (int i = 0; i < size * size; ++i)
+		{
+			expectedBeliefs[i] = bits[i/size][i%size].getBelief();
+		}
+		
+		fg.setScheduler(new ResidualBPScheduler());
+		fg.solve();
+		assertTrue(sfg.hasConverged());
+		assertTrue(sfg.getLastIterationCount() <= floodingIterations);
+		
+		for (int i = 0; i < size * size; ++i)
+		{
+			assertArrayEquals(expectedBeliefs[i], bits[i/size][i%size].getBelief(), 1e-6);
+		}
+		
+		// Each iteration has at most as many entries as there are directed edges
+		int nEntries = 0;
+		for (Iterator<IScheduleEntry> iter = ((ResidualBPSchedule)sfg.getSchedule()).updateIterator(); iter.hasNext(); iter.next())
+		{
+			++nEntries;
+		}
+		assertTrue(nEntries <= 4 * fg.getFactorCount());
+	}
+	
+	private double[] randomCoupling(DimpleRandom rand)
+	{
+		double same = 1 + rand.nextDouble(), different = 1 + rand.nextDouble();
+		return new double[] { same, different, different, same };
+	}
+}
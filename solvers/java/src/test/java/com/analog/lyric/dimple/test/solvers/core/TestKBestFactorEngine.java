@@ -0,0 +1,147 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.core;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.solvers.core.kbest.IKBestFactor;
+import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
+import com.analog.lyric.dimple.solvers.minsum.MinSumSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Unit test for KBestFactorEngine
+ * 
+ * @since 0.08
+ */
+public class TestKBestFactorEngine extends DimpleTestBase
+{
+	static class CountingFunction extends FactorFunction
+	{
+		int _evalCount = 0;
+		
+		/**
+		 * If set, the next evaluation will first update this edge of {@link #_nestedFactor}.
+		 */
+		int _nestedEdge = -1;
+		@Nullable Factor _nestedFactor = null;
+		
+		@Override
+		public double evalEnergy(Value[] values)
+		{
+			++_evalCount;
+			final int nestedEdge = _nestedEdge;
+			if (nestedEdge >= 0)
+			{
+				_nestedEdge = -1;
+				requireNonNull(_nestedFactor).updateEdge(nestedEdge);
+			}
+			int sum = 0;
+			for (int i = 0; i < values.length; ++i)
+			{
+				sum += (2 * i + 3) * values[i].getInt();
+			}
+			return .1 * (sum % 11);
+		}
+	}
+	
+	@Test
+	public void test()
+	{
+		testUpdate(new SumProductSolver(), 6, 3, 3);
+		testUpdate(new MinSumSolver(), 6, 3, 3);
+		
+		// Lattice of evaluations too large to be retained by the scratch arena
+		testUpdate(new SumProductSolver(), 51, 50, 3);
+	}
+	
+	private void testUpdate(IFactorGraphFactory<?> solver, int domainSize, int k, int nVars)
+	{
+		FactorGraph fg = new FactorGraph();
+		DiscreteDomain domain = DiscreteDomain.range(0, domainSize - 1);
+		Discrete[] vars = new Discrete[nVars];
+		for (int i = 0; i < nVars; ++i)
+		{
+			vars[i] = new Discrete(domain);
+			double[] input = new double[domainSize];
+			for (int j = 0; j < domainSize; ++j)
+			{
+				input[j] = testRand.nextDouble() + .01;
+			}
+			vars[i].setInput(input);
+		}
+
+		CountingFunction function = new CountingFunction();
+		Factor factor = fg.addFactor(function, vars);
+		fg.setOption(BPOptions.maxMessageSize, k);
+		fg.setSolverFactory(solver);
+		fg.solve();
+		
+		IKBestFactor sfactor = (IKBestFactor)requireNonNull(factor.getSolver());
+		
+		// Compute messages one edge at a time.
+		final int latticeSize = (int)Math.pow(k, nVars);
+		final int perEdgeEvaluations = domainSize * latticeSize / k;
+		double[][] expected = new double[nVars][];
+		for (int i = 0; i < nVars; ++i)
+		{
+			function._evalCount = 0;
+			factor.updateEdge(i);
+			assertEquals(perEdgeEvaluations, function._evalCount);
+			expected[i] = sfactor.getOutPortMsgs()[i].clone();
+		}
+		
+		// Updating all edges at once should produce the same messages with fewer evaluations
+		// because evaluations over the k best lattice are shared across edges.
+		function._evalCount = 0;
+		factor.update();
+		assertEquals(latticeSize + nVars * (domainSize - k) * latticeSize / k, function._evalCount);
+		assertTrue(function._evalCount < nVars * perEdgeEvaluations);
+		for (int i = 0; i < nVars; ++i)
+		{
+			assertArrayEquals(expected[i], sfactor.getOutPortMsgs()[i], 1e-12);
+		}
+		
+		// Repeating the update reuses the cached evaluation storage.
+		factor.update();
+		for (int i = 0; i < nVars; ++i)
+		{
+			assertArrayEquals(expected[i], sfactor.getOutPortMsgs()[i], 1e-12);
+		}
+		
+		// Updating another edge of the same factor while an edge update is in progress must not
+		// disturb the outer update.
+		function._nestedFactor = factor;
+		function._nestedEdge = 1;
+		factor.updateEdge(0);
+		assertEquals(-1, function._nestedEdge);
+		assertArrayEquals(expected[0], sfactor.getOutPortMsgs()[0], 1e-12);
+		assertArrayEquals(expected[1], sfactor.getOutPortMsgs()[1], 1e-12);
+	}
+}
@@ -0,0 +1,340 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.core;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.Test;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTableRepresentation;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.schedulers.FloodingScheduler;
+import com.analog.lyric.dimple.schedulers.IScheduler;
+import com.analog.lyric.dimple.schedulers.SequentialScheduler;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.multithreading.GraphPartition;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultiThreadingManager;
+import com.analog.lyric.dimple.solvers.core.SolverBase;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultithreadingMode;
+import com.analog.lyric.dimple.solvers.core.multithreading.ThreadPool;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link MultiThreadingManager}
+ * 
+ * @since 0.08
+ */
+public class TestMultiThreadingManager extends DimpleTestBase
+{
+	@Test
+	public void testModes()
+	{
+		testModes(new FloodingScheduler());
+		testModes(new SequentialScheduler());
+	}
+	
+	private void testModes(IScheduler scheduler)
+	{
+		final int rows = 6, cols = 7, nIters = 5;
+		final DiscreteDomain domain = DiscreteDomain.range(0, 2);
+		
+		FactorGraph fg = new FactorGraph();
+		Discrete[][] vars = new Discrete[rows][cols];
+		for (int row = 0; row < rows; ++row)
+		{
+			for (int col = 0; col < cols; ++col)
+			{
+				Discrete var = vars[row][col] = new Discrete(domain);
+				var.setInput(testRand.nextDouble(), testRand.nextDouble(), testRand.nextDouble());
+				if (row > 0)
+				{
+					addRandomFactor(fg, var, vars[row - 1][col]);
+				}
+				if (col > 0)
+				{
+					addRandomFactor(fg, var, vars[row][col - 1]);
+				}
+			}
+		}
+		
+		// A variable without any factors.
+		Discrete isolated = new Discrete(domain);
+		isolated.setInput(.2, .3, .5);
+		fg.addVariables(isolated);
+		
+		fg.setScheduler(scheduler);
+		SumProductSolverGraph sfg = requireNonNull(fg.setSolverFactory(new SumProductSolver()));
+		
+		fg.initialize();
+		sfg.iterate(nIters);
+		double[][][] expected = getBeliefs(vars);
+		
+		MultiThreadingManager manager = sfg.getMultithreadingManager();
+		sfg.useMultithreading(true);
+		for (MultithreadingMode mode : manager.getModes())
+		{
+			manager.setMode(mode);
+			for (int numWorkers : new int[] { 1, 3 })
+			for (boolean partitioning : new boolean[] { true, false })
+			{
+				manager.setNumWorkers(numWorkers);
+				manager.useLocalityPartitioning(partitioning);
+				assertEquals(partitioning, manager.useLocalityPartitioning());
+				if (partitioning)
+				{
+					assertEquals(numWorkers, requireNonNull(manager.getPartition()).getNumPartitions());
+				}
+				else
+				{
+					assertNull(manager.getPartition());
+				}
+				
+				fg.initialize();
+				sfg.iterate(nIters);
+				assertBeliefsEqual(expected, getBeliefs(vars));
+				
+				// Running iterations in separate calls should produce the same result.
+				fg.initialize();
+				sfg.iterate(2);
+				sfg.iterate(nIters - 2);
+				assertBeliefsEqual(expected, getBeliefs(vars));
+				
+				assertArrayEquals(new double[] { .2, .3, .5 }, isolated.getBelief(), 1e-15);
+			}
+		}
+		sfg.useMultithreading(false);
+	}
+	
+	@Test
+	public void testPartition()
+	{
+		final int size = 20;
+		final DiscreteDomain domain = DiscreteDomain.range(0, 1);
+		
+		FactorGraph fg = new FactorGraph();
+		Discrete[][] vars = new Discrete[size][size];
+		for (int row = 0; row < size; ++row)
+		{
+			for (int col = 0; col < size; ++col)
+			{
+				Discrete var = vars[row][col] = new Discrete(domain);
+				if (row > 0)
+				{
+					addRandomFactor(fg, var, vars[row - 1][col]);
+				}
+				if (col > 0)
+				{
+					addRandomFactor(fg, var, vars[row][col - 1]);
+				}
+			}
+		}
+		
+		final int nFactors = fg.getFactorCount();
+		final int nEdges = 2 * nFactors;
+		
+		GraphPartition partition1 = GraphPartition.create(fg, 1);
+		assertEquals(1, partition1.getNumPartitions());
+		assertEquals(0, partition1.getCutEdgeCount());
+		
+		for (int nPartitions : new int[] { 2, 4, 7 })
+		{
+			GraphPartition partition = GraphPartition.create(fg, nPartitions);
+			assertEquals(nPartitions, partition.getNumPartitions());
+			
+			int[] weights = new int[nPartitions];
+			int totalWeight = 0;
+			for (Variable var : fg.getVariables())
+			{
+				int region = partition.getPartition(var);
+				assertTrue(region >= 0 && region < nPartitions);
+				weights[region] += 1 + var.getSiblingCount();
+				totalWeight += 1 + var.getSiblingCount();
+			}
+			for (Factor factor : fg.getFactors())
+			{
+				int region = partition.getPartition(factor);
+				assertTrue(region >= 0 && region < nPartitions);
+				weights[region] += 1 + factor.getSiblingCount();
+				totalWeight += 1 + factor.getSiblingCount();
+				assertEquals(region, partition.getPartition(new NodeScheduleEntry(factor)));
+			}
+			
+			// Regions should have roughly equal weight and much fewer cut edges than the
+			// expected number for a random assignment.
+			final double meanWeight = (double)totalWeight / nPartitions;
+			for (int weight : weights)
+			{
+				assertEquals(meanWeight, weight, meanWeight * .1);
+			}
+			assertTrue(partition.getCutEdgeCount() > 0);
+			assertTrue(partition.getCutEdgeCount() < nEdges * (nPartitions - 1) / nPartitions / 4);
+			
+			// Sorting entries by region
+			IScheduleEntry[] entries = new IScheduleEntry[nFactors];
+			int i = 0;
+			for (Factor factor : fg.getFactors())
+			{
+				entries[i++] = new NodeScheduleEntry(factor);
+			}
+			int[] starts = new int[nPartitions + 2];
+			IScheduleEntry[] sorted = partition.sortByPartition(entries, starts);
+			assertEquals(nFactors, sorted.length);
+			assertEquals(0, starts[0]);
+			assertEquals(nFactors, starts[nPartitions]);
+			assertEquals(nFactors, starts[nPartitions + 1]);
+			for (int region = 0; region < nPartitions; ++region)
+			{
+				for (int j = starts[region]; j < starts[region + 1]; ++j)
+				{
+					assertEquals(region, partition.getPartition(sorted[j]));
+				}
+			}
+		}
+		
+		try
+		{
+			GraphPartition.create(fg, 0);
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+		}
+	}
+	
+	/**
+	 * When an update fails, the dataflow mode should not return until updates already running on
+	 * other workers have finished.
+	 */
+	@Test
+	public void testDataflowAbort()
+	{
+		final DiscreteDomain domain = DiscreteDomain.range(0, 2);
+		FactorGraph fg = new FactorGraph();
+		Discrete a1 = new Discrete(domain), a2 = new Discrete(domain);
+		Discrete b1 = new Discrete(domain), b2 = new Discrete(domain);
+		final Factor failing = addRandomFactor(fg, a1, a2);
+		final Factor slow = addRandomFactor(fg, b1, b2);
+		
+		final CountDownLatch slowStarted = new CountDownLatch(1);
+		final CountDownLatch slowFinished = new CountDownLatch(1);
+		fg.setScheduler(new FloodingScheduler());
+		SumProductSolverGraph sfg = requireNonNull(fg.setSolverFactory(new SolverBase<SumProductSolverGraph>() {
+			@Override
+			public SumProductSolverGraph createFactorGraph(FactorGraph graph, @Nullable ISolverFactorGraph parent)
+			{
+				return new SumProductSolverGraph(graph, parent) {
+					@Override
+					public void runScheduleEntry(IScheduleEntry entry)
+					{
+						final Object node = entry instanceof NodeScheduleEntry ?
+							((NodeScheduleEntry)entry).getNode() : null;
+						try
+						{
+							if (node == failing)
+							{
+								slowStarted.await(10, TimeUnit.SECONDS);
+								throw new DimpleException("update failed");
+							}
+							else if (node == slow)
+							{
+								slowStarted.countDown();
+								Thread.sleep(200);
+								slowFinished.countDown();
+							}
+						}
+						catch (InterruptedException ex)
+						{
+							throw new DimpleException(ex);
+						}
+						super.runScheduleEntry(entry);
+					}
+				};
+			}
+		}));
+		
+		MultiThreadingManager manager = sfg.getMultithreadingManager();
+		manager.setMode(MultithreadingMode.Dataflow);
+		manager.setNumWorkers(2);
+		manager.useLocalityPartitioning(false);
+		sfg.useMultithreading(true);
+		ThreadPool.setNumThreads(2);
+		try
+		{
+			fg.initialize();
+			sfg.iterate(1);
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+			assertEquals("update failed", ex.getMessage());
+			assertEquals(0, slowFinished.getCount());
+		}
+		finally
+		{
+			ThreadPool.setNumThreadsToDefault();
+		}
+	}
+	
+	private Factor addRandomFactor(FactorGraph fg, Discrete var1, Discrete var2)
+	{
+		IFactorTable table = FactorTable.create(var1.getDomain(), var2.getDomain());
+		table.setRepresentation(FactorTableRepresentation.DENSE_WEIGHT);
+		table.randomizeWeights(testRand);
+		return fg.addFactor(table, var1, var2);
+	}
+	
+	private double[][][] getBeliefs(Discrete[][] vars)
+	{
+		double[][][] beliefs = new double[vars.length][][];
+		for (int row = 0; row < vars.length; ++row)
+		{
+			beliefs[row] = new double[vars[row].length][];
+			for (int col = 0; col < vars[row].length; ++col)
+			{
+				beliefs[row][col] = vars[row][col].getBelief();
+			}
+		}
+		return beliefs;
+	}
+	
+	private void assertBeliefsEqual(double[][][] expected, double[][][] actual)
+	{
+		for (int row = 0; row < expected.length; ++row)
+		{
+			for (int col = 0; col < expected[row].length; ++col)
+			{
+				assertArrayEquals(expected[row][col], actual[row][col], 1e-12);
+			}
+		}
+	}
+}
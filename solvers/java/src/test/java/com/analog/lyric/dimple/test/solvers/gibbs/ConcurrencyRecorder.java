@@ -0,0 +1,77 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.model.values.Value;
+
+/**
+ * Thread safe standard normal that records whether it is evaluated on two threads other than the
+ * one that created it at the same time.
+ * <p>
+ * The first evaluation on each such thread waits for up to ten seconds for another one to arrive.
+ * 
+ * @since 0.08
+ */
+class ConcurrencyRecorder extends FactorFunction
+{
+	private final Thread _creator = Thread.currentThread();
+	private final Set<Thread> _threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread,Boolean>());
+	private final CountDownLatch _latch = new CountDownLatch(2);
+	private volatile boolean _concurrent = false;
+	
+	@Override
+	public double evalEnergy(Value[] values)
+	{
+		final Thread thread = Thread.currentThread();
+		if (thread != _creator && _latch.getCount() > 0 && _threads.add(thread))
+		{
+			// Wait for another thread to get here.
+			_latch.countDown();
+			try
+			{
+				if (_latch.await(10, TimeUnit.SECONDS))
+				{
+					_concurrent = true;
+				}
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		final double x = values[0].getDouble();
+		return x * x / 2;
+	}
+	
+	@Override
+	public boolean isThreadSafe()
+	{
+		return true;
+	}
+	
+	boolean wasConcurrent()
+	{
+		return _concurrent;
+	}
+}
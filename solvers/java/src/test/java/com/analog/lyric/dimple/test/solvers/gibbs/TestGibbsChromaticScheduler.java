@@ -0,0 +1,280 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Xor;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.core.INode;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Real;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.model.variables.VariableBlock;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.schedulers.GibbsChromaticScheduler;
+import com.analog.lyric.dimple.schedulers.schedule.GibbsChromaticSchedule;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.BlockScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.multithreading.ThreadPool;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.solvers.gibbs.samplers.block.BlockMHSampler;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link GibbsChromaticScheduler}
+ * @since 0.08
+ */
+public class TestGibbsChromaticScheduler extends DimpleTestBase
+{
+	@Test
+	public void testColoring()
+	{
+		final int rows = 6, cols = 6;
+		FactorGraph fg = new FactorGraph();
+		Bit[][] grid = grid(fg, rows, cols);
+		
+		// Deterministic inputs and outputs
+		Bit x = new Bit(), y = new Bit(), z = new Bit();
+		fg.addFactor(new Xor(), z, x, y);
+		addPairFactor(fg, x, grid[0][0]);
+		
+		GibbsChromaticScheduler scheduler = new GibbsChromaticScheduler();
+		VariableBlock block = fg.addVariableBlock(grid[rows - 1][cols - 1], grid[rows - 1][cols - 2]);
+		scheduler.addBlockWithReplacement(new BlockMHSampler(), block);
+		fg.setOption(GibbsOptions.scheduler, scheduler);
+		GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.initialize();
+		
+		GibbsChromaticSchedule schedule = (GibbsChromaticSchedule)sfg.getSchedule();
+		final int[] colorStarts = schedule.getColorStarts();
+		final int serialStart = schedule.getSerialStart();
+		
+		// A grid should be two colored, with deterministic variables and the block entry run serially
+		assertEquals(2, schedule.getColorCount());
+		assertEquals(0, colorStarts[0]);
+		assertEquals(rows * cols - 2, serialStart);
+		assertEquals(serialStart + 4, schedule.size());
+		
+		Set<INode> seen = new HashSet<>();
+		for (int color = 0; color < schedule.getColorCount(); ++color)
+		{
+			Set<Factor> colorFactors = new HashSet<>();
+			for (int i = colorStarts[color]; i < colorStarts[color + 1]; ++i)
+			{
+				IScheduleEntry entry = schedule.get(i);
+				assertTrue(GibbsChromaticSchedule.isColorable(entry));
+				Variable var = (Variable)((NodeScheduleEntry)entry).getNode();
+				assertTrue(seen.add(var));
+				for (Factor factor : var.getFactors())
+				{
+					// No other variable of this color shares a factor
+					assertTrue(colorFactors.add(factor));
+				}
+			}
+		}
+		
+		boolean sawBlock = false;
+		for (int i = serialStart; i < schedule.size(); ++i)
+		{
+			IScheduleEntry entry = schedule.get(i);
+			assertFalse(GibbsChromaticSchedule.isColorable(entry));
+			if (entry instanceof BlockScheduleEntry)
+			{
+				assertSame(block, ((BlockScheduleEntry)entry).getBlock());
+				sawBlock = true;
+			}
+			else
+			{
+				assertTrue(seen.add(((NodeScheduleEntry)entry).getNode()));
+			}
+		}
+		assertTrue(sawBlock);
+		assertEquals(fg.getVariableCount() - 2, seen.size());
+	}
+	
+	@Test
+	public void testSampling()
+	{
+		final int rows = 10, cols = 10;
+		FactorGraph fg = new FactorGraph();
+		Bit[][] grid = grid(fg, rows, cols);
+		
+		fg.setOption(GibbsOptions.scheduler, new GibbsChromaticScheduler());
+		GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.numSamples, 2000);
+		fg.setOption(GibbsOptions.burnInScans, 10);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+		
+		fg.solve();
+		final double[][] sequentialBeliefs = beliefs(grid);
+		
+		ThreadPool.setNumThreads(4);
+		try
+		{
+			sfg.useMultithreading(true);
+			fg.solve();
+			final double[][] parallelBeliefs = beliefs(grid);
+			
+			// Results are reproducible for the same seed and number of threads
+			fg.solve();
+			assertArrayEquals(parallelBeliefs, beliefs(grid));
+			
+			for (int row = 0; row < rows; ++row)
+			{
+				for (int col = 0; col < cols; ++col)
+				{
+					assertEquals(sequentialBeliefs[row][col], parallelBeliefs[row][col], .1);
+				}
+			}
+		}
+		finally
+		{
+			ThreadPool.setNumThreadsToDefault();
+		}
+	}
+	
+	@Test
+	public void testNotThreadSafe()
+	{
+		final int n = 200;
+		FactorGraph fg = new FactorGraph();
+		
+		// A chain of real variables whose factors all share one function that is not thread safe
+		UnsafePairFunction function = new UnsafePairFunction();
+		Real[] chain = new Real[n];
+		for (int i = 0; i < n; ++i)
+		{
+			chain[i] = new Real();
+			fg.addVariables(chain[i]);
+			if (i > 0)
+			{
+				fg.addFactor(function, chain[i - 1], chain[i]);
+			}
+		}
+		
+		fg.setOption(GibbsOptions.scheduler, new GibbsChromaticScheduler());
+		GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.numSamples, 20);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+		
+		ThreadPool.setNumThreads(4);
+		try
+		{
+			sfg.useMultithreading(true);
+			fg.solve();
+			assertEquals(2, ((GibbsChromaticSchedule)sfg.getSchedule()).getColorCount());
+			
+			// The colors are updated serially
+			assertTrue(function._evaluations.get() > 0);
+			assertFalse(function._overlapped);
+		}
+		finally
+		{
+			ThreadPool.setNumThreadsToDefault();
+		}
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	private Bit[][] grid(FactorGraph fg, int rows, int cols)
+	{
+		Bit[][] grid = new Bit[rows][cols];
+		for (int row = 0; row < rows; ++row)
+		{
+			for (int col = 0; col < cols; ++col)
+			{
+				Bit bit = grid[row][col] = new Bit();
+				bit.setInput(testRand.nextDouble());
+				fg.addVariables(bit);
+				if (row > 0)
+				{
+					addPairFactor(fg, bit, grid[row - 1][col]);
+				}
+				if (col > 0)
+				{
+					addPairFactor(fg, bit, grid[row][col - 1]);
+				}
+			}
+		}
+		return grid;
+	}
+	
+	private void addPairFactor(FactorGraph fg, Bit a, Bit b)
+	{
+		fg.addFactor(new int[][] { {0,0}, {0,1}, {1,0}, {1,1} }, new double[] { 2, 1, 1, 2 }, a, b);
+	}
+	
+	/**
+	 * Energy (x - y)^2 / 2 that is not thread safe and records whether it is ever evaluated concurrently.
+	 */
+	private static class UnsafePairFunction extends FactorFunction
+	{
+		private final AtomicInteger _active = new AtomicInteger();
+		private final AtomicInteger _evaluations = new AtomicInteger();
+		private volatile boolean _overlapped = false;
+		
+		@Override
+		public double evalEnergy(Value[] values)
+		{
+			_evaluations.incrementAndGet();
+			if (_active.incrementAndGet() > 1)
+			{
+				_overlapped = true;
+			}
+			try
+			{
+				Thread.yield();
+				final double d = values[0].getDouble() - values[1].getDouble();
+				return d * d / 2;
+			}
+			finally
+			{
+				_active.decrementAndGet();
+			}
+		}
+	}
+	
+	private double[][] beliefs(Bit[][] grid)
+	{
+		double[][] beliefs = new double[grid.length][];
+		for (int row = 0; row < grid.length; ++row)
+		{
+			beliefs[row] = new double[grid[row].length];
+			for (int col = 0; col < grid[row].length; ++col)
+			{
+				beliefs[row][col] = grid[row][col].getP1();
+			}
+		}
+		return beliefs;
+	}
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Normal;
+import com.analog.lyric.dimple.factorfunctions.Xor;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Real;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.MHSampler;
+import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.SliceSampler;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for incremental sample score maintenance in {@link GibbsSolverGraph}.
+ * <p>
+ * @since 0.08
+ * @see GibbsOptions#scoreRecomputeInterval
+ */
+public class TestGibbsIncrementalScore extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		final Random rand = new Random(42);
+		
+		FactorGraph fg = new FactorGraph();
+		
+		// Chain of discrete variables with random tables
+		final DiscreteDomain domain = DiscreteDomain.range(0, 2);
+		final Discrete[] x = new Discrete[5];
+		for (int i = 0; i < x.length; ++i)
+		{
+			x[i] = new Discrete(domain);
+			if (i > 0)
+			{
+				IFactorTable table = FactorTable.create(domain, domain);
+				double[] weights = new double[9];
+				for (int j = 0; j < weights.length; ++j)
+				{
+					weights[j] = rand.nextDouble() + .1;
+				}
+				table.setWeightsDense(weights);
+				fg.addFactor(table, x[i-1], x[i]);
+			}
+		}
+		x[0].setInput(.2, .3, .5);
+		
+		// Deterministic factor with an output that has its own input
+		Bit a = new Bit(), b = new Bit(), c = new Bit();
+		a.setInput(.8);
+		c.setInput(.4);
+		fg.addFactor(new Xor(), c, a, b);
+		fg.addFactor(new int[][] { {0,0}, {1,1} }, new double[] { 2, 1 }, b, x[2]);
+		
+		// Real variables with and without conjugate samplers available
+		Real mu = new Real();
+		mu.setInput(new Normal(0, 1));
+		Real[] y = new Real[3];
+		for (int i = 0; i < y.length; ++i)
+		{
+			y[i] = new Real();
+			y[i].setInput(new Normal(i, 4));
+			fg.addFactor(new Normal(), mu, 2.0, y[i]);
+		}
+		
+		fg.setSolverFactory(new GibbsSolver());
+		fg.setOption(GibbsOptions.numSamples, 500);
+		fg.setOption(GibbsOptions.burnInScans, 2);
+		fg.setOption(GibbsOptions.numRandomRestarts, 1);
+		fg.setOption(GibbsOptions.saveAllScores, true);
+		
+		assertIncrementalScoresMatch(fg);
+		
+		fg.setOption(GibbsOptions.enableAutomaticConjugateSampling, false);
+		fg.setOption(GibbsOptions.realSampler, SliceSampler.class);
+		assertIncrementalScoresMatch(fg);
+		
+		fg.setOption(GibbsOptions.realSampler, MHSampler.class);
+		assertIncrementalScoresMatch(fg);
+		
+		fg.setOption(GibbsOptions.enableAnnealing, true);
+		fg.setOption(GibbsOptions.annealingHalfLife, 100.0);
+		assertIncrementalScoresMatch(fg);
+	}
+	
+	private void assertIncrementalScoresMatch(FactorGraph fg)
+	{
+		final GibbsSolverGraph sfg = requireNonNull((GibbsSolverGraph)fg.getSolver());
+		fg.setOption(DimpleOptions.randomSeed, 1234L);
+		
+		// Recompute the score for every sample
+		fg.setOption(GibbsOptions.scoreRecomputeInterval, 1);
+		fg.solve();
+		final double[] expectedScores = requireNonNull(sfg.getAllScores());
+		final double expectedBest = sfg.getBestSampleScore();
+		
+		// Score is never recomputed unless invalidated. Computing the score doesn't consume
+		// random numbers, so the sequence of samples is the same.
+		fg.setOption(GibbsOptions.scoreRecomputeInterval, Integer.MAX_VALUE);
+		fg.solve();
+		final double[] scores = requireNonNull(sfg.getAllScores());
+		assertArrayEquals(expectedScores, scores, 1e-8);
+		assertEquals(expectedBest, sfg.getBestSampleScore(), 1e-8);
+		assertEquals(sfg.getSampleScore(), scores[scores.length - 1], 1e-8);
+	}
+}
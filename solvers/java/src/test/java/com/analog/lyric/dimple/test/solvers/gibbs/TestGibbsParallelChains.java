@@ -0,0 +1,218 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Normal;
+import com.analog.lyric.dimple.factorfunctions.Xor;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Real;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.solvers.core.multithreading.ThreadPool;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsDiscrete;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsReal;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link GibbsOptions#enableParallelChains}
+ * @since 0.08
+ */
+public class TestGibbsParallelChains extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		final int nSamples = 200;
+		final int nRestarts = 4;
+		final int nChains = nRestarts + 1;
+		
+		FactorGraph fg = new FactorGraph();
+		Bit a = new Bit(), b = new Bit(), c = new Bit();
+		a.setInput(.8);
+		b.setInput(.3);
+		fg.addFactor(new Xor(), c, a, b);
+		Real r = new Real();
+		fg.addFactor(new Normal(1.0, 4.0), r);
+		
+		GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.numSamples, nSamples);
+		fg.setOption(GibbsOptions.numRandomRestarts, nRestarts);
+		fg.setOption(GibbsOptions.burnInScans, 5);
+		fg.setOption(GibbsOptions.saveAllSamples, true);
+		fg.setOption(GibbsOptions.saveAllScores, true);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+		
+		// Sequential restarts for comparison
+		fg.solve();
+		final double[] sequentialBelief = b.getBelief();
+		
+		fg.setOption(GibbsOptions.enableParallelChains, true);
+		fg.solve();
+		
+		final GibbsDiscrete sc = (GibbsDiscrete)sfg.getSolverVariable(c);
+		final GibbsReal sr = sfg.getReal(r);
+		final int[] samples = sc.getAllSampleIndices();
+		final double[] realSamples = sr.getAllSamples();
+		final double[] scores = requireNonNull(sfg.getAllScores());
+		assertEquals(nChains * nSamples, samples.length);
+		assertEquals(nChains * nSamples, realSamples.length);
+		assertEquals(nChains * nSamples, scores.length);
+		
+		// Beliefs are computed from the combined samples of all of the chains
+		int nOnes = 0;
+		for (int sample : samples)
+		{
+			nOnes += sample;
+		}
+		assertEquals((double)nOnes / samples.length, c.getBelief()[1], 1e-12);
+		assertArrayEquals(sequentialBelief, b.getBelief(), .1);
+		
+		double mean = 0;
+		for (double sample : realSamples)
+		{
+			mean += sample;
+		}
+		mean /= realSamples.length;
+		assertEquals(mean, sr.getSampleMean(), 1e-9);
+		
+		// Best sample is the best across all chains
+		double bestScore = Double.POSITIVE_INFINITY;
+		for (double score : scores)
+		{
+			bestScore = Math.min(bestScore, score);
+		}
+		assertEquals(bestScore, sfg.getBestSampleScore(), 0.0);
+		
+		// Results are reproducible for a given seed
+		fg.solve();
+		assertArrayEquals(samples, sc.getAllSampleIndices());
+		assertArrayEquals(realSamples, sr.getAllSamples(), 0.0);
+		assertArrayEquals(scores, sfg.getAllScores(), 0.0);
+		
+		// ...and differ for a different one
+		fg.setOption(DimpleOptions.randomSeed, 23L);
+		fg.solve();
+		assertFalse(Arrays.equals(realSamples, sr.getAllSamples()));
+	}
+	
+	@Test
+	public void testNotThreadSafe()
+	{
+		final int nSamples = 200;
+		final int nRestarts = 3;
+		
+		FactorGraph fg = new FactorGraph();
+		Real r = new Real();
+		UnsafeFunction function = new UnsafeFunction();
+		fg.addFactor(function, r);
+		
+		GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.numSamples, nSamples);
+		fg.setOption(GibbsOptions.numRandomRestarts, nRestarts);
+		fg.setOption(GibbsOptions.saveAllSamples, true);
+		fg.setOption(GibbsOptions.enableParallelChains, true);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+		
+		// Chains share the function, so they must not be run concurrently
+		fg.solve();
+		assertFalse(function._overlapped);
+		
+		final double[] samples = sfg.getReal(r).getAllSamples();
+		assertEquals((nRestarts + 1) * nSamples, samples.length);
+		
+		fg.solve();
+		assertFalse(function._overlapped);
+		assertArrayEquals(samples, sfg.getReal(r).getAllSamples(), 0.0);
+	}
+	
+	@Test
+	public void testTableFactors()
+	{
+		final int nSamples = 50;
+		final int nRestarts = 3;
+		
+		FactorGraph fg = new FactorGraph();
+		Bit a = new Bit(), b = new Bit(), c = new Bit();
+		a.setInput(.8);
+		fg.addFactor(new int[][] { { 0, 0 }, { 0, 1 }, { 1, 1 } }, new double[] { .5, 1, 2 }, a, b);
+		UnsafeFunction unsafe = new UnsafeFunction();
+		fg.addFactor(unsafe, b, c);
+		Real r = new Real();
+		ConcurrencyRecorder recorder = new ConcurrencyRecorder();
+		fg.addFactor(recorder, r);
+		
+		fg.setSolverFactory(new GibbsSolver());
+		fg.setOption(GibbsOptions.numSamples, nSamples);
+		fg.setOption(GibbsOptions.numRandomRestarts, nRestarts);
+		fg.setOption(GibbsOptions.enableParallelChains, true);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+		
+		ThreadPool.setNumThreads(2);
+		try
+		{
+			// The table factors only read their precomputed tables, so the chains run concurrently
+			fg.solve();
+			assertTrue(recorder.wasConcurrent());
+			assertFalse(unsafe._overlapped);
+		}
+		finally
+		{
+			ThreadPool.setNumThreadsToDefault();
+		}
+	}
+	
+	/**
+	 * Standard normal that is not thread safe and records whether it is ever evaluated concurrently.
+	 */
+	private static class UnsafeFunction extends FactorFunction
+	{
+		private final AtomicInteger _active = new AtomicInteger();
+		private volatile boolean _overlapped = false;
+		
+		@Override
+		public double evalEnergy(Value[] values)
+		{
+			if (_active.incrementAndGet() > 1)
+			{
+				_overlapped = true;
+			}
+			try
+			{
+				Thread.yield();
+				final double x = values[0].getDouble();
+				return x * x / 2;
+			}
+			finally
+			{
+				_active.decrementAndGet();
+			}
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static java.util.Objects.*;
+import static com.analog.lyric.util.test.ExceptionTester.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Real;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.solvers.core.multithreading.ThreadPool;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsDiscrete;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link GibbsOptions#enableParallelTempering}
+ * @since 0.08
+ */
+public class TestGibbsParallelTempering extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		final int nBits = 8, nSamples = 1000;
+		
+		// A chain of strongly coupled bits, whose distribution has two well separated modes
+		// of equal probability: all zeros and all ones.
+		FactorGraph fg = new FactorGraph();
+		Bit[] bits = new Bit[nBits];
+		for (int i = 0; i < nBits; ++i)
+		{
+			bits[i] = new Bit();
+			fg.addVariables(bits[i]);
+			if (i > 0)
+			{
+				fg.addFactor(new int[][] { {0,0}, {0,1}, {1,0}, {1,1} }, new double[] { 1000, 1, 1, 1000 },
+					bits[i - 1], bits[i]);
+			}
+		}
+		
+		GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.numSamples, nSamples);
+		fg.setOption(GibbsOptions.burnInScans, 10);
+		fg.setOption(GibbsOptions.saveAllSamples, true);
+		fg.setOption(GibbsOptions.saveAllScores, true);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+		
+		// A single chain gets stuck in one mode
+		fg.solve();
+		assertEquals(0, sfg.getTemperingSwapAcceptanceRates().length);
+		assertTrue(Math.abs(bits[0].getP1() - .5) > .4);
+		
+		fg.setOption(GibbsOptions.enableParallelTempering, true);
+		fg.solve();
+		
+		// Only the temperature one replica contributes samples
+		GibbsDiscrete sbit = (GibbsDiscrete)sfg.getSolverVariable(bits[0]);
+		assertEquals(nSamples, sbit.getAllSampleIndices().length);
+		assertEquals(nSamples, requireNonNull(sfg.getAllScores()).length);
+		
+		// Swaps let it visit both modes
+		assertEquals(.5, bits[0].getP1(), .15);
+		for (int i = 1; i < nBits; ++i)
+		{
+			assertEquals(bits[0].getP1(), bits[i].getP1(), .05);
+		}
+		
+		double[] rates = sfg.getTemperingSwapAcceptanceRates();
+		assertEquals(3, rates.length);
+		for (double rate : rates)
+		{
+			assertTrue(rate > 0 && rate <= 1);
+		}
+		
+		// Results are reproducible for the same seed
+		final double p1 = bits[0].getP1();
+		fg.solve();
+		assertEquals(p1, bits[0].getP1(), 0.0);
+		assertArrayEquals(rates, sfg.getTemperingSwapAcceptanceRates(), 0.0);
+		
+		// Annealing is ignored
+		fg.setOption(GibbsOptions.enableAnnealing, true);
+		fg.setOption(GibbsOptions.initialTemperature, 10.0);
+		fg.solve();
+		assertEquals(1.0, sfg.getTemperature(), 0.0);
+		
+		// Invalid temperature ladders
+		GibbsOptions.temperatureLadder.set(fg, 2, 4);
+		expectThrow(DimpleException.class, fg, "solve");
+		GibbsOptions.temperatureLadder.set(fg, 1, 4, 3);
+		expectThrow(DimpleException.class, fg, "solve");
+		
+		// A single temperature is just the ordinary solver
+		GibbsOptions.temperatureLadder.set(fg, 1);
+		fg.setOption(GibbsOptions.enableAnnealing, false);
+		fg.solve();
+		assertEquals(0, sfg.getTemperingSwapAcceptanceRates().length);
+		
+		// Annealing still applies to subgraphs, which do not use parallel tempering
+		FactorGraph template = new FactorGraph();
+		Bit a = new Bit(), b = new Bit();
+		template.addBoundaryVariables(a);
+		template.addFactor(new int[][] { {0,0}, {1,1} }, new double[] { 1, 1 }, a, b);
+		FactorGraph subgraph = fg.addGraph(template, bits[0]);
+		GibbsOptions.temperatureLadder.set(fg, 1, 2);
+		fg.setOption(GibbsOptions.enableAnnealing, true);
+		fg.initialize();
+		assertFalse(isTemperingEnabled(sfg));
+		assertTrue(isTemperingEnabled(requireNonNull((GibbsSolverGraph)subgraph.getSolver())));
+	}
+	
+	@Test
+	public void testTableFactors()
+	{
+		FactorGraph fg = new FactorGraph();
+		Bit a = new Bit(), b = new Bit();
+		fg.addFactor(new int[][] { {0,0}, {1,1} }, new double[] { 1, 2 }, a, b);
+		Real r = new Real();
+		ConcurrencyRecorder recorder = new ConcurrencyRecorder();
+		fg.addFactor(recorder, r);
+		
+		fg.setSolverFactory(new GibbsSolver());
+		fg.setOption(GibbsOptions.numSamples, 50);
+		fg.setOption(GibbsOptions.enableParallelTempering, true);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+		
+		ThreadPool.setNumThreads(2);
+		try
+		{
+			// The table factor only reads its precomputed table, so the replicas run concurrently
+			fg.solve();
+			assertTrue(recorder.wasConcurrent());
+		}
+		finally
+		{
+			ThreadPool.setNumThreadsToDefault();
+		}
+	}
+	
+	@SuppressWarnings("deprecation")
+	private static boolean isTemperingEnabled(GibbsSolverGraph sfg)
+	{
+		return sfg.isTemperingEnabled();
+	}
+}
@@ -0,0 +1,267 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static com.analog.lyric.util.test.ExceptionTester.*;
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import cern.colt.list.DoubleArrayList;
+
+import com.analog.lyric.collect.PrimitiveIterator;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.MultivariateNormal;
+import com.analog.lyric.dimple.factorfunctions.Normal;
+import com.analog.lyric.dimple.factorfunctions.Xor;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Real;
+import com.analog.lyric.dimple.model.variables.RealJoint;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsDiscrete;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsReal;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsRealJoint;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSampleStore;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link GibbsSampleStore}
+ * @since 0.08
+ */
+public class TestGibbsSampleStore extends DimpleTestBase
+{
+	@Test
+	public void test() throws IOException
+	{
+		// Enough samples to use chunks of every size
+		final int nSamples = 2500;
+		
+		FactorGraph fg = new FactorGraph();
+		Bit a = new Bit(), b = new Bit(), c = new Bit();
+		a.setInput(.8);
+		b.setInput(.3);
+		fg.addFactor(new Xor(), c, a, b);
+		Real r = new Real();
+		fg.addFactor(new Normal(1.0, 4.0), r);
+		RealJoint j = new RealJoint(2);
+		fg.addFactor(new MultivariateNormal(new double[] { 1.0, 2.0 }, new double[][] { { 2.0, 1.0 }, { 1.0, 2.0 } }), j);
+		
+		GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.numSamples, nSamples);
+		fg.setOption(GibbsOptions.saveAllSamples, true);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+		
+		final GibbsDiscrete sc = (GibbsDiscrete)sfg.getSolverVariable(c);
+		final GibbsReal sr = sfg.getReal(r);
+		final GibbsRealJoint sj = (GibbsRealJoint)sfg.getSolverVariable(j);
+		
+		// Samples held in memory
+		fg.solve();
+		final GibbsSampleStore store = sfg.getSampleStore();
+		assertEquals(nSamples, store.getSampleCount());
+		assertEquals(5, store.getColumnCount());
+		assertEquals(3, store.getIntValueCount());
+		assertEquals(3, store.getDoubleValueCount());
+		assertTrue(store.getMemoryBytes() > 0);
+		assertEquals(0, store.getMappedBytes());
+		assertStoreInvariants(store);
+		
+		final int[] cSamples = sc.getAllSampleIndices();
+		final double[] rSamples = sr.getAllSamples();
+		final double[][] jSamples = sj.getAllSamples();
+		assertEquals(nSamples, cSamples.length);
+		assertEquals(nSamples, rSamples.length);
+		assertEquals(nSamples, jSamples.length);
+		
+		final GibbsSampleStore.Column rColumn = requireNonNull(sr.getSampleColumn());
+		assertSame(store, rColumn.getStore());
+		assertFalse(rColumn.isDiscrete());
+		assertEquals(1, rColumn.getWidth());
+		assertEquals(0, rColumn.getFirstSample());
+		assertEquals(nSamples, rColumn.size());
+		assertFalse(rColumn.hasSample(nSamples));
+		expectThrow(DimpleException.class, rColumn, "getInt", 0);
+		expectThrow(DimpleException.class, rColumn, "intIterator");
+		expectThrow(IndexOutOfBoundsException.class, rColumn, "getDouble", nSamples);
+		expectThrow(IndexOutOfBoundsException.class, rColumn, "getDouble", 0, 1);
+		
+		final GibbsSampleStore.Column jColumn = requireNonNull(sj.getSampleColumn());
+		assertEquals(2, jColumn.getWidth());
+		
+		// Deprecated accessor copies the column
+		@SuppressWarnings("deprecation")
+		final DoubleArrayList rList = requireNonNull(sr._getSampleArrayUnsafe());
+		assertArrayEquals(rSamples, Arrays.copyOf(rList.elements(), rList.size()), 0.0);
+		
+		// Solving again reuses the store and its memory
+		final long memoryBytes = store.getMemoryBytes();
+		fg.solve();
+		assertSame(store, sfg.getSampleStore());
+		assertFalse(store.isClosed());
+		assertEquals(nSamples, store.getSampleCount());
+		assertEquals(5, store.getColumnCount());
+		assertEquals(memoryBytes, store.getMemoryBytes());
+		assertArrayEquals(rSamples, sr.getAllSamples(), 0.0);
+		assertStoreInvariants(store);
+		
+		// Samples spilled to disk
+		final File directory = Files.createTempDirectory("TestGibbsSampleStore").toFile();
+		try
+		{
+			fg.setOption(GibbsOptions.sampleStoreMemoryLimit, 0L);
+			fg.setOption(GibbsOptions.sampleStoreDirectory, directory.getPath());
+			fg.solve();
+			final GibbsSampleStore spilled = sfg.getSampleStore();
+			assertSame(store, spilled);
+			assertEquals(nSamples, spilled.getSampleCount());
+			assertEquals(0, spilled.getMemoryBytes());
+			assertTrue(spilled.getMappedBytes() > 0);
+			assertEquals(1, requireNonNull(directory.listFiles()).length);
+			assertStoreInvariants(spilled);
+			
+			// Same samples as in memory
+			assertArrayEquals(cSamples, sc.getAllSampleIndices());
+			assertArrayEquals(rSamples, sr.getAllSamples(), 0.0);
+			final double[][] jSpilled = sj.getAllSamples();
+			for (int i = 0; i < nSamples; ++i)
+			{
+				assertArrayEquals(jSamples[i], jSpilled[i], 0.0);
+			}
+			
+			// Parallel chains are combined into the root graph's store, and their files removed
+			fg.setOption(GibbsOptions.numRandomRestarts, 2);
+			fg.setOption(GibbsOptions.enableParallelChains, true);
+			fg.solve();
+			final GibbsSampleStore combined = sfg.getSampleStore();
+			assertEquals(3 * nSamples, combined.getSampleCount());
+			assertEquals(3 * nSamples, sc.getAllSampleIndices().length);
+			assertEquals(3 * nSamples, sj.getAllSamples().length);
+			assertStoreInvariants(combined);
+			assertEquals(1, requireNonNull(directory.listFiles()).length);
+			
+			// File is removed when graph is initialized.
+			fg.initialize();
+			assertSame(combined, sfg.getSampleStore());
+			assertEquals(0, requireNonNull(directory.listFiles()).length);
+			assertEquals(0, combined.getSampleCount());
+			assertEquals(0, combined.getMappedBytes());
+			
+			// Closed store can still be read, but no more samples added
+			fg.solve();
+			final int[] closedSamples = sc.getAllSampleIndices();
+			combined.close();
+			assertTrue(combined.isClosed());
+			assertArrayEquals(closedSamples, sc.getAllSampleIndices());
+			assertStoreInvariants(combined);
+			
+			// and is reopened when graph is initialized.
+			fg.initialize();
+			assertFalse(combined.isClosed());
+			
+			// Store is closed and its file removed when the solver is replaced...
+			fg.solve();
+			assertEquals(1, requireNonNull(directory.listFiles()).length);
+			GibbsSolverGraph sfg2 = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+			assertTrue(combined.isClosed());
+			assertEquals(0, requireNonNull(directory.listFiles()).length);
+			
+			// ...or removed.
+			fg.solve();
+			final GibbsSampleStore store2 = sfg2.getSampleStore();
+			assertEquals(1, requireNonNull(directory.listFiles()).length);
+			fg.setSolverFactory(null);
+			assertTrue(store2.isClosed());
+			assertEquals(0, requireNonNull(directory.listFiles()).length);
+		}
+		finally
+		{
+			for (File file : requireNonNull(directory.listFiles()))
+			{
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+	
+	/**
+	 * Verifies that reading by sample and by column agree.
+	 */
+	private void assertStoreInvariants(GibbsSampleStore store)
+	{
+		final int nSamples = store.getSampleCount();
+		final int nColumns = store.getColumnCount();
+		final int[] intValues = new int[store.getIntValueCount()];
+		final double[] doubleValues = new double[store.getDoubleValueCount()];
+		
+		final PrimitiveIterator.OfInt[] intIterators = new PrimitiveIterator.OfInt[nColumns];
+		final PrimitiveIterator.OfDouble[] doubleIterators = new PrimitiveIterator.OfDouble[nColumns];
+		for (GibbsSampleStore.Column column : store.getColumns())
+		{
+			assertSame(column, store.getColumn(column.getIndex()));
+			assertEquals(nSamples, column.size());
+			if (column.isDiscrete())
+			{
+				intIterators[column.getIndex()] = column.intIterator();
+			}
+			else
+			{
+				doubleIterators[column.getIndex()] = column.doubleIterator();
+			}
+		}
+		
+		double[] doubles = null;
+		for (int sample = 0; sample < nSamples; ++sample)
+		{
+			store.readSample(sample, intValues, doubleValues);
+			for (GibbsSampleStore.Column column : store.getColumns())
+			{
+				final int offset = column.getValueOffset();
+				if (column.isDiscrete())
+				{
+					assertEquals(intValues[offset], column.getInt(sample));
+					assertEquals(intValues[offset], intIterators[column.getIndex()].nextInt());
+				}
+				else
+				{
+					doubles = column.getDoubles(sample, doubles);
+					for (int i = 0; i < column.getWidth(); ++i)
+					{
+						assertEquals(doubleValues[offset + i], column.getDouble(sample, i), 0.0);
+						assertEquals(doubleValues[offset + i], doubles[i], 0.0);
+						assertEquals(doubleValues[offset + i], doubleIterators[column.getIndex()].nextDouble(), 0.0);
+					}
+				}
+			}
+		}
+		
+		for (int i = 0; i < nColumns; ++i)
+		{
+			assertFalse(intIterators[i] != null && intIterators[i].hasNext());
+			assertFalse(doubleIterators[i] != null && doubleIterators[i].hasNext());
+		}
+	}
+}
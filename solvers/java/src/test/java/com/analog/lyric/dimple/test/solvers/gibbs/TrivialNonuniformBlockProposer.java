@@ -27,6 +27,7 @@ import com.analog.lyric.dimple.model.domains.Domain;
 import com.analog.lyric.dimple.model.values.Value;
 import com.analog.lyric.dimple.solvers.core.proposalKernels.BlockProposal;
 import com.analog.lyric.dimple.solvers.core.proposalKernels.IBlockProposalKernel;
+import com.analog.lyric.math.DimpleRandom;
 import com.analog.lyric.math.DimpleRandomGenerator;
 import com.analog.lyric.math.Utilities;
 
@@ -57,7 +58,7 @@ public class TrivialNonuniformBlockProposer implements IBlockProposalKernel
 	}
 	
 	@Override
-	public BlockProposal next(Value[] currentValue, Domain[] variableDomain)
+	public BlockProposal next(Value[] currentValue, Domain[] variableDomain, DimpleRandom random)
 	{
 		// Sample value randomly give the weights
 		int newIndex = Utilities.sampleFromMultinomial(_weights, _random);
@@ -26,7 +26,7 @@ import com.analog.lyric.dimple.model.domains.Domain;
 import com.analog.lyric.dimple.model.values.Value;
 import com.analog.lyric.dimple.solvers.core.proposalKernels.BlockProposal;
 import com.analog.lyric.dimple.solvers.core.proposalKernels.IBlockProposalKernel;
-import com.analog.lyric.math.DimpleRandomGenerator;
+import com.analog.lyric.math.DimpleRandom;
 
 /**
  * 
@@ -36,7 +36,7 @@ import com.analog.lyric.math.DimpleRandomGenerator;
 public class TrivialUniformBlockProposer implements IBlockProposalKernel
 {
 	@Override
-	public BlockProposal next(Value[] currentValue, Domain[] variableDomain)
+	public BlockProposal next(Value[] currentValue, Domain[] variableDomain, DimpleRandom random)
 	{
 		int numVariables = currentValue.length;
 		Value[] newValue = new Value[numVariables];
@@ -48,7 +48,7 @@ public class TrivialUniformBlockProposer implements IBlockProposalKernel
 				DiscreteDomain discreteDomain = requireNonNull(domain.asDiscrete());
 				int domainSize = discreteDomain.size();
 				Value v = Value.create(discreteDomain);
-				v.setIndex(DimpleRandomGenerator.rand.nextInt(domainSize));
+				v.setIndex(random.nextInt(domainSize));
 				newValue[i] = v;
 			}
 			else
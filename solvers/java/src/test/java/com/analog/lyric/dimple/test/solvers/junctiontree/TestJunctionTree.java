@@ -32,6 +32,7 @@ import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
 import com.analog.lyric.dimple.model.domains.JointDomainReindexer;
 import com.analog.lyric.dimple.model.factors.DiscreteFactor;
 import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.transform.JunctionTreeTransformMap;
 import com.analog.lyric.dimple.model.variables.Discrete;
 import com.analog.lyric.dimple.model.variables.Variable;
 import com.analog.lyric.dimple.model.variables.VariableList;
@@ -156,18 +157,39 @@ public class TestJunctionTree extends DimpleTestBase
 		
 		testGraphImpl(model, useMap, false);
 		
-		testGraphImpl(model, useMap, true);
+		final JunctionTreeSolverGraphBase<?> jtgraph = testGraphImpl(model, useMap, true);
+		
+		final int domainSize = variable.getDomain().size();
+		if (domainSize > 1)
+		{
+			// Changing only the fixed value should update the existing transformation instead of
+			// recomputing it.
+			final JunctionTreeTransformMap transformMap = jtgraph.getTransformMap();
+			variable.setFixedValueIndex((valueIndex + 1) % domainSize);
+			testSolve(model, jtgraph, useMap);
+			assertSame(transformMap, jtgraph.getTransformMap());
+		}
 		
 		// Clear fixed value
 		variable.setInputObject(null);
 	}
 	
-	private void testGraphImpl(FactorGraph model, boolean useMap, boolean useConditioning)
+	private JunctionTreeSolverGraphBase<?> testGraphImpl(FactorGraph model, boolean useMap, boolean useConditioning)
 	{
 		JunctionTreeSolverGraphBase<?> jtgraph =
 			model.createSolver(useMap ? new JunctionTreeMAPSolver() : new JunctionTreeSolver());
 		jtgraph.useConditioning(useConditioning);
 		jtgraph.getTransformer().random(_rand); // set random generator so we can reproduce failures
+		testSolve(model, jtgraph, useMap);
+		return jtgraph;
+	}
+	
+	/**
+	 * Solves {@code model} using {@code jtgraph} and compares the results against solving a copy
+	 * of the model with all of its factors merged into one.
+	 */
+	private void testSolve(FactorGraph model, JunctionTreeSolverGraphBase<?> jtgraph, boolean useMap)
+	{
 		model.solve();
 		
 		FactorGraph transformedModel = requireNonNull(jtgraph.getDelegate()).getModelObject();
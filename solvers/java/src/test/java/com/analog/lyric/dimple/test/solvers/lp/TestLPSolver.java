@@ -20,12 +20,16 @@ import static java.util.Objects.*;
 import static org.junit.Assert.*;
 import static org.junit.matchers.JUnitMatchers.*;
 
+import java.util.Random;
+
 import org.junit.Ignore;
 import org.junit.Test;
 
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.factorfunctions.Cos;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
 import com.analog.lyric.dimple.model.core.FactorGraph;
 import com.analog.lyric.dimple.model.domains.DiscreteDomain;
 import com.analog.lyric.dimple.model.domains.RealDomain;
@@ -33,8 +37,10 @@ import com.analog.lyric.dimple.model.values.Value;
 import com.analog.lyric.dimple.model.variables.Discrete;
 import com.analog.lyric.dimple.model.variables.Real;
 import com.analog.lyric.dimple.solvers.core.SolverBase;
+import com.analog.lyric.dimple.solvers.lp.LPOptions;
 import com.analog.lyric.dimple.solvers.lp.LPSolver;
 import com.analog.lyric.dimple.solvers.lp.LPSolverGraph;
+import com.analog.lyric.dimple.solvers.lp.MPLPSolver;
 import com.analog.lyric.dimple.solvers.lp.Solver;
 import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
 import com.analog.lyric.dimple.test.DimpleTestBase;
@@ -253,6 +259,92 @@ public class TestLPSolver extends DimpleTestBase
 		bug51.testLPState();
 	}
 
+	/**
+	 * Test built-in MPLP solver on a tree, for which the LP relaxation is tight.
+	 */
+	@Test
+	public void testMPLP()
+	{
+		final Random rand = new Random(42);
+		final DiscreteDomain domain = DiscreteDomain.range(0, 2);
+		
+		FactorGraph fg = new FactorGraph();
+		final int nVars = 7;
+		final Discrete[] vars = new Discrete[nVars];
+		for (int i = 0; i < nVars; ++i)
+		{
+			vars[i] = new Discrete(domain);
+			vars[i].setName("v" + i);
+			vars[i].setInput(rand.nextDouble(), rand.nextDouble(), rand.nextDouble());
+		}
+		vars[3].setFixedValueIndex(1);
+		
+		// Tree with a chain v0 - v1 - v2 - v3 and v4, v5, v6 attached to v1
+		final int[][] edges = new int[][] { {0,1}, {1,2}, {2,3}, {1,4}, {1,5}, {5,6} };
+		final IFactorTable[] tables = new IFactorTable[edges.length];
+		for (int i = 0; i < edges.length; ++i)
+		{
+			IFactorTable table = tables[i] = FactorTable.create(domain, domain);
+			double[] weights = new double[9];
+			for (int j = 0; j < 9; ++j)
+			{
+				weights[j] = rand.nextDouble();
+			}
+			weights[rand.nextInt(9)] = 0.0;
+			table.setWeightsDense(weights);
+			fg.addFactor(table, vars[edges[i][0]], vars[edges[i][1]]);
+		}
+		
+		// Compute MAP by brute force
+		final int[] assignment = new int[nVars];
+		final int[] best = new int[nVars];
+		double bestWeight = -1.0;
+		for (int n = 0, end = (int)Math.pow(3, nVars); n < end; ++n)
+		{
+			for (int i = 0, m = n; i < nVars; ++i, m /= 3)
+			{
+				assignment[i] = m % 3;
+			}
+			
+			double weight = 1.0;
+			for (int i = 0; i < nVars; ++i)
+			{
+				weight *= vars[i].hasFixedValue() ?
+					(assignment[i] == vars[i].getFixedValueIndex() ? 1.0 : 0.0) : vars[i].getInput()[assignment[i]];
+			}
+			for (int i = 0; i < edges.length; ++i)
+			{
+				weight *= tables[i].getWeightForIndices(assignment[edges[i][0]], assignment[edges[i][1]]);
+			}
+			
+			if (weight > bestWeight)
+			{
+				bestWeight = weight;
+				System.arraycopy(assignment, 0, best, 0, nVars);
+			}
+		}
+		
+		fg.setSolverFactory(new LPSolver());
+		LPOptions.LPSolver.set(fg, "MPLP");
+		LPSolverGraph sfg = requireNonNull((LPSolverGraph)fg.getSolver());
+		fg.solve();
+		assertNull(sfg.getMatlabSolveWrapper());
+		
+		for (int i = 0; i < nVars; ++i)
+		{
+			double[] expected = new double[3];
+			expected[best[i]] = 1.0;
+			assertArrayEquals(expected, vars[i].getBelief(), 0.0);
+		}
+		
+		// Directly check dual bound
+		MPLPSolver mplp = new MPLPSolver(requireNonNull(sfg.getObjectiveFunction()), requireNonNull(sfg.getConstraints()));
+		mplp.solve();
+		assertEquals(Math.log(bestWeight), mplp.getPrimalValue(), 1e-9);
+		assertEquals(mplp.getPrimalValue(), mplp.getDualBound(), 1e-5);
+		assertTrue(mplp.getIterations() < mplp.maxIterations());
+	}
+	
 	@Test
 	@Ignore
 	public void testGLPK()
@@ -0,0 +1,131 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.particleBP;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Normal;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.model.variables.Real;
+import com.analog.lyric.dimple.solvers.particleBP.ParticleBPOptions;
+import com.analog.lyric.dimple.solvers.particleBP.ParticleBPReal;
+import com.analog.lyric.dimple.solvers.particleBP.ParticleBPRealFactor;
+import com.analog.lyric.dimple.solvers.particleBP.ParticleBPSolver;
+import com.analog.lyric.dimple.solvers.particleBP.ParticleBPSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link ParticleBPRealFactor}
+ * <p>
+ * @since 0.08
+ */
+public class TestParticleBPRealFactor extends DimpleTestBase
+{
+	/**
+	 * Gaussian penalty on a + b - c that counts its evaluations.
+	 */
+	static class CountingSum extends FactorFunction
+	{
+		int _evalCount = 0;
+		
+		@Override
+		public double evalEnergy(Value[] values)
+		{
+			++_evalCount;
+			double diff = values[0].getDouble() + values[1].getDouble() - values[2].getDouble();
+			return diff * diff / 2;
+		}
+	}
+	
+	@Test
+	public void testCachedEvaluations()
+	{
+		CountingSum function = new CountingSum();
+		
+		FactorGraph fg = new FactorGraph();
+		Real a = new Real();
+		Real b = new Real();
+		Real c = new Real();
+		a.setInputObject(new Normal(1, 1));
+		b.setInputObject(new Normal(-1, 1));
+		c.setInputObject(new Normal(0, 4));
+		Factor factor = fg.addFactor(function, a, b, c);
+		
+		fg.setOption(ParticleBPOptions.numParticles, 6);
+		fg.setOption(ParticleBPOptions.iterationsBetweenResampling, 3);
+		ParticleBPOptions.initialParticleRange.set(fg, -2.0, 2.0);
+		ParticleBPSolverGraph sfg = requireNonNull(fg.setSolverFactory(new ParticleBPSolver()));
+		sfg.setNumIterations(7);
+		
+		final int nCombinations = 6 * 6 * 6;
+		
+		// Each update of the factor should only evaluate the function after the particles have moved.
+		sfg.initialize();
+		ParticleBPRealFactor sf = (ParticleBPRealFactor)requireNonNull(sfg.getSolverFactor(factor));
+		ParticleBPReal sa = (ParticleBPReal)requireNonNull(sfg.getSolverVariable(a));
+		function._evalCount = 0;
+		sf.update();
+		assertEquals(nCombinations, function._evalCount);
+		sf.update();
+		sf.updateEdge(1);
+		assertEquals(nCombinations, function._evalCount);
+		sa.resample();
+		function._evalCount = 0;
+		sf.update();
+		assertEquals(nCombinations, function._evalCount);
+		sf.setBeta(.5);
+		sf.update();
+		assertEquals(nCombinations, function._evalCount);
+		sf.setBeta(1);
+		
+		// Results should be the same with and without the cache.
+		sfg.setSeed(42);
+		fg.solve();
+		double[][] cachedBeliefs = beliefs(a, b, c);
+		
+		fg.setOption(ParticleBPOptions.maxCachedFactorEvaluations, nCombinations - 1);
+		sfg.setSeed(42);
+		fg.solve();
+		double[][] uncachedBeliefs = beliefs(a, b, c);
+		
+		for (int i = 0; i < cachedBeliefs.length; ++i)
+		{
+			assertArrayEquals(uncachedBeliefs[i], cachedBeliefs[i], 1e-12);
+		}
+		
+		function._evalCount = 0;
+		sf.update();
+		sf.update();
+		assertEquals(2 * nCombinations, function._evalCount);
+	}
+	
+	private static double[][] beliefs(Real ... vars)
+	{
+		double[][] beliefs = new double[vars.length][];
+		for (int i = 0; i < vars.length; ++i)
+		{
+			beliefs[i] = (double[])vars[i].getBeliefObject();
+		}
+		return beliefs;
+	}
+}
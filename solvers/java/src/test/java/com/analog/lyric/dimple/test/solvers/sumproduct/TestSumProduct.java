@@ -17,18 +17,45 @@
 package com.analog.lyric.dimple.test.solvers.sumproduct;
 
 import static com.analog.lyric.dimple.model.sugar.ModelSyntacticSugar.*;
+import static java.util.Objects.*;
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.junit.Test;
 
+import com.analog.lyric.collect.ScratchArena;
 import com.analog.lyric.dimple.factorfunctions.XorDelta;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
 import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.core.Node;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.sugar.ModelSyntacticSugar.CurrentModel;
 import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Variable;
 import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.solvers.core.BPSolverGraph;
+import com.analog.lyric.dimple.solvers.core.MessageResidualMonitor;
+import com.analog.lyric.dimple.solvers.core.MessageResidualNorm;
+import com.analog.lyric.dimple.solvers.core.MessageTraceReader;
+import com.analog.lyric.dimple.solvers.core.MessageTraceWriter;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteMessage;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
+import com.analog.lyric.dimple.solvers.minsum.MinSumSolver;
+import com.analog.lyric.dimple.solvers.optimizedupdate.UpdateApproach;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductDiscrete;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductOptions;
 import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
 import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolverGraph;
 import com.analog.lyric.dimple.test.DimpleTestBase;
+import com.analog.lyric.math.DimpleRandom;
 
 /**
  * 
@@ -77,4 +104,535 @@ public class TestSumProduct extends DimpleTestBase
 			}
 		}
 	}
+	
+	@Test
+	public void testConvergence()
+	{
+		// Use fixed seed because min-sum does not converge on all loopy graphs.
+		final long seed = 42;
+		for (boolean minsum : new boolean[] { false, true })
+		{
+			for (MessageResidualNorm norm : MessageResidualNorm.values())
+			{
+				testConvergence(new DimpleRandom(seed), minsum, norm);
+			}
+		}
+	}
+	
+	private void testConvergence(DimpleRandom rand, boolean minsum, MessageResidualNorm norm)
+	{
+		// Small loopy grid with weak random couplings, which should converge quickly.
+		final int size = 4;
+		final int maxIterations = 100;
+		final double tolerance = 1e-6;
+		
+		FactorGraph fg = new FactorGraph();
+		Bit[][] bits = new Bit[size][size];
+		for (int i = 0; i < size; ++i)
+		{
+			for (int j = 0; j < size; ++j)
+			{
+				Bit bit = bits[i][j] = new Bit();
+				bit.setInput(.2 + .6 * rand.nextDouble());
+				fg.addVariables(bit);
+			}
+		}
+		final int[][] indices = new int[][] { {0,0}, {0,1}, {1,0}, {1,1} };
+		for (int i = 0; i < size; ++i)
+		{
+			for (int j = 0; j < size; ++j)
+			{
+				if (i + 1 < size)
+					fg.addFactor(indices, randomCoupling(rand), bits[i][j], bits[i+1][j]);
+				if (j + 1 < size)
+					fg.addFactor(indices, randomCoupling(rand), bits[i][j], bits[i][j+1]);
+			}
+		}
+		
+		BPSolverGraph<?,?,?> sfg = (BPSolverGraph<?,?,?>)
+			(minsum ? fg.setSolverFactory(new MinSumSolver()) : fg.setSolverFactory(new SumProductSolver()));
+		fg.setOption(BPOptions.iterations, maxIterations);
+
+		// Without convergence detection, all iterations should be run
+		fg.solve();
+		assertEquals(maxIterations, sfg.getLastIterationCount());
+		assertFalse(sfg.hasConverged());
+		assertTrue(Double.isNaN(sfg.getLastResidual()));
+		assertNull(sfg.getResidualMonitor());
+		
+		double[][] expectedBeliefs = new double[size*size][];
+		for (int i = 0; i < size * size; ++i)
+		{
+			expectedBeliefs[i] = bits[i/size][i%size].getBelief();
+		}
+		
+		fg.setOption(BPOptions.convergenceTolerance, tolerance);
+		fg.setOption(BPOptions.convergenceNorm, norm);
+		fg.solve();
+		assertEquals(norm, requireNonNull(sfg.getResidualMonitor()).norm());
+		assertTrue(sfg.hasConverged());
+		final int nIterations = sfg.getLastIterationCount();
+		assertTrue(nIterations < maxIterations);
+		assertTrue(sfg.getLastResidual() < tolerance);
+		
+		for (int i = 0; i < size * size; ++i)
+		{
+			assertArrayEquals(expectedBeliefs[i], bits[i/size][i%size].getBelief(), 1e-4);
+		}
+		
+		// Checking every third iteration should stop on a multiple of three
+		fg.setOption(BPOptions.convergenceCheckInterval, 3);
+		fg.solve();
+		assertTrue(sfg.hasConverged());
+		assertEquals(0, sfg.getLastIterationCount() % 3);
+		assertTrue(sfg.getLastIterationCount() >= nIterations);
+		
+		// Not enough iterations to converge
+		fg.setOption(BPOptions.convergenceCheckInterval, 1);
+		fg.setOption(BPOptions.iterations, 2);
+		fg.solve();
+		assertFalse(sfg.hasConverged());
+		assertEquals(2, sfg.getLastIterationCount());
+		assertTrue(sfg.getLastResidual() >= tolerance);
+	}
+	
+	@Test
+	public void testMessageTrace() throws IOException
+	{
+		final DimpleRandom rand = new DimpleRandom(23);
+		final int nIterations = 5;
+		
+		// Loop of three bits
+		FactorGraph fg = new FactorGraph();
+		Bit[] bits = new Bit[3];
+		for (int i = 0; i < bits.length; ++i)
+		{
+			bits[i] = new Bit();
+			bits[i].setInput(.2 + .6 * rand.nextDouble());
+			fg.addVariables(bits[i]);
+		}
+		final int[][] indices = new int[][] { {0,0}, {0,1}, {1,0}, {1,1} };
+		for (int i = 0; i < bits.length; ++i)
+		{
+			fg.addFactor(indices, randomCoupling(rand), bits[i], bits[(i + 1) % bits.length]);
+		}
+		
+		SumProductSolverGraph sfg = requireNonNull(fg.setSolverFactory(new SumProductSolver()));
+		fg.setOption(BPOptions.iterations, nIterations);
+		fg.solve();
+		double[][] expectedBeliefs = new double[bits.length][];
+		for (int i = 0; i < bits.length; ++i)
+		{
+			expectedBeliefs[i] = bits[i].getBelief();
+		}
+		assertNull(sfg.getMessageTrace());
+		
+		final File traceFile = File.createTempFile("TestSumProduct", ".trace");
+		try
+		{
+			fg.setOption(BPOptions.messageTraceFile, traceFile.getPath());
+			fg.setOption(BPOptions.messageTraceIncludesMessages, true);
+			fg.solve();
+			MessageTraceWriter trace = requireNonNull(sfg.getMessageTrace());
+			assertTrue(trace.includesMessages());
+			assertEquals(nIterations, trace.iteration());
+			
+			// Tracing should not affect the results or convergence detection.
+			assertEquals(nIterations, sfg.getLastIterationCount());
+			assertTrue(Double.isNaN(sfg.getLastResidual()));
+			for (int i = 0; i < bits.length; ++i)
+			{
+				assertArrayEquals(expectedBeliefs[i], bits[i].getBelief(), 0.0);
+			}
+			
+			sfg.closeMessageTrace();
+			assertTrue(trace.isClosed());
+			assertNull(sfg.getMessageTrace());
+			
+			// Each variable and factor sends two messages per iteration. Changes should be consistent
+			// with the recorded messages.
+			Map<String, double[]> lastMessages = new HashMap<>();
+			int nRecords = 0;
+			try (MessageTraceReader reader = new MessageTraceReader(traceFile))
+			{
+				assertTrue(reader.includesMessages());
+				while (reader.next())
+				{
+					++nRecords;
+					Node node = requireNonNull(fg.getNodeByGlobalId(reader.nodeId()));
+					assertTrue(reader.edge() < node.getSiblingCount());
+					assertTrue(reader.iteration() >= 1 && reader.iteration() <= nIterations);
+					
+					double[] message = reader.message();
+					assertEquals(2, message.length);
+					String key = reader.nodeId() + ":" + reader.edge();
+					double[] previous = lastMessages.get(key);
+					if (previous != null)
+					{
+						assertEquals(MessageResidualMonitor.change(previous, message), reader.change(), 0.0);
+					}
+					lastMessages.put(key, message.clone());
+				}
+			}
+			assertEquals(nIterations * 2 * (bits.length + fg.getFactorCount()), nRecords);
+			assertEquals(2 * (bits.length + fg.getFactorCount()), lastMessages.size());
+			
+			// Without the messages
+			fg.setOption(BPOptions.messageTraceIncludesMessages, false);
+			fg.solve();
+			sfg.iterate(2);
+			sfg.closeMessageTrace();
+			assertEquals(12 + (nIterations + 2) * 2 * (bits.length + fg.getFactorCount()) * 24, traceFile.length());
+			try (MessageTraceReader reader = new MessageTraceReader(traceFile))
+			{
+				assertFalse(reader.includesMessages());
+				int iteration = 0;
+				while (reader.next())
+				{
+					assertEquals(0, reader.message().length);
+					iteration = Math.max(iteration, reader.iteration());
+				}
+				assertEquals(nIterations + 2, iteration);
+			}
+			
+			// Clearing the option closes the trace on the next iteration.
+			fg.setOption(BPOptions.messageTraceFile, traceFile.getPath());
+			fg.solve();
+			trace = requireNonNull(sfg.getMessageTrace());
+			fg.setOption(BPOptions.messageTraceFile, "");
+			sfg.iterate(1);
+			assertTrue(trace.isClosed());
+			assertNull(sfg.getMessageTrace());
+			
+			// Turn off tracing
+			fg.solve();
+			assertNull(sfg.getMessageTrace());
+			assertNull(sfg.getResidualMonitor());
+			
+			// Replacing the solver closes the trace.
+			fg.setOption(BPOptions.messageTraceFile, traceFile.getPath());
+			fg.solve();
+			trace = requireNonNull(sfg.getMessageTrace());
+			sfg = requireNonNull(fg.setSolverFactory(new SumProductSolver()));
+			assertTrue(trace.isClosed());
+			fg.unsetOption(BPOptions.messageTraceFile);
+		}
+		finally
+		{
+			sfg.closeMessageTrace();
+			traceFile.delete();
+		}
+	}
+	
+	@Test
+	public void testParallelUpdate()
+	{
+		final DimpleRandom rand = new DimpleRandom(42);
+		for (boolean minsum : new boolean[] { false, true })
+		{
+			for (String scheduler : new String[] { "FloodingScheduler", "SequentialScheduler" })
+			{
+				for (double damping : new double[] { 0.0, .3 })
+				{
+					testParallelUpdate(rand, minsum, scheduler, damping);
+				}
+			}
+		}
+	}
+	
+	private void testParallelUpdate(DimpleRandom rand, boolean minsum, String scheduler, double damping)
+	{
+		// Loop of large random factors over four variables
+		final int nVars = 4;
+		final int domainSize = 7;
+		final DiscreteDomain domain = DiscreteDomain.range(1, domainSize);
+		
+		FactorGraph fg = new FactorGraph();
+		Discrete[] vars = new Discrete[nVars];
+		for (int i = 0; i < nVars; ++i)
+		{
+			final double[] input = new double[domainSize];
+			for (int j = 0; j < domainSize; ++j)
+			{
+				input[j] = rand.nextDouble();
+			}
+			vars[i] = new Discrete(domain);
+			vars[i].setInput(input);
+		}
+		fg.addVariables(vars);
+		for (int i = 0; i < nVars; ++i)
+		{
+			final Discrete[] factorVars = new Discrete[] { vars[i], vars[(i + 1) % nVars], vars[(i + 2) % nVars] };
+			final IFactorTable table = FactorTable.create(domain, domain, domain);
+			final double[] weights = new double[table.getDomainIndexer().getCardinality()];
+			for (int j = 0; j < weights.length; ++j)
+			{
+				weights[j] = rand.nextDouble();
+			}
+			table.setWeightsDense(weights);
+			fg.addFactor(table, factorVars);
+		}
+		
+		if (minsum)
+			fg.setSolverFactory(new MinSumSolver());
+		else
+			fg.setSolverFactory(new SumProductSolver());
+		BPOptions.scheduler.set(fg, scheduler);
+		fg.setOption(BPOptions.updateApproach, UpdateApproach.NORMAL);
+		fg.setOption(BPOptions.iterations, 3);
+		fg.setOption(BPOptions.damping, damping);
+		
+		fg.solve();
+		double[][] expectedBeliefs = new double[nVars][];
+		for (int i = 0; i < nVars; ++i)
+		{
+			expectedBeliefs[i] = vars[i].getBelief();
+		}
+		
+		// Every factor table is now above the threshold
+		fg.setOption(BPOptions.parallelUpdateThreshold, 2);
+		fg.solve();
+		for (int i = 0; i < nVars; ++i)
+		{
+			assertArrayEquals(expectedBeliefs[i], vars[i].getBelief(), 1e-12);
+		}
+	}
+	
+	@Test
+	public void testLargeTableScratch()
+	{
+		// Table with more entries than are retained by the scratch arena, but below the parallel threshold
+		final int domainSize = 41;
+		final int cardinality = domainSize * domainSize * domainSize;
+		assertTrue(cardinality > ScratchArena.MAX_RETAINED_SIZE);
+		
+		final DimpleRandom rand = new DimpleRandom(42);
+		final DiscreteDomain domain = DiscreteDomain.range(1, domainSize);
+		final double[][] inputs = new double[3][domainSize];
+		for (int i = 0; i < 3; ++i)
+		{
+			for (int j = 0; j < domainSize; ++j)
+			{
+				inputs[i][j] = rand.nextDouble();
+			}
+		}
+		final IFactorTable table = FactorTable.create(domain, domain, domain);
+		final double[] weights = new double[cardinality];
+		for (int j = 0; j < cardinality; ++j)
+		{
+			weights[j] = rand.nextDouble();
+		}
+		table.setWeightsDense(weights);
+		
+		for (boolean minsum : new boolean[] { false, true })
+		{
+			FactorGraph fg = new FactorGraph();
+			final Discrete[] vars = new Discrete[3];
+			for (int i = 0; i < 3; ++i)
+			{
+				vars[i] = new Discrete(domain);
+				vars[i].setInput(inputs[i]);
+			}
+			fg.addFactor(table.clone(), vars);
+			
+			if (minsum)
+				fg.setSolverFactory(new MinSumSolver());
+			else
+				fg.setSolverFactory(new SumProductSolver());
+			fg.setOption(BPOptions.updateApproach, UpdateApproach.NORMAL);
+			fg.solve();
+			
+			// Updates after the first reuse the same scratch space
+			ScratchArena.resetCounts();
+			fg.solve();
+			assertEquals(0, ScratchArena.missCount());
+			
+			if (!minsum)
+			{
+				// Belief of the first variable is its exact marginal
+				final double[] expected = new double[domainSize];
+				double total = 0;
+				for (int j = 0; j < cardinality; ++j)
+				{
+					final int[] indices = table.getDomainIndexer().jointIndexToIndices(j);
+					final double p = weights[j] * inputs[0][indices[0]] * inputs[1][indices[1]] * inputs[2][indices[2]];
+					expected[indices[0]] += p;
+					total += p;
+				}
+				for (int i = 0; i < domainSize; ++i)
+				{
+					expected[i] /= total;
+				}
+				assertArrayEquals(expected, vars[0].getBelief(), 1e-12);
+			}
+		}
+	}
+	
+	@Test
+	public void testTemplateInstances()
+	{
+		FactorGraph template = new FactorGraph();
+		Bit a = new Bit(), b = new Bit();
+		template.addBoundaryVariables(a, b);
+		Factor templateFactor = template.addFactor(new XorDelta(), a, b);
+		
+		FactorGraph fg = new FactorGraph();
+		SumProductSolverGraph sfg = requireNonNull(fg.setSolverFactory(new SumProductSolver()));
+		Bit[] bits = new Bit[4];
+		for (int i = 0; i < bits.length; ++i)
+		{
+			bits[i] = new Bit();
+		}
+		FactorGraph instance = null;
+		for (int i = 1; i < bits.length; ++i)
+		{
+			instance = fg.addGraph(template, bits[i - 1], bits[i]);
+		}
+		
+		// Instances share the factor function and table with the template.
+		Factor instanceFactor = requireNonNull(instance).getOwnedFactors().iterator().next();
+		assertSame(templateFactor.getFactorFunction(), instanceFactor.getFactorFunction());
+		assertSame(templateFactor.getFactorTable(), instanceFactor.getFactorTable());
+		
+		// Instance solver graphs inherit default Gibbs options for sampled factors from the root
+		// rather than each holding its own copy.
+		SumProductSolverGraph sinstance = (SumProductSolverGraph)requireNonNull(instance.getSolver());
+		assertNotNull(sfg.getLocalOption(GibbsOptions.numSamples));
+		assertNull(sinstance.getLocalOption(GibbsOptions.numSamples));
+		assertEquals(sfg.getOption(GibbsOptions.numSamples), sinstance.getOption(GibbsOptions.numSamples));
+		
+		// Multithreading managers are created on demand.
+		assertNotNull(sinstance.getMultithreadingManager());
+		assertSame(sinstance.getMultithreadingManager(), sinstance.getMultithreadingManager());
+		
+		bits[0].setInput(.3);
+		fg.solve();
+		assertEquals(.3, bits[bits.length - 1].getP1(), 1e-12);
+	}
+	
+	@Test
+	public void testProductDomainVariableUpdate()
+	{
+		for (String scheduler : new String[] { "FloodingScheduler", "SequentialScheduler" })
+		{
+			for (double damping : new double[] { 0.0, .3 })
+			{
+				FactorGraph logGraph = buildProductDomainTestGraph(scheduler, damping);
+				FactorGraph productGraph = buildProductDomainTestGraph(scheduler, damping);
+				productGraph.setOption(SumProductOptions.productDomainVariableUpdate, true);
+				
+				logGraph.solve();
+				productGraph.solve();
+				assertSameVariableMessages(logGraph, productGraph);
+				
+				// Update each edge individually
+				for (int pass = 0; pass < 2; ++pass)
+				{
+					for (FactorGraph fg : new FactorGraph[] { logGraph, productGraph })
+					{
+						for (Variable var : fg.getVariables())
+						{
+							ISolverVariable svar = requireNonNull(var.getSolver());
+							for (int i = 0, n = var.getSiblingCount(); i < n; ++i)
+							{
+								svar.updateEdge(i);
+							}
+						}
+					}
+					assertSameVariableMessages(logGraph, productGraph);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Builds loopy graph with a high degree variable, whose outgoing messages require rescaling in the
+	 * product domain, and a variable with conflicting evidence, for which the product domain computation
+	 * falls back on the log domain.
+	 */
+	private FactorGraph buildProductDomainTestGraph(String scheduler, double damping)
+	{
+		final DimpleRandom rand = new DimpleRandom(42);
+		final int nVars = 6;
+		final DiscreteDomain domain = DiscreteDomain.range(1, 5);
+		
+		FactorGraph fg = new FactorGraph();
+		Discrete[] vars = new Discrete[nVars];
+		for (int i = 0; i < nVars; ++i)
+		{
+			vars[i] = new Discrete(domain);
+			final double[] input = randomWeights(rand, domain.size());
+			input[i % domain.size()] = 0.0;
+			vars[i].setInput(input);
+		}
+		fg.addVariables(vars);
+		
+		for (int i = 0; i < nVars; ++i)
+		{
+			IFactorTable table = FactorTable.create(domain, domain);
+			table.setWeightsDense(randomWeights(rand, domain.size() * domain.size()));
+			fg.addFactor(table, vars[i], vars[(i + 1) % nVars]);
+		}
+		
+		for (int i = 0; i < 250; ++i)
+		{
+			IFactorTable table = FactorTable.create(domain);
+			table.setWeightsDense(randomWeights(rand, domain.size()));
+			fg.addFactor(table, vars[0]);
+		}
+		
+		Discrete conflicted = new Discrete(domain);
+		IFactorTable table = FactorTable.create(domain);
+		table.setWeightsDense(new double[] { 1, 0, 0, 0, 0 });
+		fg.addFactor(table, conflicted);
+		table = FactorTable.create(domain);
+		table.setWeightsDense(new double[] { 0, 1, 0, 0, 0 });
+		fg.addFactor(table, conflicted);
+		table = FactorTable.create(domain, domain);
+		table.setWeightsDense(randomWeights(rand, domain.size() * domain.size()));
+		fg.addFactor(table, conflicted, vars[1]);
+		
+		fg.setSolverFactory(new SumProductSolver());
+		BPOptions.scheduler.set(fg, scheduler);
+		fg.setOption(BPOptions.iterations, 5);
+		fg.setOption(BPOptions.damping, damping);
+		return fg;
+	}
+	
+	private double[] randomWeights(DimpleRandom rand, int size)
+	{
+		final double[] weights = new double[size];
+		for (int i = 0; i < size; ++i)
+		{
+			weights[i] = rand.nextDouble();
+		}
+		return weights;
+	}
+	
+	private void assertSameVariableMessages(FactorGraph expectedGraph, FactorGraph actualGraph)
+	{
+		Variable[] expectedVars = expectedGraph.getVariables().toArray(new Variable[0]);
+		Variable[] actualVars = actualGraph.getVariables().toArray(new Variable[0]);
+		assertEquals(expectedVars.length, actualVars.length);
+		for (int i = 0; i < expectedVars.length; ++i)
+		{
+			SumProductDiscrete expected = (SumProductDiscrete)requireNonNull(expectedVars[i].getSolver());
+			SumProductDiscrete actual = (SumProductDiscrete)requireNonNull(actualVars[i].getSolver());
+			assertArrayEquals(expected.getBelief(), actual.getBelief(), 1e-12);
+			for (int j = 0, n = expectedVars[i].getSiblingCount(); j < n; ++j)
+			{
+				DiscreteMessage expectedMsg = expected.getSiblingEdgeState(j).varToFactorMsg;
+				DiscreteMessage actualMsg = actual.getSiblingEdgeState(j).varToFactorMsg;
+				assertArrayEquals(expectedMsg.representation(), actualMsg.representation(), 1e-12);
+				final double energy = expectedMsg.getNormalizationEnergy();
+				assertEquals(energy, actualMsg.getNormalizationEnergy(), 1e-9 * Math.max(1, Math.abs(energy)));
+			}
+		}
+	}
+	
+	private double[] randomCoupling(DimpleRandom rand)
+	{
+		double same = 1 + rand.nextDouble(), different = 1 + rand.nextDouble();
+		return new double[] { same, different, different, same };
+	}
 }